@@ -0,0 +1,70 @@
+#!/usr/bin/env bash
+#
+# Latency of cold CLI invocations vs. calls forwarded to a warm 'serve' daemon.
+#
+# Usage: benchmarks/scripts/serve-latency.sh [iterations]   (default 20)
+# Needs: JDK 17+, Maven, a POSIX filesystem. Runs against a throwaway etc directory.
+#
+set -euo pipefail
+
+N=${1:-20}
+ROOT=$(cd "$(dirname "$0")/../.." && pwd)
+
+cd "$ROOT"
+mvn -q -DskipTests compile dependency:build-classpath -Dmdep.outputFile=target/classpath.txt
+CP="$ROOT/target/classes:$(cat target/classpath.txt)"
+MAIN=com.example.karafusers.Main
+
+WORK=$(mktemp -d)
+DAEMON_PID=
+cleanup() {
+    [ -n "$DAEMON_PID" ] && kill "$DAEMON_PID" 2>/dev/null || true
+    rm -rf "$WORK"
+}
+trap cleanup EXIT
+
+ETC="$WORK/etc"
+mkdir -p "$ETC"
+cat > "$ETC/org.apache.karaf.jaas.cfg" <<CFG
+encryption.enabled = true
+encryption.name = spring-security-crypto
+encryption.algorithm = bcrypt
+encryption.bcrypt.strength = 10
+encryption.prefix = {CRYPT}
+encryption.suffix = {CRYPT}
+CFG
+{
+    echo "karaf = karaf,_g_:admingroup"
+    echo "_g_\\:admingroup = group,admin,manager,viewer"
+    for i in $(seq 1 1000); do echo "user$i = {CRYPT}x{CRYPT},viewer"; done
+} > "$ETC/users.properties"
+chmod 600 "$ETC/users.properties"
+
+cli() { java -cp "$CP" "$MAIN" --users-file "$ETC/users.properties" --jaas-cfg "$ETC/org.apache.karaf.jaas.cfg" "$@"; }
+fwd() { KARAF_USERS_SOCKET="$ETC/.karaf-users.sock" java -cp "$CP" "$MAIN" "$@"; }
+
+# Prints wall time of one call in milliseconds.
+ms() {
+    local start end
+    start=$(date +%s%N)
+    "$@" > /dev/null
+    end=$(date +%s%N)
+    echo $(( (end - start) / 1000000 ))
+}
+
+# Reads numbers on stdin, prints "mean min max".
+stats() { awk '{ s += $1; if (min == "" || $1 < min) min = $1; if ($1 > max) max = $1 } END { printf "mean %6.1f ms  min %5d ms  max %5d ms\n", s / NR, min, max }'; }
+
+report() {
+    printf "%-28s %s\n" "$1" "$(stats)"
+}
+
+for i in $(seq 1 "$N"); do ms cli user list; done | report "cold   user list"
+for i in $(seq 1 "$N"); do ms cli user add -u "cold$i" -p secret --roles viewer; done | report "cold   user add"
+
+cli serve < /dev/null > "$WORK/serve.log" 2>&1 &
+DAEMON_PID=$!
+for _ in $(seq 1 100); do [ -S "$ETC/.karaf-users.sock" ] && break; sleep 0.1; done
+
+for i in $(seq 1 "$N"); do ms fwd user list; done | report "daemon user list"
+for i in $(seq 1 "$N"); do ms fwd user add -u "warm$i" -p secret --roles viewer; done | report "daemon user add"
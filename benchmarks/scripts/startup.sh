@@ -0,0 +1,64 @@
+#!/usr/bin/env bash
+#
+# Time from process start to exit of the shaded CLI, with and without the AppCDS archive.
+#
+# Usage: benchmarks/scripts/startup.sh [iterations]   (default 20)
+# Builds target/karaf-users.jar and target/karaf-users.jsa (mvn -Pcds package) if missing.
+# Measures --help, user list and --dry-run user add against a throwaway etc directory.
+#
+set -euo pipefail
+
+N=${1:-20}
+ROOT=$(cd "$(dirname "$0")/../.." && pwd)
+JAR="$ROOT/target/karaf-users.jar"
+JSA="$ROOT/target/karaf-users.jsa"
+
+if [ ! -f "$JAR" ] || [ ! -f "$JSA" ]; then
+    (cd "$ROOT" && mvn -q -Pcds -DskipTests package)
+fi
+
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+cat > "$WORK/org.apache.karaf.jaas.cfg" <<CFG
+encryption.enabled = true
+encryption.name = spring-security-crypto
+encryption.algorithm = bcrypt
+encryption.bcrypt.strength = 10
+encryption.prefix = {CRYPT}
+encryption.suffix = {CRYPT}
+CFG
+{
+    echo "karaf = karaf,_g_:admingroup"
+    echo "_g_\\:admingroup = group,admin,manager,viewer"
+    for i in $(seq 1 1000); do echo "user$i = {CRYPT}x{CRYPT},viewer"; done
+} > "$WORK/users.properties"
+chmod 600 "$WORK/users.properties"
+
+FILES=(--users-file "$WORK/users.properties" --jaas-cfg "$WORK/org.apache.karaf.jaas.cfg")
+
+ms() {
+    local start end
+    start=$(date +%s%N)
+    "$@" > /dev/null 2>&1 || true
+    end=$(date +%s%N)
+    echo $(( (end - start) / 1000000 ))
+}
+
+stats() { awk '{ s += $1; if (min == "" || $1 < min) min = $1; if ($1 > max) max = $1 } END { printf "mean %6.1f ms  min %5d ms  max %5d ms\n", s / NR, min, max }'; }
+
+bench() {
+    local label=$1
+    shift
+    for _ in $(seq 1 "$N"); do ms "$@"; done | { printf "%-34s " "$label"; stats; }
+}
+
+for mode in default cds; do
+    if [ "$mode" = cds ]; then
+        JVM=(java -Xshare:auto -XX:SharedArchiveFile="$JSA" -XX:+UseSerialGC -cp "$JAR" com.example.karafusers.Main)
+    else
+        JVM=(java -XX:+UseSerialGC -cp "$JAR" com.example.karafusers.Main)
+    fi
+    bench "$mode  --help" "${JVM[@]}" --help
+    bench "$mode  user list" "${JVM[@]}" "${FILES[@]}" user list
+    bench "$mode  --dry-run user add" "${JVM[@]}" "${FILES[@]}" --dry-run user add -u bench -p secret --roles viewer
+done
@@ -0,0 +1,80 @@
+package com.example.karafusers.benchmarks;
+
+import com.example.karafusers.io.SecureFileUpdate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of one users.properties replace ({@link SecureFileUpdate#atomicReplace}) for each
+ * {@code --durability} mode. The fsyncs dominate, so the result depends on the filesystem:
+ * point {@code -p dir=...} at the disk that holds Karaf's etc directory (tmpfs makes them free).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DurabilityBenchmark {
+
+    @Param({"none", "data", "full"})
+    public SecureFileUpdate.Durability durability;
+
+    /** Directory to write in; empty means java.io.tmpdir. */
+    @Param({""})
+    public String dir;
+
+    /** Bytes of users.properties to replace (about 1300 bcrypt users for the default). */
+    @Param({"65536"})
+    public int size;
+
+    private Path workDir;
+    private Path users;
+    private String content;
+    private Path tmp;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Path parent = dir.isEmpty() ? Path.of(System.getProperty("java.io.tmpdir")) : Path.of(dir);
+        workDir = Files.createTempDirectory(parent, "durability-");
+        users = workDir.resolve("users.properties");
+        String line = "user = {CRYPT}$2a$10$abcdefghijklmnopqrstuv,viewer\n";
+        content = line.repeat(Math.max(1, size / line.length()));
+        Files.writeString(users, content);
+    }
+
+    @Setup(Level.Invocation)
+    public void prepare() throws IOException {
+        tmp = SecureFileUpdate.createSecureTempFileNear(users);
+        Files.writeString(tmp, content);
+    }
+
+    @Benchmark
+    public void replace() throws IOException {
+        SecureFileUpdate.atomicReplace(users, tmp, durability);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (var files = Files.list(workDir)) {
+            for (Path p : (Iterable<Path>) files::iterator) Files.delete(p);
+        }
+        Files.delete(workDir);
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.karafusers.benchmarks;
+
+import com.example.karafusers.config.JaasCfg;
+import com.example.karafusers.crypto.KarafPasswordCodec;
+import com.example.karafusers.crypto.PasswordEncoderFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link KarafPasswordCodec} for every algorithm {@link PasswordEncoderFactory} builds,
+ * across a grid of the {@code encryption.*} settings read from jaas.cfg.
+ *
+ * Modes: throughput (ops/s), average time, and sampled time for p99. Run with
+ * {@code -prof gc} for allocation rates, e.g. {@code make bench}.
+ *
+ * A spec is {@code algorithm[:key=value;...]}; keys are the part after {@code encryption.<algorithm>.}.
+ * Settings are ';'-separated because JMH splits {@code -p} values on commas.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class PasswordCodecBenchmark {
+
+    @Param({
+            "bcrypt:strength=10",
+            "bcrypt:strength=12",
+            "pbkdf2:iterations=100000",
+            "pbkdf2:iterations=310000",
+            "pbkdf2:iterations=600000;algorithm=PBKDF2WithHmacSHA512",
+            "scrypt:cpuCost=16384;memoryCost=8",
+            "scrypt:cpuCost=65536;memoryCost=8",
+            "argon2:memory=19456;iterations=2",
+            "argon2:memory=65536;iterations=3"
+    })
+    public String spec;
+
+    private static final String PASSWORD = "correct horse battery staple";
+
+    private KarafPasswordCodec codec;
+    private String stored;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        codec = PasswordEncoderFactory.from(jaasCfg(spec));
+        stored = codec.encode(PASSWORD);
+    }
+
+    @Benchmark
+    public String encode() {
+        return codec.encode(PASSWORD);
+    }
+
+    @Benchmark
+    public boolean matches() {
+        return codec.matches(PASSWORD, stored);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public String unwrap() {
+        return codec.unwrap(stored);
+    }
+
+    static JaasCfg jaasCfg(String spec) {
+        int colon = spec.indexOf(':');
+        String algorithm = colon < 0 ? spec : spec.substring(0, colon);
+
+        Properties p = new Properties();
+        p.setProperty("encryption.enabled", "true");
+        p.setProperty("encryption.name", "spring-security-crypto");
+        p.setProperty("encryption.algorithm", algorithm);
+        p.setProperty("encryption.prefix", "{CRYPT}");
+        p.setProperty("encryption.suffix", "{CRYPT}");
+        if (colon >= 0) {
+            for (String kv : spec.substring(colon + 1).split(";")) {
+                int eq = kv.indexOf('=');
+                p.setProperty("encryption." + algorithm + "." + kv.substring(0, eq).trim(), kv.substring(eq + 1).trim());
+            }
+        }
+        return new JaasCfg(p);
+    }
+}
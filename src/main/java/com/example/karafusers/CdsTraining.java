@@ -0,0 +1,80 @@
+package com.example.karafusers;
+
+import com.example.karafusers.io.FileSecurity;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Training run for the AppCDS archive (mvn -Pcds package).
+ *
+ * JDK 17 records one archive per JVM, so the common subcommands are replayed here in a single
+ * process against a throwaway etc directory, once per hash algorithm, to get every class they
+ * load into the archive.
+ */
+public final class CdsTraining {
+
+    private CdsTraining() {}
+
+    public static void main(String[] args) throws IOException {
+        Path etc = Files.createTempDirectory("karaf-users-cds");
+        try {
+            Path users = etc.resolve("users.properties");
+            Files.writeString(users,
+                    "karaf = karaf,_g_:admingroup\n_g_\\:admingroup = group,admin,manager,viewer\n",
+                    StandardCharsets.ISO_8859_1);
+            FileSecurity.enforce0600(users);
+
+            int failures = 0;
+            failures += run("--help");
+            for (String algorithm : List.of("bcrypt", "pbkdf2", "scrypt", "argon2")) {
+                Path cfg = etc.resolve(algorithm + ".cfg");
+                Files.writeString(cfg,
+                        "encryption.enabled = true\n" +
+                        "encryption.name = spring-security-crypto\n" +
+                        "encryption.algorithm = " + algorithm + "\n" +
+                        // Cheapest settings: class loading is what is being recorded, not hashing.
+                        "encryption.bcrypt.strength = 4\n" +
+                        "encryption.pbkdf2.iterations = 1000\n" +
+                        "encryption.scrypt.cpuCost = 1024\n" +
+                        "encryption.argon2.memory = 1024\n" +
+                        "encryption.argon2.iterations = 1\n");
+
+                String[] files = {"--users-file", users.toString(), "--jaas-cfg", cfg.toString()};
+                failures += run(files, "user", "list");
+                failures += run(files, "--dry-run", "user", "add", "-u", "cds", "-p", "cds", "--roles", "viewer");
+                failures += run(files, "--dry-run", "user", "edit", "-u", "karaf", "--add-roles", "viewer");
+                failures += run(files, "--dry-run", "user", "del", "-u", "karaf", "--force");
+            }
+
+            if (failures > 0) {
+                System.err.println("CDS training: " + failures + " command(s) failed.");
+                System.exit(1);
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(etc)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    private static int run(String[] prefix, String... args) {
+        String[] all = new String[prefix.length + args.length];
+        System.arraycopy(prefix, 0, all, 0, prefix.length);
+        System.arraycopy(args, 0, all, prefix.length, args.length);
+        return run(all);
+    }
+
+    private static int run(String... args) {
+        PrintWriter sink = new PrintWriter(Writer.nullWriter());
+        int code = Main.newCommandLine().setOut(sink).setErr(sink).execute(args);
+        return code == 0 ? 0 : 1;
+    }
+}
@@ -2,9 +2,18 @@ package com.example.karafusers;
 
 import com.example.karafusers.cli.ExitCodes;
 import com.example.karafusers.cli.RootCommand;
+import com.example.karafusers.daemon.DaemonClient;
+import com.example.karafusers.fleet.FleetRunner;
+import com.example.karafusers.fleet.FleetTargets;
+import com.example.karafusers.metrics.Metrics;
 import picocli.CommandLine;
 
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
 //import java.util.concurrent.Callable;
 
 public final class Main {
@@ -12,12 +21,92 @@ public final class Main {
     private Main() {}
 
     public static void main(String[] args) {
-        int exitCode = new CommandLine(new RootCommand())
+        Metrics.markMainEntered();
+
+        // Thin client mode: hand the call to a warm daemon before building any picocli model.
+        String socket = System.getenv(DaemonClient.ENV_SOCKET);
+        if (socket != null && !socket.isBlank() && (args.length == 0 || !args[0].equals("serve"))) {
+            System.exit(DaemonClient.forward(Path.of(socket), args, System.out, System.err));
+        }
+
+        System.exit(newCommandLine().execute(args));
+    }
+
+    /** A fully configured command line; callers may redirect its output with setOut/setErr. */
+    public static CommandLine newCommandLine() {
+        RootCommand root = new RootCommand();
+        return new CommandLine(root)
+                .setExecutionStrategy(parseResult -> executeWithMetrics(root, parseResult))
                 .setExecutionExceptionHandler((ex, cmd, parseResult) -> handleException(ex, cmd))
-                .setParameterExceptionHandler((ex, args0) -> handleParameterException(ex, args0))
-                .execute(args);
+                .setParameterExceptionHandler((ex, args0) -> handleParameterException(ex, args0));
+    }
+
+    /** Runs the command; with --metrics, records it and reports even when it fails. */
+    private static int executeWithMetrics(RootCommand root, CommandLine.ParseResult parseResult) {
+        long jvmStartup = Metrics.takeJvmStartupNanos();
+        Metrics.Format format = root.getMetrics();
+        if (format == null) {
+            return execute(root, parseResult);
+        }
+
+        Metrics metrics = Metrics.enable(jvmStartup);
+        Integer code = null;
+        try {
+            code = execute(root, parseResult);
+            return code;
+        } finally {
+            String report = metrics.disable().render(format, commandName(parseResult), code);
+            writeReport(root, report);
+        }
+    }
 
-        System.exit(exitCode);
+    private static int execute(RootCommand root, CommandLine.ParseResult parseResult) {
+        return root.isFleet() ? executeFleet(root, parseResult) : new CommandLine.RunLast().execute(parseResult);
+    }
+
+    /** --etc-glob/--targets-file: the same command line once per etc directory, then a result table. */
+    private static int executeFleet(RootCommand root, CommandLine.ParseResult parseResult) {
+        CommandLine cmd = parseResult.commandSpec().commandLine();
+        try {
+            if (parseResult.subcommand() == null || parseResult.subcommand().commandSpec().name().equals("serve")) {
+                throw new IllegalArgumentException("--etc-glob/--targets-file need a command to run on each target (not 'serve').");
+            }
+            List<Path> targets = FleetTargets.resolve(root.getEtcGlob(), root.getTargetsFile());
+            FleetRunner fleet = new FleetRunner(root.getFleetParallelism(), (args, shared, out, err) -> {
+                CommandLine target = newCommandLine();
+                ((RootCommand) target.getCommand()).setSharedHashes(shared);
+                return target.setOut(out).setErr(err).execute(args);
+            });
+            int code = FleetRunner.report(fleet.run(targets, parseResult.originalArgs()), root.out());
+            root.out().flush();
+            return code;
+        } catch (Exception e) {
+            throw new CommandLine.ExecutionException(cmd, safeMessage(e), e);
+        }
+    }
+
+    private static String commandName(CommandLine.ParseResult parseResult) {
+        StringBuilder name = new StringBuilder();
+        for (CommandLine.ParseResult pr = parseResult.subcommand(); pr != null; pr = pr.subcommand()) {
+            if (name.length() > 0) name.append(' ');
+            name.append(pr.commandSpec().name());
+        }
+        return name.length() > 0 ? name.toString() : parseResult.commandSpec().name();
+    }
+
+    private static void writeReport(RootCommand root, String report) {
+        if (!report.endsWith("\n")) report += "\n";
+        if (root.getMetricsFile() == null) {
+            root.err().print(report);
+            root.err().flush();
+            return;
+        }
+        try {
+            Files.writeString(root.getMetricsFile(), report, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            root.err().println("Warning: could not write metrics to " + root.getMetricsFile() + ": " + e.getMessage());
+            root.err().flush();
+        }
     }
 
     private static int handleException(Exception ex, CommandLine cmd) {
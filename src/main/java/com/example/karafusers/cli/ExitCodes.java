@@ -16,6 +16,11 @@ public final class ExitCodes {
      */
     public static final int OK = 0;
 
+    /**
+     * A check ran but did not pass (e.g. {@code user verify} with a wrong password).
+     */
+    public static final int CHECK_FAILED = 1;
+
     /**
      * Incorrect command usage (invalid arguments, missing required options, etc.).
      */
@@ -1,7 +1,22 @@
 package com.example.karafusers.cli;
 
+import com.example.karafusers.cli.backup.BackupCommand;
+import com.example.karafusers.cli.batch.BatchCommand;
+import com.example.karafusers.cli.crypto.CryptoCommand;
+import com.example.karafusers.cli.serve.ServeCommand;
+import com.example.karafusers.cli.group.GroupCommand;
+import com.example.karafusers.cli.journal.JournalCommand;
+import com.example.karafusers.cli.query.QueryCommand;
+import com.example.karafusers.cli.role.RoleCommand;
+import com.example.karafusers.cli.user.UserCommand;
+import com.example.karafusers.crypto.SharedHashes;
+import com.example.karafusers.io.BackupStore;
+import com.example.karafusers.io.Journal;
+import com.example.karafusers.io.SecureFileUpdate;
+import com.example.karafusers.metrics.Metrics;
 import picocli.CommandLine;
 
+import java.io.PrintWriter;
 import java.nio.file.Path;
 import java.util.concurrent.Callable;
 
@@ -12,12 +27,22 @@ import java.util.concurrent.Callable;
         description = "CLI tool for managing Apache Karaf users.properties",
         subcommands = {
                 // Register subcommands here
-                // UserCommand.class,
-                // GroupCommand.class
+                UserCommand.class,
+                BatchCommand.class,
+                CryptoCommand.class,
+                ServeCommand.class,
+                JournalCommand.class,
+                BackupCommand.class,
+                QueryCommand.class,
+                GroupCommand.class,
+                RoleCommand.class
         }
 )
 public class RootCommand implements Callable<Integer> {
 
+    @CommandLine.Spec
+    private CommandLine.Model.CommandSpec spec;
+
     @CommandLine.Option(
             names = {"--users-file"},
             description = "Path to users.properties file. " +
@@ -32,18 +57,138 @@ public class RootCommand implements Callable<Integer> {
     )
     private Path jaasCfg;
 
+    @CommandLine.Option(
+            names = {"--etc-glob"},
+            description = "Run the command against every etc directory matching this glob (e.g. '/opt/karaf-*/etc'), " +
+                          "each with its users.properties and org.apache.karaf.jaas.cfg, and print a per-target result table."
+    )
+    private String etcGlob;
+
+    @CommandLine.Option(
+            names = {"--targets-file"},
+            description = "Like --etc-glob, with the etc directories listed one per line in this file ('#' starts a comment)."
+    )
+    private Path targetsFile;
+
+    @CommandLine.Option(
+            names = {"--fleet-parallelism"},
+            defaultValue = "16",
+            description = "Targets processed concurrently with --etc-glob/--targets-file (default: ${DEFAULT-VALUE})."
+    )
+    private int fleetParallelism;
+
+    /** Set on the per-target command lines of a fleet run; never an option. */
+    private SharedHashes sharedHashes;
+
     @CommandLine.Option(
             names = {"--backup"},
-            description = "Create a timestamped backup before modifying users.properties"
+            description = "Back up users.properties before modifying it, into users.properties.backups/ " +
+                          "(content-addressed: unchanged content is stored once; see 'backup list')"
     )
     private boolean backup;
 
+    @CommandLine.Option(
+            names = {"--backup-keep"},
+            defaultValue = "10",
+            description = "Backup generations to keep; older ones are pruned after each backup (default: ${DEFAULT-VALUE})."
+    )
+    private int backupKeep;
+
+    @CommandLine.Option(
+            names = {"--backup-max-age"},
+            description = "Also prune backups older than this, e.g. 30d, 12h (the newest is always kept)."
+    )
+    private String backupMaxAge;
+
     @CommandLine.Option(
             names = {"--dry-run"},
-            description = "Perform validation and show intended changes without writing files"
+            description = "Perform validation and show intended changes without writing files: " +
+                          "users and groups added, removed or changed (passwords redacted)"
     )
     private boolean dryRun;
 
+    @CommandLine.Option(
+            names = {"--diff"},
+            description = "With --dry-run, also print a unified diff of users.properties (hashes shown as stored)."
+    )
+    private boolean diff;
+
+    @CommandLine.Option(
+            names = {"--durability"},
+            defaultValue = "data",
+            description = "How far a rewrite of users.properties (or jaas.cfg) is synced before the command returns: " +
+                          "none (rename only), data (force the new content before the rename), " +
+                          "full (also fsync the directory after it). Default: ${DEFAULT-VALUE}."
+    )
+    private SecureFileUpdate.Durability durability;
+
+    @CommandLine.Option(
+            names = {"--journal"},
+            description = "Append edits to users.properties.journal instead of rewriting users.properties; " +
+                          "the journal is folded back (with --backup, if given) once it exceeds --journal-max-bytes. " +
+                          "Karaf only sees journaled edits after that, or after 'journal compact'."
+    )
+    private boolean journal;
+
+    @CommandLine.Option(
+            names = {"--journal-sync"},
+            defaultValue = "COMMIT",
+            description = "When journal appends are forced to disk: ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE})."
+    )
+    private Journal.Sync journalSync;
+
+    @CommandLine.Option(
+            names = {"--journal-max-bytes"},
+            defaultValue = "1048576",
+            description = "Journal size that triggers compaction into users.properties (default: ${DEFAULT-VALUE}). " +
+                          "A journal larger than users.properties itself is always compacted."
+    )
+    private long journalMaxBytes;
+
+    @CommandLine.Option(
+            names = {"--index"},
+            description = "Keep a binary index (users.properties.idx) so read-only commands skip parsing users.properties. " +
+                          "Once the index exists it is used and maintained without this flag."
+    )
+    private boolean index;
+
+    @CommandLine.Option(
+            names = {"--lock-timeout"},
+            defaultValue = "30000",
+            description = "Milliseconds to wait for users.properties.lock held by another run (default: ${DEFAULT-VALUE})."
+    )
+    private long lockTimeoutMillis;
+
+    @CommandLine.Option(
+            names = {"--optimistic"},
+            description = "Prepare changes without holding the lock; lock only to commit, and redo the change " +
+                          "if users.properties was modified meanwhile (detected by file key, mtime and checksum)."
+    )
+    private boolean optimistic;
+
+    @CommandLine.Option(
+            names = {"--hash-memory-mib"},
+            description = "Heap that concurrent hashes in bulk commands (import, verify --batch) may use together; " +
+                          "argon2/scrypt hashes wait for their share. Default: 75%% of the free heap."
+    )
+    private Integer hashMemoryMib;
+
+    @CommandLine.Option(
+            names = {"--metrics"},
+            arity = "0..1",
+            fallbackValue = "json",
+            paramLabel = "FORMAT",
+            description = "Report per-phase timings and counts (bytes read/written, hashes, users) when the command ends: " +
+                          "${COMPLETION-CANDIDATES} (default: json). Written to stderr unless --metrics-file is given."
+    )
+    private Metrics.Format metrics;
+
+    @CommandLine.Option(
+            names = {"--metrics-file"},
+            description = "Write the --metrics report to this file instead of stderr (implies --metrics)."
+    )
+    private Path metricsFile;
+
     @CommandLine.Option(
             names = {"--verbose"},
             description = "Enable verbose output"
@@ -76,14 +221,90 @@ public class RootCommand implements Callable<Integer> {
         return jaasCfg;
     }
 
+    public String getEtcGlob() {
+        return etcGlob;
+    }
+
+    public Path getTargetsFile() {
+        return targetsFile;
+    }
+
+    public int getFleetParallelism() {
+        return fleetParallelism;
+    }
+
+    /** Whether this run fans out over several etc directories. */
+    public boolean isFleet() {
+        return etcGlob != null || targetsFile != null;
+    }
+
+    public SharedHashes getSharedHashes() {
+        return sharedHashes;
+    }
+
+    public void setSharedHashes(SharedHashes sharedHashes) {
+        this.sharedHashes = sharedHashes;
+    }
+
     public boolean isBackupEnabled() {
         return backup;
     }
 
+    public BackupStore.Retention getBackupRetention() {
+        return new BackupStore.Retention(backupKeep,
+                backupMaxAge == null ? null : BackupStore.Retention.parseAge(backupMaxAge));
+    }
+
     public boolean isDryRun() {
         return dryRun;
     }
 
+    public boolean isDiff() {
+        return diff;
+    }
+
+    public SecureFileUpdate.Durability getDurability() {
+        return durability;
+    }
+
+    public boolean isJournal() {
+        return journal;
+    }
+
+    public Journal.Sync getJournalSync() {
+        return journalSync;
+    }
+
+    public long getJournalMaxBytes() {
+        return journalMaxBytes;
+    }
+
+    public boolean isIndex() {
+        return index;
+    }
+
+    public long getLockTimeoutMillis() {
+        return lockTimeoutMillis;
+    }
+
+    public boolean isOptimistic() {
+        return optimistic;
+    }
+
+    /** Budget for concurrent hashing, or null to size it from the free heap. */
+    public Integer getHashMemoryMib() {
+        return hashMemoryMib;
+    }
+
+    /** Report format, or null when metrics are off. */
+    public Metrics.Format getMetrics() {
+        return metrics != null || metricsFile == null ? metrics : Metrics.Format.json;
+    }
+
+    public Path getMetricsFile() {
+        return metricsFile;
+    }
+
     public boolean isVerbose() {
         return verbose;
     }
@@ -91,4 +312,21 @@ public class RootCommand implements Callable<Integer> {
     public boolean isDebug() {
         return debug;
     }
+
+    /** Standard output of the running command line (System.out unless redirected). */
+    public PrintWriter out() {
+        return spec.commandLine().getOut();
+    }
+
+    public PrintWriter err() {
+        return spec.commandLine().getErr();
+    }
+
+    /** Reports how many entries a bulk change (group/role commands) rewrote, or with --dry-run would rewrite. */
+    public void reportRewritten(String action, int entries) {
+        String count = entries + (entries == 1 ? " entry" : " entries");
+        out().println(isDryRun()
+                ? "Dry run: " + count + " would be rewritten."
+                : action + ": " + count + " rewritten.");
+    }
 }
\ No newline at end of file
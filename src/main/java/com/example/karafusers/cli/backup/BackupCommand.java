@@ -0,0 +1,38 @@
+package com.example.karafusers.cli.backup;
+
+import com.example.karafusers.cli.ExitCodes;
+import com.example.karafusers.cli.RootCommand;
+import picocli.CommandLine;
+
+import java.io.PrintWriter;
+import java.util.concurrent.Callable;
+
+@CommandLine.Command(
+        name = "backup",
+        description = "List and restore the users.properties backups written by --backup",
+        subcommands = {
+                BackupListCommand.class,
+                BackupRestoreCommand.class
+        }
+)
+public class BackupCommand implements Callable<Integer> {
+
+    @CommandLine.ParentCommand
+    private RootCommand root;
+
+    @Override
+    public Integer call() {
+        // If no subcommand is provided, show usage for "backup".
+        CommandLine.Model.CommandSpec spec = CommandLine.Model.CommandSpec.forAnnotatedObject(this);
+        CommandLine cmd = new CommandLine(spec);
+
+        PrintWriter out = cmd.getOut();
+        cmd.usage(out);
+
+        return ExitCodes.USAGE;
+    }
+
+    public RootCommand root() {
+        return root;
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.karafusers.cli.backup;
+
+import java.io.PrintWriter;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+
+import picocli.CommandLine;
+
+import com.example.karafusers.cli.ExitCodes;
+import com.example.karafusers.io.BackupStore;
+import com.example.karafusers.karaf.DefaultKarafUsersService;
+
+@CommandLine.Command(
+        name = "list",
+        description = "List backup generations of users.properties, oldest first (read from the backup index)."
+)
+public class BackupListCommand implements Callable<Integer> {
+
+    private static final DateTimeFormatter TS = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    @CommandLine.ParentCommand
+    private BackupCommand parent;
+
+    @Override
+    public Integer call() {
+        var service = new DefaultKarafUsersService(parent.root());
+        List<BackupStore.Generation> generations = service.backups();
+        PrintWriter out = parent.root().out();
+        if (generations.isEmpty()) {
+            out.println("No backups yet (they are written by mutating commands run with --backup).");
+            out.flush();
+            return ExitCodes.OK;
+        }
+        out.printf(Locale.ROOT, "%5s  %-19s  %12s  %-6s  %s%n", "GEN", "CREATED", "BYTES", "STORED", "SHA-256");
+        for (BackupStore.Generation g : generations) {
+            out.printf(Locale.ROOT, "%5d  %-19s  %12d  %-6s  %s%n",
+                    g.id(), TS.format(g.created()), g.size(), g.compressed() ? "gzip" : "plain", g.sha256().substring(0, 16));
+        }
+        out.flush();
+        return ExitCodes.OK;
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.karafusers.cli.backup;
+
+import java.util.concurrent.Callable;
+
+import picocli.CommandLine;
+
+import com.example.karafusers.cli.ExitCodes;
+import com.example.karafusers.io.BackupStore;
+import com.example.karafusers.karaf.DefaultKarafUsersService;
+
+@CommandLine.Command(
+        name = "restore",
+        description = {
+                "Replace users.properties with a backup generation (default: the newest).",
+                "The current content is backed up first, so the restore can be undone the same way."
+        }
+)
+public class BackupRestoreCommand implements Callable<Integer> {
+
+    @CommandLine.ParentCommand
+    private BackupCommand parent;
+
+    @CommandLine.Option(names = {"-g", "--generation"}, description = "Generation to restore, as shown by 'backup list'.")
+    private Long generation;
+
+    @Override
+    public Integer call() {
+        var service = new DefaultKarafUsersService(parent.root());
+        BackupStore.Generation g = service.restoreBackup(generation);
+        if (!parent.root().isDryRun()) {
+            parent.root().out().println("Restored generation " + g.id() + " (" + g.size() + " bytes).");
+            parent.root().out().flush();
+        }
+        return ExitCodes.OK;
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.karafusers.cli.batch;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+
+import picocli.CommandLine;
+
+import com.example.karafusers.cli.ExitCodes;
+import com.example.karafusers.cli.RootCommand;
+import com.example.karafusers.karaf.DefaultKarafUsersService;
+import com.example.karafusers.karaf.KarafUsersService;
+
+@CommandLine.Command(
+        name = "batch",
+        description = {
+                "Apply a script of user operations with one load, one backup and one atomic write.",
+                "One operation per line, same options as the 'user' subcommands (the 'user' keyword is optional):",
+                "  add -u alice -p 's3cret' --roles admin,viewer --groups ops",
+                "  edit -u bob --add-roles admin --password 'n3w'",
+                "  del -u carol",
+                "Blank lines and lines starting with '#' are ignored. If any operation fails, nothing is written."
+        }
+)
+public class BatchCommand implements Callable<Integer> {
+
+    @CommandLine.ParentCommand
+    private RootCommand root;
+
+    @CommandLine.Option(
+            names = {"-f", "--file"},
+            description = "Script file, or '-' for stdin (default). The script holds clear-text passwords: keep it private."
+    )
+    private String file = "-";
+
+    @Override
+    public Integer call() throws Exception {
+        List<Consumer<KarafUsersService>> operations = parseScript();
+
+        var service = new DefaultKarafUsersService(root);
+        service.transaction(s -> {
+            for (int i = 0; i < operations.size(); i++) {
+                try {
+                    operations.get(i).accept(s);
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Batch operation " + (i + 1) + ": " + e.getMessage(), e);
+                }
+            }
+        });
+
+        if (root.isVerbose()) {
+            root.out().println("Batch applied: " + operations.size() + " operation(s).");
+        }
+        return ExitCodes.OK;
+    }
+
+    /** Parses the whole script up front, so syntax errors abort before users.properties is even loaded. */
+    private List<Consumer<KarafUsersService>> parseScript() throws IOException {
+        CommandLine grammar = new CommandLine(new BatchOperations());
+        List<Consumer<KarafUsersService>> out = new ArrayList<>();
+
+        try (BufferedReader in = open()) {
+            String line;
+            int lineNo = 0;
+            while ((line = in.readLine()) != null) {
+                lineNo++;
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) continue;
+
+                List<String> args = tokenize(trimmed, lineNo);
+                if (!args.isEmpty() && args.get(0).equals("user")) {
+                    args.remove(0);
+                }
+                try {
+                    CommandLine.ParseResult pr = grammar.parseArgs(args.toArray(new String[0]));
+                    if (!pr.hasSubcommand()) {
+                        throw new IllegalArgumentException("expected add, del or edit");
+                    }
+                    Object op = pr.subcommand().commandSpec().userObject();
+                    out.add(((BatchOperations.Operation) op).toOperation());
+                } catch (CommandLine.ParameterException | IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Batch script line " + lineNo + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        return out;
+    }
+
+    private BufferedReader open() throws IOException {
+        if ("-".equals(file)) {
+            return new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        }
+        return Files.newBufferedReader(Path.of(file), StandardCharsets.UTF_8);
+    }
+
+    /** Shell-like word splitting: whitespace separates, '...' is literal, "..." and \ escape. */
+    static List<String> tokenize(String line, int lineNo) {
+        List<String> out = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        boolean inToken = false;
+        char quote = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quote == '\'') {
+                if (c == '\'') quote = 0; else sb.append(c);
+            } else if (c == '\\' && i + 1 < line.length()) {
+                sb.append(line.charAt(++i));
+                inToken = true;
+            } else if (quote == '"') {
+                if (c == '"') quote = 0; else sb.append(c);
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+                inToken = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inToken) {
+                    out.add(sb.toString());
+                    sb.setLength(0);
+                    inToken = false;
+                }
+            } else {
+                sb.append(c);
+                inToken = true;
+            }
+        }
+        if (quote != 0) {
+            throw new IllegalArgumentException("Batch script line " + lineNo + ": unterminated quote");
+        }
+        if (inToken) out.add(sb.toString());
+        return out;
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.karafusers.cli.batch;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import picocli.CommandLine;
+
+import com.example.karafusers.karaf.KarafUsersService;
+
+/**
+ * Grammar of one batch script line. Each subcommand mirrors the options of its
+ * {@code user} counterpart, minus the interactive prompts.
+ */
+@CommandLine.Command(
+        name = "batch-line",
+        subcommands = {
+                BatchOperations.Add.class,
+                BatchOperations.Del.class,
+                BatchOperations.Edit.class
+        }
+)
+class BatchOperations {
+
+    /** A parsed line, turned into an operation with its option values captured. */
+    interface Operation {
+        Consumer<KarafUsersService> toOperation();
+    }
+
+    @CommandLine.Command(name = "add")
+    static class Add implements Operation {
+
+        @CommandLine.Option(names = {"-u", "--username"}, required = true)
+        String username;
+
+        @CommandLine.Option(names = {"-p", "--password"}, required = true)
+        String password;
+
+        @CommandLine.Option(names = {"--roles"})
+        String rolesCsv;
+
+        @CommandLine.Option(names = {"--groups"})
+        String groupsCsv;
+
+        @Override
+        public Consumer<KarafUsersService> toOperation() {
+            String u = username.trim();
+            String pwd = password;
+            Set<String> roles = parseCsv(rolesCsv);
+            Set<String> groups = parseCsv(groupsCsv);
+            return s -> s.addUser(u, pwd, roles, groups);
+        }
+    }
+
+    @CommandLine.Command(name = "del")
+    static class Del implements Operation {
+
+        @CommandLine.Option(names = {"-u", "--username"}, required = true)
+        String username;
+
+        @CommandLine.Option(names = {"-f", "--force"}, description = "Accepted for symmetry with 'user del'; batch never prompts.")
+        boolean force;
+
+        @Override
+        public Consumer<KarafUsersService> toOperation() {
+            String u = username.trim();
+            return s -> s.deleteUser(u);
+        }
+    }
+
+    @CommandLine.Command(name = "edit")
+    static class Edit implements Operation {
+
+        @CommandLine.Option(names = {"-u", "--username"}, required = true)
+        String username;
+
+        @CommandLine.Option(names = {"--add-roles"})
+        String addRolesCsv;
+
+        @CommandLine.Option(names = {"--remove-roles"})
+        String removeRolesCsv;
+
+        @CommandLine.Option(names = {"--add-groups"})
+        String addGroupsCsv;
+
+        @CommandLine.Option(names = {"--remove-groups"})
+        String removeGroupsCsv;
+
+        @CommandLine.Option(names = {"--password"})
+        String password;
+
+        @Override
+        public Consumer<KarafUsersService> toOperation() {
+            String u = username.trim();
+            Set<String> addRoles = parseCsv(addRolesCsv);
+            Set<String> removeRoles = parseCsv(removeRolesCsv);
+            Set<String> addGroups = parseCsv(addGroupsCsv);
+            Set<String> removeGroups = parseCsv(removeGroupsCsv);
+            String newPassword = password;
+            if (addRoles.isEmpty() && removeRoles.isEmpty() && addGroups.isEmpty() && removeGroups.isEmpty() && newPassword == null) {
+                throw new IllegalArgumentException("No changes requested for user '" + u + "'.");
+            }
+            return s -> s.editUser(u, addRoles, removeRoles, addGroups, removeGroups, newPassword);
+        }
+    }
+
+    private static Set<String> parseCsv(String csv) {
+        Set<String> out = new LinkedHashSet<>();
+        if (csv == null || csv.isBlank()) return out;
+        for (String part : csv.split(",")) {
+            String s = part.trim();
+            if (!s.isEmpty()) out.add(s);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.karafusers.cli.crypto;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import picocli.CommandLine;
+
+import com.example.karafusers.cli.ExitCodes;
+import com.example.karafusers.cli.RootCommand;
+import com.example.karafusers.config.JaasCfg;
+import com.example.karafusers.config.JaasCfgLoader;
+import com.example.karafusers.config.PathResolver;
+import com.example.karafusers.crypto.CostCalibrator;
+import com.example.karafusers.io.BackupStore;
+import com.example.karafusers.io.PropertiesDocument;
+import com.example.karafusers.io.SecureFileUpdate;
+
+@CommandLine.Command(
+        name = "calibrate",
+        description = {
+                "Benchmark the hash algorithm on this host and find the strongest cost settings",
+                "that fit a target latency and memory budget. Prints the encryption.<algorithm>.* keys,",
+                "or writes them into org.apache.karaf.jaas.cfg with --write."
+        }
+)
+public class CryptoCalibrateCommand implements Callable<Integer> {
+
+    private static final String PROVIDER = "spring-security-crypto";
+
+    @CommandLine.ParentCommand
+    private CryptoCommand parent;
+
+    @CommandLine.Option(
+            names = {"--algorithm"},
+            description = "bcrypt, pbkdf2, scrypt or argon2. Defaults to encryption.algorithm from jaas.cfg."
+    )
+    private String algorithm;
+
+    @CommandLine.Option(names = {"--target-ms"}, description = "Target time per hash in milliseconds (default: ${DEFAULT-VALUE}).")
+    private double targetMillis = 250;
+
+    @CommandLine.Option(names = {"--max-memory-mib"}, description = "Memory budget per hash for argon2/scrypt, in MiB (default: ${DEFAULT-VALUE}).")
+    private int maxMemoryMib = 64;
+
+    @CommandLine.Option(names = {"--samples"}, description = "Timed hashes per candidate; the median is used (default: ${DEFAULT-VALUE}).")
+    private int samples = 3;
+
+    @CommandLine.Option(names = {"--write"}, description = "Write the calibrated settings into jaas.cfg (honours --dry-run and --backup).")
+    private boolean write;
+
+    @Override
+    public Integer call() throws Exception {
+        RootCommand root = parent.root();
+        Path jaasCfg = PathResolver.resolveJaasCfg(root.getJaasCfg());
+
+        Properties current = Files.exists(jaasCfg) ? JaasCfgLoader.load(jaasCfg).raw() : new Properties();
+        String algo = algorithm != null ? algorithm
+                : new JaasCfg(current).encryptionAlgorithm().orElseThrow(() -> new IllegalArgumentException(
+                        "No encryption.algorithm in " + jaasCfg + ". Use --algorithm."));
+        algo = algo.trim().toLowerCase(Locale.ROOT);
+
+        PrintWriter out = root.out();
+        PrintWriter log = root.isVerbose() ? root.err() : null;
+        CostCalibrator calibrator = new CostCalibrator(current, targetMillis, maxMemoryMib * 1024L * 1024L, samples,
+                line -> {
+                    if (log != null) {
+                        log.println(line);
+                        log.flush();
+                    }
+                });
+
+        CostCalibrator.Result result = calibrator.calibrate(algo);
+
+        out.printf(Locale.ROOT, "# %s calibrated for %.0f ms/hash (measured %.1f ms), memory %d KiB/hash%n",
+                result.algorithm(), targetMillis, result.millisPerHash(), result.memoryBytes() / 1024);
+        out.println("encryption.algorithm = " + result.algorithm());
+        result.settings().forEach((k, v) -> out.println(k + " = " + v));
+        out.flush();
+
+        if (write) {
+            PathResolver.assertExists(jaasCfg, "org.apache.karaf.jaas.cfg");
+            if (root.isDryRun()) {
+                out.println("Dry run: " + jaasCfg + " not modified.");
+            } else {
+                writeSettings(root, jaasCfg, result);
+            }
+        }
+        return ExitCodes.OK;
+    }
+
+    /**
+     * Updates the keys in place, keeping the rest of jaas.cfg (comments, order) untouched. The
+     * calibrated algorithms are spring-security-crypto's, so encryption.name is set to match. Karaf
+     * reads jaas.cfg as its own user, so the file keeps its permissions rather than becoming 0600.
+     */
+    private static void writeSettings(RootCommand root, Path jaasCfg, CostCalibrator.Result result) throws IOException {
+        PropertiesDocument doc = PropertiesDocument.load(jaasCfg);
+        String provider = doc.get("encryption.name");
+        if (provider != null && !PROVIDER.equals(provider.trim())) {
+            root.out().println("encryption.name changed from " + provider.trim() + " to " + PROVIDER);
+        }
+        doc.put("encryption.name", PROVIDER);
+        doc.put("encryption.algorithm", result.algorithm());
+        for (Map.Entry<String, String> e : result.settings().entrySet()) {
+            doc.put(e.getKey(), e.getValue());
+        }
+
+        if (root.isBackupEnabled()) {
+            BackupStore store = new BackupStore(jaasCfg);
+            BackupStore.Generation g = store.backup(jaasCfg);
+            if (root.isVerbose()) {
+                root.out().println("Backup created: generation " + g.id() + " in " + store.dir());
+            }
+            PrintWriter err = root.err();
+            store.maintainInBackground(root.getBackupRetention(), msg -> {
+                err.println(msg);
+                err.flush();
+            });
+        }
+
+        Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(jaasCfg);
+        Path tmp = SecureFileUpdate.createSecureTempFileNear(jaasCfg);
+        try {
+            doc.writeTo(tmp);
+            SecureFileUpdate.atomicReplace(jaasCfg, tmp, root.getDurability());
+            Files.setPosixFilePermissions(jaasCfg, permissions);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        root.out().println("Updated " + jaasCfg);
+    }
+}
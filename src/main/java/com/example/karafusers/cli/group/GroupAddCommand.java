@@ -0,0 +1,34 @@
+package com.example.karafusers.cli.group;
+
+import java.util.concurrent.Callable;
+
+import picocli.CommandLine;
+
+import com.example.karafusers.cli.ExitCodes;
+import com.example.karafusers.karaf.DefaultKarafUsersService;
+
+@CommandLine.Command(
+        name = "add",
+        description = "Create a group with optional roles and nested groups."
+)
+public class GroupAddCommand implements Callable<Integer> {
+
+    @CommandLine.ParentCommand
+    private GroupCommand parent;
+
+    @CommandLine.Option(names = {"-g", "--group"}, required = true, description = "Group to create.")
+    private String group;
+
+    @CommandLine.Option(names = {"--roles"}, description = "Comma-separated roles granted to members of the group.")
+    private String rolesCsv;
+
+    @CommandLine.Option(names = {"--groups"}, description = "Comma-separated groups nested in this one (members get their roles too).")
+    private String groupsCsv;
+
+    @Override
+    public Integer call() {
+        var service = new DefaultKarafUsersService(parent.root());
+        service.addGroup(group.trim(), GroupCommand.parseCsv(rolesCsv), GroupCommand.parseCsv(groupsCsv));
+        return ExitCodes.OK;
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.karafusers.cli.group;
+
+import com.example.karafusers.cli.ExitCodes;
+import com.example.karafusers.cli.RootCommand;
+import picocli.CommandLine;
+
+import java.io.PrintWriter;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+@CommandLine.Command(
+        name = "group",
+        description = "Manage _g_: groups in Karaf users.properties",
+        subcommands = {
+                GroupAddCommand.class,
+                GroupDelCommand.class,
+                GroupListCommand.class,
+                GroupEditCommand.class,
+                GroupRenameCommand.class
+        }
+)
+public class GroupCommand implements Callable<Integer> {
+
+    @CommandLine.ParentCommand
+    private RootCommand root;
+
+    @Override
+    public Integer call() {
+        // If no subcommand is provided, show usage for "group".
+        CommandLine.Model.CommandSpec spec = CommandLine.Model.CommandSpec.forAnnotatedObject(this);
+        CommandLine cmd = new CommandLine(spec);
+
+        PrintWriter out = cmd.getOut();
+        cmd.usage(out);
+
+        return ExitCodes.USAGE;
+    }
+
+    public RootCommand root() {
+        return root;
+    }
+
+    /** Splits a comma-separated --roles/--groups value, trimming and dropping empty entries. */
+    static Set<String> parseCsv(String csv) {
+        Set<String> out = new LinkedHashSet<>();
+        if (csv == null || csv.isBlank()) return out;
+        for (String part : csv.split(",")) {
+            String s = part.trim();
+            if (!s.isEmpty()) out.add(s);
+        }
+        return out;
+    }
+}
\ No newline at end of file
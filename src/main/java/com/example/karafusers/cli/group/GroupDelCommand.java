@@ -0,0 +1,51 @@
+package com.example.karafusers.cli.group;
+
+import java.io.Console;
+import java.util.concurrent.Callable;
+
+import picocli.CommandLine;
+
+import com.example.karafusers.cli.ExitCodes;
+import com.example.karafusers.karaf.DefaultKarafUsersService;
+
+@CommandLine.Command(
+        name = "del",
+        description = "Delete a group and remove it from every user and group that references it. " +
+                      "Prompts for confirmation unless --force is used."
+)
+public class GroupDelCommand implements Callable<Integer> {
+
+    @CommandLine.ParentCommand
+    private GroupCommand parent;
+
+    @CommandLine.Option(names = {"-g", "--group"}, required = true, description = "Group to delete.")
+    private String group;
+
+    @CommandLine.Option(names = {"-f", "--force"}, description = "Do not prompt for confirmation.")
+    private boolean force;
+
+    @Override
+    public Integer call() {
+        String g = group.trim();
+        if (!force && !confirm("Delete group '" + g + "' and remove it from its members? [y/N]: ")) {
+            parent.root().out().println("Aborted.");
+            return ExitCodes.OK;
+        }
+
+        var service = new DefaultKarafUsersService(parent.root());
+        int touched = service.deleteGroup(g);
+        parent.root().reportRewritten("Deleted group " + g, touched);
+        return ExitCodes.OK;
+    }
+
+    private static boolean confirm(String prompt) {
+        Console c = System.console();
+        if (c == null) {
+            throw new IllegalStateException("No console available for interactive confirmation. Use --force or run in a real terminal.");
+        }
+        String v = c.readLine(prompt);
+        if (v == null) return false;
+        v = v.trim().toLowerCase();
+        return v.equals("y") || v.equals("yes");
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.karafusers.cli.group;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import picocli.CommandLine;
+
+import com.example.karafusers.cli.ExitCodes;
+import com.example.karafusers.karaf.DefaultKarafUsersService;
+
+@CommandLine.Command(
+        name = "edit",
+        description = "Edit a group: add/remove its roles or nested groups."
+)
+public class GroupEditCommand implements Callable<Integer> {
+
+    @CommandLine.ParentCommand
+    private GroupCommand parent;
+
+    @CommandLine.Option(names = {"-g", "--group"}, required = true, description = "Group to edit.")
+    private String group;
+
+    @CommandLine.Option(names = {"--add-roles"}, description = "Comma-separated roles to add.")
+    private String addRolesCsv;
+
+    @CommandLine.Option(names = {"--remove-roles"}, description = "Comma-separated roles to remove.")
+    private String removeRolesCsv;
+
+    @CommandLine.Option(names = {"--add-groups"}, description = "Comma-separated groups to nest.")
+    private String addGroupsCsv;
+
+    @CommandLine.Option(names = {"--remove-groups"}, description = "Comma-separated nested groups to remove.")
+    private String removeGroupsCsv;
+
+    @Override
+    public Integer call() {
+        Set<String> addRoles = GroupCommand.parseCsv(addRolesCsv);
+        Set<String> removeRoles = GroupCommand.parseCsv(removeRolesCsv);
+        Set<String> addGroups = GroupCommand.parseCsv(addGroupsCsv);
+        Set<String> removeGroups = GroupCommand.parseCsv(removeGroupsCsv);
+
+        if (addRoles.isEmpty() && removeRoles.isEmpty() && addGroups.isEmpty() && removeGroups.isEmpty()) {
+            throw new IllegalArgumentException("No changes requested. Use --add-roles/--remove-roles/--add-groups/--remove-groups.");
+        }
+
+        var service = new DefaultKarafUsersService(parent.root());
+        service.editGroup(group.trim(), addRoles, removeRoles, addGroups, removeGroups);
+        return ExitCodes.OK;
+    }
+}
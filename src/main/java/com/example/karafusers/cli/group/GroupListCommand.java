@@ -0,0 +1,36 @@
+package com.example.karafusers.cli.group;
+
+import java.io.PrintWriter;
+import java.util.concurrent.Callable;
+
+import picocli.CommandLine;
+
+import com.example.karafusers.cli.ExitCodes;
+import com.example.karafusers.karaf.DefaultKarafUsersService;
+import com.example.karafusers.karaf.KarafGroup;
+
+@CommandLine.Command(
+        name = "list",
+        description = "List groups with their roles and nested groups (members: 'query group:<name>')."
+)
+public class GroupListCommand implements Callable<Integer> {
+
+    @CommandLine.ParentCommand
+    private GroupCommand parent;
+
+    @CommandLine.Option(names = {"--no-resolve-groups"}, description = "List only each group's own roles, not those of the groups it nests.")
+    private boolean noResolveGroups;
+
+    @Override
+    public Integer call() {
+        var service = new DefaultKarafUsersService(parent.root());
+        PrintWriter out = parent.root().out();
+        for (KarafGroup g : service.listGroups(!noResolveGroups)) {
+            out.println(g.name()
+                    + "\troles=" + String.join(",", g.roles())
+                    + "\tgroups=" + String.join(",", g.groups()));
+        }
+        out.flush();
+        return ExitCodes.OK;
+    }
+}
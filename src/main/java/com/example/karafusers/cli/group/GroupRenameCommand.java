@@ -0,0 +1,32 @@
+package com.example.karafusers.cli.group;
+
+import java.util.concurrent.Callable;
+
+import picocli.CommandLine;
+
+import com.example.karafusers.cli.ExitCodes;
+import com.example.karafusers.karaf.DefaultKarafUsersService;
+
+@CommandLine.Command(
+        name = "rename",
+        description = "Rename a group and every _g_: reference to it, in one pass and one atomic replace."
+)
+public class GroupRenameCommand implements Callable<Integer> {
+
+    @CommandLine.ParentCommand
+    private GroupCommand parent;
+
+    @CommandLine.Parameters(index = "0", paramLabel = "GROUP", description = "Current group name.")
+    private String group;
+
+    @CommandLine.Parameters(index = "1", paramLabel = "NEW_NAME", description = "New group name (must not exist yet).")
+    private String newName;
+
+    @Override
+    public Integer call() {
+        var service = new DefaultKarafUsersService(parent.root());
+        int touched = service.renameGroup(group.trim(), newName.trim());
+        parent.root().reportRewritten("Renamed group " + group.trim() + " to " + newName.trim(), touched);
+        return ExitCodes.OK;
+    }
+}
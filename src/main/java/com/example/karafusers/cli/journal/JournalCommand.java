@@ -0,0 +1,37 @@
+package com.example.karafusers.cli.journal;
+
+import com.example.karafusers.cli.ExitCodes;
+import com.example.karafusers.cli.RootCommand;
+import picocli.CommandLine;
+
+import java.io.PrintWriter;
+import java.util.concurrent.Callable;
+
+@CommandLine.Command(
+        name = "journal",
+        description = "Manage the users.properties.journal written by --journal",
+        subcommands = {
+                JournalCompactCommand.class
+        }
+)
+public class JournalCommand implements Callable<Integer> {
+
+    @CommandLine.ParentCommand
+    private RootCommand root;
+
+    @Override
+    public Integer call() {
+        // If no subcommand is provided, show usage for "journal".
+        CommandLine.Model.CommandSpec spec = CommandLine.Model.CommandSpec.forAnnotatedObject(this);
+        CommandLine cmd = new CommandLine(spec);
+
+        PrintWriter out = cmd.getOut();
+        cmd.usage(out);
+
+        return ExitCodes.USAGE;
+    }
+
+    public RootCommand root() {
+        return root;
+    }
+}
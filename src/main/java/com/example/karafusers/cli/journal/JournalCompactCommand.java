@@ -0,0 +1,27 @@
+package com.example.karafusers.cli.journal;
+
+import java.util.concurrent.Callable;
+
+import picocli.CommandLine;
+
+import com.example.karafusers.cli.ExitCodes;
+import com.example.karafusers.karaf.DefaultKarafUsersService;
+
+@CommandLine.Command(
+        name = "compact",
+        description = "Fold all journaled edits into users.properties (one atomic replace) and remove the journal."
+)
+public class JournalCompactCommand implements Callable<Integer> {
+
+    @CommandLine.ParentCommand
+    private JournalCommand parent;
+
+    @Override
+    public Integer call() {
+        var service = new DefaultKarafUsersService(parent.root());
+        if (!service.compactJournal() && parent.root().isVerbose()) {
+            parent.root().out().println("No journal to compact.");
+        }
+        return ExitCodes.OK;
+    }
+}
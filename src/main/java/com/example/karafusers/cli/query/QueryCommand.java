@@ -0,0 +1,64 @@
+package com.example.karafusers.cli.query;
+
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import picocli.CommandLine;
+
+import com.example.karafusers.cli.ExitCodes;
+import com.example.karafusers.cli.RootCommand;
+import com.example.karafusers.karaf.DefaultKarafUsersService;
+import com.example.karafusers.karaf.MembershipIndex;
+import com.example.karafusers.karaf.MembershipQuery;
+
+@CommandLine.Command(
+        name = "query",
+        description = "List the users matching a role/group expression, e.g. " +
+                      "'role:admin' or 'group:ops and not group:audit'. Roles and groups received " +
+                      "through _g_: groups count. Operators: and (&), or (|), not (!), parentheses."
+)
+public class QueryCommand implements Callable<Integer> {
+
+    @CommandLine.ParentCommand
+    private RootCommand root;
+
+    @CommandLine.Parameters(
+            arity = "1..*",
+            paramLabel = "EXPR",
+            description = "Query expression; several arguments are joined with spaces."
+    )
+    private List<String> expression;
+
+    @CommandLine.Option(names = {"--count"}, description = "Print only the number of matching users.")
+    private boolean count;
+
+    @CommandLine.Option(names = {"--no-resolve-groups"}, description = "Match only roles and groups written on the user's own line.")
+    private boolean noResolveGroups;
+
+    @Override
+    public Integer call() {
+        // Parse first: a typo is reported without reading users.properties.
+        MembershipQuery query = MembershipQuery.parse(String.join(" ", expression));
+
+        var service = new DefaultKarafUsersService(root);
+        long t0 = System.nanoTime();
+        MembershipIndex index = service.membershipIndex();
+        long t1 = System.nanoTime();
+        long[] selection = index.select(query, !noResolveGroups);
+        long t2 = System.nanoTime();
+
+        PrintWriter out = root.out();
+        if (count) {
+            out.println(MembershipIndex.count(selection));
+        } else {
+            index.forEach(selection, out::println);
+        }
+        if (root.isVerbose()) {
+            root.err().printf("%d of %d users matched (index %d ms, query %.3f ms)%n",
+                    MembershipIndex.count(selection), index.size(), (t1 - t0) / 1_000_000, (t2 - t1) / 1e6);
+        }
+        out.flush();
+        return ExitCodes.OK;
+    }
+}
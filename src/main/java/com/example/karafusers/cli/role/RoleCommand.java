@@ -0,0 +1,38 @@
+package com.example.karafusers.cli.role;
+
+import com.example.karafusers.cli.ExitCodes;
+import com.example.karafusers.cli.RootCommand;
+import picocli.CommandLine;
+
+import java.io.PrintWriter;
+import java.util.concurrent.Callable;
+
+@CommandLine.Command(
+        name = "role",
+        description = "Rename or replace roles across every user and group of Karaf users.properties",
+        subcommands = {
+                RoleRenameCommand.class,
+                RoleReplaceCommand.class
+        }
+)
+public class RoleCommand implements Callable<Integer> {
+
+    @CommandLine.ParentCommand
+    private RootCommand root;
+
+    @Override
+    public Integer call() {
+        // If no subcommand is provided, show usage for "role".
+        CommandLine.Model.CommandSpec spec = CommandLine.Model.CommandSpec.forAnnotatedObject(this);
+        CommandLine cmd = new CommandLine(spec);
+
+        PrintWriter out = cmd.getOut();
+        cmd.usage(out);
+
+        return ExitCodes.USAGE;
+    }
+
+    public RootCommand root() {
+        return root;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,33 @@
+package com.example.karafusers.cli.role;
+
+import java.util.concurrent.Callable;
+
+import picocli.CommandLine;
+
+import com.example.karafusers.cli.ExitCodes;
+import com.example.karafusers.karaf.DefaultKarafUsersService;
+
+@CommandLine.Command(
+        name = "rename",
+        description = "Rename a role on every user and group holding it, in one pass and one atomic replace. " +
+                      "Refuses if the new name is already in use (see 'role replace')."
+)
+public class RoleRenameCommand implements Callable<Integer> {
+
+    @CommandLine.ParentCommand
+    private RoleCommand parent;
+
+    @CommandLine.Parameters(index = "0", paramLabel = "ROLE", description = "Current role name.")
+    private String role;
+
+    @CommandLine.Parameters(index = "1", paramLabel = "NEW_NAME", description = "New role name.")
+    private String newName;
+
+    @Override
+    public Integer call() {
+        var service = new DefaultKarafUsersService(parent.root());
+        int touched = service.renameRole(role.trim(), newName.trim());
+        parent.root().reportRewritten("Renamed role " + role.trim() + " to " + newName.trim(), touched);
+        return ExitCodes.OK;
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.karafusers.cli.role;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import picocli.CommandLine;
+
+import com.example.karafusers.cli.ExitCodes;
+import com.example.karafusers.karaf.DefaultKarafUsersService;
+
+@CommandLine.Command(
+        name = "replace",
+        description = "Replace a role by one or more roles on every user and group holding it, merging with " +
+                      "roles they already have, in one pass and one atomic replace."
+)
+public class RoleReplaceCommand implements Callable<Integer> {
+
+    @CommandLine.ParentCommand
+    private RoleCommand parent;
+
+    @CommandLine.Parameters(index = "0", paramLabel = "ROLE", description = "Role to replace.")
+    private String role;
+
+    @CommandLine.Parameters(index = "1..*", arity = "1..*", paramLabel = "NEW_ROLE",
+            description = "Replacement roles (also accepted comma-separated).")
+    private List<String> replacements;
+
+    @Override
+    public Integer call() {
+        Set<String> with = new LinkedHashSet<>();
+        for (String arg : replacements) {
+            for (String part : arg.split(",")) {
+                String s = part.trim();
+                if (!s.isEmpty()) with.add(s);
+            }
+        }
+        if (with.isEmpty()) {
+            throw new IllegalArgumentException("No replacement role given.");
+        }
+
+        var service = new DefaultKarafUsersService(parent.root());
+        int touched = service.replaceRole(role.trim(), with);
+        parent.root().reportRewritten("Replaced role " + role.trim() + " with " + String.join(",", with), touched);
+        return ExitCodes.OK;
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.karafusers.cli.serve;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import picocli.CommandLine;
+
+import com.example.karafusers.Main;
+import com.example.karafusers.cli.ExitCodes;
+import com.example.karafusers.cli.RootCommand;
+import com.example.karafusers.config.JaasCfgLoader;
+import com.example.karafusers.config.PathResolver;
+import com.example.karafusers.crypto.PasswordEncoderFactory;
+import com.example.karafusers.daemon.DaemonClient;
+import com.example.karafusers.daemon.DaemonServer;
+import com.example.karafusers.io.FileSecurity;
+
+@CommandLine.Command(
+        name = "serve",
+        description = {
+                "Run a resident daemon for one etc directory, serving 'user add/del/edit/list' over a Unix domain socket.",
+                "Clients forward calls by setting " + DaemonClient.ENV_SOCKET + "=<socket> and invoking the CLI as usual;",
+                "they get the same output and exit codes, without JVM warm-up, picocli or crypto initialisation.",
+                "Requests that would prompt are refused: pass -u/-p/--force (and --password, not --set-password)."
+        }
+)
+public class ServeCommand implements Callable<Integer> {
+
+    @CommandLine.ParentCommand
+    private RootCommand root;
+
+    @CommandLine.Option(
+            names = {"--socket"},
+            description = "Socket path (default: .karaf-users.sock next to users.properties). Created 0600."
+    )
+    private Path socket;
+
+    @Override
+    public Integer call() throws Exception {
+        Path usersFile = PathResolver.resolveUsersFile(root.getUsersFile());
+        Path jaasCfg = PathResolver.resolveJaasCfg(root.getJaasCfg());
+        PathResolver.assertExists(usersFile, "users.properties");
+        PathResolver.assertExists(jaasCfg, "org.apache.karaf.jaas.cfg");
+        FileSecurity.assertSecureUsersFile(usersFile);
+
+        // Pay crypto class loading and encoder setup now rather than on the first request;
+        // requests reuse both the compiled jaas.cfg and this codec.
+        PasswordEncoderFactory.shared(JaasCfgLoader.load(jaasCfg)).encode("warm-up");
+
+        Path sock = (socket != null ? socket : DaemonServer.defaultSocket(usersFile)).toAbsolutePath().normalize();
+        DaemonServer server = new DaemonServer(
+                sock,
+                List.of("--users-file", usersFile.toString(), "--jaas-cfg", jaasCfg.toString()),
+                (args, out, err) -> Main.newCommandLine().setOut(out).setErr(err).execute(args),
+                root.err());
+        server.serve();
+        return ExitCodes.OK;
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.karafusers.cli.user;
+
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import picocli.CommandLine;
+
+import com.example.karafusers.cli.ExitCodes;
+import com.example.karafusers.karaf.DefaultKarafUsersService;
+import com.example.karafusers.karaf.HashAuditReport;
+
+@CommandLine.Command(
+        name = "audit-hashes",
+        description = {
+                "Report the password encodings in users.properties (bcrypt cost, argon2 m/t/p, scrypt N/r/p, pbkdf2 iterations, plaintext, unknown).",
+                "Lists accounts below the current jaas.cfg settings and exits 1 if there are any. Never verifies or decodes a password."
+        }
+)
+public class UserAuditHashesCommand implements Callable<Integer> {
+
+    @CommandLine.ParentCommand
+    private UserCommand parent;
+
+    @CommandLine.Option(names = {"--summary"}, description = "Print only the histogram, not the accounts below the current settings.")
+    private boolean summary;
+
+    @Override
+    public Integer call() throws Exception {
+        var service = new DefaultKarafUsersService(parent.root());
+        PrintWriter out = parent.root().out();
+        HashAuditReport report = service.auditHashes();
+
+        int width = 0;
+        for (String format : report.histogram().keySet()) {
+            width = Math.max(width, format.length());
+        }
+        out.println("Password encodings (" + report.users() + " users):");
+        for (Map.Entry<String, Integer> e : report.histogram().entrySet()) {
+            out.println(String.format("  %-" + width + "s  %d", e.getKey(), e.getValue()));
+        }
+        out.println("Below current settings (" + report.current() + "): " + report.belowCurrent().size());
+        if (!summary) {
+            for (HashAuditReport.Finding f : report.belowCurrent()) {
+                out.println("  " + f.username() + "\t" + f.format() + "\t" + f.reason());
+            }
+        }
+        out.flush();
+        return report.belowCurrent().isEmpty() ? ExitCodes.OK : ExitCodes.CHECK_FAILED;
+    }
+}
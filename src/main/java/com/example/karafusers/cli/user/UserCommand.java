@@ -14,7 +14,11 @@ import java.util.concurrent.Callable;
                 UserAddCommand.class,
                 UserDelCommand.class,
                 UserListCommand.class,
-                UserEditCommand.class
+                UserEditCommand.class,
+                UserImportCommand.class,
+                UserVerifyCommand.class,
+                UserAuditHashesCommand.class,
+                UserExportCommand.class
         }
 )
 public class UserCommand implements Callable<Integer> {
@@ -30,7 +30,8 @@ public class UserDelCommand implements Callable<Integer> {
         if (!force) {
             boolean ok = confirm("Delete user '" + u + "'? [y/N]: ");
             if (!ok) {
-                System.out.println("Aborted.");
+                parent.root().out().println("Aborted.");
+                parent.root().out().flush();
                 return ExitCodes.OK;
             }
         }
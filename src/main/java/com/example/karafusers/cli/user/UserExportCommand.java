@@ -0,0 +1,293 @@
+package com.example.karafusers.cli.user;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.function.Predicate;
+
+import picocli.CommandLine;
+
+import com.example.karafusers.cli.ExitCodes;
+import com.example.karafusers.io.FileSecurity;
+import com.example.karafusers.io.JsonLines;
+import com.example.karafusers.karaf.DefaultKarafUsersService;
+import com.example.karafusers.karaf.KarafUser;
+
+@CommandLine.Command(
+        name = "export",
+        description = {
+                "Write users as NDJSON, CSV or LDIF, streaming users.properties in constant memory.",
+                "Passwords are written exactly as stored (hashes are not decoded). CSV and NDJSON output can be read back by 'user import'."
+        }
+)
+public class UserExportCommand implements Callable<Integer> {
+
+    public enum Format { ndjson, csv, ldif }
+
+    enum Field { username, password, roles, groups }
+
+    /** Flush the sink every this many users, so a pipe reader sees progress without a flush per line. */
+    private static final int FLUSH_EVERY = 4096;
+
+    @CommandLine.ParentCommand
+    private UserCommand parent;
+
+    @CommandLine.Option(names = {"--format"}, defaultValue = "ndjson", description = "Output format: ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE}).")
+    private Format format;
+
+    @CommandLine.Option(
+            names = {"--fields"},
+            split = ",",
+            description = "Fields to write, comma-separated: username, password, roles, groups (default: all). " +
+                          "LDIF always writes the uid."
+    )
+    private List<String> fields;
+
+    @CommandLine.Option(
+            names = {"--filter"},
+            description = "Only export users matching role=NAME or group=NAME. Repeatable; all filters must match."
+    )
+    private List<String> filters;
+
+    @CommandLine.Option(names = {"--resolve-groups"}, description = "Export effective roles (direct plus those inherited from groups).")
+    private boolean resolveGroups;
+
+    @CommandLine.Option(names = {"-o", "--output"}, description = "Output file (default: stdout). Created 0600, as it holds password hashes.")
+    private Path output;
+
+    @CommandLine.Option(names = {"--base-dn"}, defaultValue = "ou=users,dc=example,dc=com", description = "LDIF: DN under which entries are placed (default: ${DEFAULT-VALUE}).")
+    private String baseDn;
+
+    @Override
+    public Integer call() throws Exception {
+        Set<Field> projection = projection(fields);
+        Predicate<KarafUser> filter = filter(filters);
+        var service = new DefaultKarafUsersService(parent.root());
+
+        Writer w = output == null ? parent.root().out() : open(output);
+        try {
+            Sink sink = new Sink(w, format, projection, baseDn);
+            sink.header();
+            service.exportUsers(resolveGroups, filter, sink::write);
+            w.flush();
+        } finally {
+            if (output != null) w.close();
+        }
+        return ExitCodes.OK;
+    }
+
+    private static Writer open(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            Files.createFile(file, FileSecurity.attr0600());
+        } else {
+            FileSecurity.enforce0600(file);
+        }
+        return new BufferedWriter(new OutputStreamWriter(
+                Files.newOutputStream(file, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE),
+                StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    static Set<Field> projection(List<String> names) {
+        if (names == null || names.isEmpty()) return EnumSet.allOf(Field.class);
+        Set<Field> out = EnumSet.noneOf(Field.class);
+        for (String n : names) {
+            try {
+                out.add(Field.valueOf(n.trim().toLowerCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown field '" + n + "'. Expected: username, password, roles, groups.");
+            }
+        }
+        return out;
+    }
+
+    static Predicate<KarafUser> filter(List<String> filters) {
+        Predicate<KarafUser> p = u -> true;
+        if (filters == null) return p;
+        for (String f : filters) {
+            int eq = f.indexOf('=');
+            String value = eq < 0 ? "" : f.substring(eq + 1).trim();
+            if (eq < 0 || value.isEmpty()) {
+                throw new IllegalArgumentException("Invalid --filter '" + f + "'. Expected role=NAME or group=NAME.");
+            }
+            switch (f.substring(0, eq).trim().toLowerCase(Locale.ROOT)) {
+                case "role" -> p = p.and(u -> u.roles().contains(value));
+                case "group" -> p = p.and(u -> u.groups().contains(value));
+                default -> throw new IllegalArgumentException("Invalid --filter '" + f + "'. Expected role=NAME or group=NAME.");
+            }
+        }
+        return p;
+    }
+
+    /** Formats one user at a time into a reused buffer. */
+    static final class Sink {
+        private final Writer w;
+        private final Format format;
+        private final Set<Field> fields;
+        private final String baseDn;
+        private final StringBuilder sb = new StringBuilder(256);
+        private int count;
+
+        Sink(Writer w, Format format, Set<Field> fields, String baseDn) {
+            this.w = w;
+            this.format = format;
+            this.fields = fields;
+            this.baseDn = baseDn;
+        }
+
+        void header() throws IOException {
+            if (format == Format.csv) {
+                List<String> names = new ArrayList<>();
+                for (Field f : fields) names.add(f.name());
+                w.write(String.join(",", names));
+                w.write('\n');
+            } else if (format == Format.ldif) {
+                w.write("version: 1\n");
+            }
+        }
+
+        void write(KarafUser u) {
+            sb.setLength(0);
+            switch (format) {
+                case ndjson -> ndjson(u);
+                case csv -> csv(u);
+                case ldif -> ldif(u);
+            }
+            try {
+                w.append(sb);
+                if (++count % FLUSH_EVERY == 0) w.flush();
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to write export: " + e.getMessage(), e);
+            }
+        }
+
+        private void ndjson(KarafUser u) {
+            sb.append('{');
+            boolean first = true;
+            for (Field f : fields) {
+                if (!first) sb.append(',');
+                first = false;
+                JsonLines.appendString(sb, f.name()).append(':');
+                switch (f) {
+                    case username -> JsonLines.appendString(sb, u.username());
+                    case password -> JsonLines.appendString(sb, u.password());
+                    case roles -> jsonArray(u.roles());
+                    case groups -> jsonArray(u.groups());
+                }
+            }
+            sb.append("}\n");
+        }
+
+        private void jsonArray(Set<String> values) {
+            sb.append('[');
+            boolean first = true;
+            for (String v : values) {
+                if (!first) sb.append(',');
+                first = false;
+                JsonLines.appendString(sb, v);
+            }
+            sb.append(']');
+        }
+
+        // Same columns and quoting as UserRecordReader: lists are comma-joined inside one field.
+        private void csv(KarafUser u) {
+            boolean first = true;
+            for (Field f : fields) {
+                if (!first) sb.append(',');
+                first = false;
+                switch (f) {
+                    case username -> csvField(u.username());
+                    case password -> csvField(u.password());
+                    case roles -> csvField(String.join(",", u.roles()));
+                    case groups -> csvField(String.join(",", u.groups()));
+                }
+            }
+            sb.append('\n');
+        }
+
+        private void csvField(String v) {
+            boolean quote = false;
+            for (int i = 0; i < v.length() && !quote; i++) {
+                char c = v.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote && !v.isEmpty() && (v.charAt(0) == ' ' || v.charAt(v.length() - 1) == ' ')) quote = true;
+            if (!quote) {
+                sb.append(v);
+                return;
+            }
+            sb.append('"');
+            for (int i = 0; i < v.length(); i++) {
+                char c = v.charAt(i);
+                if (c == '"') sb.append('"');
+                sb.append(c);
+            }
+            sb.append('"');
+        }
+
+        private void ldif(KarafUser u) {
+            ldifLine("dn", "uid=" + escapeDn(u.username()) + "," + baseDn);
+            sb.append("objectClass: top\nobjectClass: person\nobjectClass: organizationalPerson\nobjectClass: inetOrgPerson\n");
+            ldifLine("uid", u.username());
+            if (fields.contains(Field.username)) {
+                ldifLine("cn", u.username());
+                ldifLine("sn", u.username());
+            }
+            if (fields.contains(Field.password)) ldifLine("userPassword", u.password());
+            if (fields.contains(Field.roles)) {
+                for (String r : u.roles()) ldifLine("description", "role:" + r);
+            }
+            if (fields.contains(Field.groups)) {
+                for (String g : u.groups()) ldifLine("description", "group:" + g);
+            }
+            sb.append('\n');
+        }
+
+        /** RFC 2849: values that are not a SAFE-STRING are written base64-encoded after "::". */
+        private void ldifLine(String attr, String value) {
+            sb.append(attr);
+            if (isSafeString(value)) {
+                sb.append(": ").append(value);
+            } else {
+                sb.append(":: ").append(Base64.getEncoder().encodeToString(value.getBytes(StandardCharsets.UTF_8)));
+            }
+            sb.append('\n');
+        }
+
+        static boolean isSafeString(String v) {
+            if (v.isEmpty()) return true;
+            char c0 = v.charAt(0);
+            if (c0 == ' ' || c0 == ':' || c0 == '<' || v.charAt(v.length() - 1) == ' ') return false;
+            for (int i = 0; i < v.length(); i++) {
+                char c = v.charAt(i);
+                if (c == 0 || c == '\n' || c == '\r' || c > 127) return false;
+            }
+            return true;
+        }
+
+        /** RFC 4514 escaping for an attribute value inside a DN. */
+        private static String escapeDn(String v) {
+            StringBuilder out = new StringBuilder(v.length() + 4);
+            for (int i = 0; i < v.length(); i++) {
+                char c = v.charAt(i);
+                boolean special = ",+\"\\<>;=".indexOf(c) >= 0
+                        || (i == 0 && (c == ' ' || c == '#'))
+                        || (i == v.length() - 1 && c == ' ');
+                if (special) out.append('\\');
+                out.append(c);
+            }
+            return out.toString();
+        }
+    }
+}
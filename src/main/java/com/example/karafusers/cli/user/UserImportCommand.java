@@ -0,0 +1,85 @@
+package com.example.karafusers.cli.user;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+
+import picocli.CommandLine;
+
+import com.example.karafusers.cli.ExitCodes;
+import com.example.karafusers.crypto.HashingExecutor;
+import com.example.karafusers.karaf.DefaultKarafUsersService;
+import com.example.karafusers.karaf.ImportReport;
+import com.example.karafusers.karaf.UserRecordReader;
+import com.example.karafusers.karaf.UserRecordReader.Format;
+
+@CommandLine.Command(
+        name = "import",
+        description = "Create many users from a CSV or JSON Lines file, hashing passwords in parallel and writing users.properties once."
+)
+public class UserImportCommand implements Callable<Integer> {
+
+    @CommandLine.ParentCommand
+    private UserCommand parent;
+
+    @CommandLine.Option(
+            names = {"--from"},
+            required = true,
+            description = "Input file (.csv, .jsonl/.ndjson), or '-' for stdin (requires --format). " +
+                          "CSV columns: username,password[,roles[,groups]]."
+    )
+    private String from;
+
+    @CommandLine.Option(names = {"--format"}, description = "Input format: ${COMPLETION-CANDIDATES}. Defaults to the file extension.")
+    private Format format;
+
+    @CommandLine.Option(names = {"--threads"}, description = "Hashing threads (default: number of cores).")
+    private Integer threads;
+
+    @CommandLine.Option(names = {"--skip-existing"}, description = "Skip users that already exist instead of failing.")
+    private boolean skipExisting;
+
+    @Override
+    public Integer call() throws Exception {
+        Format fmt = format != null ? format : ("-".equals(from) ? null : Format.fromFileName(from));
+        if (fmt == null) {
+            throw new IllegalArgumentException("Cannot guess input format of '" + from + "'. Use --format csv|jsonl.");
+        }
+        int workers = threads != null ? threads : HashingExecutor.defaultWorkers();
+
+        var service = new DefaultKarafUsersService(parent.root());
+        ImportReport report;
+        try (UserRecordReader reader = new UserRecordReader(open(from), fmt, "-".equals(from) ? "stdin" : from)) {
+            report = service.importUsers(reader, workers, skipExisting);
+        }
+
+        PrintWriter out = parent.root().out();
+        out.printf("Imported %d user(s), skipped %d.%n", report.imported(), report.skipped());
+        out.printf("  read   : %d rows in %d ms (%.0f rows/s)%n",
+                report.rows(), report.readNanos() / 1_000_000, ImportReport.perSecond(report.rows(), report.readNanos()));
+        out.printf("  hash   : %d hashes in %d ms (%.1f hashes/s, %d threads)%n",
+                report.imported(), report.hashNanos() / 1_000_000,
+                ImportReport.perSecond(report.imported(), report.hashNanos()), report.threads());
+        HashingExecutor.Stats hashing = report.hashing();
+        if (hashing.maxConcurrent() < report.threads()) {
+            out.printf("  memory : ~%d MiB per hash within %d MiB: %d at once, waited %d ms, peak queue %d%n",
+                    hashing.bytesPerHash() >> 20, hashing.budgetBytes() >> 20, hashing.maxConcurrent(),
+                    hashing.memoryWaitNanos() / 1_000_000, hashing.peakQueued());
+        }
+        out.printf("  commit : %d ms%n", report.commitNanos() / 1_000_000);
+        out.flush();
+        return ExitCodes.OK;
+    }
+
+    private static BufferedReader open(String from) throws IOException {
+        if ("-".equals(from)) {
+            return new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        }
+        return Files.newBufferedReader(Path.of(from), StandardCharsets.UTF_8);
+    }
+}
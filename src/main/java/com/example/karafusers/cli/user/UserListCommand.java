@@ -3,10 +3,12 @@ package com.example.karafusers.cli.user;
 //import com.example.karafusers.cli.ExitCodes;
 import picocli.CommandLine;
 
+import java.io.PrintWriter;
 import java.util.concurrent.Callable;
 
 import com.example.karafusers.cli.ExitCodes;
 import com.example.karafusers.karaf.DefaultKarafUsersService;
+import com.example.karafusers.karaf.KarafUser;
 
 @CommandLine.Command(
         name = "list",
@@ -22,13 +24,14 @@ public class UserListCommand implements Callable<Integer> {
 
     @Override
     public Integer call() throws Exception {
-        // FIXME: wire the real service and print results.
-        // var users = service.listUsers(parent.root(), !noResolveGroups);
-        // users.forEach(u -> System.out.println(...));
         var service = new DefaultKarafUsersService(parent.root());
-        service.listUsers(!noResolveGroups);
+        PrintWriter out = parent.root().out();
+        for (KarafUser u : service.listUsers(!noResolveGroups)) {
+            out.println(u.username()
+                    + "\troles=" + String.join(",", u.roles())
+                    + "\tgroups=" + String.join(",", u.groups()));
+        }
+        out.flush();
         return ExitCodes.OK;
-
-        // return ExitCodes.OK;
     }
-}
\ No newline at end of file
+}
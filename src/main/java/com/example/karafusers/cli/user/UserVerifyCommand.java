@@ -0,0 +1,128 @@
+package com.example.karafusers.cli.user;
+
+import java.io.BufferedReader;
+import java.io.Console;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import picocli.CommandLine;
+
+import com.example.karafusers.cli.ExitCodes;
+import com.example.karafusers.crypto.HashingExecutor;
+import com.example.karafusers.io.JsonLines;
+import com.example.karafusers.karaf.CredentialCheck;
+import com.example.karafusers.karaf.DefaultKarafUsersService;
+import com.example.karafusers.karaf.UserRecord;
+import com.example.karafusers.karaf.UserRecordReader;
+import com.example.karafusers.karaf.UserRecordReader.Format;
+
+@CommandLine.Command(
+        name = "verify",
+        description = {
+                "Check that credentials authenticate against users.properties.",
+                "Prints one result line per credential (ok, mismatch, unknown-user) and exits 1 if any did not verify."
+        }
+)
+public class UserVerifyCommand implements Callable<Integer> {
+
+    public enum Output { tsv, jsonl }
+
+    @CommandLine.ParentCommand
+    private UserCommand parent;
+
+    @CommandLine.Option(names = {"-u", "--username"}, description = "User to check (single mode).")
+    private String username;
+
+    @CommandLine.Option(
+            names = {"-p", "--password"},
+            description = "Password to check (NOT recommended: visible via process list / shell history). If omitted, prompted securely."
+    )
+    private String password;
+
+    @CommandLine.Option(
+            names = {"--batch"},
+            description = "Read many credentials from --from instead of checking a single user."
+    )
+    private boolean batch;
+
+    @CommandLine.Option(
+            names = {"--from"},
+            defaultValue = "-",
+            description = "Batch input: a file, /dev/fd/N, or '-' for stdin (default). " +
+                          "CSV lines are username,password (quote passwords containing commas)."
+    )
+    private String from;
+
+    @CommandLine.Option(names = {"--format"}, description = "Batch input format: ${COMPLETION-CANDIDATES}. Defaults to the file extension, else csv.")
+    private Format format;
+
+    @CommandLine.Option(names = {"--threads"}, description = "Maximum concurrent hash checks (default: number of cores).")
+    private Integer threads;
+
+    @CommandLine.Option(names = {"--output"}, defaultValue = "tsv", description = "Result lines: ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE}).")
+    private Output output;
+
+    @Override
+    public Integer call() throws Exception {
+        int workers = threads != null ? threads : HashingExecutor.defaultWorkers();
+        PrintWriter out = parent.root().out();
+        var service = new DefaultKarafUsersService(parent.root());
+
+        int failures;
+        if (batch) {
+            if (username != null || password != null) {
+                throw new IllegalArgumentException("--batch reads credentials from --from; do not combine it with --username/--password.");
+            }
+            Format fmt = format != null ? format : Format.fromFileName(from);
+            if (fmt == null) {
+                fmt = Format.CSV;
+            }
+            try (UserRecordReader reader = new UserRecordReader(open(from), fmt, "-".equals(from) ? "stdin" : from)) {
+                failures = service.verifyUsers(reader, workers, c -> out.println(format(c)));
+            }
+        } else {
+            if (username == null || username.isBlank()) {
+                throw new IllegalArgumentException("Missing --username (or use --batch).");
+            }
+            String pwd = password != null ? password : promptPassword("Password: ");
+            Iterator<UserRecord> one = List.of(new UserRecord(username.trim(), pwd, Set.of(), Set.of())).iterator();
+            failures = service.verifyUsers(one, 1, c -> out.println(format(c)));
+        }
+        out.flush();
+        return failures == 0 ? ExitCodes.OK : ExitCodes.CHECK_FAILED;
+    }
+
+    private String format(CredentialCheck c) {
+        if (output == Output.jsonl) {
+            StringBuilder sb = new StringBuilder("{\"username\":");
+            JsonLines.appendString(sb, c.username());
+            return sb.append(",\"result\":\"").append(c.result().label()).append("\"}").toString();
+        }
+        return c.username() + "\t" + c.result().label();
+    }
+
+    private static BufferedReader open(String from) throws IOException {
+        if ("-".equals(from)) {
+            return new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        }
+        return Files.newBufferedReader(Path.of(from), StandardCharsets.UTF_8);
+    }
+
+    private static String promptPassword(String prompt) {
+        Console c = System.console();
+        if (c == null) {
+            throw new IllegalStateException("No console available for password prompt. Use --password (not recommended) or --batch.");
+        }
+        char[] p = c.readPassword(prompt);
+        if (p == null || p.length == 0) throw new IllegalArgumentException("Password cannot be empty.");
+        return new String(p);
+    }
+}
@@ -1,28 +1,80 @@
 package com.example.karafusers.config;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
 
 /**
  * Typed view over org.apache.karaf.jaas.cfg (OSGi .cfg format).
  *
  * This is intentionally minimal and focused on password encryption settings.
+ *
+ * An immutable snapshot, compiled once: {@code ${...}} placeholders are expanded as Karaf's
+ * config installer does (other keys of the file, then system properties, {@code ${env:NAME}}
+ * from the environment, {@code ${name:-default}}; anything unresolved becomes empty), every
+ * value that is an integer is parsed up front and {@code encryption.enabled} is validated.
+ * Lookups afterwards are map reads, so the snapshot can be shared across threads and calls.
  */
 public final class JaasCfg {
 
+    private static final int MAX_PLACEHOLDER_DEPTH = 32;
+
     private final Properties raw;
+    private final Map<String, String> values;
+    private final Map<String, Integer> ints;
+    private final Map<String, String> encryptionSettings;
+    private final boolean encryptionEnabled;
 
     public JaasCfg(Properties raw) {
-        this.raw = Objects.requireNonNull(raw, "raw");
+        Objects.requireNonNull(raw, "raw");
+        this.raw = new Properties();
+        this.raw.putAll(raw);
+
+        Map<String, String> source = new HashMap<>();
+        for (String key : raw.stringPropertyNames()) {
+            source.put(key, raw.getProperty(key));
+        }
+        Map<String, String> expanded = new HashMap<>(source.size() * 4 / 3 + 1);
+        Map<String, Integer> parsed = new HashMap<>();
+        Map<String, String> encryption = new TreeMap<>();
+        for (Map.Entry<String, String> e : source.entrySet()) {
+            String v = expand(e.getValue(), source, new HashSet<>(Set.of(e.getKey())));
+            expanded.put(e.getKey(), v);
+            String t = v.trim();
+            if (!t.isEmpty() && Character.isDigit(t.charAt(t.length() - 1))) {
+                try {
+                    parsed.put(e.getKey(), Integer.parseInt(t));
+                } catch (NumberFormatException ignored) {
+                    // not an integer; optInt reports it if someone asks
+                }
+            }
+            if (e.getKey().startsWith("encryption.")) {
+                encryption.put(e.getKey(), t);
+            }
+        }
+        this.values = Collections.unmodifiableMap(expanded);
+        this.ints = Collections.unmodifiableMap(parsed);
+        this.encryptionSettings = Collections.unmodifiableMap(encryption);
+        this.encryptionEnabled = bool("encryption.enabled").orElse(true);
     }
 
+    /** The properties as written in the file, placeholders unexpanded (a copy). */
     public Properties raw() {
-        return raw;
+        Properties copy = new Properties();
+        copy.putAll(raw);
+        return copy;
     }
 
     public boolean encryptionEnabled() {
-        return bool("encryption.enabled").orElse(true);
+        return encryptionEnabled;
     }
 
     /**
@@ -51,6 +103,14 @@ public final class JaasCfg {
         return str("encryption.suffix").orElse("");
     }
 
+    /**
+     * All {@code encryption.*} entries (expanded, trimmed, sorted): two files with equal
+     * settings encode passwords the same way, so this map identifies the codec they build.
+     */
+    public Map<String, String> encryptionSettings() {
+        return encryptionSettings;
+    }
+
     /**
      * Provider-specific option lookup, e.g. "encryption.bcrypt.strength".
      */
@@ -59,7 +119,11 @@ public final class JaasCfg {
     }
 
     public Optional<Integer> optInt(String key) {
-        return str(key).map(String::trim).filter(s -> !s.isEmpty()).map(Integer::parseInt);
+        Integer i = ints.get(key);
+        if (i != null) return Optional.of(i);
+        String v = values.get(key);
+        if (v == null || v.isBlank()) return Optional.empty();
+        throw new NumberFormatException("Invalid integer value for '" + key + "': " + v);
     }
 
     public Optional<Boolean> optBool(String key) {
@@ -67,17 +131,85 @@ public final class JaasCfg {
     }
 
     private Optional<String> str(String key) {
-        String v = raw.getProperty(key);
-        if (v == null) return Optional.empty();
-        return Optional.of(v);
+        return Optional.ofNullable(values.get(key));
     }
 
     private Optional<Boolean> bool(String key) {
-        String v = raw.getProperty(key);
+        String v = values.get(key);
         if (v == null) return Optional.empty();
-        v = v.trim().toLowerCase();
+        v = v.trim().toLowerCase(Locale.ROOT);
         if (v.equals("true") || v.equals("yes") || v.equals("on") || v.equals("1")) return Optional.of(true);
         if (v.equals("false") || v.equals("no") || v.equals("off") || v.equals("0")) return Optional.of(false);
-        throw new IllegalArgumentException("Invalid boolean value for '" + key + "': " + raw.getProperty(key));
+        throw new IllegalArgumentException("Invalid boolean value for '" + key + "': " + values.get(key));
+    }
+
+    /* ------------------------------------------------------------------
+       Placeholders
+       ------------------------------------------------------------------ */
+
+    private static String expand(String value, Map<String, String> source, Set<String> resolving) {
+        int start = value.indexOf("${");
+        if (start < 0) return value;
+        if (resolving.size() > MAX_PLACEHOLDER_DEPTH) {
+            throw new IllegalArgumentException("Placeholders nested too deeply in jaas.cfg: " + value);
+        }
+
+        StringBuilder sb = new StringBuilder(value.length());
+        int pos = 0;
+        while (start >= 0) {
+            int end = closingBrace(value, start + 2);
+            if (end < 0) break; // unterminated: kept literally
+            sb.append(value, pos, start);
+            String name = expand(value.substring(start + 2, end), source, resolving);
+            sb.append(resolve(name, n -> {
+                String v = source.get(n);
+                if (v == null) return null;
+                if (!resolving.add(n)) {
+                    throw new IllegalArgumentException("Circular placeholder ${" + n + "} in jaas.cfg.");
+                }
+                try {
+                    return expand(v, source, resolving);
+                } finally {
+                    resolving.remove(n);
+                }
+            }));
+            pos = end + 1;
+            start = value.indexOf("${", pos);
+        }
+        sb.append(value, pos, value.length());
+        return sb.toString();
+    }
+
+    private static String resolve(String name, Function<String, String> fromFile) {
+        String fallback = "";
+        int dflt = name.indexOf(":-");
+        if (dflt >= 0) {
+            fallback = name.substring(dflt + 2);
+            name = name.substring(0, dflt);
+        }
+        String v;
+        if (name.startsWith("env:")) {
+            v = System.getenv(name.substring(4));
+        } else {
+            v = fromFile.apply(name);
+            if (v == null) v = System.getProperty(name);
+        }
+        return v == null || (v.isEmpty() && dflt >= 0) ? fallback : v;
+    }
+
+    /** Index of the brace closing a placeholder whose name starts at {@code from}, allowing nested ones. */
+    private static int closingBrace(String s, int from) {
+        int depth = 0;
+        for (int i = from; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '$' && i + 1 < s.length() && s.charAt(i + 1) == '{') {
+                depth++;
+                i++;
+            } else if (c == '}') {
+                if (depth == 0) return i;
+                depth--;
+            }
+        }
+        return -1;
     }
-}
\ No newline at end of file
+}
@@ -1,17 +1,34 @@
 package com.example.karafusers.config;
 
 import java.io.IOException;
-import java.io.Reader;
+import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.example.karafusers.metrics.Metrics;
 
 /**
  * Loads org.apache.karaf.jaas.cfg (.cfg / properties-like format).
+ *
+ * Compiled snapshots are cached per file for the life of the process (the daemon, a fleet
+ * run, a transaction). Same file key, size and mtime is trusted; otherwise the file is read
+ * again and the snapshot is only recompiled if the content actually differs.
  */
 public final class JaasCfgLoader {
 
+    private record Cached(Object fileKey, long mtimeNanos, long size, byte[] content, JaasCfg cfg) {}
+
+    private static final Map<Path, Cached> CACHE = new ConcurrentHashMap<>();
+
     private JaasCfgLoader() {}
 
     public static JaasCfg load(Path jaasCfgPath) throws IOException {
@@ -22,11 +39,29 @@ public final class JaasCfgLoader {
             throw new IllegalStateException("jaas.cfg not found: " + jaasCfgPath);
         }
 
-        Properties p = new Properties();
-        try (Reader r = Files.newBufferedReader(jaasCfgPath, StandardCharsets.UTF_8)) {
-            p.load(r);
+        long t0 = Metrics.start();
+        Path key = jaasCfgPath.toAbsolutePath().normalize();
+        BasicFileAttributes attrs = Files.readAttributes(key, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        long mtime = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        Cached cached = CACHE.get(key);
+        if (cached != null && Objects.equals(cached.fileKey(), attrs.fileKey())
+                && cached.mtimeNanos() == mtime && cached.size() == attrs.size()) {
+            Metrics.stop(Metrics.Phase.JAAS_CFG, t0);
+            return cached.cfg();
+        }
+
+        byte[] content = Files.readAllBytes(key);
+        JaasCfg cfg;
+        if (cached != null && Arrays.equals(cached.content(), content)) {
+            cfg = cached.cfg(); // touched, not changed
+        } else {
+            Properties p = new Properties();
+            p.load(new StringReader(new String(content, StandardCharsets.UTF_8)));
+            cfg = new JaasCfg(p);
         }
+        CACHE.put(key, new Cached(attrs.fileKey(), mtime, content.length, content, cfg));
+        Metrics.stop(Metrics.Phase.JAAS_CFG, t0);
 
-        return new JaasCfg(p);
+        return cfg;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,196 @@
+package com.example.karafusers.crypto;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Locale;
+
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * Karaf's "basic" encryption ({@code encryption.name = basic}): an unsalted MessageDigest
+ * (MD5, SHA-1, SHA-256, SHA-512, ...) of the password's UTF-8 bytes, stored as lower-case
+ * hex ({@code encryption.encoding = hexadecimal}, the default) or padded base64. Output is
+ * the same as Karaf's BasicEncryption; like Karaf, hex is compared ignoring case and base64
+ * exactly.
+ *
+ * Each thread keeps its own digest and scratch buffers, so {@link #encode} allocates only
+ * the returned string and {@link #matches} allocates nothing. Password bytes are wiped from
+ * the scratch buffer after each digest.
+ */
+public final class BasicPasswordEncoder implements PasswordEncoder {
+
+    public enum Encoding {
+        HEXADECIMAL, BASE64;
+
+        public static Encoding parse(String value) {
+            switch (value.trim().toLowerCase(Locale.ROOT)) {
+                case "hexadecimal":
+                case "hex":
+                    return HEXADECIMAL;
+                case "base64":
+                    return BASE64;
+                default:
+                    throw new IllegalStateException("Unsupported encryption.encoding '" + value + "' for encryption.name=basic. "
+                            + "Supported: hexadecimal, base64.");
+            }
+        }
+    }
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final char[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    /** Per-thread digest and buffers. */
+    private static final class Scratch {
+        final MessageDigest md;
+        final byte[] digest;
+        final char[] text;
+        byte[] in = new byte[64];
+
+        Scratch(MessageDigest md, int textLength) {
+            this.md = md;
+            this.digest = new byte[md.getDigestLength()];
+            this.text = new char[textLength];
+        }
+    }
+
+    private final String algorithm;
+    private final Encoding encoding;
+    private final ThreadLocal<Scratch> scratch;
+
+    public BasicPasswordEncoder(String algorithm, Encoding encoding) {
+        int digestLength;
+        try {
+            MessageDigest md = MessageDigest.getInstance(algorithm.trim());
+            this.algorithm = md.getAlgorithm();
+            digestLength = md.getDigestLength();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Unsupported digest algorithm '" + algorithm + "' for encryption.name=basic. "
+                    + "Supported: MD2, MD5, SHA-1, SHA-256, SHA-384, SHA-512.", e);
+        }
+        this.encoding = encoding;
+        int textLength = encoding == Encoding.HEXADECIMAL ? digestLength * 2 : (digestLength + 2) / 3 * 4;
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(newDigest(), textLength));
+    }
+
+    public String algorithm() {
+        return algorithm;
+    }
+
+    public Encoding encoding() {
+        return encoding;
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        Scratch s = scratch.get();
+        digest(rawPassword, s);
+        return new String(s.text, 0, encodeText(s));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        if (rawPassword == null || encodedPassword == null) {
+            return false;
+        }
+        Scratch s = scratch.get();
+        digest(rawPassword, s);
+        int len = encodeText(s);
+        if (encodedPassword.length() != len) {
+            return false;
+        }
+        // Constant time over the expected length.
+        int diff = 0;
+        boolean hex = encoding == Encoding.HEXADECIMAL;
+        for (int i = 0; i < len; i++) {
+            char c = encodedPassword.charAt(i);
+            if (hex && c >= 'A' && c <= 'F') c += 'a' - 'A';
+            diff |= c ^ s.text[i];
+        }
+        return diff == 0;
+    }
+
+    private MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // resolved once in the constructor already
+        }
+    }
+
+    private static void digest(CharSequence raw, Scratch s) {
+        int n = utf8(raw, s);
+        try {
+            s.md.update(s.in, 0, n);
+            s.md.digest(s.digest, 0, s.digest.length);
+        } catch (DigestException e) {
+            throw new IllegalStateException("Digest failed: " + e.getMessage(), e);
+        } finally {
+            Arrays.fill(s.in, 0, n, (byte) 0);
+            s.md.reset();
+        }
+    }
+
+    /** Encodes into the scratch input buffer as String#getBytes(UTF_8) does (unpaired surrogates become '?'). */
+    private static int utf8(CharSequence cs, Scratch s) {
+        int len = cs.length();
+        if (s.in.length < len * 3) {
+            s.in = new byte[Math.max(len * 3, s.in.length * 2)];
+        }
+        byte[] b = s.in;
+        int j = 0;
+        for (int i = 0; i < len; i++) {
+            char c = cs.charAt(i);
+            if (c < 0x80) {
+                b[j++] = (byte) c;
+            } else if (c < 0x800) {
+                b[j++] = (byte) (0xC0 | (c >> 6));
+                b[j++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(cs.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, cs.charAt(++i));
+                b[j++] = (byte) (0xF0 | (cp >> 18));
+                b[j++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                b[j++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                b[j++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                b[j++] = '?';
+            } else {
+                b[j++] = (byte) (0xE0 | (c >> 12));
+                b[j++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                b[j++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return j;
+    }
+
+    private int encodeText(Scratch s) {
+        byte[] d = s.digest;
+        char[] t = s.text;
+        if (encoding == Encoding.HEXADECIMAL) {
+            for (int i = 0; i < d.length; i++) {
+                t[2 * i] = HEX[(d[i] >> 4) & 0xF];
+                t[2 * i + 1] = HEX[d[i] & 0xF];
+            }
+            return d.length * 2;
+        }
+        int j = 0;
+        int i = 0;
+        for (; i + 2 < d.length; i += 3) {
+            int v = (d[i] & 0xFF) << 16 | (d[i + 1] & 0xFF) << 8 | (d[i + 2] & 0xFF);
+            t[j++] = BASE64[v >>> 18];
+            t[j++] = BASE64[(v >>> 12) & 0x3F];
+            t[j++] = BASE64[(v >>> 6) & 0x3F];
+            t[j++] = BASE64[v & 0x3F];
+        }
+        int rest = d.length - i;
+        if (rest > 0) {
+            int v = (d[i] & 0xFF) << 16 | (rest == 2 ? (d[i + 1] & 0xFF) << 8 : 0);
+            t[j++] = BASE64[v >>> 18];
+            t[j++] = BASE64[(v >>> 12) & 0x3F];
+            t[j++] = rest == 2 ? BASE64[(v >>> 6) & 0x3F] : '=';
+            t[j++] = '=';
+        }
+        return j;
+    }
+}
@@ -0,0 +1,241 @@
+package com.example.karafusers.crypto;
+
+import com.example.karafusers.config.JaasCfg;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * Finds the strongest {@code encryption.<algorithm>.*} settings whose hashing time on this
+ * host stays within a target latency, and whose per-hash memory stays within a budget.
+ *
+ * Hash cost is monotonic in every tuned parameter, so each search walks up in exponential
+ * steps until it overshoots the target, then bisects between the last fitting and the first
+ * overshooting value. Only O(log n) candidates are ever measured.
+ */
+public final class CostCalibrator {
+
+    /** Calibrated settings, ready to be written into jaas.cfg. */
+    public record Result(String algorithm, Map<String, String> settings, double millisPerHash, long memoryBytes) {}
+
+    /** Time of one hash with {@code encryption.<algorithm>.*} overrides; by default measured on this host. */
+    @FunctionalInterface
+    interface CostFunction {
+        double millisPerHash(String algorithm, Map<String, String> overrides);
+    }
+
+    private static final String PASSWORD = "calibration-Password-1";
+
+    /** JIT warm-up spent on the cheapest candidate before the first measurement of an algorithm. */
+    private static final long WARMUP_NANOS = 1_000_000_000L;
+
+    private final Properties base;
+    private final double targetMillis;
+    private final long memoryBudgetBytes;
+    private final int samples;
+    private final Consumer<String> log;
+    private final CostFunction cost;
+    private boolean warmedUp;
+
+    /**
+     * @param base              current jaas.cfg settings (other encryption.* keys such as the pbkdf2 secret are kept)
+     * @param targetMillis      target time per hash
+     * @param memoryBudgetBytes maximum memory per hash (argon2/scrypt)
+     * @param samples           timed hashes per candidate (the median is used)
+     * @param log               receives one line per measured candidate
+     */
+    public CostCalibrator(Properties base, double targetMillis, long memoryBudgetBytes, int samples, Consumer<String> log) {
+        this(base, targetMillis, memoryBudgetBytes, samples, log, null);
+    }
+
+    /** As above, with {@code cost} (when not null) in place of timing real hashes. */
+    CostCalibrator(Properties base, double targetMillis, long memoryBudgetBytes, int samples, Consumer<String> log,
+                   CostFunction cost) {
+        if (targetMillis <= 0) throw new IllegalArgumentException("Target latency must be > 0 ms.");
+        if (memoryBudgetBytes <= 0) throw new IllegalArgumentException("Memory budget must be > 0.");
+        if (samples < 1) throw new IllegalArgumentException("Samples must be >= 1.");
+        this.base = Objects.requireNonNull(base, "base");
+        this.targetMillis = targetMillis;
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        this.samples = samples;
+        this.log = Objects.requireNonNull(log, "log");
+        this.cost = cost != null ? cost : this::time;
+    }
+
+    public Result calibrate(String algorithm) {
+        String algo = algorithm.trim().toLowerCase(Locale.ROOT);
+        switch (algo) {
+            case "bcrypt":
+                return bcrypt();
+            case "pbkdf2":
+                return pbkdf2();
+            case "scrypt":
+                return scrypt();
+            case "argon2":
+                return argon2();
+            default:
+                throw new IllegalArgumentException(
+                        "Cannot calibrate algorithm '" + algorithm + "'. Supported: bcrypt, pbkdf2, scrypt, argon2.");
+        }
+    }
+
+    private Result bcrypt() {
+        // Each strength step doubles the cost: the exponential walk is a linear walk over strength.
+        int strength = searchMax("bcrypt", 4, 31, 1, true, s -> settings("bcrypt", "strength", s));
+        Map<String, String> s = settings("bcrypt", "strength", strength);
+        return new Result("bcrypt", s, measure("bcrypt", s), 4 * 1024);
+    }
+
+    private Result pbkdf2() {
+        int iterations = searchMax("pbkdf2", 1_000, 10_000_000, 1_000, false, i -> settings("pbkdf2", "iterations", i));
+        Map<String, String> s = settings("pbkdf2", "iterations", iterations);
+        return new Result("pbkdf2", s, measure("pbkdf2", s), 0);
+    }
+
+    private Result scrypt() {
+        int r = intSetting("encryption.scrypt.memoryCost", 8);
+        int p = intSetting("encryption.scrypt.parallelization", 1);
+        // Memory grows with N, which must be a power of two: search over log2(N).
+        int maxLog = 1;
+        while (maxLog < 30 && HashingExecutor.scryptBytes(1L << (maxLog + 1), r, p) <= memoryBudgetBytes) maxLog++;
+        if (HashingExecutor.scryptBytes(1L << maxLog, r, p) > memoryBudgetBytes) {
+            throw new IllegalArgumentException("Memory budget too small for scrypt with r=" + r + ", p=" + p + ".");
+        }
+        int log2n = searchMax("scrypt", Math.min(10, maxLog), maxLog, 1, true,
+                l -> scryptSettings(1 << l, r, p));
+        Map<String, String> s = scryptSettings(1 << log2n, r, p);
+        return new Result("scrypt", s, measure("scrypt", s), HashingExecutor.scryptBytes(1L << log2n, r, p));
+    }
+
+    private Result argon2() {
+        int parallelism = intSetting("encryption.argon2.parallelism", 1);
+        int maxMemoryKib = (int) Math.min(Integer.MAX_VALUE, memoryBudgetBytes / 1024);
+        if (maxMemoryKib < 8 * parallelism) {
+            throw new IllegalArgumentException("Memory budget too small for argon2.");
+        }
+
+        // Spend the memory budget first (it is what makes argon2 GPU-hard), then add passes.
+        Map<String, String> oneLap = argon2Settings(maxMemoryKib, 1, parallelism);
+        int memoryKib = maxMemoryKib;
+        if (measure("argon2", oneLap) > targetMillis) {
+            memoryKib = searchMax("argon2", 8 * parallelism, maxMemoryKib, 1024, false, m -> argon2Settings(m, 1, parallelism));
+        }
+        int mem = memoryKib;
+        int iterations = searchMax("argon2", 1, 64, 1, false, t -> argon2Settings(mem, t, parallelism));
+        Map<String, String> s = argon2Settings(mem, iterations, parallelism);
+        return new Result("argon2", s, measure("argon2", s), mem * 1024L);
+    }
+
+    /**
+     * Largest value in [min, max] whose hash time fits the target, assuming time grows with value.
+     * Exponential steps (doubling the distance from min) find an upper bracket, then bisection
+     * narrows it to {@code resolution}. When the value is already an exponent of the cost
+     * (bcrypt strength, log2 of scrypt N), unit steps are exponential in time and are used as is.
+     * Returns min if even min overshoots.
+     */
+    private int searchMax(String algo, int min, int max, int resolution, boolean exponentOfCost,
+                          IntFunction<Map<String, String>> candidate) {
+        int fits = min;
+        if (measure(algo, candidate.apply(min)) > targetMillis) {
+            return min;
+        }
+
+        int step = Math.max(1, resolution);
+        int over = -1;
+        while (true) {
+            long next = (long) fits + step;
+            if (next > max) {
+                if (fits == max) return max;
+                next = max;
+            }
+            int v = (int) next;
+            if (measure(algo, candidate.apply(v)) <= targetMillis) {
+                fits = v;
+                if (v == max) return max;
+                if (!exponentOfCost) step *= 2;
+            } else {
+                over = v;
+                break;
+            }
+        }
+
+        while (over - fits > resolution) {
+            int mid = fits + (over - fits) / 2;
+            if (resolution > 1) mid = mid / resolution * resolution;
+            if (mid <= fits) break;
+            if (measure(algo, candidate.apply(mid)) <= targetMillis) {
+                fits = mid;
+            } else {
+                over = mid;
+            }
+        }
+        return fits;
+    }
+
+    private double measure(String algo, Map<String, String> overrides) {
+        double millis = cost.millisPerHash(algo, overrides);
+        log.accept(String.format(Locale.ROOT, "  %-60s %9.1f ms", overrides, millis));
+        return millis;
+    }
+
+    /** Median wall time of one hash with the given overrides, after one warm-up hash (plus JIT warm-up the first time). */
+    private double time(String algo, Map<String, String> overrides) {
+        Properties p = new Properties();
+        p.putAll(base);
+        p.setProperty("encryption.enabled", "true");
+        p.setProperty("encryption.name", "spring-security-crypto");
+        p.setProperty("encryption.algorithm", algo);
+        overrides.forEach(p::setProperty);
+
+        KarafPasswordCodec codec = PasswordEncoderFactory.from(new JaasCfg(p));
+        codec.encode(PASSWORD);
+        if (!warmedUp) {
+            // The first candidate is the cheapest one: hash until the hot paths are compiled.
+            long deadline = System.nanoTime() + WARMUP_NANOS;
+            while (System.nanoTime() < deadline) codec.encode(PASSWORD);
+            warmedUp = true;
+        }
+
+        double[] times = new double[samples];
+        for (int i = 0; i < samples; i++) {
+            long t0 = System.nanoTime();
+            codec.encode(PASSWORD);
+            times[i] = (System.nanoTime() - t0) / 1_000_000.0;
+        }
+        Arrays.sort(times);
+        return times[samples / 2];
+    }
+
+    private int intSetting(String key, int def) {
+        String v = base.getProperty(key);
+        return v == null || v.isBlank() ? def : Integer.parseInt(v.trim());
+    }
+
+    private static Map<String, String> settings(String algo, String key, int value) {
+        Map<String, String> m = new LinkedHashMap<>();
+        m.put("encryption." + algo + "." + key, Integer.toString(value));
+        return m;
+    }
+
+    private static Map<String, String> scryptSettings(int n, int r, int p) {
+        Map<String, String> m = new LinkedHashMap<>();
+        m.put("encryption.scrypt.cpuCost", Integer.toString(n));
+        m.put("encryption.scrypt.memoryCost", Integer.toString(r));
+        m.put("encryption.scrypt.parallelization", Integer.toString(p));
+        return m;
+    }
+
+    private static Map<String, String> argon2Settings(int memoryKib, int iterations, int parallelism) {
+        Map<String, String> m = new LinkedHashMap<>();
+        m.put("encryption.argon2.memory", Integer.toString(memoryKib));
+        m.put("encryption.argon2.iterations", Integer.toString(iterations));
+        m.put("encryption.argon2.parallelism", Integer.toString(parallelism));
+        return m;
+    }
+}
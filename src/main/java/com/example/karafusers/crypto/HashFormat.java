@@ -0,0 +1,387 @@
+package com.example.karafusers.crypto;
+
+import java.util.Locale;
+
+import com.example.karafusers.config.JaasCfg;
+
+/**
+ * Recognises stored password encodings and their cost parameters without decoding them.
+ *
+ * {@link #classify} scans a char range in place and packs the result into a long, so auditing
+ * hundreds of thousands of hashes allocates nothing per hash: kind in the top byte, then three
+ * parameters (24, 16 and 16 bits, saturating) whose meaning depends on the kind:
+ * <pre>
+ * BCRYPT          cost
+ * ARGON2I/D/ID    memory KiB, iterations, parallelism
+ * SCRYPT          log2(N), r, p              (spring-security-crypto encoding)
+ * PBKDF2          iterations, digest bits    ($pbkdf2-sha256$..., pbkdf2_sha256$...)
+ * PBKDF2_SPRING   -, digest bits, salt bytes (hex salt+hash: iterations are not stored)
+ * DIGEST          -, digest bits             (unsalted MD5/SHA hex or base64, e.g. Karaf "basic")
+ * </pre>
+ * Nothing is ever verified or base64-decoded: only the shape of the encoding is inspected.
+ */
+public final class HashFormat {
+
+    public static final int UNKNOWN = 0;
+    public static final int PLAINTEXT = 1;
+    public static final int BCRYPT = 2;
+    public static final int ARGON2I = 3;
+    public static final int ARGON2D = 4;
+    public static final int ARGON2ID = 5;
+    public static final int SCRYPT = 6;
+    public static final int PBKDF2 = 7;
+    public static final int PBKDF2_SPRING = 8;
+    public static final int DIGEST = 9;
+
+    /** Digest sizes {@link #digestBits} accepts, i.e. what Karaf's "basic" provider can store. */
+    private static final int[] DIGEST_SIZES = {128, 160, 224, 256, 384, 512};
+
+    private static final int MAX_A = (1 << 24) - 1;
+    private static final int MAX_BC = (1 << 16) - 1;
+
+    private HashFormat() {}
+
+    public static long pack(int kind, long a, long b, long c) {
+        return ((long) kind << 56)
+                | (Math.min(Math.max(a, 0), MAX_A) << 32)
+                | (Math.min(Math.max(b, 0), MAX_BC) << 16)
+                | Math.min(Math.max(c, 0), MAX_BC);
+    }
+
+    public static int kind(long h) {
+        return (int) (h >>> 56);
+    }
+
+    public static int a(long h) {
+        return (int) ((h >>> 32) & MAX_A);
+    }
+
+    public static int b(long h) {
+        return (int) ((h >>> 16) & MAX_BC);
+    }
+
+    public static int c(long h) {
+        return (int) (h & MAX_BC);
+    }
+
+    /**
+     * Classifies a stored password. Values not {@linkplain PasswordWrapping#isWrapped wrapped} in
+     * the configured prefix/suffix are what Karaf treats as not yet encrypted, so they count as plaintext.
+     */
+    public static long classify(String stored, String prefix, String suffix) {
+        return classify(stored, prefix, suffix, pack(UNKNOWN, 0, 0, 0));
+    }
+
+    /** As above, resolving ambiguous shapes against {@code current} (see {@link #classify(CharSequence, int, int, long)}). */
+    public static long classify(String stored, String prefix, String suffix, long current) {
+        if (!PasswordWrapping.isWrapped(stored, prefix, suffix)) return pack(PLAINTEXT, 0, 0, 0);
+        return classify(stored, prefix.length(), stored.length() - suffix.length(), current);
+    }
+
+    /** Classifies the encoding in {@code s[from, to)}. */
+    public static long classify(CharSequence s, int from, int to) {
+        return classify(s, from, to, pack(UNKNOWN, 0, 0, 0));
+    }
+
+    /**
+     * As {@link #classify(CharSequence, int, int)}, resolving encodings whose shape is ambiguous
+     * with what jaas.cfg produces ({@code current}, from {@link #current}): 96 hex digits are a
+     * SHA-384 digest in a "basic" realm, and hex of the configured pbkdf2 salt + hash length is
+     * a pbkdf2 hash of the configured HMAC.
+     */
+    public static long classify(CharSequence s, int from, int to, long current) {
+        int len = to - from;
+        if (len <= 0) return pack(UNKNOWN, 0, 0, 0);
+
+        if (s.charAt(from) == '$') {
+            if (startsWith(s, from, to, "$2") && len == 60) return bcrypt(s, from, to);
+            if (startsWith(s, from, to, "$argon2")) return argon2(s, from, to);
+            if (startsWith(s, from, to, "$pbkdf2")) return pbkdf2(s, from + 1, to);
+            return scrypt(s, from, to);
+        }
+        if (startsWith(s, from, to, "pbkdf2_")) return pbkdf2(s, from, to);
+        if (isHex(s, from, to)) return hex(len, current);
+        return base64Digest(s, from, to);
+    }
+
+    /** {@code $2a$10$} + 53 chars. */
+    private static long bcrypt(CharSequence s, int from, int to) {
+        int p = from + 2;
+        if (s.charAt(p) != '$') p++; // $2a$, $2b$, $2y$
+        if (s.charAt(p) != '$') return pack(UNKNOWN, 0, 0, 0);
+        int cost = digits(s, p + 1, p + 3);
+        if (cost < 0 || s.charAt(p + 3) != '$') return pack(UNKNOWN, 0, 0, 0);
+        return pack(BCRYPT, cost, 0, 0);
+    }
+
+    /** {@code $argon2id$v=19$m=65536,t=3,p=1$salt$hash}. */
+    private static long argon2(CharSequence s, int from, int to) {
+        int p = from + 7;
+        int kind;
+        if (startsWith(s, p, to, "id$")) {
+            kind = ARGON2ID;
+            p += 3;
+        } else if (startsWith(s, p, to, "i$")) {
+            kind = ARGON2I;
+            p += 2;
+        } else if (startsWith(s, p, to, "d$")) {
+            kind = ARGON2D;
+            p += 2;
+        } else {
+            return pack(UNKNOWN, 0, 0, 0);
+        }
+        if (startsWith(s, p, to, "v=")) {
+            p = indexOf(s, '$', p, to);
+            if (p < 0) return pack(UNKNOWN, 0, 0, 0);
+            p++;
+        }
+        long m = -1, t = -1, par = -1;
+        int end = indexOf(s, '$', p, to);
+        if (end < 0) return pack(UNKNOWN, 0, 0, 0);
+        while (p < end) {
+            int comma = indexOf(s, ',', p, end);
+            if (comma < 0) comma = end;
+            if (comma - p < 3 || s.charAt(p + 1) != '=') return pack(UNKNOWN, 0, 0, 0);
+            long v = digits(s, p + 2, comma);
+            switch (s.charAt(p)) {
+                case 'm': m = v; break;
+                case 't': t = v; break;
+                case 'p': par = v; break;
+                default: return pack(UNKNOWN, 0, 0, 0);
+            }
+            p = comma + 1;
+        }
+        if (m < 0 || t < 0 || par < 0) return pack(UNKNOWN, 0, 0, 0);
+        return pack(kind, m, t, par);
+    }
+
+    /** spring-security-crypto: {@code $<hex of log2N<<16 | r<<8 | p>$salt$key}. */
+    private static long scrypt(CharSequence s, int from, int to) {
+        int p1 = indexOf(s, '$', from + 1, to);
+        if (p1 < 0 || p1 == from + 1) return pack(UNKNOWN, 0, 0, 0);
+        int p2 = indexOf(s, '$', p1 + 1, to);
+        if (p2 < 0 || indexOf(s, '$', p2 + 1, to) >= 0 || p1 - from - 1 > 15) return pack(UNKNOWN, 0, 0, 0);
+        long params = 0;
+        for (int i = from + 1; i < p1; i++) {
+            int d = Character.digit(s.charAt(i), 16);
+            if (d < 0) return pack(UNKNOWN, 0, 0, 0);
+            params = params << 4 | d;
+        }
+        return pack(SCRYPT, params >>> 16, (params >>> 8) & 0xff, params & 0xff);
+    }
+
+    /** {@code pbkdf2-sha256$29000$...} (passlib, leading $ stripped) or {@code pbkdf2_sha256$260000$...} (Django). */
+    private static long pbkdf2(CharSequence s, int from, int to) {
+        int d = indexOf(s, '$', from, to);
+        if (d < 0) return pack(UNKNOWN, 0, 0, 0);
+        int e = indexOf(s, '$', d + 1, to);
+        if (e < 0) return pack(UNKNOWN, 0, 0, 0);
+        long iterations = digits(s, d + 1, e);
+        if (iterations < 0) return pack(UNKNOWN, 0, 0, 0);
+        int bits = endsWith(s, from, d, "sha512") ? 512 : endsWith(s, from, d, "sha256") ? 256 : endsWith(s, from, d, "sha1") ? 160 : 0;
+        return pack(PBKDF2, iterations, bits, 0);
+    }
+
+    /**
+     * Hex: spring-security-crypto pbkdf2 stores hex(salt + hash), the hash as wide as the HMAC's
+     * output. Only the configured salt length and HMAC are recognised, and labelled as such.
+     * Outside a pbkdf2 or "basic" realm, the lengths the default 16-byte salt gives are taken for
+     * pbkdf2 of an unknown HMAC. Any other digest length is an unsalted digest.
+     */
+    private static long hex(int len, long current) {
+        if (kind(current) == PBKDF2 && len == 2 * (c(current) + b(current) / 8)) {
+            return pack(PBKDF2_SPRING, 0, b(current), c(current));
+        }
+        if (kind(current) != PBKDF2 && kind(current) != DIGEST) {
+            int salt = PasswordEncoderFactory.DEFAULT_PBKDF2_SALT_LENGTH;
+            for (int bits : new int[] {160, 256, 512}) {
+                if (len == 2 * (salt + bits / 8)) return pack(PBKDF2_SPRING, 0, 0, salt);
+            }
+        }
+        for (int bits : DIGEST_SIZES) {
+            if (len == bits / 4) return pack(DIGEST, 0, bits, 0);
+        }
+        return pack(UNKNOWN, 0, 0, 0);
+    }
+
+    /** Padded base64 of a digest of one of the {@link #DIGEST_SIZES}. */
+    private static long base64Digest(CharSequence s, int from, int to) {
+        int len = to - from;
+        int bits = -1;
+        for (int b : DIGEST_SIZES) {
+            if (len == (b / 8 + 2) / 3 * 4) bits = b;
+        }
+        if (bits < 0) return pack(UNKNOWN, 0, 0, 0);
+        int pad = (3 - bits / 8 % 3) % 3;
+        for (int i = from; i < to - pad; i++) {
+            char c = s.charAt(i);
+            if (!(c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z' || c >= '0' && c <= '9' || c == '+' || c == '/')) {
+                return pack(UNKNOWN, 0, 0, 0);
+            }
+        }
+        for (int i = to - pad; i < to; i++) {
+            if (s.charAt(i) != '=') return pack(UNKNOWN, 0, 0, 0);
+        }
+        return pack(DIGEST, 0, bits, 0);
+    }
+
+    /**
+     * What {@link PasswordEncoderFactory#from} would encode with these settings (same keys and
+     * defaults), for comparing stored hashes against. Reads jaas.cfg only: no encoder is built.
+     */
+    public static long current(JaasCfg cfg) {
+        String algo = cfg.encryptionAlgorithm().orElse("").trim().toLowerCase(Locale.ROOT);
+        if ("basic".equalsIgnoreCase(cfg.encryptionName().orElse(""))) {
+            int bits = digestBits(algo);
+            if (bits < 0) {
+                throw new IllegalStateException("Unsupported digest algorithm '" + algo + "' for encryption.name=basic.");
+            }
+            return pack(DIGEST, 0, bits, 0);
+        }
+        switch (algo) {
+            case "bcrypt":
+                return pack(BCRYPT, cfg.optInt("encryption.bcrypt.strength").orElse(PasswordEncoderFactory.DEFAULT_BCRYPT_STRENGTH), 0, 0);
+            case "pbkdf2":
+                String alg = cfg.opt("encryption.pbkdf2.algorithm").orElse("sha256").toLowerCase(Locale.ROOT);
+                int bits = alg.endsWith("sha512") ? 512 : alg.endsWith("sha1") ? 160 : 256;
+                return pack(PBKDF2, cfg.optInt("encryption.pbkdf2.iterations").orElse(PasswordEncoderFactory.DEFAULT_PBKDF2_ITERATIONS), bits,
+                        cfg.optInt("encryption.pbkdf2.saltLength").orElse(PasswordEncoderFactory.DEFAULT_PBKDF2_SALT_LENGTH));
+            case "scrypt":
+                int cpuCost = cfg.optInt("encryption.scrypt.cpuCost").orElse(PasswordEncoderFactory.DEFAULT_SCRYPT_CPU_COST);
+                return pack(SCRYPT, 31 - Integer.numberOfLeadingZeros(cpuCost),
+                        cfg.optInt("encryption.scrypt.memoryCost").orElse(PasswordEncoderFactory.DEFAULT_SCRYPT_MEMORY_COST),
+                        cfg.optInt("encryption.scrypt.parallelization").orElse(PasswordEncoderFactory.DEFAULT_SCRYPT_PARALLELIZATION));
+            case "argon2":
+                return pack(ARGON2ID, cfg.optInt("encryption.argon2.memory").orElse(PasswordEncoderFactory.DEFAULT_ARGON2_MEMORY),
+                        cfg.optInt("encryption.argon2.iterations").orElse(PasswordEncoderFactory.DEFAULT_ARGON2_ITERATIONS),
+                        cfg.optInt("encryption.argon2.parallelism").orElse(PasswordEncoderFactory.DEFAULT_ARGON2_PARALLELISM));
+            default:
+                throw new IllegalStateException("Unsupported spring-security-crypto algorithm '" + algo + "'. "
+                        + "Supported: bcrypt, pbkdf2, scrypt, argon2.");
+        }
+    }
+
+    /** Human-readable label of a classification, e.g. {@code argon2id m=65536 t=3 p=1}. */
+    public static String describe(long h) {
+        switch (kind(h)) {
+            case PLAINTEXT: return "plaintext";
+            case BCRYPT: return "bcrypt cost=" + a(h);
+            case ARGON2I: return "argon2i m=" + a(h) + " t=" + b(h) + " p=" + c(h);
+            case ARGON2D: return "argon2d m=" + a(h) + " t=" + b(h) + " p=" + c(h);
+            case ARGON2ID: return "argon2id m=" + a(h) + " t=" + b(h) + " p=" + c(h);
+            case SCRYPT: return "scrypt N=" + (1L << a(h)) + " r=" + b(h) + " p=" + c(h);
+            case PBKDF2: return "pbkdf2" + digestName(b(h)) + " iterations=" + a(h);
+            case PBKDF2_SPRING: return "pbkdf2" + digestName(b(h)) + " (iterations not stored)";
+            case DIGEST: return "unsalted" + digestName(b(h)) + " digest";
+            default: return "unknown";
+        }
+    }
+
+    /** Output size of a MessageDigest algorithm name as Karaf's "basic" provider takes it, or -1. */
+    private static int digestBits(String algo) {
+        switch (algo.replace("-", "")) {
+            case "md2":
+            case "md5": return 128;
+            case "sha":
+            case "sha1": return 160;
+            case "sha224": return 224;
+            case "sha256": return 256;
+            case "sha384": return 384;
+            case "sha512": return 512;
+            default: return -1;
+        }
+    }
+
+    private static String digestName(int bits) {
+        switch (bits) {
+            case 128: return "-md5";
+            case 160: return "-sha1";
+            case 224: return "-sha224";
+            case 256: return "-sha256";
+            case 384: return "-sha384";
+            case 512: return "-sha512";
+            default: return "";
+        }
+    }
+
+    /**
+     * Why {@code actual} falls short of what the codec would produce now ({@code target}),
+     * or null if it does not. A hash of another algorithm always falls short: it is only
+     * replaced when the user next changes password.
+     */
+    public static String shortfall(long actual, long target) {
+        int kind = kind(actual);
+        switch (kind) {
+            case PLAINTEXT: return "stored in plaintext";
+            case UNKNOWN: return "unrecognised encoding";
+            case DIGEST:
+                // Configured for "basic" too: only a weaker digest than the configured one is news.
+                if (kind(target) == DIGEST) {
+                    return b(actual) < b(target) ? "digest " + b(actual) + " bits < " + b(target) : null;
+                }
+                return "unsalted digest";
+            default:
+                break;
+        }
+        if (kind != kind(target) && !(kind == PBKDF2_SPRING && kind(target) == PBKDF2)) {
+            return "algorithm is not " + describe(target).split(" ")[0];
+        }
+        switch (kind) {
+            case BCRYPT:
+                return a(actual) < a(target) ? "cost " + a(actual) + " < " + a(target) : null;
+            case ARGON2I:
+            case ARGON2D:
+            case ARGON2ID:
+            case SCRYPT:
+                if (a(actual) < a(target) || b(actual) < b(target) || c(actual) < c(target)) {
+                    return describe(actual).substring(describe(actual).indexOf(' ') + 1)
+                            + " below " + describe(target).substring(describe(target).indexOf(' ') + 1);
+                }
+                return null;
+            case PBKDF2:
+                return a(actual) < a(target) ? "iterations " + a(actual) + " < " + a(target) : null;
+            default:
+                // PBKDF2_SPRING: the cost cannot be read back, so it is reported in the histogram only.
+                return null;
+        }
+    }
+
+    private static boolean startsWith(CharSequence s, int from, int to, String p) {
+        if (to - from < p.length()) return false;
+        for (int i = 0; i < p.length(); i++) {
+            if (s.charAt(from + i) != p.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static boolean endsWith(CharSequence s, int from, int to, String p) {
+        return to - from >= p.length() && startsWith(s, to - p.length(), to, p);
+    }
+
+    private static int indexOf(CharSequence s, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (s.charAt(i) == c) return i;
+        }
+        return -1;
+    }
+
+    /** Non-negative decimal value of s[from, to), or -1. */
+    private static int digits(CharSequence s, int from, int to) {
+        if (from >= to || to - from > 9) return -1;
+        int v = 0;
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            v = v * 10 + (c - '0');
+        }
+        return v;
+    }
+
+    private static boolean isHex(CharSequence s, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'f' || c >= 'A' && c <= 'F')) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.karafusers.crypto;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.example.karafusers.config.JaasCfg;
+import com.example.karafusers.metrics.Metrics;
+
+/**
+ * Bounded worker pool for CPU-bound password hashing in bulk operations.
+ *
+ * Sized to the number of cores by default. Submissions block once a small multiple of
+ * the worker count is in flight, so a producer streaming millions of rows never
+ * builds an unbounded task queue.
+ *
+ * Memory-hard algorithms need a memory budget as well: argon2 allocates
+ * {@code encryption.argon2.memory} KiB per hash (64 MiB by default) and scrypt about
+ * 128·N·r bytes (16 MiB by default), all on the heap. When given a per-hash size and a
+ * budget, a worker only starts a hash once its share of the budget is free (a weighted
+ * semaphore counted in KiB), so eight cores in a 512 MiB container hash a few at a time
+ * instead of failing with OutOfMemoryError.
+ */
+public final class HashingExecutor implements AutoCloseable {
+
+    private static final int IN_FLIGHT_PER_WORKER = 4;
+
+    /** Allocation per hash beyond the algorithm's own working memory (encoder garbage, salts, strings). */
+    private static final long OVERHEAD_BYTES = 64 * 1024;
+
+    /** Share of the free heap used as budget when none is configured. */
+    private static final double DEFAULT_BUDGET_SHARE = 0.75;
+
+    /** Memory admission figures, for reports. */
+    public record Stats(long bytesPerHash, long budgetBytes, int maxConcurrent, int peakQueued, long memoryWaitNanos) {}
+
+    private final ExecutorService pool;
+    private final Semaphore inFlight;
+    private final int workers;
+
+    private final Semaphore memory;
+    private final int weight;
+    private final long bytesPerHash;
+    private final long budgetBytes;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger peakQueued = new AtomicInteger();
+    private final LongAdder memoryWaitNanos = new LongAdder();
+
+    public HashingExecutor(int workers) {
+        this(workers, 0, 0);
+    }
+
+    /**
+     * @param bytesPerHash memory one hash needs, see {@link #bytesPerHash(JaasCfg)}; 0 for no memory limit
+     * @param budgetBytes  memory all concurrent hashes may use together, see {@link #defaultMemoryBudget()}
+     */
+    public HashingExecutor(int workers, long bytesPerHash, long budgetBytes) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("Hashing threads must be >= 1, got " + workers);
+        }
+        this.workers = workers;
+        this.inFlight = new Semaphore(workers * IN_FLIGHT_PER_WORKER);
+        this.pool = Executors.newFixedThreadPool(workers, daemonThreads());
+        this.bytesPerHash = bytesPerHash;
+        this.budgetBytes = budgetBytes;
+
+        if (bytesPerHash > 0 && budgetBytes > 0) {
+            int permits = (int) Math.min(Integer.MAX_VALUE, Math.max(1, budgetBytes / 1024));
+            // A hash larger than the whole budget still runs, alone.
+            this.weight = (int) Math.min(permits, Math.max(1, (bytesPerHash + 1023) / 1024));
+            this.memory = new Semaphore(permits, true);
+        } else {
+            this.weight = 0;
+            this.memory = null;
+        }
+    }
+
+    public static int defaultWorkers() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Heap one hash needs with these settings: argon2's memory parameter, {@link #scryptBytes} for scrypt,
+     * a little for bcrypt and pbkdf2, plus a fixed overhead.
+     */
+    public static long bytesPerHash(JaasCfg cfg) {
+        long h;
+        try {
+            h = HashFormat.current(cfg);
+        } catch (IllegalStateException e) {
+            return OVERHEAD_BYTES; // not memory-hard as far as we know; the codec itself reports bad settings
+        }
+        switch (HashFormat.kind(h)) {
+            case HashFormat.ARGON2I:
+            case HashFormat.ARGON2D:
+            case HashFormat.ARGON2ID:
+                // 1 KiB blocks, each a long[128] with object and array headers.
+                return HashFormat.a(h) * 1056L + OVERHEAD_BYTES;
+            case HashFormat.SCRYPT:
+                return scryptBytes(1L << HashFormat.a(h), HashFormat.b(h), HashFormat.c(h)) + OVERHEAD_BYTES;
+            case HashFormat.BCRYPT:
+                return 4 * 1024 + OVERHEAD_BYTES;
+            default:
+                return OVERHEAD_BYTES;
+        }
+    }
+
+    /**
+     * Memory one scrypt hash with cost {@code n}, block size {@code r} and parallelization {@code p}
+     * allocates: the 128·r·N byte V array, 128·r·p bytes of B and two blocks of scratch. Bouncy
+     * Castle mixes the p lanes one after another, so V exists only once.
+     */
+    public static long scryptBytes(long n, long r, long p) {
+        return 128L * r * (n + p + 2);
+    }
+
+    /** A share of the heap not in use right now (the max heap already follows container limits). */
+    public static long defaultMemoryBudget() {
+        Runtime rt = Runtime.getRuntime();
+        long used = rt.totalMemory() - rt.freeMemory();
+        return (long) ((rt.maxMemory() - used) * DEFAULT_BUDGET_SHARE);
+    }
+
+    public int workers() {
+        return workers;
+    }
+
+    /** Hashes that can run at once: the worker count, or fewer if the memory budget says so. */
+    public int maxConcurrent() {
+        return memory == null ? workers : Math.min(workers, Math.max(1, (int) (budgetBytes / 1024 / weight)));
+    }
+
+    /** Tasks submitted but not started yet: waiting for a worker or for memory. */
+    public int queueDepth() {
+        return queued.get();
+    }
+
+    /** Total time workers spent waiting for memory before starting a hash. */
+    public long memoryWaitNanos() {
+        return memoryWaitNanos.sum();
+    }
+
+    public Stats stats() {
+        return new Stats(bytesPerHash, budgetBytes, maxConcurrent(), peakQueued.get(), memoryWaitNanos());
+    }
+
+    /** Submits a task, blocking while the pool is saturated. */
+    public <T> Future<T> submit(Callable<T> task) {
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a hashing slot.", e);
+        }
+        peakQueued.accumulateAndGet(queued.incrementAndGet(), Math::max);
+        try {
+            return pool.submit(() -> {
+                try {
+                    try {
+                        admit();
+                    } finally {
+                        queued.decrementAndGet();
+                    }
+                    try {
+                        return task.call();
+                    } finally {
+                        if (memory != null) memory.release(weight);
+                    }
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            queued.decrementAndGet();
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    private void admit() throws InterruptedException {
+        if (memory == null) {
+            return;
+        }
+        if (memory.tryAcquire(weight)) {
+            return;
+        }
+        long t0 = System.nanoTime();
+        memory.acquire(weight);
+        long waited = System.nanoTime() - t0;
+        memoryWaitNanos.add(waited);
+        Metrics.record(Metrics.Phase.HASH_MEMORY_WAIT, waited);
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+        try {
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ThreadFactory daemonThreads() {
+        AtomicInteger n = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, "karaf-users-hash-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
@@ -2,6 +2,8 @@ package com.example.karafusers.crypto;
 
 import java.util.Objects;
 
+import com.example.karafusers.metrics.Metrics;
+
 /**
  * Handles encoding and verification of stored passwords,
  * including optional prefix/suffix wrapping used by Karaf.
@@ -24,7 +26,10 @@ public final class KarafPasswordCodec {
         if (rawPassword == null || rawPassword.isEmpty()) {
             throw new IllegalArgumentException("Password cannot be empty.");
         }
+        long t0 = Metrics.start();
         String encoded = encoder.encode(rawPassword);
+        Metrics.stop(Metrics.Phase.HASH, t0);
+        Metrics.add(Metrics.Counter.HASHES, 1);
         return prefix + encoded + suffix;
     }
 
@@ -33,18 +38,15 @@ public final class KarafPasswordCodec {
         if (storedPassword == null || storedPassword.isEmpty()) return false;
 
         String inner = unwrap(storedPassword);
-        return encoder.matches(rawPassword, inner);
+        long t0 = Metrics.start();
+        boolean matches = encoder.matches(rawPassword, inner);
+        Metrics.stop(Metrics.Phase.HASH, t0);
+        Metrics.add(Metrics.Counter.HASHES, 1);
+        return matches;
     }
 
     public String unwrap(String storedPassword) {
-        String s = storedPassword;
-        if (!prefix.isEmpty() && s.startsWith(prefix)) {
-            s = s.substring(prefix.length());
-        }
-        if (!suffix.isEmpty() && s.endsWith(suffix)) {
-            s = s.substring(0, s.length() - suffix.length());
-        }
-        return s;
+        return PasswordWrapping.unwrap(storedPassword, prefix, suffix);
     }
 
     public String prefix() { return prefix; }
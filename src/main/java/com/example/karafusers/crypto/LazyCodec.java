@@ -0,0 +1,44 @@
+package com.example.karafusers.crypto;
+
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import com.example.karafusers.config.JaasCfg;
+
+/**
+ * The password codec, built from jaas.cfg on first {@link #get()}.
+ *
+ * Building it loads spring-security-crypto, seeds SecureRandom and, for argon2/scrypt, loads
+ * BouncyCastle; commands that never hash or verify (list, del, audit-hashes) never pay for
+ * that. This class itself only refers to {@link KarafPasswordCodec} and the factory by
+ * method calls, so loading it loads neither.
+ */
+public final class LazyCodec implements Supplier<KarafPasswordCodec> {
+
+    private final Supplier<JaasCfg> cfg;
+    private volatile KarafPasswordCodec codec;
+
+    public LazyCodec(Supplier<JaasCfg> cfg) {
+        this.cfg = Objects.requireNonNull(cfg, "cfg");
+    }
+
+    @Override
+    public KarafPasswordCodec get() {
+        KarafPasswordCodec c = codec;
+        if (c == null) {
+            synchronized (this) {
+                c = codec;
+                if (c == null) {
+                    c = PasswordEncoderFactory.shared(cfg.get());
+                    codec = c;
+                }
+            }
+        }
+        return c;
+    }
+
+    /** Whether the codec has been built (and the crypto classes loaded). */
+    public boolean isResolved() {
+        return codec != null;
+    }
+}
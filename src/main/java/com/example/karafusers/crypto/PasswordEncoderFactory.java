@@ -9,7 +9,9 @@ import org.springframework.security.crypto.password.Pbkdf2PasswordEncoder;
 import org.springframework.security.crypto.password.Pbkdf2PasswordEncoder.SecretKeyFactoryAlgorithm;
 
 import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Builds a password codec based on org.apache.karaf.jaas.cfg encryption settings.
@@ -17,13 +19,54 @@ import java.util.Objects;
  * Currently supports:
  * - encryption.name = spring-security-crypto
  *   encryption.algorithm = bcrypt|pbkdf2|scrypt|argon2
+ * - encryption.name = basic (Karaf's built-in unsalted digest)
+ *   encryption.algorithm = MD5|SHA-1|SHA-256|SHA-512|...
+ *   encryption.encoding = hexadecimal|base64
  *
- * You can extend this later for "basic" and "jasypt" providers.
+ * You can extend this later for the "jasypt" provider.
+ *
+ * {@link #from} builds a new codec; {@link #shared} hands out one codec per distinct set of
+ * {@code encryption.*} settings, so repeated operations in one process (daemon requests,
+ * fleet targets) skip encoder construction, SecretKeyFactory lookups and SecureRandom
+ * seeding. Codecs are immutable and the Spring encoders are thread-safe.
  */
 public final class PasswordEncoderFactory {
 
+    // Cost defaults, shared with HashFormat#current. Compile-time constants, so reading them
+    // does not load this class (and with it the Spring Security encoders).
+    public static final int DEFAULT_BCRYPT_STRENGTH = 10;
+    public static final int DEFAULT_PBKDF2_ITERATIONS = 310_000;
+    public static final int DEFAULT_PBKDF2_SALT_LENGTH = 16;
+    public static final int DEFAULT_SCRYPT_CPU_COST = 1 << 14;
+    public static final int DEFAULT_SCRYPT_MEMORY_COST = 8;
+    public static final int DEFAULT_SCRYPT_PARALLELIZATION = 1;
+    public static final int DEFAULT_ARGON2_PARALLELISM = 1;
+    public static final int DEFAULT_ARGON2_MEMORY = 1 << 16; // in KiB
+    public static final int DEFAULT_ARGON2_ITERATIONS = 3;
+
+    /** Distinct settings kept by {@link #shared}; more than a handful only happens in a fleet run. */
+    private static final int MAX_SHARED = 32;
+
+    private static final Map<Map<String, String>, KarafPasswordCodec> SHARED = new ConcurrentHashMap<>();
+
     private PasswordEncoderFactory() {}
 
+    /** The codec for these settings, built on first use and then reused. */
+    public static KarafPasswordCodec shared(JaasCfg cfg) {
+        Objects.requireNonNull(cfg, "cfg");
+        Map<String, String> key = cfg.encryptionSettings();
+        KarafPasswordCodec codec = SHARED.get(key);
+        if (codec != null) {
+            return codec;
+        }
+        codec = from(cfg);
+        if (SHARED.size() >= MAX_SHARED) {
+            SHARED.clear();
+        }
+        KarafPasswordCodec raced = SHARED.putIfAbsent(key, codec);
+        return raced != null ? raced : codec;
+    }
+
     public static KarafPasswordCodec from(JaasCfg cfg) {
         Objects.requireNonNull(cfg, "cfg");
 
@@ -41,14 +84,31 @@ public final class PasswordEncoderFactory {
             case "spring-security-crypto":
                 return new KarafPasswordCodec(buildSpringCrypto(cfg), prefix, suffix);
 
+            case "basic":
+                return new KarafPasswordCodec(buildBasic(cfg), prefix, suffix);
+
             default:
                 throw new IllegalStateException(
                         "Unsupported encryption provider '" + provider + "'. " +
-                        "Supported: spring-security-crypto (for now)."
+                        "Supported: spring-security-crypto, basic."
                 );
         }
     }
 
+    private static PasswordEncoder buildBasic(JaasCfg cfg) {
+        // Karaf requires the digest algorithm; the encoding defaults to hexadecimal.
+        String algo = cfg.encryptionAlgorithm()
+                .orElseThrow(() -> new IllegalStateException(
+                        "Missing 'encryption.algorithm' for encryption.name=basic in jaas.cfg. " +
+                        "Expected a digest such as MD5, SHA-1, SHA-256 or SHA-512."
+                ));
+        BasicPasswordEncoder.Encoding encoding = cfg.opt("encryption.encoding")
+                .filter(s -> !s.isBlank())
+                .map(BasicPasswordEncoder.Encoding::parse)
+                .orElse(BasicPasswordEncoder.Encoding.HEXADECIMAL);
+        return new BasicPasswordEncoder(algo, encoding);
+    }
+
     private static PasswordEncoder buildSpringCrypto(JaasCfg cfg) {
         String algo = cfg.encryptionAlgorithm()
                 .orElseThrow(() -> new IllegalStateException(
@@ -61,7 +121,7 @@ public final class PasswordEncoderFactory {
         switch (algo) {
             case "bcrypt":
                 // Optional: encryption.bcrypt.strength (default 10)
-                int strength = cfg.optInt("encryption.bcrypt.strength").orElse(10);
+                int strength = cfg.optInt("encryption.bcrypt.strength").orElse(DEFAULT_BCRYPT_STRENGTH);
                 return new BCryptPasswordEncoder(strength);
 
             case "pbkdf2":
@@ -73,9 +133,9 @@ public final class PasswordEncoderFactory {
                 // - encryption.pbkdf2.saltLength
                 // - encryption.pbkdf2.algorithm (e.g. PBKDF2WithHmacSHA256)
                 String secret = cfg.opt("encryption.pbkdf2.secret").orElse("");
-                int iterations = cfg.optInt("encryption.pbkdf2.iterations").orElse(310_000);
+                int iterations = cfg.optInt("encryption.pbkdf2.iterations").orElse(DEFAULT_PBKDF2_ITERATIONS);
                 //int hashWidth = cfg.optInt("encryption.pbkdf2.hashWidth").orElse(256);
-                int saltLength = cfg.optInt("encryption.pbkdf2.saltLength").orElse(16);
+                int saltLength = cfg.optInt("encryption.pbkdf2.saltLength").orElse(DEFAULT_PBKDF2_SALT_LENGTH);
                 String pbkdf2Alg = cfg.opt("encryption.pbkdf2.algorithm").orElse("PBKDF2WithHmacSHA256");
                 SecretKeyFactoryAlgorithm skfa = Pbkdf2PasswordEncoder.SecretKeyFactoryAlgorithm.valueOf(normalizePbkdf2Alg(pbkdf2Alg));
 
@@ -92,9 +152,9 @@ public final class PasswordEncoderFactory {
                 // - encryption.scrypt.parallelization
                 // - encryption.scrypt.keyLength
                 // - encryption.scrypt.saltLength
-                int cpuCost = cfg.optInt("encryption.scrypt.cpuCost").orElse(1 << 14);
-                int memoryCost = cfg.optInt("encryption.scrypt.memoryCost").orElse(8);
-                int parallelization = cfg.optInt("encryption.scrypt.parallelization").orElse(1);
+                int cpuCost = cfg.optInt("encryption.scrypt.cpuCost").orElse(DEFAULT_SCRYPT_CPU_COST);
+                int memoryCost = cfg.optInt("encryption.scrypt.memoryCost").orElse(DEFAULT_SCRYPT_MEMORY_COST);
+                int parallelization = cfg.optInt("encryption.scrypt.parallelization").orElse(DEFAULT_SCRYPT_PARALLELIZATION);
                 int keyLength = cfg.optInt("encryption.scrypt.keyLength").orElse(32);
                 int scryptSaltLength = cfg.optInt("encryption.scrypt.saltLength").orElse(16);
 
@@ -109,9 +169,9 @@ public final class PasswordEncoderFactory {
                 // - encryption.argon2.iterations
                 int argonSaltLength = cfg.optInt("encryption.argon2.saltLength").orElse(16);
                 int argonHashLength = cfg.optInt("encryption.argon2.hashLength").orElse(32);
-                int argonParallelism = cfg.optInt("encryption.argon2.parallelism").orElse(1);
-                int argonMemory = cfg.optInt("encryption.argon2.memory").orElse(1 << 16); // in KiB
-                int argonIterations = cfg.optInt("encryption.argon2.iterations").orElse(3);
+                int argonParallelism = cfg.optInt("encryption.argon2.parallelism").orElse(DEFAULT_ARGON2_PARALLELISM);
+                int argonMemory = cfg.optInt("encryption.argon2.memory").orElse(DEFAULT_ARGON2_MEMORY);
+                int argonIterations = cfg.optInt("encryption.argon2.iterations").orElse(DEFAULT_ARGON2_ITERATIONS);
 
                 return new Argon2PasswordEncoder(argonSaltLength, argonHashLength, argonParallelism, argonMemory, argonIterations);
 
@@ -0,0 +1,25 @@
+package com.example.karafusers.crypto;
+
+/**
+ * Karaf's {@code encryption.prefix}/{@code encryption.suffix} around stored hashes. Karaf treats a
+ * value as encrypted only when it carries both, so that is the single definition of "wrapped"
+ * shared by {@link KarafPasswordCodec} and {@link HashFormat}. Kept free of spring-security-crypto
+ * so the audit can use it without loading the encoders.
+ */
+public final class PasswordWrapping {
+
+    private PasswordWrapping() {}
+
+    /** Whether {@code stored} starts with {@code prefix} and ends with {@code suffix}; always true with no wrapping configured. */
+    public static boolean isWrapped(String stored, String prefix, String suffix) {
+        return stored.length() >= prefix.length() + suffix.length()
+                && stored.startsWith(prefix)
+                && stored.endsWith(suffix);
+    }
+
+    /** The hash inside the wrapping, or {@code stored} itself when it is not wrapped. */
+    public static String unwrap(String stored, String prefix, String suffix) {
+        if (!isWrapped(stored, prefix, suffix)) return stored;
+        return stored.substring(prefix.length(), stored.length() - suffix.length());
+    }
+}
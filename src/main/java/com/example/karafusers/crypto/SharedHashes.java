@@ -0,0 +1,49 @@
+package com.example.karafusers.crypto;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import com.example.karafusers.config.JaasCfg;
+
+/**
+ * Encoded passwords shared between the targets of one fleet run.
+ *
+ * Targets whose jaas.cfg encryption settings are identical would store the same kind of
+ * hash for the same password, so it is computed once and reused: the stored strings are
+ * then identical, salt included. That reveals nothing beyond what the shared password
+ * already implies, and turns 150 argon2 runs into one. Targets with different settings
+ * (cost, algorithm, prefix) each get their own hash. Raw passwords are only held in memory
+ * for the duration of the run.
+ */
+public final class SharedHashes {
+
+    private record Key(Map<String, String> settings, String rawPassword) {}
+
+    private final ConcurrentHashMap<Key, CompletableFuture<String>> hashes = new ConcurrentHashMap<>();
+
+    /** The encoded form of {@code rawPassword} under {@code cfg}, computed by {@code encoder} at most once. */
+    public String encode(JaasCfg cfg, String rawPassword, Supplier<String> encoder) {
+        Key key = new Key(cfg.encryptionSettings(), rawPassword);
+        CompletableFuture<String> mine = new CompletableFuture<>();
+        CompletableFuture<String> existing = hashes.putIfAbsent(key, mine);
+        if (existing == null) {
+            try {
+                mine.complete(encoder.get());
+            } catch (RuntimeException e) {
+                // Not cached: another target may fail differently (or succeed) on its own.
+                hashes.remove(key, mine);
+                mine.completeExceptionally(e);
+                throw e;
+            }
+            return mine.join();
+        }
+        try {
+            return existing.join();
+        } catch (CompletionException e) {
+            return encoder.get();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.karafusers.daemon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+
+import com.example.karafusers.cli.ExitCodes;
+
+/**
+ * Thin client: forwards argv to a running {@link DaemonServer} and replays its output.
+ *
+ * Deliberately free of picocli and crypto so a forwarded call only pays JVM startup.
+ */
+public final class DaemonClient {
+
+    /** When set, the CLI forwards every call (except 'serve') to the daemon on this socket. */
+    public static final String ENV_SOCKET = "KARAF_USERS_SOCKET";
+
+    private DaemonClient() {}
+
+    /** Returns the daemon's exit code, or {@link ExitCodes#IO_ERROR} if it cannot be reached. */
+    public static int forward(Path socket, String[] args, PrintStream out, PrintStream err) {
+        try (SocketChannel ch = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            ch.connect(UnixDomainSocketAddress.of(socket));
+            DataOutputStream req = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(ch)));
+            DataInputStream resp = new DataInputStream(new BufferedInputStream(Channels.newInputStream(ch), 1 << 16));
+
+            DaemonProtocol.writeArgs(req, args);
+
+            byte[] buf = new byte[8192];
+            while (true) {
+                byte type = resp.readByte();
+                int len = resp.readInt();
+                if (type == DaemonProtocol.EXIT) {
+                    out.flush();
+                    err.flush();
+                    return resp.readInt();
+                }
+                PrintStream target = type == DaemonProtocol.STDERR ? err : out;
+                while (len > 0) {
+                    int n = resp.read(buf, 0, Math.min(buf.length, len));
+                    if (n < 0) throw new IOException("Daemon closed the connection.");
+                    target.write(buf, 0, n);
+                    len -= n;
+                }
+            }
+        } catch (IOException e) {
+            err.println("ERROR: cannot reach karaf-users daemon on " + socket + ": " + e.getMessage());
+            return ExitCodes.IO_ERROR;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.karafusers.daemon;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * Wire format between {@link DaemonClient} and {@link DaemonServer}.
+ *
+ * Request: int argc, then argc UTF-8 strings (int length + bytes).
+ * Response: a sequence of frames {@code [type:1][length:4][payload]}: stdout and stderr
+ * chunks as the command produces them, then one exit frame carrying the exit code.
+ */
+final class DaemonProtocol {
+
+    static final byte STDOUT = 1;
+    static final byte STDERR = 2;
+    static final byte EXIT = 3;
+
+    /** Upper bound on argv, so a misbehaving peer cannot make the daemon allocate without limit. */
+    private static final int MAX_ARGS = 4096;
+    private static final int MAX_ARG_BYTES = 1 << 20;
+
+    /** Socket file name, created next to users.properties. */
+    static final String DEFAULT_SOCKET_NAME = ".karaf-users.sock";
+
+    private DaemonProtocol() {}
+
+    static Path defaultSocket(Path usersFile) {
+        Path dir = usersFile.getParent();
+        return dir == null ? Path.of(DEFAULT_SOCKET_NAME) : dir.resolve(DEFAULT_SOCKET_NAME);
+    }
+
+    static void writeArgs(DataOutputStream out, String[] args) throws IOException {
+        out.writeInt(args.length);
+        for (String a : args) {
+            byte[] b = a.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(b.length);
+            out.write(b);
+        }
+        out.flush();
+    }
+
+    static String[] readArgs(DataInputStream in) throws IOException {
+        int argc = in.readInt();
+        if (argc < 0 || argc > MAX_ARGS) throw new IOException("Invalid argument count: " + argc);
+        String[] args = new String[argc];
+        for (int i = 0; i < argc; i++) {
+            int len = in.readInt();
+            if (len < 0 || len > MAX_ARG_BYTES) throw new IOException("Invalid argument length: " + len);
+            byte[] b = new byte[len];
+            in.readFully(b);
+            args[i] = new String(b, StandardCharsets.UTF_8);
+        }
+        return args;
+    }
+
+    static void writeFrame(DataOutputStream out, byte type, byte[] b, int off, int len) throws IOException {
+        out.writeByte(type);
+        out.writeInt(len);
+        out.write(b, off, len);
+    }
+
+    static void writeExit(DataOutputStream out, int code) throws IOException {
+        out.writeByte(EXIT);
+        out.writeInt(4);
+        out.writeInt(code);
+        out.flush();
+    }
+
+    /** OutputStream that turns every flushed chunk into one frame of the given type. */
+    static final class FrameOutputStream extends OutputStream {
+        private final DataOutputStream out;
+        private final byte type;
+
+        FrameOutputStream(DataOutputStream out, byte type) {
+            this.out = out;
+            this.type = type;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return;
+            synchronized (out) {
+                writeFrame(out, type, b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (out) {
+                out.flush();
+            }
+        }
+    }
+}
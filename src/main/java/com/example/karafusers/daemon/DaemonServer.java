@@ -0,0 +1,252 @@
+package com.example.karafusers.daemon;
+
+import com.example.karafusers.cli.ExitCodes;
+import com.example.karafusers.io.FileSecurity;
+import jdk.net.ExtendedSocketOptions;
+import jdk.net.UnixDomainPrincipal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Keeps one warm JVM serving {@code user add/del/edit/list} requests over a Unix domain socket.
+ *
+ * The socket is created 0600 through {@link FileSecurity}, and peers running as another OS
+ * user are refused. The users.properties / jaas.cfg paths are pinned by the server: requests
+ * cannot point it at another etc directory. Requests are served one at a time, which also
+ * serialises writers to users.properties.
+ */
+public final class DaemonServer {
+
+    /** Executes one command line and returns its exit code. */
+    @FunctionalInterface
+    public interface CommandRunner {
+        int run(String[] args, PrintWriter out, PrintWriter err);
+    }
+
+    private static final Set<String> ALLOWED_USER_COMMANDS = Set.of("add", "del", "edit", "list");
+    private static final Set<String> ROOT_FLAGS = Set.of("--backup", "--dry-run", "--verbose", "--debug", "--journal", "--index", "--optimistic", "--metrics", "--diff");
+    private static final Set<String> HELP_FLAGS = Set.of("-h", "--help", "-V", "--version");
+    private static final Set<String> PINNED_OPTIONS = Set.of("--users-file", "--jaas-cfg");
+
+    private final Path socket;
+    private final List<String> pinnedArgs;
+    private final CommandRunner runner;
+    private final PrintWriter log;
+
+    public DaemonServer(Path socket, List<String> pinnedArgs, CommandRunner runner, PrintWriter log) {
+        this.socket = Objects.requireNonNull(socket, "socket");
+        this.pinnedArgs = List.copyOf(pinnedArgs);
+        this.runner = Objects.requireNonNull(runner, "runner");
+        this.log = Objects.requireNonNull(log, "log");
+    }
+
+    public static Path defaultSocket(Path usersFile) {
+        return DaemonProtocol.defaultSocket(usersFile);
+    }
+
+    /** Binds the socket and serves requests until the JVM is stopped. */
+    public void serve() throws IOException {
+        removeStaleSocket();
+
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            bindPrivately(server);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    Files.deleteIfExists(socket);
+                } catch (IOException ignored) {
+                    // best effort
+                }
+            }, "karaf-users-serve-cleanup"));
+
+            String owner = Files.getOwner(socket).getName();
+            log.println("Serving on " + socket);
+            log.flush();
+
+            while (true) {
+                try (SocketChannel ch = server.accept()) {
+                    if (!isSameUser(ch, owner)) {
+                        log.println("Refused connection from another OS user.");
+                        log.flush();
+                        continue;
+                    }
+                    handle(ch);
+                } catch (IOException e) {
+                    log.println("Request failed: " + e.getMessage());
+                    log.flush();
+                }
+            }
+        }
+    }
+
+    private void handle(SocketChannel ch) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(ch)));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(ch), 1 << 16));
+
+        String[] args = DaemonProtocol.readArgs(in);
+
+        PrintWriter stdout = new PrintWriter(new OutputStreamWriter(
+                new DaemonProtocol.FrameOutputStream(out, DaemonProtocol.STDOUT), StandardCharsets.UTF_8));
+        PrintWriter stderr = new PrintWriter(new OutputStreamWriter(
+                new DaemonProtocol.FrameOutputStream(out, DaemonProtocol.STDERR), StandardCharsets.UTF_8));
+
+        int code;
+        String rejection = rejectionReason(args);
+        if (rejection != null) {
+            stderr.println("ERROR: " + rejection);
+            code = ExitCodes.USAGE;
+        } else {
+            List<String> full = new ArrayList<>(pinnedArgs);
+            full.addAll(Arrays.asList(args));
+            code = runner.run(full.toArray(new String[0]), stdout, stderr);
+        }
+        stdout.flush();
+        stderr.flush();
+        DaemonProtocol.writeExit(out, code);
+    }
+
+    /**
+     * Only 'user add/del/edit/list' (and help/version) are served, and only in forms that never
+     * prompt: a prompt would read the daemon's terminal, not the client's. Returns null when allowed.
+     */
+    static String rejectionReason(String[] args) {
+        List<String> commands = new ArrayList<>(2);
+        int subcommandEnd = args.length;
+        boolean help = false;
+        for (int i = 0; i < args.length; i++) {
+            String a = args[i];
+            String name = a.contains("=") ? a.substring(0, a.indexOf('=')) : a;
+            if (PINNED_OPTIONS.contains(name)) {
+                return name + " is fixed by the daemon; start another 'serve' for another etc directory.";
+            }
+            if (HELP_FLAGS.contains(a)) help = true;
+            if (!a.startsWith("-") && commands.size() < 2) {
+                commands.add(a);
+                if (commands.size() == 2) subcommandEnd = i + 1;
+            } else if (commands.isEmpty() && a.startsWith("-") && !ROOT_FLAGS.contains(name) && !HELP_FLAGS.contains(a)) {
+                return "Option not supported by the daemon: " + a;
+            }
+        }
+        if (commands.isEmpty()) {
+            return help ? null : "No command given.";
+        }
+        if (!commands.get(0).equals("user")) {
+            return "Command not served by the daemon: " + commands.get(0);
+        }
+        if (commands.size() > 1 && !ALLOWED_USER_COMMANDS.contains(commands.get(1))) {
+            return "Command not served by the daemon: user " + commands.get(1);
+        }
+        if (commands.size() < 2 || help) {
+            return null;
+        }
+        return promptReason(commands.get(1), Arrays.asList(args).subList(subcommandEnd, args.length));
+    }
+
+    /** Why the subcommand would prompt with these options, or null if it would not. */
+    private static String promptReason(String command, List<String> args) {
+        switch (command) {
+            case "add":
+                if (!hasValue(args, "-u", "--username")) return "'user add' needs -u through the daemon (it cannot prompt).";
+                if (!hasValue(args, "-p", "--password")) return "'user add' needs -p through the daemon (it cannot prompt).";
+                return null;
+            case "del":
+                if (!hasValue(args, "-u", "--username")) return "'user del' needs -u through the daemon (it cannot prompt).";
+                if (!hasFlag(args, "-f", "--force")) return "'user del' needs --force through the daemon (it cannot ask for confirmation).";
+                return null;
+            case "edit":
+                if (!hasValue(args, "-u", "--username")) return "'user edit' needs -u through the daemon (it cannot prompt).";
+                if (hasFlag(args, null, "--set-password")) return "'user edit --set-password' prompts; use --password through the daemon.";
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    /** Whether an option is given a non-blank value ({@code -u x}, {@code -ux}, {@code -u=x}, {@code --username=x}). */
+    private static boolean hasValue(List<String> args, String shortName, String longName) {
+        for (int i = 0; i < args.size(); i++) {
+            String a = args.get(i);
+            if (a.equals("--")) break;
+            String value = null;
+            if (a.equals(shortName) || a.equals(longName)) {
+                value = i + 1 < args.size() ? args.get(i + 1) : null;
+            } else if (a.startsWith(longName + "=")) {
+                value = a.substring(longName.length() + 1);
+            } else if (a.startsWith(shortName) && !a.startsWith("--")) {
+                value = a.substring(shortName.length());
+                if (value.startsWith("=")) value = value.substring(1);
+            }
+            if (value != null && !value.isBlank()) return true;
+        }
+        return false;
+    }
+
+    private static boolean hasFlag(List<String> args, String shortName, String longName) {
+        for (String a : args) {
+            if (a.equals("--")) break;
+            if (a.equals(longName) || (shortName != null && a.equals(shortName))) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Binds in a fresh 0700 directory, restricts the socket to 0600 and only then renames it to
+     * its public path: the socket is never reachable while it still has umask permissions.
+     */
+    private void bindPrivately(ServerSocketChannel server) throws IOException {
+        Path dir = socket.getParent() == null ? Path.of(".") : socket.getParent();
+        Path privateDir = Files.createTempDirectory(dir, ".karaf-users-",
+                PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        Path staging = privateDir.resolve("s");
+        try {
+            server.bind(UnixDomainSocketAddress.of(staging));
+            FileSecurity.enforce0600(staging);
+            Files.move(staging, socket, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(staging);
+            Files.delete(privateDir);
+        }
+    }
+
+    private static boolean isSameUser(SocketChannel ch, String owner) {
+        try {
+            UnixDomainPrincipal peer = ch.getOption(ExtendedSocketOptions.SO_PEERCRED);
+            return peer.user().getName().equals(owner);
+        } catch (UnsupportedOperationException | IOException e) {
+            // No peer credentials on this platform: the 0600 socket file is the only gate.
+            return true;
+        }
+    }
+
+    private void removeStaleSocket() throws IOException {
+        if (!Files.exists(socket)) return;
+        try {
+            SocketChannel.open(UnixDomainSocketAddress.of(socket)).close();
+        } catch (IOException e) {
+            // Nobody listening: leftover from a crashed daemon.
+            Files.delete(socket);
+            return;
+        }
+        throw new IllegalStateException("A daemon is already serving on " + socket);
+    }
+}
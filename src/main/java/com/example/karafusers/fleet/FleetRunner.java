@@ -0,0 +1,184 @@
+package com.example.karafusers.fleet;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.example.karafusers.cli.ExitCodes;
+import com.example.karafusers.crypto.SharedHashes;
+
+/**
+ * Runs one command line against many etc directories at once.
+ *
+ * Each target is a full, independent run (security checks, lock, backup, mutation, atomic
+ * replace) with its own output buffers; at most {@code parallelism} run at a time. The work
+ * is mostly file I/O and waiting on locks, so targets run on virtual threads where the JVM
+ * has them (21+, looked up reflectively since the build targets 17) and on a pool of
+ * {@code parallelism} platform threads otherwise. Password hashes are shared through one
+ * {@link SharedHashes}, so identical jaas.cfg settings cost one hash for the whole fleet.
+ */
+public final class FleetRunner {
+
+    /** Runs the CLI for one target; {@code shared} must reach the target's RootCommand. */
+    @FunctionalInterface
+    public interface TargetRunner {
+        int run(String[] args, SharedHashes shared, PrintWriter out, PrintWriter err);
+    }
+
+    public record Result(Path etc, int exitCode, String out, String err, long nanos) {}
+
+    /** Root options that select or report on the fleet; they are not passed to targets. */
+    private static final Set<String> FLEET_OPTIONS = Set.of("--etc-glob", "--targets-file", "--fleet-parallelism", "--metrics-file");
+
+    private final int parallelism;
+    private final TargetRunner runner;
+
+    public FleetRunner(int parallelism, TargetRunner runner) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("--fleet-parallelism must be >= 1, got " + parallelism);
+        }
+        this.parallelism = parallelism;
+        this.runner = runner;
+    }
+
+    /** Results in target order. */
+    public List<Result> run(List<Path> targets, List<String> args) {
+        SharedHashes shared = new SharedHashes();
+        Semaphore slots = new Semaphore(parallelism);
+        List<Future<Result>> futures = new ArrayList<>(targets.size());
+        ExecutorService executor = executor(parallelism);
+        try {
+            for (Path etc : targets) {
+                String[] targetArgs = targetArgs(etc, args);
+                futures.add(executor.submit(() -> {
+                    slots.acquire();
+                    try {
+                        return runOne(etc, targetArgs, shared);
+                    } finally {
+                        slots.release();
+                    }
+                }));
+            }
+            List<Result> results = new ArrayList<>(futures.size());
+            for (int i = 0; i < futures.size(); i++) {
+                results.add(await(futures.get(i), targets.get(i)));
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Result runOne(Path etc, String[] args, SharedHashes shared) {
+        StringWriter out = new StringWriter();
+        StringWriter err = new StringWriter();
+        long t0 = System.nanoTime();
+        int code;
+        try (PrintWriter o = new PrintWriter(out); PrintWriter e = new PrintWriter(err)) {
+            code = runner.run(args, shared, o, e);
+        }
+        return new Result(etc, code, out.toString(), err.toString(), System.nanoTime() - t0);
+    }
+
+    private static Result await(Future<Result> f, Path etc) {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for " + etc, e);
+        } catch (ExecutionException e) {
+            return new Result(etc, ExitCodes.SOFTWARE, "", "ERROR: " + e.getCause(), 0);
+        }
+    }
+
+    /** The command line for one target: its files pinned, fleet options dropped. */
+    static String[] targetArgs(Path etc, List<String> args) {
+        List<String> out = new ArrayList<>(args.size() + 4);
+        out.add("--users-file");
+        out.add(etc.resolve("users.properties").toString());
+        out.add("--jaas-cfg");
+        out.add(etc.resolve("org.apache.karaf.jaas.cfg").toString());
+        for (int i = 0; i < args.size(); i++) {
+            String a = args.get(i);
+            String name = a.contains("=") ? a.substring(0, a.indexOf('=')) : a;
+            if (name.equals("--users-file") || name.equals("--jaas-cfg")) {
+                throw new IllegalArgumentException(name + " cannot be combined with --etc-glob/--targets-file: each target uses its own etc directory.");
+            }
+            if (FLEET_OPTIONS.contains(name)) {
+                if (!a.contains("=")) i++; // skip the value
+                continue;
+            }
+            if (name.equals("--metrics")) {
+                // Reported once for the whole fleet; the optional value may follow as its own token.
+                if (!a.contains("=") && i + 1 < args.size() && Set.of("json", "prometheus").contains(args.get(i + 1))) i++;
+                continue;
+            }
+            out.add(a);
+        }
+        return out.toArray(new String[0]);
+    }
+
+    /**
+     * Prints each target's output under a header, then a result table. Returns the highest
+     * exit code of any target (0 if all succeeded).
+     */
+    public static int report(List<Result> results, PrintWriter out) {
+        int width = "TARGET".length();
+        for (Result r : results) {
+            width = Math.max(width, r.etc().toString().length());
+        }
+        for (Result r : results) {
+            if (!r.out().isEmpty()) {
+                out.println("== " + r.etc());
+                out.print(r.out().endsWith("\n") ? r.out() : r.out() + "\n");
+            }
+        }
+
+        int worst = ExitCodes.OK;
+        out.println(String.format("%-" + width + "s  %4s  %8s  %s", "TARGET", "EXIT", "TIME", "RESULT"));
+        for (Result r : results) {
+            out.println(String.format("%-" + width + "s  %4d  %5d ms  %s",
+                    r.etc(), r.exitCode(), r.nanos() / 1_000_000, summary(r)));
+            worst = Math.max(worst, r.exitCode());
+        }
+        long failed = results.stream().filter(r -> r.exitCode() != ExitCodes.OK).count();
+        out.println(results.size() + " target(s), " + failed + " failed.");
+        return worst;
+    }
+
+    /** "ok", or the first error line of a failed target. */
+    private static String summary(Result r) {
+        if (r.exitCode() == ExitCodes.OK) {
+            return "ok";
+        }
+        for (String line : r.err().split("\n")) {
+            if (!line.isBlank()) return line.strip();
+        }
+        return "failed";
+    }
+
+    /** Virtual threads when available (JDK 21+), else a bounded platform pool. */
+    private static ExecutorService executor(int parallelism) {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger n = new AtomicInteger();
+            return Executors.newFixedThreadPool(parallelism, r -> {
+                Thread t = new Thread(r, "karaf-users-fleet-" + n.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.karafusers.fleet;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+/**
+ * Resolves the etc directories of a fleet run from --etc-glob and/or --targets-file.
+ */
+public final class FleetTargets {
+
+    private FleetTargets() {}
+
+    /** Sorted, de-duplicated absolute etc directories; IllegalArgumentException if there are none. */
+    public static List<Path> resolve(String etcGlob, Path targetsFile) throws IOException {
+        TreeSet<Path> targets = new TreeSet<>();
+        if (etcGlob != null) {
+            targets.addAll(glob(etcGlob));
+        }
+        if (targetsFile != null) {
+            targets.addAll(read(targetsFile));
+        }
+        if (targets.isEmpty()) {
+            throw new IllegalArgumentException("No etc directories matched"
+                    + (etcGlob != null ? " --etc-glob " + etcGlob : "")
+                    + (targetsFile != null ? " --targets-file " + targetsFile : "") + ".");
+        }
+        return new ArrayList<>(targets);
+    }
+
+    /** Directories matching an absolute or relative glob such as {@code /opt/karaf-*}{@code /etc}. */
+    static List<Path> glob(String pattern) throws IOException {
+        Path full = Path.of(pattern).toAbsolutePath().normalize();
+
+        // Walk from the deepest directory without wildcards, only as deep as the pattern reaches.
+        Path base = full.getRoot();
+        int depth = 0;
+        boolean wild = false;
+        for (Path segment : full) {
+            String s = segment.toString();
+            if (!wild && !s.matches(".*[*?\\[{].*")) {
+                base = base.resolve(s);
+            } else {
+                wild = true;
+                depth = s.contains("**") ? Integer.MAX_VALUE : depth == Integer.MAX_VALUE ? depth : depth + 1;
+            }
+        }
+        if (!wild) {
+            return Files.isDirectory(full) ? List.of(full) : List.of();
+        }
+        if (!Files.isDirectory(base)) {
+            return List.of();
+        }
+
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + full);
+        try (Stream<Path> paths = Files.walk(base, depth)) {
+            return paths.filter(p -> matcher.matches(p) && Files.isDirectory(p)).toList();
+        }
+    }
+
+    /** One etc directory per line, relative ones resolved against the file's directory. */
+    static List<Path> read(Path targetsFile) throws IOException {
+        Path dir = targetsFile.toAbsolutePath().getParent();
+        List<Path> targets = new ArrayList<>();
+        for (String line : Files.readAllLines(targetsFile, StandardCharsets.UTF_8)) {
+            int hash = line.indexOf('#');
+            String entry = (hash >= 0 ? line.substring(0, hash) : line).trim();
+            if (!entry.isEmpty()) {
+                targets.add(dir.resolve(entry).normalize());
+            }
+        }
+        return targets;
+    }
+}
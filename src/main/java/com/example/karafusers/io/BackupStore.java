@@ -0,0 +1,359 @@
+package com.example.karafusers.io;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.example.karafusers.metrics.Metrics;
+
+/**
+ * Content-addressed backups of one file, kept in a 0700 directory next to it
+ * ({@code users.properties.backups/}).
+ *
+ * Each snapshot is stored once under its SHA-256 ({@code objects/<sha256>}); taking a backup
+ * of unchanged content only appends a line to {@code index}, which numbers generations, so
+ * two backups in the same second do not collide. {@link #maintain} gzips every object but
+ * the newest and prunes generations beyond the retention policy. Listing and restoring read
+ * the index only, never the directory.
+ *
+ * Index lines are {@code generation epochMillis sha256 size raw|gz}. Writers serialise on
+ * {@code .lock} in the store directory.
+ */
+public final class BackupStore {
+
+    /** One backup: its number, when it was taken, and the content it refers to. */
+    public record Generation(long id, Instant created, String sha256, long size, boolean compressed) {}
+
+    /**
+     * Keep at most {@code keep} generations and none older than {@code maxAge} (null: no age
+     * limit). The newest generation is always kept.
+     */
+    public record Retention(int keep, Duration maxAge) {
+        public Retention {
+            if (keep < 1) {
+                throw new IllegalArgumentException("Backups to keep must be >= 1, got " + keep);
+            }
+        }
+
+        /** Parses an age such as {@code 30d}, {@code 12h}, {@code 90m} or an ISO-8601 duration. */
+        public static Duration parseAge(String s) {
+            String v = s.trim().toLowerCase(Locale.ROOT);
+            try {
+                if (v.startsWith("p")) return Duration.parse(v.toUpperCase(Locale.ROOT));
+                long n = Long.parseLong(v.substring(0, v.length() - 1));
+                switch (v.charAt(v.length() - 1)) {
+                    case 'd': return Duration.ofDays(n);
+                    case 'h': return Duration.ofHours(n);
+                    case 'm': return Duration.ofMinutes(n);
+                    default: break;
+                }
+            } catch (RuntimeException e) {
+                // reported below
+            }
+            throw new IllegalArgumentException("Invalid backup age '" + s + "'. Use e.g. 30d, 12h, 90m or PT36H.");
+        }
+    }
+
+    private static final String INDEX_HEADER = "# karaf-users backup index v1";
+    private static final Duration LOCK_TIMEOUT = Duration.ofSeconds(30);
+
+    private final Path dir;
+    private final Path objects;
+    private final Path index;
+
+    public BackupStore(Path file) {
+        this.dir = dirFor(file);
+        this.objects = dir.resolve("objects");
+        this.index = dir.resolve("index");
+    }
+
+    public static Path dirFor(Path file) {
+        return file.resolveSibling(file.getFileName() + ".backups");
+    }
+
+    public Path dir() {
+        return dir;
+    }
+
+    /** Snapshots the current content of {@code file}: one streamed copy, or none if that content is stored already. */
+    @SuppressWarnings("try") // the lock is held, never referenced
+    public Generation backup(Path file) throws IOException {
+        long t0 = Metrics.start();
+        ensureDirectories();
+        try (LockFile ignored = lock()) {
+            Path tmp = Files.createTempFile(objects, "incoming", ".tmp", FileSecurity.attr0600());
+            try {
+                MessageDigest sha = sha256();
+                long size;
+                try (InputStream in = new DigestInputStream(Files.newInputStream(file), sha);
+                     OutputStream out = Files.newOutputStream(tmp)) {
+                    size = in.transferTo(out); // into the 0600 temp file, not a fresh one
+                }
+                String hash = HexFormat.of().formatHex(sha.digest());
+                boolean compressed = Files.exists(objects.resolve(hash + ".gz"));
+                if (!compressed && !Files.exists(objects.resolve(hash))) {
+                    move(tmp, objects.resolve(hash));
+                    tmp = null;
+                }
+                List<Generation> all = readIndex();
+                long id = all.isEmpty() ? 1 : all.get(all.size() - 1).id() + 1;
+                Generation g = new Generation(id, Instant.now(), hash, size, compressed);
+                appendIndex(g);
+                return g;
+            } finally {
+                if (tmp != null) Files.deleteIfExists(tmp);
+                Metrics.stop(Metrics.Phase.BACKUP, t0);
+            }
+        }
+    }
+
+    /** All generations, oldest first. */
+    public List<Generation> list() throws IOException {
+        return readIndex();
+    }
+
+    /** The given generation, or the newest one when {@code id} is null. */
+    public Generation find(Long id) throws IOException {
+        List<Generation> all = readIndex();
+        if (all.isEmpty()) {
+            throw new IllegalStateException("No backups in " + dir + ".");
+        }
+        if (id == null) {
+            return all.get(all.size() - 1);
+        }
+        for (Generation g : all) {
+            if (g.id() == id) return g;
+        }
+        throw new IllegalArgumentException("No backup generation " + id + " in " + dir + " (see 'backup list').");
+    }
+
+    /** The content of a generation, checked against its hash. */
+    public byte[] read(Generation g) throws IOException {
+        Path raw = objects.resolve(g.sha256());
+        byte[] content;
+        if (Files.exists(raw)) {
+            content = Files.readAllBytes(raw);
+        } else {
+            Path gz = objects.resolve(g.sha256() + ".gz");
+            if (!Files.exists(gz)) {
+                throw new IllegalStateException("Backup generation " + g.id() + " is missing its content (" + g.sha256() + ").");
+            }
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(gz), 1 << 16)) {
+                content = in.readAllBytes();
+            }
+        }
+        if (!HexFormat.of().formatHex(sha256().digest(content)).equals(g.sha256())) {
+            throw new IllegalStateException("Backup generation " + g.id() + " is corrupt: content does not match " + g.sha256() + ".");
+        }
+        return content;
+    }
+
+    /**
+     * Applies the retention policy, then gzips the objects of every kept generation except the
+     * newest. The index is rewritten first, so a crash leaves at worst an unreferenced object.
+     */
+    @SuppressWarnings("try") // the lock is held, never referenced
+    public void maintain(Retention retention) throws IOException {
+        if (!Files.exists(index)) {
+            return;
+        }
+        try (LockFile ignored = lock()) {
+            List<Generation> all = readIndex();
+            if (all.isEmpty()) {
+                return;
+            }
+            Generation newest = all.get(all.size() - 1);
+            Instant cutoff = retention.maxAge() == null ? null : Instant.now().minus(retention.maxAge());
+
+            List<Generation> kept = new ArrayList<>();
+            Set<String> dropped = new HashSet<>();
+            for (int i = all.size() - 1; i >= 0; i--) {
+                Generation g = all.get(i);
+                boolean keep = g == newest
+                        || (kept.size() < retention.keep() && (cutoff == null || !g.created().isBefore(cutoff)));
+                if (keep) {
+                    kept.add(0, g);
+                } else {
+                    dropped.add(g.sha256());
+                }
+            }
+
+            Set<String> compress = new HashSet<>();
+            for (Generation g : kept) {
+                if (!g.compressed() && !g.sha256().equals(newest.sha256())) compress.add(g.sha256());
+            }
+            for (String hash : compress) {
+                gzip(hash);
+            }
+
+            List<Generation> updated = new ArrayList<>(kept.size());
+            Set<String> referenced = new HashSet<>();
+            for (Generation g : kept) {
+                referenced.add(g.sha256());
+                updated.add(compress.contains(g.sha256())
+                        ? new Generation(g.id(), g.created(), g.sha256(), g.size(), true) : g);
+            }
+            if (!updated.equals(all)) {
+                writeIndex(updated);
+            }
+            for (String hash : compress) {
+                Files.deleteIfExists(objects.resolve(hash));
+            }
+            for (String hash : dropped) {
+                if (!referenced.contains(hash)) {
+                    Files.deleteIfExists(objects.resolve(hash));
+                    Files.deleteIfExists(objects.resolve(hash + ".gz"));
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs {@link #maintain} on a background thread, so the command does not wait for gzip.
+     * The JVM waits for it (up to a minute) before exiting.
+     */
+    public void maintainInBackground(Retention retention, Consumer<String> warn) {
+        Background.EXECUTOR.execute(() -> {
+            try {
+                maintain(retention);
+            } catch (IOException | RuntimeException e) {
+                warn.accept("Warning: backup maintenance in " + dir + " failed: " + e.getMessage());
+            }
+        });
+    }
+
+    /** One maintenance thread per process, drained at shutdown. */
+    private static final class Background {
+        static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "karaf-users-backup-maintenance");
+            t.setDaemon(true);
+            return t;
+        });
+
+        static {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                EXECUTOR.shutdown();
+                try {
+                    EXECUTOR.awaitTermination(1, TimeUnit.MINUTES);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "karaf-users-backup-drain"));
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       Files
+       ------------------------------------------------------------------ */
+
+    private void ensureDirectories() throws IOException {
+        if (!Files.isDirectory(objects)) {
+            for (Path d : new Path[] {dir, objects}) {
+                try {
+                    Files.createDirectory(d, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+                } catch (FileAlreadyExistsException ignored) {
+                    // created concurrently, or dir already there
+                }
+            }
+        }
+    }
+
+    private LockFile lock() throws IOException {
+        return LockFile.acquire(dir.resolve(".lock"), LOCK_TIMEOUT);
+    }
+
+    private void gzip(String hash) throws IOException {
+        Path tmp = Files.createTempFile(objects, hash, ".gz.tmp", FileSecurity.attr0600());
+        try {
+            try (OutputStream out = new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16), 1 << 16)) {
+                Files.copy(objects.resolve(hash), out);
+            }
+            move(tmp, objects.resolve(hash + ".gz"));
+            tmp = null;
+        } finally {
+            if (tmp != null) Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static void move(Path from, Path to) throws IOException {
+        try {
+            Files.move(from, to, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private List<Generation> readIndex() throws IOException {
+        List<Generation> out = new ArrayList<>();
+        if (!Files.exists(index)) {
+            return out;
+        }
+        int lineNo = 0;
+        for (String line : Files.readAllLines(index, StandardCharsets.US_ASCII)) {
+            lineNo++;
+            if (line.isBlank() || line.startsWith("#")) continue;
+            String[] f = line.trim().split(" ");
+            try {
+                out.add(new Generation(Long.parseLong(f[0]), Instant.ofEpochMilli(Long.parseLong(f[1])), f[2],
+                        Long.parseLong(f[3]), "gz".equals(f[4])));
+            } catch (RuntimeException e) {
+                throw new IllegalStateException(index + " line " + lineNo + " is malformed: " + line);
+            }
+        }
+        return out;
+    }
+
+    private static String line(Generation g) {
+        return g.id() + " " + g.created().toEpochMilli() + " " + g.sha256() + " " + g.size() + " " + (g.compressed() ? "gz" : "raw") + "\n";
+    }
+
+    private void appendIndex(Generation g) throws IOException {
+        if (!Files.exists(index)) {
+            writeIndex(List.of(g));
+            return;
+        }
+        Files.writeString(index, line(g), StandardCharsets.US_ASCII, StandardOpenOption.APPEND);
+    }
+
+    private void writeIndex(List<Generation> generations) throws IOException {
+        SecureFileUpdate.replaceSecurely(index, out -> {
+            StringBuilder sb = new StringBuilder(INDEX_HEADER).append('\n');
+            for (Generation g : generations) sb.append(line(g));
+            out.write(sb.toString().getBytes(StandardCharsets.US_ASCII));
+        });
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
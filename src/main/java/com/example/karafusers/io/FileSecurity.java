@@ -5,6 +5,8 @@ import java.nio.file.*;
 import java.nio.file.attribute.*;
 import java.util.Set;
 
+import com.example.karafusers.metrics.Metrics;
+
 import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
 
 public final class FileSecurity {
@@ -16,6 +18,15 @@ public final class FileSecurity {
 
     /** Throws a SecurityException with a clear message if the file is not owner-read/write only (0600). */
     public static void assertSecureUsersFile(Path usersFile) throws IOException {
+        long t0 = Metrics.start();
+        try {
+            checkSecureUsersFile(usersFile);
+        } finally {
+            Metrics.stop(Metrics.Phase.FILE_SECURITY, t0);
+        }
+    }
+
+    private static void checkSecureUsersFile(Path usersFile) throws IOException {
         // Existence and type checks
         if (!Files.exists(usersFile, NOFOLLOW_LINKS)) {
             throw new SecurityException("users.properties not found: " + usersFile);
@@ -60,11 +71,13 @@ public final class FileSecurity {
 
     /** Enforces 0600 on a file (POSIX). */
     public static void enforce0600(Path file) throws IOException {
+        long t0 = Metrics.start();
         FileStore store = Files.getFileStore(file);
         if (!store.supportsFileAttributeView(PosixFileAttributeView.class)) {
             throw new SecurityException("Cannot enforce permissions (POSIX not supported) for: " + file);
         }
         Files.setPosixFilePermissions(file, OWNER_RW);
+        Metrics.stop(Metrics.Phase.FILE_SECURITY, t0);
     }
 
     /** Returns a FileAttribute that creates a file as 0600 on POSIX systems. */
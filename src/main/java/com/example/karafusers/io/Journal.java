@@ -0,0 +1,322 @@
+package com.example.karafusers.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead journal of users.properties edits, kept next to it as {@code users.properties.journal}.
+ *
+ * Small edits append their put/remove records here instead of rewriting the whole file, so
+ * an edit costs O(change) bytes of I/O. The journal is bound to the exact users.properties
+ * content it applies to (size + CRC32 in its header) and is folded back into users.properties
+ * by a full atomic replace ("compaction"), after which it is deleted.
+ *
+ * Format: UTF-8 text, one record per line, each line {@code <crc32 of rest>\t<record>}:
+ * <pre>
+ * karaf-users-journal 1 &lt;base size&gt;:&lt;base crc&gt;
+ * P\tkey\tvalue      put
+ * D\tkey             remove
+ * C                  commit: the puts/removes since the previous commit apply together
+ * X\tsize:crc        compaction started towards content with this identity
+ * </pre>
+ * Records after the last commit, or cut short by a crash, are ignored and truncated on the
+ * next append. Tabs, line breaks and backslashes in keys and values are backslash-escaped.
+ */
+public final class Journal {
+
+    /** When appended records are forced to disk. */
+    public enum Sync {
+        /** fsync after every commit record: a committed edit survives power loss. */
+        COMMIT,
+        /** Leave it to the OS: a committed edit survives a process crash, not power loss. */
+        NONE
+    }
+
+    /** Identity of one users.properties content. */
+    public record BaseId(long size, long crc) {
+
+        public static BaseId of(byte[] content) {
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            return new BaseId(content.length, crc.getValue());
+        }
+
+        static BaseId parse(String s) {
+            int colon = s.indexOf(':');
+            if (colon < 0) throw new IllegalArgumentException("Malformed journal base: " + s);
+            return new BaseId(Long.parseLong(s.substring(0, colon)), Long.parseLong(s.substring(colon + 1), 16));
+        }
+
+        @Override
+        public String toString() {
+            return size + ":" + Long.toHexString(crc);
+        }
+    }
+
+    /**
+     * Outcome of {@link #replay}: committed batches and changes applied, or {@code stale} when
+     * the journal had already been compacted into users.properties before a crash.
+     */
+    public record Replay(int commits, int changes, boolean stale) {}
+
+    private static final String MAGIC = "karaf-users-journal 1 ";
+
+    private final Path file;
+    /** Length of the replayed prefix that ends with a valid commit; -1 before replay. */
+    private long validLength = -1;
+
+    public Journal(Path file) {
+        this.file = file;
+    }
+
+    public static Path pathFor(Path usersFile) {
+        return usersFile.resolveSibling(usersFile.getFileName() + ".journal");
+    }
+
+    public Path path() {
+        return file;
+    }
+
+    public boolean exists() {
+        return Files.exists(file);
+    }
+
+    public long size() throws IOException {
+        return Files.exists(file) ? Files.size(file) : 0;
+    }
+
+    /**
+     * Applies every committed batch to {@code doc}, which must hold the users.properties content
+     * identified by {@code base}. Throws IllegalStateException if the journal belongs to other
+     * content, i.e. users.properties was changed by something else after the journal was started.
+     */
+    public Replay replay(PropertiesDocument doc, BaseId base) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        int eol = indexOf(bytes, 0);
+        if (eol < 0 || !new String(bytes, 0, eol, StandardCharsets.UTF_8).startsWith(MAGIC)) {
+            throw new IllegalStateException("Not a karaf-users journal: " + file + ". Move it away to continue.");
+        }
+        BaseId journalBase = BaseId.parse(new String(bytes, MAGIC.length(), eol - MAGIC.length(), StandardCharsets.UTF_8));
+        boolean matches = journalBase.equals(base);
+
+        List<PropertiesDocument.Change> batch = new ArrayList<>();
+        int commits = 0;
+        int changes = 0;
+        long valid = eol + 1;
+        int pos = eol + 1;
+        while (pos < bytes.length) {
+            int end = indexOf(bytes, pos);
+            if (end < 0) break;
+            String[] f = verify(new String(bytes, pos, end - pos, StandardCharsets.UTF_8));
+            if (f == null) break;
+            pos = end + 1;
+
+            switch (f[0]) {
+                case "P":
+                    batch.add(new PropertiesDocument.Change(f[1], f[2]));
+                    break;
+                case "D":
+                    batch.add(new PropertiesDocument.Change(f[1], null));
+                    break;
+                case "C":
+                    if (matches) {
+                        for (PropertiesDocument.Change c : batch) {
+                            if (c.isRemoval()) doc.remove(c.key()); else doc.put(c.key(), c.value());
+                        }
+                    }
+                    commits++;
+                    changes += batch.size();
+                    batch.clear();
+                    valid = pos;
+                    break;
+                case "X":
+                    if (!matches && BaseId.parse(f[1]).equals(base)) {
+                        // users.properties is the compacted result: everything here is already in it.
+                        return new Replay(0, 0, true);
+                    }
+                    // Otherwise the compaction never replaced users.properties: the journal still applies.
+                    valid = pos;
+                    break;
+                default:
+                    // Unknown record types only come from a newer writer: stop rather than guess.
+                    pos = bytes.length;
+            }
+        }
+
+        if (!matches) {
+            throw new IllegalStateException(
+                    "users.properties changed outside karaf-users since " + file + " was started (" + commits +
+                    " pending edit(s) would apply to other content). Inspect both, then delete the journal to " +
+                    "discard its edits or restore the matching users.properties.");
+        }
+        validLength = valid;
+        return new Replay(commits, changes, false);
+    }
+
+    /** Starts an empty journal over users.properties content {@code base}, replacing any previous one. */
+    public void create(BaseId base, Sync sync) throws IOException {
+        Path tmp = SecureFileUpdate.createSecureTempFileNear(file);
+        try {
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                write(ch, (MAGIC + base + "\n").getBytes(StandardCharsets.UTF_8));
+                if (sync == Sync.COMMIT) ch.force(false);
+            }
+            SecureFileUpdate.atomicReplace(file, tmp);
+            tmp = null;
+            validLength = Files.size(file);
+        } finally {
+            if (tmp != null) Files.deleteIfExists(tmp);
+        }
+    }
+
+    /** Appends the changes as one committed batch. The journal must have been replayed or created. */
+    public void append(List<PropertiesDocument.Change> changes, Sync sync) throws IOException {
+        StringBuilder sb = new StringBuilder(changes.size() * 64);
+        for (PropertiesDocument.Change c : changes) {
+            StringBuilder r = new StringBuilder(c.isRemoval() ? "D\t" : "P\t");
+            escape(r, c.key());
+            if (!c.isRemoval()) {
+                escape(r.append('\t'), c.value());
+            }
+            record(sb, r.toString());
+        }
+        record(sb, "C");
+        appendRecords(sb, sync);
+    }
+
+    /** Records that users.properties is about to become the content identified by {@code target}. */
+    public void markCompaction(BaseId target, Sync sync) throws IOException {
+        appendRecords(record(new StringBuilder(), "X\t" + target), sync);
+    }
+
+    public void delete() throws IOException {
+        Files.deleteIfExists(file);
+        validLength = -1;
+    }
+
+    private void appendRecords(StringBuilder records, Sync sync) throws IOException {
+        if (validLength < 0) {
+            throw new IllegalStateException("Journal " + file + " must be replayed before appending.");
+        }
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            // Drop a torn or uncommitted tail left by a crash before appending after it.
+            if (ch.size() > validLength) ch.truncate(validLength);
+            ch.position(validLength);
+            write(ch, records.toString().getBytes(StandardCharsets.UTF_8));
+            if (sync == Sync.COMMIT) ch.force(false);
+            validLength = ch.position();
+        }
+    }
+
+    private static void write(FileChannel ch, byte[] bytes) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        while (buf.hasRemaining()) ch.write(buf);
+    }
+
+    private static StringBuilder record(StringBuilder sb, String body) {
+        CRC32 crc = new CRC32();
+        crc.update(body.getBytes(StandardCharsets.UTF_8));
+        return sb.append(String.format(Locale.ROOT, "%08x", crc.getValue())).append('\t').append(body).append('\n');
+    }
+
+    /** Checks a record line's CRC and returns its unescaped fields, or null if it is damaged. */
+    private static String[] verify(String line) {
+        int tab = line.indexOf('\t');
+        if (tab != 8) return null;
+        String body = line.substring(9);
+        CRC32 crc = new CRC32();
+        crc.update(body.getBytes(StandardCharsets.UTF_8));
+        try {
+            if (Long.parseLong(line.substring(0, 8), 16) != crc.getValue()) return null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        String[] f = body.split("\t", -1);
+        for (int i = 1; i < f.length; i++) f[i] = unescape(f[i]);
+        return f;
+    }
+
+    private static int indexOf(byte[] b, int from) {
+        for (int i = from; i < b.length; i++) {
+            if (b[i] == '\n') return i;
+        }
+        return -1;
+    }
+
+    private static void escape(StringBuilder sb, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '\\': sb.append("\\\\"); break;
+                case '\t': sb.append("\\t"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                default: sb.append(c);
+            }
+        }
+    }
+
+    private static String unescape(String s) {
+        if (s.indexOf('\\') < 0) return s;
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c != '\\' || i + 1 == s.length()) {
+                sb.append(c);
+                continue;
+            }
+            char e = s.charAt(++i);
+            sb.append(e == 't' ? '\t' : e == 'n' ? '\n' : e == 'r' ? '\r' : e);
+        }
+        return sb.toString();
+    }
+
+    /** Writes through to {@code out} while computing the {@link BaseId} of what was written. */
+    public static final class IdentifyingOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final CRC32 crc = new CRC32();
+        private long size;
+
+        public IdentifyingOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            crc.update(b);
+            size++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            crc.update(b, off, len);
+            size += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+
+        public BaseId id() {
+            return new BaseId(size, crc.getValue());
+        }
+    }
+}
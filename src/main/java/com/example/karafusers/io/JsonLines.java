@@ -0,0 +1,187 @@
+package com.example.karafusers.io;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON Lines support for flat records: one object per line whose values are
+ * strings, numbers, booleans, null or arrays of those. Nested objects are rejected.
+ *
+ * Values are returned as String, BigDecimal (numbers), Boolean or List&lt;Object&gt; of those
+ * (arrays, nulls dropped); null stays null. Callers check the types they expect.
+ * {@link #appendString} is the writing side, for commands that emit JSON Lines.
+ */
+public final class JsonLines {
+
+    private JsonLines() {}
+
+    public static Map<String, Object> parseObject(String line) {
+        Parser p = new Parser(line);
+        p.skipWs();
+        Map<String, Object> out = p.object();
+        p.skipWs();
+        if (!p.atEnd()) {
+            throw p.error("Trailing characters after JSON object");
+        }
+        return out;
+    }
+
+    /** Appends s as a quoted JSON string literal. */
+    public static StringBuilder appendString(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"');
+    }
+
+    private static final class Parser {
+        private final String s;
+        private int i;
+
+        Parser(String s) {
+            this.s = s;
+        }
+
+        boolean atEnd() {
+            return i >= s.length();
+        }
+
+        void skipWs() {
+            while (i < s.length() && Character.isWhitespace(s.charAt(i))) i++;
+        }
+
+        IllegalArgumentException error(String msg) {
+            return new IllegalArgumentException(msg + " at column " + (i + 1) + ": " + s);
+        }
+
+        void expect(char c) {
+            skipWs();
+            if (i >= s.length() || s.charAt(i) != c) throw error("Expected '" + c + "'");
+            i++;
+        }
+
+        Map<String, Object> object() {
+            expect('{');
+            Map<String, Object> out = new LinkedHashMap<>();
+            skipWs();
+            if (i < s.length() && s.charAt(i) == '}') {
+                i++;
+                return out;
+            }
+            while (true) {
+                skipWs();
+                String key = string();
+                expect(':');
+                skipWs();
+                out.put(key, value(true));
+                skipWs();
+                if (i < s.length() && s.charAt(i) == ',') {
+                    i++;
+                    continue;
+                }
+                expect('}');
+                return out;
+            }
+        }
+
+        Object value(boolean allowArray) {
+            if (i >= s.length()) throw error("Unexpected end of input");
+            char c = s.charAt(i);
+            if (c == '"') return string();
+            if (c == '[') {
+                if (!allowArray) throw error("Nested arrays are not supported");
+                return array();
+            }
+            if (c == '{') throw error("Nested objects are not supported");
+            int start = i;
+            while (i < s.length() && ",]} \t\r\n".indexOf(s.charAt(i)) < 0) i++;
+            String literal = s.substring(start, i);
+            if (literal.isEmpty()) throw error("Expected a value");
+            switch (literal) {
+                case "null": return null;
+                case "true": return Boolean.TRUE;
+                case "false": return Boolean.FALSE;
+                default:
+                    try {
+                        return new BigDecimal(literal);
+                    } catch (NumberFormatException e) {
+                        i = start;
+                        throw error("Invalid literal '" + literal + "'");
+                    }
+            }
+        }
+
+        List<Object> array() {
+            expect('[');
+            List<Object> out = new ArrayList<>();
+            skipWs();
+            if (i < s.length() && s.charAt(i) == ']') {
+                i++;
+                return out;
+            }
+            while (true) {
+                skipWs();
+                Object v = value(false);
+                if (v != null) out.add(v);
+                skipWs();
+                if (i < s.length() && s.charAt(i) == ',') {
+                    i++;
+                    continue;
+                }
+                expect(']');
+                return out;
+            }
+        }
+
+        String string() {
+            if (i >= s.length() || s.charAt(i) != '"') throw error("Expected a string");
+            i++;
+            StringBuilder sb = new StringBuilder();
+            while (i < s.length()) {
+                char c = s.charAt(i++);
+                if (c == '"') return sb.toString();
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                if (i >= s.length()) break;
+                char e = s.charAt(i++);
+                switch (e) {
+                    case '"': sb.append('"'); break;
+                    case '\\': sb.append('\\'); break;
+                    case '/': sb.append('/'); break;
+                    case 'b': sb.append('\b'); break;
+                    case 'f': sb.append('\f'); break;
+                    case 'n': sb.append('\n'); break;
+                    case 'r': sb.append('\r'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'u':
+                        if (i + 4 > s.length()) throw error("Malformed \\u escape");
+                        sb.append((char) Integer.parseInt(s.substring(i, i + 4), 16));
+                        i += 4;
+                        break;
+                    default:
+                        throw error("Invalid escape '\\" + e + "'");
+                }
+            }
+            throw error("Unterminated string");
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.karafusers.io;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+
+import com.example.karafusers.metrics.Metrics;
+
+/**
+ * Exclusive cross-process lock on a sidecar file ({@code users.properties.lock}), taken with
+ * {@link FileChannel#tryLock()} and polled with a short backoff until a deadline.
+ *
+ * The lock file is created 0600 and never deleted: removing it while another process waits
+ * on it would let two processes lock two different files.
+ */
+public final class LockFile implements AutoCloseable {
+
+    private static final long MAX_BACKOFF_MILLIS = 50;
+
+    private final FileChannel channel;
+    private final FileLock lock;
+    private final long waitedNanos;
+
+    private LockFile(FileChannel channel, FileLock lock, long waitedNanos) {
+        this.channel = channel;
+        this.lock = lock;
+        this.waitedNanos = waitedNanos;
+    }
+
+    public static Path pathFor(Path usersFile) {
+        return usersFile.resolveSibling(usersFile.getFileName() + ".lock");
+    }
+
+    /** Blocks until the lock is held or {@code timeout} has passed (IllegalStateException). */
+    public static LockFile acquire(Path lockFile, Duration timeout) throws IOException {
+        if (!Files.exists(lockFile)) {
+            try {
+                Files.createFile(lockFile, FileSecurity.attr0600());
+            } catch (java.nio.file.FileAlreadyExistsException ignored) {
+                // created concurrently: fine
+            }
+        }
+
+        long start = System.nanoTime();
+        long deadline = start + timeout.toNanos();
+        FileChannel ch = FileChannel.open(lockFile, StandardOpenOption.WRITE);
+        try {
+            long backoff = 1;
+            while (true) {
+                FileLock lock;
+                try {
+                    lock = ch.tryLock();
+                } catch (OverlappingFileLockException e) {
+                    // Held by another thread of this JVM (e.g. the daemon): wait like for another process.
+                    lock = null;
+                }
+                if (lock != null) {
+                    Metrics.stop(Metrics.Phase.LOCK, start);
+                    return new LockFile(ch, lock, System.nanoTime() - start);
+                }
+                if (System.nanoTime() - deadline >= 0) {
+                    throw new IllegalStateException("Timed out after " + timeout.toMillis() + " ms waiting for " + lockFile
+                            + " (another karaf-users run is modifying users.properties). Retry, or raise --lock-timeout.");
+                }
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for " + lockFile, e);
+                }
+                backoff = Math.min(MAX_BACKOFF_MILLIS, backoff * 2);
+            }
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    /** Time spent waiting for the lock. */
+    public long waitedNanos() {
+        return waitedNanos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            lock.release();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,641 @@
+package com.example.karafusers.io;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+/**
+ * Format-preserving, line-indexed model of a users.properties style file.
+ *
+ * The file is parsed once into a list of entries (one per logical line, continuation
+ * lines included) plus a hash index from key to entry slot. Lookups and edits are O(1);
+ * deleted entries leave an empty slot so indexes stay stable. Serialisation is a single
+ * pass over the slots: untouched entries are written back byte for byte, comments,
+ * blank lines, ordering and line terminators included.
+ *
+ * Like java.util.Properties and Karaf's own backing engine, the file is read as ISO-8859-1;
+ * characters outside of it are written as \\uXXXX escapes.
+ */
+public final class PropertiesDocument {
+
+    public static final Charset CHARSET = StandardCharsets.ISO_8859_1;
+
+    /** One logical line: raw text (terminator included) plus parsed key/value, or no key for comments/blanks. */
+    private record Entry(String raw, String key, String value) {
+        boolean isProperty() {
+            return key != null;
+        }
+
+        boolean hasTerminator() {
+            return raw.endsWith("\n") || raw.endsWith("\r");
+        }
+
+        String terminator() {
+            if (raw.endsWith("\r\n")) return "\r\n";
+            if (raw.endsWith("\n")) return "\n";
+            if (raw.endsWith("\r")) return "\r";
+            return "";
+        }
+    }
+
+    private final ArrayList<Entry> slots;
+    private final HashMap<String, Integer> index;
+    /** Earlier slots of duplicated keys (last one wins, as in java.util.Properties). Usually empty. */
+    private final HashMap<String, List<Integer>> shadowed;
+    private final String newline;
+    private int size;
+
+    /** One {@link #put} (value set) or {@link #remove} (value null), as recorded by {@link #recordChanges}. */
+    public record Change(String key, String value) {
+        public boolean isRemoval() {
+            return value == null;
+        }
+    }
+
+    /** Mutations since {@link #recordChanges} or the last {@link #takeChanges}; null when not recording. */
+    private List<Change> changes;
+
+    private PropertiesDocument(ArrayList<Entry> slots,
+                               HashMap<String, Integer> index,
+                               HashMap<String, List<Integer>> shadowed,
+                               String newline,
+                               int size) {
+        this.slots = slots;
+        this.index = index;
+        this.shadowed = shadowed;
+        this.newline = newline;
+        this.size = size;
+    }
+
+    public static PropertiesDocument empty() {
+        return new PropertiesDocument(new ArrayList<>(), new HashMap<>(), new HashMap<>(), "\n", 0);
+    }
+
+    public static PropertiesDocument load(Path file) throws IOException {
+        return parse(Files.readAllBytes(file));
+    }
+
+    /** Parses the whole content in one pass. */
+    public static PropertiesDocument parse(byte[] content) {
+        int estimatedLines = Math.max(16, content.length / 48);
+        ArrayList<Entry> slots = new ArrayList<>(estimatedLines);
+        HashMap<String, Integer> index = new HashMap<>(estimatedLines * 4 / 3 + 1);
+        HashMap<String, List<Integer>> shadowed = new HashMap<>();
+        String newline = null;
+        int size = 0;
+
+        int pos = 0;
+        int len = content.length;
+        while (pos < len) {
+            int start = pos;
+            boolean continued;
+            int lineEnd;
+            // Consume physical lines until the logical line is complete.
+            do {
+                int eol = pos;
+                while (eol < len && content[eol] != '\n' && content[eol] != '\r') eol++;
+                lineEnd = eol;
+                if (eol < len) {
+                    if (newline == null) {
+                        newline = (content[eol] == '\r' && eol + 1 < len && content[eol + 1] == '\n') ? "\r\n"
+                                : (content[eol] == '\r' ? "\r" : "\n");
+                    }
+                    eol += (content[eol] == '\r' && eol + 1 < len && content[eol + 1] == '\n') ? 2 : 1;
+                }
+                // Comment lines never continue; any other line continues on an odd run of trailing backslashes.
+                continued = endsWithContinuation(content, pos, lineEnd)
+                        && !(pos == start && isComment(content, start, lineEnd));
+                pos = eol;
+            } while (continued && pos < len);
+
+            String raw = new String(content, start, pos - start, CHARSET);
+            Entry entry = parseEntry(raw);
+            int slot = slots.size();
+            slots.add(entry);
+            if (entry.isProperty()) {
+                Integer previous = index.put(entry.key(), slot);
+                if (previous != null) {
+                    shadowed.computeIfAbsent(entry.key(), k -> new ArrayList<>(1)).add(previous);
+                } else {
+                    size++;
+                }
+            }
+        }
+
+        return new PropertiesDocument(slots, index, shadowed, newline == null ? "\n" : newline, size);
+    }
+
+    /**
+     * Visits the properties of a users.properties stream in file order without building a
+     * document: memory stays at one logical line however large the input. Unlike the
+     * document, a duplicated key is visited once per occurrence.
+     */
+    public static void stream(InputStream in, BiConsumer<String, String> action) throws IOException {
+        BufferedReader r = new BufferedReader(new InputStreamReader(in, CHARSET), 1 << 16);
+        StringBuilder logical = new StringBuilder(128);
+        String line;
+        while ((line = r.readLine()) != null) {
+            boolean first = logical.length() == 0;
+            logical.append(line).append('\n');
+            if (endsWithContinuation(line) && !(first && isComment(line))) {
+                continue;
+            }
+            visit(logical, action);
+        }
+        if (logical.length() > 0) {
+            visit(logical, action);
+        }
+    }
+
+    private static void visit(StringBuilder logical, BiConsumer<String, String> action) {
+        Entry e = parseEntry(logical.toString());
+        logical.setLength(0);
+        if (e.isProperty()) {
+            action.accept(e.key(), e.value());
+        }
+    }
+
+    /** Number of distinct keys. */
+    public int size() {
+        return size;
+    }
+
+    public boolean containsKey(String key) {
+        return index.containsKey(key);
+    }
+
+    public String get(String key) {
+        Integer slot = index.get(key);
+        return slot == null ? null : slots.get(slot).value();
+    }
+
+    /**
+     * Sets a property. An existing entry is rewritten in place (keeping its position and
+     * line terminator); a new one is appended at the end of the document.
+     */
+    public void put(String key, String value) {
+        Objects.requireNonNull(key, "key");
+        Objects.requireNonNull(value, "value");
+
+        if (changes != null) changes.add(new Change(key, value));
+
+        Integer slot = index.get(key);
+        if (slot != null) {
+            Entry old = slots.get(slot);
+            slots.set(slot, new Entry(format(key, value) + old.terminator(), key, value));
+            return;
+        }
+
+        terminateLastEntry();
+        index.put(key, slots.size());
+        slots.add(new Entry(format(key, value) + newline, key, value));
+        size++;
+    }
+
+    /**
+     * Rewrites values in one pass, in document order: {@code rewrite} gets each key and value
+     * and returns the value to store, or the value it was given to leave the entry untouched.
+     * Rewritten entries keep their line and terminator and are recorded like {@link #put}s.
+     * Returns the number of entries whose value changed.
+     */
+    public int replaceValues(BiFunction<String, String, String> rewrite) {
+        boolean hasDuplicates = !shadowed.isEmpty();
+        int changed = 0;
+        for (int i = 0; i < slots.size(); i++) {
+            Entry e = slots.get(i);
+            if (e == null || !e.isProperty() || (hasDuplicates && index.get(e.key()) != i)) continue;
+            String value = Objects.requireNonNull(rewrite.apply(e.key(), e.value()), "value");
+            if (value.equals(e.value())) continue;
+            if (changes != null) changes.add(new Change(e.key(), value));
+            slots.set(i, new Entry(format(e.key(), value) + e.terminator(), e.key(), value));
+            changed++;
+        }
+        return changed;
+    }
+
+    /** Removes a property (and any shadowed duplicates of it). Returns the previous value, or null. */
+    public String remove(String key) {
+        Integer slot = index.remove(key);
+        if (slot == null) return null;
+
+        if (changes != null) changes.add(new Change(key, null));
+
+        String previous = slots.get(slot).value();
+        slots.set(slot, null);
+        List<Integer> dups = shadowed.remove(key);
+        if (dups != null) {
+            for (int s : dups) slots.set(s, null);
+        }
+        size--;
+        return previous;
+    }
+
+    /** Starts recording every effective put/remove, so a journal can persist just the delta. */
+    public void recordChanges() {
+        if (changes == null) changes = new ArrayList<>();
+    }
+
+    /** Returns the changes recorded so far and starts a new list; empty when not recording. */
+    public List<Change> takeChanges() {
+        if (changes == null) return List.of();
+        List<Change> out = changes;
+        changes = new ArrayList<>();
+        return out;
+    }
+
+    /** An independent copy sharing the (immutable) entries: one pass over the slots, no re-parsing. */
+    public PropertiesDocument copy() {
+        HashMap<String, List<Integer>> dups = new HashMap<>();
+        shadowed.forEach((k, v) -> dups.put(k, new ArrayList<>(v)));
+        return new PropertiesDocument(new ArrayList<>(slots), new HashMap<>(index), dups, newline, size);
+    }
+
+    /**
+     * Keys whose line differs between {@code before} and this document, in document order.
+     * This document must be a {@link #copy} of {@code before} changed only through put/remove:
+     * those rewrite lines in place and append new ones, so line i of both documents is the
+     * same line and one pass finds every change without matching lines up.
+     */
+    public Set<String> changedKeys(PropertiesDocument before) {
+        checkDerivedFrom(before);
+        Set<String> out = new LinkedHashSet<>();
+        for (int i = 0; i < slots.size(); i++) {
+            Entry o = i < before.slots.size() ? before.slots.get(i) : null;
+            Entry n = slots.get(i);
+            if (same(o, n)) continue;
+            if (o != null && o.isProperty()) out.add(o.key());
+            if (n != null && n.isProperty()) out.add(n.key());
+        }
+        return out;
+    }
+
+    /**
+     * Writes a unified diff from {@code before} (see {@link #changedKeys} for the requirement)
+     * to this document, with {@code context} unchanged logical lines around each change.
+     */
+    public void writeDiff(PropertiesDocument before, String oldName, String newName, int context, Writer w) throws IOException {
+        checkDerivedFrom(before);
+        int n = slots.size();
+        int oldLine = 1;
+        int newLine = 1;
+        int done = 0; // slots before this one have been counted
+
+        w.write("--- " + oldName + "\n");
+        w.write("+++ " + newName + "\n");
+        int i = nextChange(before, 0);
+        while (i < n) {
+            // Extend the hunk while the next change is within two contexts of the last one.
+            int last = i;
+            int next;
+            while ((next = nextChange(before, last + 1)) < n && next - last <= 2 * context) {
+                last = next;
+            }
+            int from = Math.max(done, i - context);
+            int to = Math.min(n, last + context + 1);
+            for (; done < from; done++) {
+                oldLine += lineCount(slot(before.slots, done));
+                newLine += lineCount(slots.get(done));
+            }
+
+            int oldCount = 0;
+            int newCount = 0;
+            for (int s = from; s < to; s++) {
+                oldCount += lineCount(slot(before.slots, s));
+                newCount += lineCount(slots.get(s));
+            }
+            w.write("@@ -" + (oldCount == 0 ? oldLine - 1 : oldLine) + "," + oldCount
+                    + " +" + (newCount == 0 ? newLine - 1 : newLine) + "," + newCount + " @@\n");
+            for (int s = from; s < to; s++) {
+                Entry o = slot(before.slots, s);
+                Entry e = slots.get(s);
+                if (same(o, e)) {
+                    writeLines(w, ' ', o);
+                } else {
+                    writeLines(w, '-', o);
+                    writeLines(w, '+', e);
+                }
+            }
+            for (; done < to; done++) {
+                oldLine += lineCount(slot(before.slots, done));
+                newLine += lineCount(slots.get(done));
+            }
+            i = next;
+        }
+    }
+
+    private void checkDerivedFrom(PropertiesDocument before) {
+        if (before.slots.size() > slots.size()) {
+            throw new IllegalArgumentException("Document is not derived from the given one (it has fewer lines).");
+        }
+    }
+
+    private int nextChange(PropertiesDocument before, int from) {
+        for (int i = from; i < slots.size(); i++) {
+            if (!same(slot(before.slots, i), slots.get(i))) return i;
+        }
+        return slots.size();
+    }
+
+    /** Untouched, or rewritten to the same text. */
+    private static boolean same(Entry a, Entry b) {
+        return a == b || (a != null && b != null && a.raw().equals(b.raw()));
+    }
+
+    private static Entry slot(List<Entry> slots, int i) {
+        return i < slots.size() ? slots.get(i) : null;
+    }
+
+    /** Physical lines of an entry (continuations count; a missing final terminator still makes a line). */
+    private static int lineCount(Entry e) {
+        if (e == null) return 0;
+        String raw = e.raw();
+        int lines = 0;
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c == '\n' || (c == '\r' && (i + 1 == raw.length() || raw.charAt(i + 1) != '\n'))) lines++;
+        }
+        return e.hasTerminator() ? lines : lines + 1;
+    }
+
+    private static void writeLines(Writer w, char mark, Entry e) throws IOException {
+        if (e == null) return;
+        String raw = e.raw();
+        int start = 0;
+        while (start < raw.length()) {
+            int end = start;
+            while (end < raw.length() && raw.charAt(end) != '\n' && raw.charAt(end) != '\r') end++;
+            w.write(mark);
+            w.write(raw, start, end - start);
+            w.write('\n');
+            if (end == raw.length()) {
+                w.write("\\ No newline at end of file\n");
+                return;
+            }
+            start = end + (raw.charAt(end) == '\r' && end + 1 < raw.length() && raw.charAt(end + 1) == '\n' ? 2 : 1);
+        }
+    }
+
+    /** Visits properties in document order. */
+    public void forEach(BiConsumer<String, String> action) {
+        boolean hasDuplicates = !shadowed.isEmpty();
+        for (int i = 0; i < slots.size(); i++) {
+            Entry e = slots.get(i);
+            if (e != null && e.isProperty() && (!hasDuplicates || index.get(e.key()) == i)) {
+                action.accept(e.key(), e.value());
+            }
+        }
+    }
+
+    /** Keys in document order. */
+    public List<String> keys() {
+        List<String> out = new ArrayList<>(size);
+        forEach((k, v) -> out.add(k));
+        return out;
+    }
+
+    public Map<String, String> toMap() {
+        Map<String, String> out = new HashMap<>(size * 4 / 3 + 1);
+        forEach(out::put);
+        return out;
+    }
+
+    /** Serialises the document in a single pass. */
+    public void writeTo(OutputStream out) throws IOException {
+        Writer w = new BufferedWriter(new OutputStreamWriter(out, CHARSET), 1 << 16);
+        writeTo(w);
+        w.flush();
+    }
+
+    public void writeTo(Writer w) throws IOException {
+        for (Entry e : slots) {
+            if (e != null) w.write(e.raw());
+        }
+    }
+
+    public void writeTo(Path file) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            writeTo(out);
+        }
+    }
+
+    private void terminateLastEntry() {
+        for (int i = slots.size() - 1; i >= 0; i--) {
+            Entry e = slots.get(i);
+            if (e == null) continue;
+            if (!e.hasTerminator()) {
+                slots.set(i, new Entry(e.raw() + newline, e.key(), e.value()));
+            }
+            return;
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       Parsing (java.util.Properties rules)
+       ------------------------------------------------------------------ */
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\t' || c == '\f';
+    }
+
+    private static boolean isComment(byte[] b, int from, int to) {
+        int i = from;
+        while (i < to && isWhitespace(b[i])) i++;
+        return i < to && (b[i] == '#' || b[i] == '!');
+    }
+
+    private static boolean isComment(String line) {
+        int i = 0;
+        while (i < line.length() && isWhitespace(line.charAt(i))) i++;
+        return i < line.length() && (line.charAt(i) == '#' || line.charAt(i) == '!');
+    }
+
+    private static boolean endsWithContinuation(String line) {
+        int backslashes = 0;
+        for (int i = line.length() - 1; i >= 0 && line.charAt(i) == '\\'; i--) backslashes++;
+        return (backslashes & 1) == 1;
+    }
+
+    private static boolean endsWithContinuation(byte[] b, int from, int to) {
+        int backslashes = 0;
+        for (int i = to - 1; i >= from && b[i] == '\\'; i--) backslashes++;
+        return (backslashes & 1) == 1;
+    }
+
+    private static Entry parseEntry(String raw) {
+        // Join continuation lines: drop "\<terminator><leading whitespace>".
+        String logical = joinContinuations(raw);
+
+        int i = 0;
+        int n = logical.length();
+        while (i < n && isWhitespace(logical.charAt(i))) i++;
+        if (i == n || logical.charAt(i) == '#' || logical.charAt(i) == '!') {
+            return new Entry(raw, null, null);
+        }
+
+        int keyStart = i;
+        boolean escaped = false;
+        while (i < n) {
+            char c = logical.charAt(i);
+            if (escaped) {
+                escaped = false;
+            } else if (c == '\\') {
+                escaped = true;
+            } else if (c == '=' || c == ':' || isWhitespace(c)) {
+                break;
+            }
+            i++;
+        }
+        String key = unescape(logical, keyStart, i);
+
+        while (i < n && isWhitespace(logical.charAt(i))) i++;
+        if (i < n && (logical.charAt(i) == '=' || logical.charAt(i) == ':')) i++;
+        while (i < n && isWhitespace(logical.charAt(i))) i++;
+        String value = unescape(logical, i, n);
+
+        return new Entry(raw, key, value);
+    }
+
+    private static String joinContinuations(String raw) {
+        int end = raw.length();
+        while (end > 0 && (raw.charAt(end - 1) == '\n' || raw.charAt(end - 1) == '\r')) end--;
+        int firstBreak = firstLineBreak(raw, end);
+        if (firstBreak < 0) {
+            return raw.substring(0, end);
+        }
+
+        StringBuilder sb = new StringBuilder(end);
+        int i = 0;
+        while (i < end) {
+            char c = raw.charAt(i);
+            if (c == '\n' || c == '\r') {
+                // Terminator of a continued physical line: the preceding '\' has already been dropped.
+                i += (c == '\r' && i + 1 < end && raw.charAt(i + 1) == '\n') ? 2 : 1;
+                while (i < end && isWhitespace(raw.charAt(i))) i++;
+                continue;
+            }
+            if (c == '\\' && i + 1 < end && (raw.charAt(i + 1) == '\n' || raw.charAt(i + 1) == '\r')
+                    && isOddBackslashRun(raw, i)) {
+                i++;
+                continue;
+            }
+            sb.append(c);
+            i++;
+        }
+        return sb.toString();
+    }
+
+    private static int firstLineBreak(String s, int end) {
+        for (int i = 0; i < end; i++) {
+            char c = s.charAt(i);
+            if (c == '\n' || c == '\r') return i;
+        }
+        return -1;
+    }
+
+    private static boolean isOddBackslashRun(String s, int last) {
+        int count = 0;
+        for (int i = last; i >= 0 && s.charAt(i) == '\\'; i--) count++;
+        return (count & 1) == 1;
+    }
+
+    private static String unescape(String s, int from, int to) {
+        int firstEscape = s.indexOf('\\', from);
+        if (firstEscape < 0 || firstEscape >= to) {
+            return s.substring(from, to);
+        }
+
+        StringBuilder sb = new StringBuilder(to - from);
+        int i = from;
+        while (i < to) {
+            char c = s.charAt(i++);
+            if (c != '\\' || i == to) {
+                if (c != '\\') sb.append(c);
+                continue;
+            }
+            c = s.charAt(i++);
+            switch (c) {
+                case 't': sb.append('\t'); break;
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 'f': sb.append('\f'); break;
+                case 'u':
+                    if (i + 4 > to) {
+                        throw new IllegalArgumentException("Malformed \\uXXXX encoding in: " + s.substring(from, to));
+                    }
+                    try {
+                        sb.append((char) Integer.parseInt(s.substring(i, i + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Malformed \\uXXXX encoding in: " + s.substring(from, to));
+                    }
+                    i += 4;
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /* ------------------------------------------------------------------
+       Formatting
+       ------------------------------------------------------------------ */
+
+    private static String format(String key, String value) {
+        StringBuilder sb = new StringBuilder(key.length() + value.length() + 4);
+        escape(sb, key, true);
+        sb.append(" = ");
+        escape(sb, value, false);
+        return sb.toString();
+    }
+
+    private static void escape(StringBuilder sb, String s, boolean isKey) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '\\': sb.append("\\\\"); break;
+                case '\t': sb.append("\\t"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\f': sb.append("\\f"); break;
+                case ' ':
+                    if (isKey || i == 0) sb.append('\\');
+                    sb.append(c);
+                    break;
+                case '=':
+                case ':':
+                    if (isKey) sb.append('\\');
+                    sb.append(c);
+                    break;
+                case '#':
+                case '!':
+                    if (isKey && i == 0) sb.append('\\');
+                    sb.append(c);
+                    break;
+                default:
+                    if (c < 0x20 || c > 0x7e) {
+                        sb.append("\\u").append(String.format("%04X", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+    }
+}
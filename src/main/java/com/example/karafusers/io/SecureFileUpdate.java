@@ -1,9 +1,16 @@
 package com.example.karafusers.io;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import com.example.karafusers.metrics.Metrics;
 
 import static java.nio.file.StandardCopyOption.*;
 
@@ -11,6 +18,16 @@ public final class SecureFileUpdate {
 
     private static final DateTimeFormatter TS = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
 
+    /** How far a replace is pushed to disk before it counts as done ({@code --durability}). */
+    public enum Durability {
+        /** Rename only; the OS writes back whenever. A power loss soon after can leave an empty file. */
+        none,
+        /** Force the new content before the rename: after a power loss the file is old or new, never torn. */
+        data,
+        /** Also fsync the directory after the rename, so the replace itself survives a power loss. */
+        full
+    }
+
     private SecureFileUpdate() {}
 
     public static Path createSecureBackup(Path usersFile) throws IOException {
@@ -18,7 +35,9 @@ public final class SecureFileUpdate {
         Path backup = usersFile.resolveSibling(usersFile.getFileName() + suffix);
 
         // Create backup (copy) then enforce perms
+        long t0 = Metrics.start();
         Files.copy(usersFile, backup, COPY_ATTRIBUTES);
+        Metrics.stop(Metrics.Phase.BACKUP, t0);
         FileSecurity.enforce0600(backup);
         return backup;
     }
@@ -28,17 +47,109 @@ public final class SecureFileUpdate {
      * You can adapt this to let your PropertiesBackingEngine write into the temp file.
      */
     public static void atomicReplace(Path usersFile, Path tmpFile) throws IOException {
-        // Ensure tmp is secure before move (and after, just in case)
-        FileSecurity.enforce0600(tmpFile);
+        atomicReplace(usersFile, tmpFile, Durability.none);
+    }
 
-        try {
-            Files.move(tmpFile, usersFile, ATOMIC_MOVE, REPLACE_EXISTING);
-        } catch (AtomicMoveNotSupportedException e) {
-            // Fall back to non-atomic replace, but still safe permissions-wise
-            Files.move(tmpFile, usersFile, REPLACE_EXISTING);
+    public static void atomicReplace(Path target, Path tmpFile, Durability durability) throws IOException {
+        try (GroupCommit commit = new GroupCommit(durability)) {
+            commit.replace(target, tmpFile);
+        }
+    }
+
+    /**
+     * Several replaces and deletes made durable together. Each file's content still has to be
+     * forced before its own rename, but the directories they live in are fsynced once, on
+     * {@link #close}, however many entries changed in them: a compaction that replaces
+     * users.properties, drops the journal and rewrites the index pays for one directory sync.
+     */
+    public static final class GroupCommit implements AutoCloseable {
+
+        private final Durability durability;
+        private final Set<Path> dirs = new LinkedHashSet<>();
+
+        public GroupCommit(Durability durability) {
+            this.durability = durability;
+        }
+
+        public void replace(Path target, Path tmpFile) throws IOException {
+            // Ensure tmp is secure before move (and after, just in case)
+            FileSecurity.enforce0600(tmpFile);
+            if (durability != Durability.none) {
+                long t0 = Metrics.start();
+                try (FileChannel ch = FileChannel.open(tmpFile, StandardOpenOption.WRITE)) {
+                    ch.force(false);
+                }
+                Metrics.stop(Metrics.Phase.FSYNC, t0);
+            }
+
+            long t0 = Metrics.start();
+            try {
+                Files.move(tmpFile, target, ATOMIC_MOVE, REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                // Fall back to non-atomic replace, but still safe permissions-wise
+                Files.move(tmpFile, target, REPLACE_EXISTING);
+            }
+            Metrics.stop(Metrics.Phase.REPLACE, t0);
+
+            FileSecurity.enforce0600(target);
+            touched(target);
         }
 
-        FileSecurity.enforce0600(usersFile);
+        /** Includes the directory of a file created, renamed or deleted some other way in the sync. */
+        public void touched(Path file) {
+            if (durability == Durability.full) {
+                dirs.add(parentOf(file));
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (dirs.isEmpty()) return;
+            long t0 = Metrics.start();
+            try {
+                for (Path dir : dirs) {
+                    fsyncDirectory(dir);
+                }
+            } finally {
+                dirs.clear();
+                Metrics.stop(Metrics.Phase.FSYNC, t0);
+            }
+        }
+    }
+
+    private static void fsyncDirectory(Path dir) throws IOException {
+        // POSIX only, as is everything here (see FileSecurity): Linux and macOS allow fsync on a directory fd.
+        try (FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
+            ch.force(true);
+        }
+    }
+
+    private static Path parentOf(Path file) {
+        Path dir = file.toAbsolutePath().getParent();
+        return dir == null ? Path.of(".").toAbsolutePath() : dir;
+    }
+
+    /** Produces the content of a file written by {@link #replaceSecurely}. */
+    @FunctionalInterface
+    public interface ContentWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Writes {@code target} (a sidecar such as the users.properties index) through a secure
+     * temp file next to it and atomically moves it into place; readers never see a partial file.
+     */
+    public static void replaceSecurely(Path target, ContentWriter writer) throws IOException {
+        Path tmp = createSecureTempFileNear(target);
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16)) {
+                writer.writeTo(out);
+            }
+            atomicReplace(target, tmp);
+            tmp = null;
+        } finally {
+            if (tmp != null) Files.deleteIfExists(tmp);
+        }
     }
 
     /** Creates a secure temp file in the same directory (important for atomic move on most FS). */
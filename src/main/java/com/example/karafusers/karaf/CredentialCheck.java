@@ -0,0 +1,26 @@
+package com.example.karafusers.karaf;
+
+/** Outcome of checking one username/password pair against users.properties. */
+public record CredentialCheck(String username, Result result) {
+
+    public enum Result {
+        OK("ok"),
+        MISMATCH("mismatch"),
+        UNKNOWN_USER("unknown-user");
+
+        private final String label;
+
+        Result(String label) {
+            this.label = label;
+        }
+
+        /** Stable lower-case name used in machine-readable output. */
+        public String label() {
+            return label;
+        }
+    }
+
+    public boolean ok() {
+        return result == Result.OK;
+    }
+}
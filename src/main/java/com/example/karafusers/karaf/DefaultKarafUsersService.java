@@ -2,13 +2,49 @@ package com.example.karafusers.karaf;
 
 //import com.example.karafusers.cli.ExitCodes;
 import com.example.karafusers.cli.RootCommand;
+import com.example.karafusers.config.JaasCfg;
+import com.example.karafusers.config.JaasCfgLoader;
 import com.example.karafusers.config.PathResolver;
+import com.example.karafusers.crypto.HashFormat;
+import com.example.karafusers.crypto.HashingExecutor;
+import com.example.karafusers.crypto.KarafPasswordCodec;
+import com.example.karafusers.crypto.LazyCodec;
+import com.example.karafusers.crypto.SharedHashes;
+import com.example.karafusers.io.BackupStore;
 import com.example.karafusers.io.FileSecurity;
+import com.example.karafusers.io.Journal;
+import com.example.karafusers.io.LockFile;
+import com.example.karafusers.io.PropertiesDocument;
 import com.example.karafusers.io.SecureFileUpdate;
+import com.example.karafusers.metrics.Metrics;
 
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 public class DefaultKarafUsersService implements KarafUsersService {
 
@@ -16,6 +52,31 @@ public class DefaultKarafUsersService implements KarafUsersService {
     private final Path usersFile;
     private final Path jaasCfg;
 
+    private final Journal journal;
+    private final Path indexFile;
+
+    private final LazyCodec codec;
+    private JaasCfg cfg;
+
+    /** Identity of users.properties as last loaded or written; only computed when a journal is involved. */
+    private Journal.BaseId base;
+    /** users.properties mtime read before the content {@link #base} identifies (what the index records). */
+    private long baseMtimeNanos;
+    /** True when the journal on disk has been replayed and can be appended to. */
+    private boolean journalLive;
+
+    /** Realm shared by all operations of a running {@link #transaction}, or null. */
+    private UsersRealm pending;
+
+    /** users.properties (and journal) as of the last {@link #load}, for optimistic conflict detection. */
+    private FileState loaded;
+
+    /** What a writer saw: any difference at commit time means another process wrote in between. */
+    private record FileState(Object fileKey, long mtimeNanos, long size, long crc, long journalSize) {}
+
+    /** Optimistic commits give up after this many conflicting attempts. */
+    private static final int MAX_OPTIMISTIC_ATTEMPTS = 8;
+
     public DefaultKarafUsersService(RootCommand root) {
         this.root = root;
         this.usersFile = PathResolver.resolveUsersFile(root.getUsersFile());
@@ -25,6 +86,9 @@ public class DefaultKarafUsersService implements KarafUsersService {
         PathResolver.assertExists(jaasCfg, "org.apache.karaf.jaas.cfg");
 
         enforceSecurity();
+        this.journal = new Journal(Journal.pathFor(usersFile));
+        this.indexFile = UsersIndex.pathFor(usersFile);
+        this.codec = new LazyCodec(this::jaasCfg);
     }
 
     private void enforceSecurity() {
@@ -41,42 +105,645 @@ public class DefaultKarafUsersService implements KarafUsersService {
             return;
         }
 
+        backUp();
+    }
+
+    private BackupStore.Generation backUp() {
+        BackupStore store = new BackupStore(usersFile);
         try {
-            Path backup = SecureFileUpdate.createSecureBackup(usersFile);
+            BackupStore.Generation g = store.backup(usersFile);
             if (root.isVerbose()) {
-                System.out.println("Backup created: " + backup);
+                root.out().println("Backup created: generation " + g.id() + " in " + store.dir());
             }
+            // Compressing older generations and pruning happen off the write path.
+            PrintWriter err = root.err();
+            store.maintainInBackground(root.getBackupRetention(), msg -> {
+                err.println(msg);
+                err.flush();
+            });
+            return g;
         } catch (IOException e) {
             throw new RuntimeException("Failed to create secure backup: " + e.getMessage(), e);
         }
     }
 
+    /** Backup generations of users.properties, oldest first, from the store's index. */
+    public List<BackupStore.Generation> backups() {
+        try {
+            return new BackupStore(usersFile).list();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read backups: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Replaces users.properties with a backup generation (the newest when {@code generation}
+     * is null). The current content is backed up first, so a restore can itself be undone;
+     * any journal is dropped, as it describes edits to the content being replaced.
+     */
+    @SuppressWarnings("try") // the lock is held, never referenced
+    public BackupStore.Generation restoreBackup(Long generation) {
+        BackupStore store = new BackupStore(usersFile);
+        try {
+            BackupStore.Generation g = store.find(generation);
+            byte[] content = store.read(g);
+            if (root.isDryRun()) {
+                root.out().println("Dry run: " + usersFile + " not modified (would restore generation " + g.id() + ").");
+                return g;
+            }
+            try (LockFile ignored = lock()) {
+                load(); // journal state, so writeFully folds it away
+                backUp();
+                writeFully(new UsersRealm(PropertiesDocument.parse(content)), false);
+            }
+            return g;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to restore backup: " + e.getMessage(), e);
+        }
+    }
+
+    private JaasCfg jaasCfg() {
+        if (cfg == null) {
+            try {
+                cfg = JaasCfgLoader.load(jaasCfg);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to read " + jaasCfg + ": " + e.getMessage(), e);
+            }
+        }
+        return cfg;
+    }
+
+    /** Encodes a new password; in a fleet run, targets with the same jaas.cfg settings share one hash. */
+    private String encode(String rawPassword) {
+        SharedHashes shared = root.getSharedHashes();
+        if (shared == null) {
+            return codec.get().encode(rawPassword);
+        }
+        return shared.encode(jaasCfg(), rawPassword, () -> codec.get().encode(rawPassword));
+    }
+
+    /** The realm to operate on: the transaction's one, or a fresh load. */
+    private UsersRealm realm() {
+        return pending != null ? pending : load();
+    }
+
+    /**
+     * Applies {@code op} to a freshly loaded realm and stores the result, coordinated with
+     * other processes through users.properties.lock. Inside a transaction it only applies
+     * {@code op}: the transaction stores once at the end.
+     *
+     * By default the lock is held from load to store. With --optimistic the realm is loaded
+     * and mutated unlocked; the lock is only taken to check that users.properties (and its
+     * journal) are unchanged and to store. On a conflict the load and {@code op} are redone
+     * against the new content, so {@code op} must derive everything from the realm it is given.
+     */
+    private void mutate(Consumer<UsersRealm> op) {
+        if (pending != null) {
+            op.accept(pending);
+            return;
+        }
+        if (root.isDryRun()) {
+            UsersRealm realm = load();
+            PropertiesDocument before = realm.document().copy();
+            op.accept(realm);
+            printDryRun(before, realm.document());
+            return;
+        }
+
+        long lockWait = 0;
+        int retries = 0;
+        try {
+            if (!root.isOptimistic()) {
+                try (LockFile lock = lock()) {
+                    lockWait = lock.waitedNanos();
+                    UsersRealm realm = load();
+                    op.accept(realm);
+                    store(realm);
+                }
+                return;
+            }
+
+            while (true) {
+                UsersRealm realm = load();
+                FileState seen = loaded;
+                op.accept(realm);
+                try (LockFile lock = lock()) {
+                    lockWait += lock.waitedNanos();
+                    if (unchanged(seen)) {
+                        store(realm);
+                        return;
+                    }
+                }
+                if (++retries >= MAX_OPTIMISTIC_ATTEMPTS) {
+                    throw new IllegalStateException("users.properties changed during each of " + retries
+                            + " attempts; giving up. Retry later or run without --optimistic.");
+                }
+                if (root.isVerbose()) {
+                    root.out().println("users.properties changed since it was read; retrying (" + retries + ")");
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to lock users.properties: " + e.getMessage(), e);
+        } finally {
+            if (root.isVerbose()) {
+                root.out().printf("Lock wait: %d ms, optimistic retries: %d%n", lockWait / 1_000_000, retries);
+            }
+        }
+    }
+
+    /** Reports what a dry run would have written, compared line for line with what was loaded. */
+    private void printDryRun(PropertiesDocument before, PropertiesDocument after) {
+        PrintWriter out = root.out();
+        out.println("Dry run: " + usersFile + " not modified.");
+        RealmDiff diff = RealmDiff.between(before, after);
+        diff.print(out);
+        if (root.isDiff() && !diff.isEmpty()) {
+            try {
+                after.writeDiff(before, "a/" + usersFile.getFileName(), "b/" + usersFile.getFileName(), 3, out);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to print diff: " + e.getMessage(), e);
+            }
+        }
+        out.flush();
+    }
+
+    private LockFile lock() throws IOException {
+        return LockFile.acquire(LockFile.pathFor(usersFile), Duration.ofMillis(root.getLockTimeoutMillis()));
+    }
+
+    /**
+     * Whether users.properties is still what {@code seen} describes. Same file key and mtime
+     * (and journal size) is trusted; otherwise the content is checksummed, so a rewrite with
+     * identical content does not count as a conflict.
+     */
+    private boolean unchanged(FileState seen) throws IOException {
+        if (journal.size() != seen.journalSize()) {
+            return false;
+        }
+        BasicFileAttributes attrs = Files.readAttributes(usersFile, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        if (attrs.size() != seen.size()) {
+            return false;
+        }
+        if (Objects.equals(attrs.fileKey(), seen.fileKey())
+                && attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS) == seen.mtimeNanos()) {
+            return true;
+        }
+        return Journal.BaseId.of(Files.readAllBytes(usersFile)).crc() == seen.crc();
+    }
+
+    /**
+     * What read-only operations look at: the transaction's realm, else the index when it is
+     * enabled and current (rebuilding it when stale), else a fresh load.
+     */
+    private RealmView view() {
+        if (pending != null) {
+            return pending;
+        }
+        if (!indexEnabled() || journal.exists()) {
+            // Journaled edits are not in the index: it describes users.properties alone.
+            return load();
+        }
+        try {
+            long t0 = Metrics.start();
+            UsersIndex index = UsersIndex.open(indexFile, usersFile);
+            Metrics.stop(Metrics.Phase.INDEX, t0);
+            if (index != null) {
+                return index;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read " + indexFile + ": " + e.getMessage(), e);
+        }
+        UsersRealm realm = load();
+        if (!root.isDryRun()) {
+            writeIndex(realm);
+        }
+        return realm;
+    }
+
+    private boolean indexEnabled() {
+        return root.isIndex() || Files.exists(indexFile);
+    }
+
+    /** The index only speeds up reads: failing to write it must not fail the command. */
+    private void writeIndex(UsersRealm realm) {
+        try {
+            long t0 = Metrics.start();
+            UsersIndex.write(indexFile, realm.document(), base, baseMtimeNanos);
+            Metrics.stop(Metrics.Phase.INDEX, t0);
+            if (root.isVerbose()) {
+                root.out().println("Index written: " + indexFile);
+            }
+        } catch (IOException e) {
+            root.err().println("Warning: could not write " + indexFile + " (" + e.getMessage() + "); removing it.");
+            deleteQuietly(indexFile);
+        }
+    }
+
+    /** Reads users.properties and, if a journal was left by earlier --journal runs or a crash, replays it. */
+    private UsersRealm load() {
+        PropertiesDocument doc;
+        try {
+            // Attributes first: if a writer replaces the file in between, the checksum of what
+            // was actually read still tells whether it changed.
+            BasicFileAttributes attrs = Files.readAttributes(usersFile, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            long journalSize = journal.size();
+            long t0 = Metrics.start();
+            byte[] content = Files.readAllBytes(usersFile);
+            Metrics.stop(Metrics.Phase.READ, t0);
+            Metrics.add(Metrics.Counter.BYTES_READ, content.length);
+            long t1 = Metrics.start();
+            doc = PropertiesDocument.parse(content);
+            Metrics.stop(Metrics.Phase.PARSE, t1);
+            journalLive = false;
+            if (journal.exists() || root.isJournal() || indexEnabled() || root.isOptimistic()) {
+                base = Journal.BaseId.of(content);
+                baseMtimeNanos = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+            }
+            if (root.isOptimistic()) {
+                loaded = new FileState(attrs.fileKey(), attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+                        content.length, base.crc(), journalSize);
+            }
+            if (journal.exists()) {
+                long t2 = Metrics.start();
+                Journal.Replay replay = journal.replay(doc, base);
+                Metrics.stop(Metrics.Phase.JOURNAL, t2);
+                journalLive = !replay.stale();
+                if (root.isVerbose() && replay.commits() > 0) {
+                    root.out().println("Replayed " + replay.commits() + " journaled edit(s) from " + journal.path());
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read users.properties: " + e.getMessage(), e);
+        }
+        if (root.isJournal()) {
+            doc.recordChanges();
+        }
+        return new UsersRealm(doc);
+    }
+
+    /**
+     * Persists the realm: appended to the journal in --journal mode while it stays small,
+     * otherwise written in full (backup, secure temp file, atomic replace), which also folds
+     * in and removes any journal.
+     */
+    private void store(UsersRealm realm) {
+        if (root.isDryRun()) {
+            root.out().println("Dry run: " + usersFile + " not modified.");
+            return;
+        }
+
+        if (root.isJournal()) {
+            List<PropertiesDocument.Change> changes = realm.document().takeChanges();
+            if (changes.isEmpty()) {
+                return;
+            }
+            try {
+                if (journalFits(changes)) {
+                    long t0 = Metrics.start();
+                    long before = journal.size();
+                    if (!journalLive) {
+                        journal.create(base, root.getJournalSync());
+                        journalLive = true;
+                    }
+                    journal.append(changes, root.getJournalSync());
+                    Metrics.stop(Metrics.Phase.JOURNAL, t0);
+                    Metrics.add(Metrics.Counter.BYTES_WRITTEN, journal.size() - before);
+                    if (root.isVerbose()) {
+                        root.out().println("Journaled " + changes.size() + " change(s) to " + journal.path());
+                    }
+                    return;
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to write " + journal.path() + ": " + e.getMessage(), e);
+            }
+        }
+
+        writeFully(realm);
+    }
+
+    /** Whether appending these changes keeps the journal under both compaction thresholds. */
+    private boolean journalFits(List<PropertiesDocument.Change> changes) throws IOException {
+        long bytes = journal.size();
+        for (PropertiesDocument.Change c : changes) {
+            bytes += 16 + c.key().length() + (c.isRemoval() ? 0 : c.value().length());
+        }
+        return bytes <= root.getJournalMaxBytes() && bytes <= base.size();
+    }
+
+    private void writeFully(UsersRealm realm) {
+        writeFully(realm, true);
+    }
+
+    private void writeFully(UsersRealm realm, boolean backup) {
+        if (backup) {
+            secureBackupIfNeeded();
+        }
+
+        Path tmp = null;
+        try (SecureFileUpdate.GroupCommit commit = new SecureFileUpdate.GroupCommit(root.getDurability())) {
+            tmp = SecureFileUpdate.createSecureTempFileNear(usersFile);
+            long t0 = Metrics.start();
+            Journal.IdentifyingOutputStream written = new Journal.IdentifyingOutputStream(Files.newOutputStream(tmp));
+            try (written) {
+                realm.document().writeTo(written);
+            }
+            Metrics.stop(Metrics.Phase.SERIALIZE, t0);
+            Metrics.add(Metrics.Counter.BYTES_WRITTEN, written.id().size());
+            if (journalLive) {
+                // Lets a crash between the replace and the delete below be recognised as a finished compaction.
+                journal.markCompaction(written.id(), root.getJournalSync());
+            }
+            // The rename keeps the temp file's mtime: read it now, before anyone else can replace ours.
+            long mtime = Files.getLastModifiedTime(tmp, LinkOption.NOFOLLOW_LINKS).to(TimeUnit.NANOSECONDS);
+            commit.replace(usersFile, tmp);
+            tmp = null;
+            if (journal.exists()) {
+                journal.delete();
+                commit.touched(journal.path());
+                journalLive = false;
+                if (root.isVerbose()) {
+                    root.out().println("Journal compacted into " + usersFile);
+                }
+            }
+            base = written.id();
+            baseMtimeNanos = mtime;
+            if (indexEnabled()) {
+                writeIndex(realm); // same directory: its rename rides on the commit's directory sync
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write users.properties: " + e.getMessage(), e);
+        } finally {
+            deleteQuietly(tmp);
+        }
+    }
+
+    /** Folds any journal into users.properties now, so Karaf sees every journaled edit. Returns false if there was none. */
+    @SuppressWarnings("try") // the lock is held, never referenced
+    public boolean compactJournal() {
+        if (!journal.exists()) {
+            return false;
+        }
+        if (root.isDryRun()) {
+            load();
+            root.out().println("Dry run: " + usersFile + " not modified.");
+            return true;
+        }
+        try (LockFile ignored = lock()) {
+            writeFully(load());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to lock users.properties: " + e.getMessage(), e);
+        }
+        return true;
+    }
+
+    private static void deleteQuietly(Path tmp) {
+        if (tmp == null) return;
+        try {
+            Files.deleteIfExists(tmp);
+        } catch (IOException ignored) {
+            // best effort: the temp file is 0600 anyway
+        }
+    }
+
     @Override
     public void addUser(String username,
                         String rawPassword,
                         Set<String> roles,
                         Set<String> groups) {
 
-        secureBackupIfNeeded();
-
-        // TODO:
-        // 1. Load jaas.cfg and build password encoder
-        // 2. Encrypt rawPassword
-        // 3. Use PropertiesBackingEngine to add user
-        // 4. Atomic write via SecureFileUpdate
+        UsersRealm.validateName(username, "Username");
+        // Hashed before locking: the lock is only held for the file work.
+        String encoded = encode(rawPassword);
+        mutate(realm -> {
+            if (realm.hasUser(username)) {
+                throw new IllegalArgumentException("User already exists: " + username);
+            }
+            realm.putUser(new KarafUser(username, encoded, roles, groups));
+        });
+        Metrics.add(Metrics.Counter.USERS, 1);
 
-        throw new UnsupportedOperationException("User creation not implemented yet.");
+        if (root.isVerbose()) {
+            root.out().println("User added: " + username);
+        }
     }
 
     @Override
     public void deleteUser(String username) {
-        secureBackupIfNeeded();
-        throw new UnsupportedOperationException("User deletion not implemented yet.");
+        mutate(realm -> {
+            if (!realm.removeUser(username)) {
+                throw new IllegalArgumentException("User not found: " + username);
+            }
+        });
+        Metrics.add(Metrics.Counter.USERS, 1);
+
+        if (root.isVerbose()) {
+            root.out().println("User deleted: " + username);
+        }
+    }
+
+    @Override
+    public List<KarafUser> listUsers(boolean resolveGroups) {
+        RealmView realm = view();
+        List<KarafUser> users = realm.users();
+        Metrics.add(Metrics.Counter.USERS, users.size());
+        if (!resolveGroups) {
+            return users;
+        }
+
+        GroupIndex index = realm.groupIndex();
+        warnCycles(index);
+
+        List<KarafUser> out = new ArrayList<>(users.size());
+        for (KarafUser u : users) {
+            Set<String> effective = index.effectiveRoles(u);
+            out.add(effective == u.roles() ? u : new KarafUser(u.username(), u.password(), effective, u.groups()));
+        }
+        return out;
+    }
+
+    private void warnCycles(GroupIndex index) {
+        for (List<String> cycle : index.cycles()) {
+            root.err().println("Warning: nested groups form a cycle: " + String.join(", ", cycle)
+                    + " (each gets the roles of all of them).");
+        }
+    }
+
+    @Override
+    public List<KarafGroup> listGroups(boolean resolveGroups) {
+        RealmView realm = view();
+        List<KarafGroup> groups = realm.groups();
+        if (!resolveGroups) {
+            return groups;
+        }
+        GroupIndex index = realm.groupIndex();
+        warnCycles(index);
+        List<KarafGroup> out = new ArrayList<>(groups.size());
+        for (KarafGroup g : groups) {
+            out.add(new KarafGroup(g.name(), index.groupRoles(g.name()), g.groups()));
+        }
+        return out;
+    }
+
+    @Override
+    public void addGroup(String group, Set<String> roles, Set<String> nestedGroups) {
+        mutate(realm -> {
+            if (realm.hasGroup(group)) {
+                throw new IllegalArgumentException("Group already exists: " + group);
+            }
+            realm.putGroup(new KarafGroup(group, roles, nestedGroups));
+        });
+
+        if (root.isVerbose()) {
+            root.out().println("Group created: " + group);
+        }
+    }
+
+    @Override
+    public int deleteGroup(String group) {
+        int[] touched = new int[1];
+        mutate(realm -> {
+            if (!realm.removeGroup(group)) {
+                throw new IllegalArgumentException("Group not found: " + group);
+            }
+            touched[0] = 1 + realm.replaceTokens(Map.of(), Map.of(group, Set.of()));
+        });
+        Metrics.add(Metrics.Counter.USERS, touched[0]);
+        return touched[0];
     }
 
     @Override
-    public void listUsers(boolean resolveGroups) {
-        throw new UnsupportedOperationException("User listing not implemented yet.");
+    public void editGroup(String group,
+                          Set<String> addRoles,
+                          Set<String> removeRoles,
+                          Set<String> addGroups,
+                          Set<String> removeGroups) {
+        mutate(realm -> {
+            KarafGroup current = realm.group(group);
+            if (current == null) {
+                throw new IllegalArgumentException("Group not found: " + group);
+            }
+
+            Set<String> roles = new LinkedHashSet<>(current.roles());
+            roles.removeAll(removeRoles);
+            roles.addAll(addRoles);
+
+            Set<String> nested = new LinkedHashSet<>(current.groups());
+            nested.removeAll(removeGroups);
+            nested.addAll(addGroups);
+
+            realm.putGroup(new KarafGroup(group, roles, nested));
+        });
+
+        if (root.isVerbose()) {
+            root.out().println("Group updated: " + group);
+        }
+    }
+
+    @Override
+    public int renameGroup(String group, String newName) {
+        UsersRealm.validateName(newName, "Group name");
+        int[] touched = new int[1];
+        mutate(realm -> {
+            KarafGroup current = realm.group(group);
+            if (current == null) {
+                throw new IllegalArgumentException("Group not found: " + group);
+            }
+            if (realm.hasGroup(newName)) {
+                throw new IllegalArgumentException("Group already exists: " + newName);
+            }
+            realm.removeGroup(group);
+            Map<String, Set<String>> rename = Map.of(group, Set.of(newName));
+            touched[0] = 1 + realm.replaceTokens(Map.of(), rename);
+            Set<String> nested = new LinkedHashSet<>();
+            for (String g : current.groups()) {
+                nested.add(g.equals(group) ? newName : g);
+            }
+            realm.putGroup(new KarafGroup(newName, current.roles(), nested));
+        });
+        Metrics.add(Metrics.Counter.USERS, touched[0]);
+        return touched[0];
+    }
+
+    @Override
+    public int renameRole(String role, String newName) {
+        UsersRealm.validateName(newName, "Role name");
+        int[] touched = new int[1];
+        mutate(realm -> {
+            if (!role.equals(newName) && realm.isRoleUsed(newName)) {
+                throw new IllegalArgumentException("Role already in use: " + newName
+                        + ". Use 'role replace' to merge " + role + " into it.");
+            }
+            touched[0] = realm.replaceTokens(Map.of(role, Set.of(newName)), Map.of());
+        });
+        Metrics.add(Metrics.Counter.USERS, touched[0]);
+        return touched[0];
+    }
+
+    @Override
+    public int replaceRole(String role, Set<String> replacements) {
+        for (String r : replacements) {
+            UsersRealm.validateName(r, "Role name");
+        }
+        int[] touched = new int[1];
+        mutate(realm -> touched[0] = realm.replaceTokens(Map.of(role, replacements), Map.of()));
+        Metrics.add(Metrics.Counter.USERS, touched[0]);
+        return touched[0];
+    }
+
+    @Override
+    public MembershipIndex membershipIndex() {
+        RealmView realm = view();
+        List<KarafUser> users = realm.users();
+        Metrics.add(Metrics.Counter.USERS, users.size());
+        return MembershipIndex.build(users, realm.groupIndex());
+    }
+
+    @Override
+    public void exportUsers(boolean resolveGroups, Predicate<KarafUser> filter, Consumer<KarafUser> sink) {
+        if (pending != null || journal.exists()) {
+            // Journaled edits only exist once replayed into a loaded document.
+            RealmView realm = realm();
+            GroupIndex index = resolveGroups ? realm.groupIndex() : null;
+            for (KarafUser u : realm.users()) {
+                exportOne(u, index, filter, sink);
+            }
+            return;
+        }
+
+        // One open file for both passes: a concurrent atomic replace cannot mix two versions.
+        try (FileChannel ch = FileChannel.open(usersFile, StandardOpenOption.READ)) {
+            GroupIndex index = null;
+            if (resolveGroups) {
+                GroupIndex.Collector collector = new GroupIndex.Collector();
+                PropertiesDocument.stream(Channels.newInputStream(ch), collector);
+                index = collector.build();
+                ch.position(0);
+            }
+            GroupIndex groups = index;
+            long t0 = Metrics.start();
+            PropertiesDocument.stream(Channels.newInputStream(ch), (key, value) -> {
+                if (!UsersRealm.isGroupKey(key)) {
+                    exportOne(UsersRealm.parseUser(key, value), groups, filter, sink);
+                }
+            });
+            Metrics.stop(Metrics.Phase.PARSE, t0);
+            Metrics.add(Metrics.Counter.BYTES_READ, ch.size());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read users.properties: " + e.getMessage(), e);
+        }
+    }
+
+    private static void exportOne(KarafUser u, GroupIndex index, Predicate<KarafUser> filter, Consumer<KarafUser> sink) {
+        if (index != null) {
+            Set<String> effective = index.effectiveRoles(u);
+            if (effective != u.roles()) {
+                u = new KarafUser(u.username(), u.password(), effective, u.groups());
+            }
+        }
+        if (filter.test(u)) {
+            Metrics.add(Metrics.Counter.USERS, 1);
+            sink.accept(u);
+        }
     }
 
     @Override
@@ -87,7 +754,216 @@ public class DefaultKarafUsersService implements KarafUsersService {
                          Set<String> removeGroups,
                          String newPassword) {
 
-        secureBackupIfNeeded();
-        throw new UnsupportedOperationException("User edit not implemented yet.");
+        String encoded = newPassword != null ? encode(newPassword) : null;
+        mutate(realm -> {
+            KarafUser current = realm.user(username);
+            if (current == null) {
+                throw new IllegalArgumentException("User not found: " + username);
+            }
+
+            Set<String> roles = new LinkedHashSet<>(current.roles());
+            roles.removeAll(removeRoles);
+            roles.addAll(addRoles);
+
+            Set<String> groups = new LinkedHashSet<>(current.groups());
+            groups.removeAll(removeGroups);
+            groups.addAll(addGroups);
+
+            String password = encoded != null ? encoded : current.password();
+            realm.putUser(new KarafUser(username, password, roles, groups));
+        });
+        Metrics.add(Metrics.Counter.USERS, 1);
+
+        if (root.isVerbose()) {
+            root.out().println("User updated: " + username);
+        }
+    }
+
+    @Override
+    public ImportReport importUsers(Iterator<UserRecord> records, int threads, boolean skipExisting) {
+        UsersRealm realm = realm();
+        codec.get(); // built, and jaas.cfg read, before the workers share it
+
+        List<UserRecord> accepted = new ArrayList<>();
+        List<Future<String>> hashes = new ArrayList<>();
+        List<String> encoded = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        int skipped = 0;
+        long readNanos = 0;
+        long hashStart = System.nanoTime();
+        long hashEnd;
+
+        HashingExecutor.Stats hashing;
+        try (HashingExecutor pool = hashingExecutor(threads)) {
+            while (true) {
+                long r0 = System.nanoTime();
+                boolean more = records.hasNext();
+                UserRecord rec = more ? records.next() : null;
+                readNanos += System.nanoTime() - r0;
+                if (!more) break;
+
+                UsersRealm.validateName(rec.username(), "Username");
+                if (!seen.add(rec.username())) {
+                    throw new IllegalArgumentException("Duplicate username in input: " + rec.username());
+                }
+                if (realm.hasUser(rec.username())) {
+                    if (skipExisting) {
+                        skipped++;
+                        continue;
+                    }
+                    throw new IllegalArgumentException("User already exists: " + rec.username());
+                }
+
+                accepted.add(rec);
+                hashes.add(pool.submit(() -> encode(rec.rawPassword())));
+            }
+
+            for (Future<String> h : hashes) {
+                encoded.add(await(h));
+            }
+            hashEnd = System.nanoTime();
+            hashing = pool.stats();
+        }
+
+        // Hashing ran against a snapshot; the apply step re-checks against what is locked and stored.
+        int skippedBeforeHashing = skipped;
+        int[] counts = new int[2];
+        long c0 = System.nanoTime();
+        if (!accepted.isEmpty()) {
+            mutate(r -> {
+                counts[0] = 0;
+                counts[1] = skippedBeforeHashing;
+                for (int i = 0; i < accepted.size(); i++) {
+                    UserRecord rec = accepted.get(i);
+                    if (r.hasUser(rec.username())) {
+                        if (skipExisting) {
+                            counts[1]++;
+                            continue;
+                        }
+                        throw new IllegalArgumentException("User already exists: " + rec.username());
+                    }
+                    r.putUser(new KarafUser(rec.username(), encoded.get(i), rec.roles(), rec.groups()));
+                    counts[0]++;
+                }
+            });
+        } else {
+            counts[1] = skipped;
+        }
+        long commitNanos = System.nanoTime() - c0;
+        Metrics.add(Metrics.Counter.USERS, counts[0]);
+
+        return new ImportReport(counts[0], counts[1], threads, readNanos, hashEnd - hashStart, commitNanos, hashing);
+    }
+
+    @Override
+    public int verifyUsers(Iterator<UserRecord> credentials, int threads, Consumer<CredentialCheck> results) {
+        RealmView realm = view();
+        KarafPasswordCodec codec = this.codec.get();
+
+        // Completed checks wait here until everything before them is out; the cap keeps a
+        // slow head from letting the queue grow with the input.
+        int maxQueued = threads * 8;
+        ArrayDeque<Future<CredentialCheck>> queue = new ArrayDeque<>();
+        int failures = 0;
+
+        try (HashingExecutor pool = hashingExecutor(threads)) {
+            while (credentials.hasNext()) {
+                UserRecord c = credentials.next();
+                KarafUser stored = realm.user(c.username());
+                Future<CredentialCheck> check = stored == null
+                        ? CompletableFuture.completedFuture(new CredentialCheck(c.username(), CredentialCheck.Result.UNKNOWN_USER))
+                        : pool.submit(() -> new CredentialCheck(c.username(),
+                                codec.matches(c.rawPassword(), stored.password())
+                                        ? CredentialCheck.Result.OK
+                                        : CredentialCheck.Result.MISMATCH));
+                queue.add(check);
+
+                while (!queue.isEmpty() && (queue.peek().isDone() || queue.size() > maxQueued)) {
+                    failures += emit(await(queue.poll()), results);
+                }
+            }
+            while (!queue.isEmpty()) {
+                failures += emit(await(queue.poll()), results);
+            }
+        }
+        return failures;
+    }
+
+    @Override
+    public HashAuditReport auditHashes() {
+        JaasCfg cfg = jaasCfg();
+        HashAuditor auditor = new HashAuditor(cfg.encryptionPrefix(), cfg.encryptionSuffix(), HashFormat.current(cfg));
+        if (pending != null || journal.exists()) {
+            // Journaled edits only exist once replayed into a loaded document.
+            for (KarafUser u : realm().users()) {
+                auditor.add(u.username(), u.password());
+            }
+        } else {
+            try (FileChannel ch = FileChannel.open(usersFile, StandardOpenOption.READ)) {
+                long t0 = Metrics.start();
+                PropertiesDocument.stream(Channels.newInputStream(ch), (key, value) -> {
+                    if (!UsersRealm.isGroupKey(key)) {
+                        auditor.add(key, UsersRealm.parseUser(key, value).password());
+                    }
+                });
+                Metrics.stop(Metrics.Phase.PARSE, t0);
+                Metrics.add(Metrics.Counter.BYTES_READ, ch.size());
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to read users.properties: " + e.getMessage(), e);
+            }
+        }
+        HashAuditReport report = auditor.report();
+        Metrics.add(Metrics.Counter.USERS, report.users());
+        return report;
+    }
+
+    /** A pool of {@code threads} hashing workers, admitting hashes against the memory budget. */
+    private HashingExecutor hashingExecutor(int threads) {
+        long bytesPerHash = HashingExecutor.bytesPerHash(jaasCfg());
+        long budget = root.getHashMemoryMib() != null
+                ? root.getHashMemoryMib() * 1024L * 1024L
+                : HashingExecutor.defaultMemoryBudget();
+        HashingExecutor pool = new HashingExecutor(threads, bytesPerHash, budget);
+        if (root.isVerbose()) {
+            root.out().printf("Hashing: %d worker(s), ~%d KiB per hash, budget %d MiB: at most %d at once%n",
+                    threads, bytesPerHash / 1024, budget / (1024 * 1024), pool.maxConcurrent());
+        }
+        return pool;
+    }
+
+    private static int emit(CredentialCheck check, Consumer<CredentialCheck> results) {
+        Metrics.add(Metrics.Counter.USERS, 1);
+        results.accept(check);
+        return check.ok() ? 0 : 1;
+    }
+
+    @Override
+    public void transaction(Consumer<KarafUsersService> work) {
+        if (pending != null) {
+            throw new IllegalStateException("Nested transactions are not supported.");
+        }
+
+        mutate(realm -> {
+            pending = realm;
+            try {
+                work.accept(this);
+            } finally {
+                // On failure the in-memory realm is simply dropped: users.properties was never touched.
+                pending = null;
+            }
+        });
+    }
+
+    private static <T> T await(Future<T> f) {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while hashing passwords.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException re) throw re;
+            throw new RuntimeException("Password hashing failed: " + cause.getMessage(), cause);
+        }
     }
-}
\ No newline at end of file
+}
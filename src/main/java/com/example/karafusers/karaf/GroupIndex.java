@@ -0,0 +1,324 @@
+package com.example.karafusers.karaf;
+
+import com.example.karafusers.io.PropertiesDocument;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Group-to-role resolution for one load of users.properties, built in a single pass.
+ *
+ * A group entry may reference other groups ({@code _g_\:ops = group,ops-role,_g_:viewers}); its
+ * effective roles are its own followed by those of every group it reaches. Groups are resolved
+ * once each, in reverse topological order of their strongly connected components, so a group
+ * referenced by many others is never expanded twice. Groups on a cycle all get the union of the
+ * cycle's roles, and the cycle is reported by {@link #cycles()} instead of failing.
+ *
+ * Users sharing the same direct roles and groups share one effective role set. Every set handed
+ * out is unmodifiable and must not be mutated by callers.
+ */
+public final class GroupIndex {
+
+    private final Map<String, Set<String>> effective;
+    private final List<List<String>> cycles;
+    private final List<String> names;
+    private final int[][] edges;
+    private final Map<Key, Set<String>> userRoles = new HashMap<>();
+    private int[][] reverse;
+
+    private record Key(List<String> roles, List<String> groups) {}
+
+    private GroupIndex(Map<String, Set<String>> effective, List<List<String>> cycles, List<String> names, int[][] edges) {
+        this.effective = effective;
+        this.cycles = cycles;
+        this.names = names;
+        this.edges = edges;
+    }
+
+    /** Indexes every {@code _g_:} entry of the document. */
+    public static GroupIndex build(PropertiesDocument doc) {
+        Collector groups = new Collector();
+        doc.forEach(groups);
+        return groups.build();
+    }
+
+    /** Gathers the {@code _g_:} entries of a stream of properties, ignoring everything else. */
+    static final class Collector implements BiConsumer<String, String> {
+        private final List<String> names = new ArrayList<>();
+        private final List<Set<String>> direct = new ArrayList<>();
+        private final List<List<String>> nested = new ArrayList<>();
+
+        @Override
+        public void accept(String key, String value) {
+            if (!UsersRealm.isGroupKey(key)) return;
+            Set<String> roles = new LinkedHashSet<>();
+            List<String> refs = new ArrayList<>(0);
+            UsersRealm.parseGroupValue(value, roles, refs);
+            names.add(key.substring(UsersRealm.GROUP_PREFIX.length()));
+            direct.add(Collections.unmodifiableSet(roles));
+            nested.add(refs);
+        }
+
+        GroupIndex build() {
+            return GroupIndex.build(names, direct, nested);
+        }
+    }
+
+    /** Indexes already parsed groups: names, their own roles and the groups each one nests, in file order. */
+    static GroupIndex build(List<String> names, List<Set<String>> direct, List<List<String>> nested) {
+        int n = names.size();
+        Map<String, Integer> ids = new HashMap<>(n * 4 / 3 + 1);
+        for (int g = 0; g < n; g++) {
+            ids.put(names.get(g), g);
+        }
+
+        int[][] edges = new int[n][];
+        for (int g = 0; g < n; g++) {
+            List<String> refs = nested.get(g);
+            int[] e = new int[refs.size()];
+            int k = 0;
+            for (String ref : refs) {
+                Integer id = ids.get(ref);
+                // References to undefined groups grant nothing, like a user's unknown group.
+                if (id != null) e[k++] = id;
+            }
+            edges[g] = k == e.length ? e : Arrays.copyOf(e, k);
+        }
+
+        return new Resolver(names, direct, edges).run();
+    }
+
+    /** Effective roles of a group, or an empty set if it is not defined. */
+    public Set<String> groupRoles(String group) {
+        return effective.getOrDefault(group, Set.of());
+    }
+
+    /** Number of defined groups. */
+    public int size() {
+        return effective.size();
+    }
+
+    /** Each cycle found among nested groups, as its member groups in file order. */
+    public List<List<String>> cycles() {
+        return cycles;
+    }
+
+    /** Every group whose effective roles include {@code role}, in file order. */
+    public List<String> groupsGranting(String role) {
+        List<String> out = new ArrayList<>();
+        for (String g : names) {
+            if (effective.get(g).contains(role)) out.add(g);
+        }
+        return out;
+    }
+
+    /**
+     * {@code group} and every group that nests it, directly or through others: a member of any
+     * of them is, for Karaf, in {@code group}. Just {@code group} itself if it is not defined.
+     */
+    public List<String> groupsReaching(String group) {
+        int start = names.indexOf(group);
+        if (start < 0) {
+            return List.of(group);
+        }
+        if (reverse == null) {
+            reverse = reverseEdges();
+        }
+        boolean[] seen = new boolean[names.size()];
+        int[] queue = new int[names.size()];
+        int head = 0;
+        int tail = 0;
+        seen[start] = true;
+        queue[tail++] = start;
+        while (head < tail) {
+            for (int from : reverse[queue[head++]]) {
+                if (!seen[from]) {
+                    seen[from] = true;
+                    queue[tail++] = from;
+                }
+            }
+        }
+        List<String> out = new ArrayList<>(tail);
+        for (int i = 0; i < tail; i++) {
+            out.add(names.get(queue[i]));
+        }
+        return out;
+    }
+
+    private int[][] reverseEdges() {
+        int n = names.size();
+        int[] counts = new int[n];
+        for (int[] e : edges) {
+            for (int to : e) counts[to]++;
+        }
+        int[][] rev = new int[n][];
+        for (int g = 0; g < n; g++) {
+            rev[g] = new int[counts[g]];
+            counts[g] = 0;
+        }
+        for (int from = 0; from < n; from++) {
+            for (int to : edges[from]) rev[to][counts[to]++] = from;
+        }
+        return rev;
+    }
+
+    /**
+     * The user's direct roles followed by the effective roles of each of its groups.
+     * Memoised per distinct (roles, groups) combination.
+     */
+    public Set<String> effectiveRoles(KarafUser user) {
+        Set<String> roles = user.roles();
+        Set<String> groups = user.groups();
+        if (groups.isEmpty()) {
+            return roles;
+        }
+        if (roles.isEmpty() && groups.size() == 1) {
+            return groupRoles(groups.iterator().next());
+        }
+        return userRoles.computeIfAbsent(new Key(List.copyOf(roles), List.copyOf(groups)), k -> {
+            Set<String> out = new LinkedHashSet<>(k.roles());
+            for (String g : k.groups()) {
+                out.addAll(groupRoles(g));
+            }
+            return Collections.unmodifiableSet(out);
+        });
+    }
+
+    /**
+     * Iterative Tarjan SCC over the nested-group graph. Components come out successors first,
+     * so every group a component references is already resolved when the component is.
+     * Iterative because nesting depth is file-controlled and must not exhaust the stack.
+     */
+    private static final class Resolver {
+
+        private final List<String> names;
+        private final List<Set<String>> direct;
+        private final int[][] edges;
+
+        private final int[] index;
+        private final int[] low;
+        private final int[] component;
+        private final boolean[] onStack;
+        private final int[] stack;
+        private int sp;
+        private int counter;
+        private int components;
+
+        private final List<Set<String>> resolved;
+        private final List<List<String>> cycles = new ArrayList<>();
+
+        @SuppressWarnings("unchecked")
+        Resolver(List<String> names, List<Set<String>> direct, int[][] edges) {
+            int n = names.size();
+            this.names = names;
+            this.direct = direct;
+            this.edges = edges;
+            this.index = new int[n];
+            this.low = new int[n];
+            this.component = new int[n];
+            this.onStack = new boolean[n];
+            this.stack = new int[n];
+            this.resolved = new ArrayList<>(Collections.nCopies(n, null));
+            Arrays.fill(index, -1);
+        }
+
+        GroupIndex run() {
+            int n = names.size();
+            int[] callNode = new int[n];
+            int[] callEdge = new int[n];
+
+            for (int start = 0; start < n; start++) {
+                if (index[start] != -1) continue;
+                int depth = 0;
+                callNode[0] = start;
+                callEdge[0] = 0;
+                visit(start);
+
+                while (depth >= 0) {
+                    int v = callNode[depth];
+                    if (callEdge[depth] < edges[v].length) {
+                        int w = edges[v][callEdge[depth]++];
+                        if (index[w] == -1) {
+                            visit(w);
+                            callNode[++depth] = w;
+                            callEdge[depth] = 0;
+                        } else if (onStack[w]) {
+                            low[v] = Math.min(low[v], index[w]);
+                        }
+                    } else {
+                        if (low[v] == index[v]) {
+                            resolveComponent(v);
+                        }
+                        if (--depth >= 0) {
+                            int parent = callNode[depth];
+                            low[parent] = Math.min(low[parent], low[v]);
+                        }
+                    }
+                }
+            }
+
+            Map<String, Set<String>> effective = new HashMap<>(n * 4 / 3 + 1);
+            for (int g = 0; g < n; g++) {
+                effective.put(names.get(g), resolved.get(g));
+            }
+            return new GroupIndex(effective, Collections.unmodifiableList(cycles), names, edges);
+        }
+
+        private void visit(int v) {
+            index[v] = low[v] = counter++;
+            stack[sp++] = v;
+            onStack[v] = true;
+        }
+
+        private void resolveComponent(int root) {
+            int id = components++;
+            int top = sp;
+            int w;
+            do {
+                w = stack[--sp];
+                onStack[w] = false;
+                component[w] = id;
+            } while (w != root);
+            int[] members = Arrays.copyOfRange(stack, sp, top);
+            Arrays.sort(members);
+
+            if (members.length == 1 && edges[root].length == 0) {
+                resolved.set(root, direct.get(root));
+                return;
+            }
+
+            Set<String> roles = new LinkedHashSet<>();
+            // A single group is only a cycle if it references itself.
+            boolean cyclic = members.length > 1;
+            for (int m : members) {
+                roles.addAll(direct.get(m));
+            }
+            for (int m : members) {
+                for (int e : edges[m]) {
+                    if (component[e] == id) {
+                        cyclic = true;
+                    } else {
+                        roles.addAll(resolved.get(e));
+                    }
+                }
+            }
+
+            Set<String> shared = Collections.unmodifiableSet(roles);
+            for (int m : members) {
+                resolved.set(m, shared);
+            }
+            if (cyclic) {
+                List<String> cycle = new ArrayList<>(members.length);
+                for (int m : members) cycle.add(names.get(m));
+                cycles.add(Collections.unmodifiableList(cycle));
+            }
+        }
+    }
+}
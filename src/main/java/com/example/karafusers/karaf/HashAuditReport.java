@@ -0,0 +1,18 @@
+package com.example.karafusers.karaf;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result of auditing the stored password encodings: how many accounts use each format and
+ * parameters (most common first), and the accounts falling short of what jaas.cfg would
+ * produce today ({@code current}).
+ */
+public record HashAuditReport(int users,
+                              String current,
+                              Map<String, Integer> histogram,
+                              List<Finding> belowCurrent,
+                              long parseNanos) {
+
+    public record Finding(String username, String format, String reason) {}
+}
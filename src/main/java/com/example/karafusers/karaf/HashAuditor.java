@@ -0,0 +1,96 @@
+package com.example.karafusers.karaf;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+
+import com.example.karafusers.crypto.HashFormat;
+
+/**
+ * Builds a {@link HashAuditReport} from (username, stored password) pairs fed in file order.
+ * Pairs are classified in parallel chunks with only a few chunks in flight, so memory stays
+ * bounded however large users.properties is; results are folded back in input order.
+ */
+final class HashAuditor {
+
+    private static final int CHUNK = 4096;
+
+    private record Chunk(String[] usernames, int size, CompletableFuture<long[]> formats) {}
+
+    private final String prefix;
+    private final String suffix;
+    private final long current;
+    private final int maxInFlight = Math.max(2, 2 * ForkJoinPool.getCommonPoolParallelism());
+    private final ArrayDeque<Chunk> inFlight = new ArrayDeque<>();
+    private final long t0 = System.nanoTime();
+
+    private String[] usernames = new String[CHUNK];
+    private String[] passwords = new String[CHUNK];
+    private int size;
+    private int users;
+    private final Map<Long, int[]> counts = new HashMap<>();
+    private final List<HashAuditReport.Finding> below = new ArrayList<>();
+
+    HashAuditor(String prefix, String suffix, long current) {
+        this.prefix = prefix;
+        this.suffix = suffix;
+        this.current = current;
+    }
+
+    void add(String username, String stored) {
+        usernames[size] = username;
+        passwords[size] = stored;
+        if (++size == CHUNK) submit();
+    }
+
+    private void submit() {
+        String[] chunk = passwords;
+        int n = size;
+        inFlight.add(new Chunk(usernames, n, CompletableFuture.supplyAsync(() -> classify(chunk, n))));
+        usernames = new String[CHUNK];
+        passwords = new String[CHUNK];
+        size = 0;
+        while (inFlight.size() > maxInFlight || !inFlight.isEmpty() && inFlight.peek().formats().isDone()) {
+            fold(inFlight.poll());
+        }
+    }
+
+    // Classification is index arithmetic over the stored string and yields a packed long:
+    // nothing is allocated per user until the (small) aggregation in fold.
+    private long[] classify(String[] stored, int n) {
+        long[] formats = new long[n];
+        for (int i = 0; i < n; i++) {
+            formats[i] = HashFormat.classify(stored[i], prefix, suffix, current);
+        }
+        return formats;
+    }
+
+    private void fold(Chunk chunk) {
+        long[] formats = chunk.formats().join();
+        for (int i = 0; i < chunk.size(); i++) {
+            counts.computeIfAbsent(formats[i], k -> new int[1])[0]++;
+            String reason = HashFormat.shortfall(formats[i], current);
+            if (reason != null) {
+                below.add(new HashAuditReport.Finding(chunk.usernames()[i], HashFormat.describe(formats[i]), reason));
+            }
+        }
+        users += chunk.size();
+    }
+
+    HashAuditReport report() {
+        if (size > 0) submit();
+        while (!inFlight.isEmpty()) fold(inFlight.poll());
+        long parseNanos = System.nanoTime() - t0;
+
+        Map<String, Integer> histogram = new LinkedHashMap<>();
+        counts.entrySet().stream()
+                .sorted((a, b) -> Integer.compare(b.getValue()[0], a.getValue()[0]))
+                .forEach(e -> histogram.put(HashFormat.describe(e.getKey()), e.getValue()[0]));
+        return new HashAuditReport(users, HashFormat.describe(current), histogram, below, parseNanos);
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.karafusers.karaf;
+
+import com.example.karafusers.crypto.HashingExecutor;
+
+/**
+ * Outcome and per-phase timings of a bulk import.
+ *
+ * readNanos is the time spent parsing input (overlapped with hashing), hashNanos the wall
+ * time from the first submitted hash to the last completed one, commitNanos the time
+ * spent applying entries and writing users.properties. hashing tells how the memory
+ * budget limited concurrent hashes.
+ */
+public record ImportReport(int imported,
+                           int skipped,
+                           int threads,
+                           long readNanos,
+                           long hashNanos,
+                           long commitNanos,
+                           HashingExecutor.Stats hashing) {
+
+    public int rows() {
+        return imported + skipped;
+    }
+
+    public static double perSecond(long count, long nanos) {
+        return nanos <= 0 ? 0.0 : count * 1_000_000_000.0 / nanos;
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.karafusers.karaf;
+
+import java.util.Set;
+
+/**
+ * One group entry of users.properties: {@code _g_\:name = group,role1,role2,_g_:nested}.
+ *
+ * {@code roles} are the group's own roles; with nesting resolved (see {@link GroupIndex}) they
+ * may be the effective ones instead. Sets keep file order and are not copied.
+ */
+public record KarafGroup(String name, Set<String> roles, Set<String> groups) {}
@@ -0,0 +1,17 @@
+package com.example.karafusers.karaf;
+
+import java.util.Set;
+
+/**
+ * One user entry of users.properties: {@code username = password,role1,role2,_g_:group1}.
+ *
+ * The password is kept exactly as stored (encoded and wrapped), and never printed by {@link #toString()}.
+ * Role and group sets keep file order and are not copied; {@link UsersRealm} hands out unmodifiable ones.
+ */
+public record KarafUser(String username, String password, Set<String> roles, Set<String> groups) {
+
+    @Override
+    public String toString() {
+        return "KarafUser[username=" + username + ", roles=" + roles + ", groups=" + groups + "]";
+    }
+}
@@ -1,6 +1,10 @@
 package com.example.karafusers.karaf;
 
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 public interface KarafUsersService {
 
@@ -11,7 +15,20 @@ public interface KarafUsersService {
 
     void deleteUser(String username);
 
-    void listUsers(boolean resolveGroups);
+    List<KarafUser> listUsers(boolean resolveGroups);
+
+    /**
+     * Streams users in file order to {@code sink}, holding no more than one user (plus the
+     * groups, when resolving them) in memory. {@code filter} sees each user as it is parsed,
+     * with effective roles when {@code resolveGroups} is set.
+     */
+    void exportUsers(boolean resolveGroups, Predicate<KarafUser> filter, Consumer<KarafUser> sink);
+
+    /**
+     * Indexes every user's roles and groups for {@link MembershipQuery} evaluation, from the
+     * same read {@link #listUsers} uses.
+     */
+    MembershipIndex membershipIndex();
 
     void editUser(String username,
                   Set<String> addRoles,
@@ -19,4 +36,62 @@ public interface KarafUsersService {
                   Set<String> addGroups,
                   Set<String> removeGroups,
                   String newPassword);
-}
\ No newline at end of file
+
+    /** All groups in file order; with {@code resolveGroups} their roles include those of nested groups. */
+    List<KarafGroup> listGroups(boolean resolveGroups);
+
+    void addGroup(String group, Set<String> roles, Set<String> nestedGroups);
+
+    /** Deletes the group and every {@code _g_:} reference to it. Returns the number of entries touched. */
+    int deleteGroup(String group);
+
+    void editGroup(String group,
+                   Set<String> addRoles,
+                   Set<String> removeRoles,
+                   Set<String> addGroups,
+                   Set<String> removeGroups);
+
+    /**
+     * Renames the group and every {@code _g_:} reference to it, in one pass over users.properties
+     * and one write. Returns the number of entries touched.
+     */
+    int renameGroup(String group, String newName);
+
+    /**
+     * Renames a role on every user and group holding it, in one pass and one write. Fails if
+     * {@code newName} is already in use: merging two roles is {@link #replaceRole}.
+     * Returns the number of entries touched.
+     */
+    int renameRole(String role, String newName);
+
+    /**
+     * Replaces a role by {@code replacements} (merged with roles already present) on every user
+     * and group holding it, in one pass and one write. Returns the number of entries touched.
+     */
+    int replaceRole(String role, Set<String> replacements);
+
+    /**
+     * Creates many users at once: passwords are hashed on {@code threads} workers and
+     * everything is committed with a single write. Nothing is written if any record fails.
+     */
+    ImportReport importUsers(Iterator<UserRecord> records, int threads, boolean skipExisting);
+
+    /**
+     * Checks credentials against the stored hashes, running {@code matches} on {@code threads}
+     * workers. Results reach {@code results} in input order, as soon as each one and all
+     * before it are known. Returns the number of credentials that did not verify.
+     */
+    int verifyUsers(Iterator<UserRecord> credentials, int threads, Consumer<CredentialCheck> results);
+
+    /**
+     * Classifies every stored password encoding and its cost parameters, and lists the
+     * accounts below the current jaas.cfg settings. Never verifies or decodes a secret.
+     */
+    HashAuditReport auditHashes();
+
+    /**
+     * Runs several operations against one in-memory load of users.properties and commits
+     * them with one backup and one atomic replace. If any operation fails, nothing is written.
+     */
+    void transaction(Consumer<KarafUsersService> work);
+}
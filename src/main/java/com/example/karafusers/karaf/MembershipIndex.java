@@ -0,0 +1,176 @@
+package com.example.karafusers.karaf;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Inverted index from roles and groups to the users holding them, for membership questions
+ * such as "who has admin?" or "who is in ops but not in audit?" (see {@link MembershipQuery}).
+ *
+ * Users get dense ids in file order. Each role and group written on a user line maps to the
+ * ids of those users: a bitset of {@code users/64} words once at least one user in 32 has it,
+ * a sorted id array below that (smaller, and as quick to OR into a bitset). What users receive
+ * through {@code _g_:} groups is not copied per user; a query term is widened at evaluation
+ * time to the members of every group that grants the role or nests the group, which is one OR
+ * per such group. Queries are therefore word-level AND/OR/NOT over at most a few bitsets.
+ */
+public final class MembershipIndex {
+
+    private static final Postings NONE = new Postings(new int[0], 0);
+
+    private final String[] usernames;
+    private final int words;
+    private final Map<String, Postings> roles;
+    private final Map<String, Postings> groups;
+    private final GroupIndex groupIndex;
+
+    private MembershipIndex(String[] usernames, Map<String, Postings> roles, Map<String, Postings> groups, GroupIndex groupIndex) {
+        this.usernames = usernames;
+        this.words = (usernames.length + 63) >>> 6;
+        this.roles = roles;
+        this.groups = groups;
+        this.groupIndex = groupIndex;
+    }
+
+    /** Indexes {@code users} (direct roles and groups, as {@link RealmView#users()} returns them). */
+    public static MembershipIndex build(List<KarafUser> users, GroupIndex groupIndex) {
+        int n = users.size();
+        String[] usernames = new String[n];
+        Map<String, Postings.Builder> roles = new HashMap<>();
+        Map<String, Postings.Builder> groups = new HashMap<>();
+        int id = 0;
+        for (KarafUser u : users) {
+            usernames[id] = u.username();
+            for (String r : u.roles()) roles.computeIfAbsent(r, k -> new Postings.Builder()).add(id);
+            for (String g : u.groups()) groups.computeIfAbsent(g, k -> new Postings.Builder()).add(id);
+            id++;
+        }
+        return new MembershipIndex(usernames, seal(roles, n), seal(groups, n), groupIndex);
+    }
+
+    private static Map<String, Postings> seal(Map<String, Postings.Builder> builders, int users) {
+        Map<String, Postings> out = new HashMap<>(builders.size() * 4 / 3 + 1);
+        builders.forEach((k, b) -> out.put(k, b.build(users)));
+        return out;
+    }
+
+    public int size() {
+        return usernames.length;
+    }
+
+    /** Users matching {@code query}, as a bitset over user ids. */
+    public long[] select(MembershipQuery query, boolean resolveGroups) {
+        return query.evaluate(this, resolveGroups);
+    }
+
+    /** Number of users in a selection. */
+    public static int count(long[] selection) {
+        int c = 0;
+        for (long w : selection) c += Long.bitCount(w);
+        return c;
+    }
+
+    /** Usernames in a selection, in file order. */
+    public void forEach(long[] selection, Consumer<String> sink) {
+        for (int w = 0; w < selection.length; w++) {
+            long bits = selection[w];
+            while (bits != 0) {
+                sink.accept(usernames[(w << 6) + Long.numberOfTrailingZeros(bits)]);
+                bits &= bits - 1;
+            }
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       Terms and operators, used by MembershipQuery
+       ------------------------------------------------------------------ */
+
+    long[] empty() {
+        return new long[words];
+    }
+
+    /** Users with {@code role}: on their own line, or (when resolving) through any group granting it. */
+    long[] role(String role, boolean resolveGroups) {
+        long[] out = empty();
+        roles.getOrDefault(role, NONE).orInto(out);
+        if (resolveGroups) {
+            for (String g : groupIndex.groupsGranting(role)) {
+                groups.getOrDefault(g, NONE).orInto(out);
+            }
+        }
+        return out;
+    }
+
+    /** Users in {@code group}: listed on their line, or (when resolving) through a group nesting it. */
+    long[] group(String group, boolean resolveGroups) {
+        long[] out = empty();
+        if (!resolveGroups) {
+            groups.getOrDefault(group, NONE).orInto(out);
+            return out;
+        }
+        for (String g : groupIndex.groupsReaching(group)) {
+            groups.getOrDefault(g, NONE).orInto(out);
+        }
+        return out;
+    }
+
+    static long[] and(long[] a, long[] b) {
+        for (int i = 0; i < a.length; i++) a[i] &= b[i];
+        return a;
+    }
+
+    static long[] or(long[] a, long[] b) {
+        for (int i = 0; i < a.length; i++) a[i] |= b[i];
+        return a;
+    }
+
+    long[] not(long[] a) {
+        for (int i = 0; i < a.length; i++) a[i] = ~a[i];
+        int tail = usernames.length & 63;
+        if (tail != 0) a[a.length - 1] &= (1L << tail) - 1; // ids past the last user stay clear
+        return a;
+    }
+
+    /** The ids holding one role or group: a bitset when dense, else sorted ids. */
+    private static final class Postings {
+        private final Object data;
+        private final int count;
+
+        Postings(Object data, int count) {
+            this.data = data;
+            this.count = count;
+        }
+
+        void orInto(long[] bits) {
+            if (count == 0) return;
+            if (data instanceof long[] words) {
+                or(bits, words);
+            } else {
+                for (int id : (int[]) data) bits[id >>> 6] |= 1L << id;
+            }
+        }
+
+        static final class Builder {
+            private int[] ids = new int[4];
+            private int count;
+
+            /** Ids arrive in ascending order, once each. */
+            void add(int id) {
+                if (count == ids.length) ids = Arrays.copyOf(ids, count * 2);
+                ids[count++] = id;
+            }
+
+            Postings build(int users) {
+                if (count < users >>> 5) {
+                    return new Postings(Arrays.copyOf(ids, count), count);
+                }
+                long[] bits = new long[(users + 63) >>> 6];
+                for (int i = 0; i < count; i++) bits[ids[i] >>> 6] |= 1L << ids[i];
+                return new Postings(bits, count);
+            }
+        }
+    }
+}
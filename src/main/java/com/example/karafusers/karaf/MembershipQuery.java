@@ -0,0 +1,174 @@
+package com.example.karafusers.karaf;
+
+import java.util.Locale;
+
+/**
+ * A boolean membership expression over roles and groups, evaluated on a {@link MembershipIndex}.
+ *
+ * <pre>
+ *   expr   := and ( ("or" | "|") and )*
+ *   and    := unary ( ("and" | "&amp;") unary )*
+ *   unary  := ("not" | "!") unary | "(" expr ")" | term
+ *   term   := "role:" name | "group:" name
+ * </pre>
+ *
+ * Keywords are case-insensitive. A name runs up to whitespace, a parenthesis or an operator
+ * symbol; double-quote it ({@code role:"x y"}) to include any of those. Example:
+ * {@code group:ops and not (group:audit or role:viewer)}.
+ */
+public final class MembershipQuery {
+
+    private sealed interface Node permits Term, Not, And, Or {}
+
+    private record Term(boolean role, String name) implements Node {}
+
+    private record Not(Node operand) implements Node {}
+
+    private record And(Node left, Node right) implements Node {}
+
+    private record Or(Node left, Node right) implements Node {}
+
+    private final String text;
+    private final Node root;
+
+    private MembershipQuery(String text, Node root) {
+        this.text = text;
+        this.root = root;
+    }
+
+    /** Parses {@code text}; a syntax error is an IllegalArgumentException naming the position. */
+    public static MembershipQuery parse(String text) {
+        Parser p = new Parser(text);
+        Node root = p.expr();
+        p.skipSpace();
+        if (p.pos < text.length()) {
+            throw p.error("unexpected '" + text.charAt(p.pos) + "'");
+        }
+        return new MembershipQuery(text, root);
+    }
+
+    long[] evaluate(MembershipIndex index, boolean resolveGroups) {
+        return eval(root, index, resolveGroups);
+    }
+
+    private static long[] eval(Node node, MembershipIndex index, boolean resolveGroups) {
+        if (node instanceof Term t) {
+            return t.role() ? index.role(t.name(), resolveGroups) : index.group(t.name(), resolveGroups);
+        }
+        if (node instanceof Not n) {
+            return index.not(eval(n.operand(), index, resolveGroups));
+        }
+        if (node instanceof And a) {
+            return MembershipIndex.and(eval(a.left(), index, resolveGroups), eval(a.right(), index, resolveGroups));
+        }
+        Or o = (Or) node;
+        return MembershipIndex.or(eval(o.left(), index, resolveGroups), eval(o.right(), index, resolveGroups));
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    /** Recursive descent; nesting depth is bounded by the length of a command-line argument. */
+    private static final class Parser {
+        private final String s;
+        private int pos;
+
+        Parser(String s) {
+            this.s = s;
+        }
+
+        Node expr() {
+            Node left = and();
+            while (operator("or", '|')) {
+                left = new Or(left, and());
+            }
+            return left;
+        }
+
+        private Node and() {
+            Node left = unary();
+            while (operator("and", '&')) {
+                left = new And(left, unary());
+            }
+            return left;
+        }
+
+        private Node unary() {
+            if (operator("not", '!')) {
+                return new Not(unary());
+            }
+            skipSpace();
+            if (pos < s.length() && s.charAt(pos) == '(') {
+                pos++;
+                Node inner = expr();
+                skipSpace();
+                if (pos >= s.length() || s.charAt(pos) != ')') {
+                    throw error("missing ')'");
+                }
+                pos++;
+                return inner;
+            }
+            return term();
+        }
+
+        private Node term() {
+            int start = pos;
+            int colon = s.indexOf(':', pos);
+            String kind = colon < 0 ? "" : s.substring(pos, colon).toLowerCase(Locale.ROOT);
+            if (!kind.equals("role") && !kind.equals("group")) {
+                throw error(pos >= s.length() ? "expected role:<name> or group:<name> at end of query"
+                        : "expected role:<name> or group:<name>");
+            }
+            pos = colon + 1;
+            String name = name();
+            if (name.isEmpty()) {
+                pos = start;
+                throw error("missing name after '" + kind + ":'");
+            }
+            return new Term(kind.equals("role"), name);
+        }
+
+        private String name() {
+            if (pos < s.length() && s.charAt(pos) == '"') {
+                int end = s.indexOf('"', pos + 1);
+                if (end < 0) throw error("unterminated quote");
+                String name = s.substring(pos + 1, end);
+                pos = end + 1;
+                return name;
+            }
+            int start = pos;
+            while (pos < s.length() && !isDelimiter(s.charAt(pos))) pos++;
+            return s.substring(start, pos);
+        }
+
+        /** Consumes the keyword (as a whole word) or the symbol if it comes next. */
+        private boolean operator(String keyword, char symbol) {
+            skipSpace();
+            if (pos < s.length() && s.charAt(pos) == symbol) {
+                pos++;
+                return true;
+            }
+            int end = pos + keyword.length();
+            if (s.regionMatches(true, pos, keyword, 0, keyword.length())
+                    && (end == s.length() || isDelimiter(s.charAt(end)))) {
+                pos = end;
+                return true;
+            }
+            return false;
+        }
+
+        void skipSpace() {
+            while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) pos++;
+        }
+
+        private static boolean isDelimiter(char c) {
+            return Character.isWhitespace(c) || c == '(' || c == ')' || c == '&' || c == '|' || c == '!';
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("Invalid query at position " + (pos + 1) + ": " + message + " in '" + s + "'.");
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.karafusers.karaf;
+
+import com.example.karafusers.io.PropertiesDocument;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * What changed between two versions of users.properties, in Karaf terms: users and groups
+ * added, removed or changed, with the roles and groups gained or lost. Password values are
+ * never kept, only whether they changed.
+ *
+ * Computed from the keys {@link PropertiesDocument#changedKeys} reports, so the cost is one
+ * pass over the document plus the changed entries, however large the realm.
+ */
+public record RealmDiff(List<Change> changes) {
+
+    public enum Kind { ADDED, REMOVED, CHANGED }
+
+    /** One user or group; for ADDED/REMOVED the role and group sets hold everything it had. */
+    public record Change(Kind kind,
+                         boolean group,
+                         String name,
+                         Set<String> rolesAdded,
+                         Set<String> rolesRemoved,
+                         Set<String> groupsAdded,
+                         Set<String> groupsRemoved,
+                         boolean passwordChanged) {}
+
+    /** {@code after} must derive from {@code before} through put/remove (see {@link PropertiesDocument#copy}). */
+    public static RealmDiff between(PropertiesDocument before, PropertiesDocument after) {
+        List<Change> out = new ArrayList<>();
+        for (String key : after.changedKeys(before)) {
+            String was = before.get(key);
+            String now = after.get(key);
+            if (was != null && was.equals(now)) continue; // rewritten with the same value
+            Change c = UsersRealm.isGroupKey(key)
+                    ? groupChange(key.substring(UsersRealm.GROUP_PREFIX.length()), was, now)
+                    : userChange(key, was, now);
+            if (c != null) out.add(c);
+        }
+        return new RealmDiff(Collections.unmodifiableList(out));
+    }
+
+    private static Change userChange(String name, String was, String now) {
+        KarafUser a = was == null ? null : UsersRealm.parseUser(name, was);
+        KarafUser b = now == null ? null : UsersRealm.parseUser(name, now);
+        Set<String> noRoles = Set.of();
+        boolean passwordChanged = a == null || b == null || !a.password().equals(b.password());
+        Change c = new Change(kind(a, b), false, name,
+                minus(b == null ? noRoles : b.roles(), a == null ? noRoles : a.roles()),
+                minus(a == null ? noRoles : a.roles(), b == null ? noRoles : b.roles()),
+                minus(b == null ? noRoles : b.groups(), a == null ? noRoles : a.groups()),
+                minus(a == null ? noRoles : a.groups(), b == null ? noRoles : b.groups()),
+                passwordChanged);
+        return isNoop(c) ? null : c;
+    }
+
+    private static Change groupChange(String name, String was, String now) {
+        Set<String> rolesA = new LinkedHashSet<>();
+        Set<String> rolesB = new LinkedHashSet<>();
+        List<String> nestedA = new ArrayList<>();
+        List<String> nestedB = new ArrayList<>();
+        if (was != null) UsersRealm.parseGroupValue(was, rolesA, nestedA);
+        if (now != null) UsersRealm.parseGroupValue(now, rolesB, nestedB);
+        Set<String> groupsA = new LinkedHashSet<>(nestedA);
+        Set<String> groupsB = new LinkedHashSet<>(nestedB);
+        Change c = new Change(kind(was, now), true, name,
+                minus(rolesB, rolesA), minus(rolesA, rolesB),
+                minus(groupsB, groupsA), minus(groupsA, groupsB),
+                false);
+        return isNoop(c) ? null : c;
+    }
+
+    private static Kind kind(Object before, Object after) {
+        return before == null ? Kind.ADDED : after == null ? Kind.REMOVED : Kind.CHANGED;
+    }
+
+    /** A reformatted entry (spacing, order) that means the same to Karaf. */
+    private static boolean isNoop(Change c) {
+        return c.kind() == Kind.CHANGED && !c.passwordChanged()
+                && c.rolesAdded().isEmpty() && c.rolesRemoved().isEmpty()
+                && c.groupsAdded().isEmpty() && c.groupsRemoved().isEmpty();
+    }
+
+    private static Set<String> minus(Set<String> a, Set<String> b) {
+        if (a.isEmpty()) return Set.of();
+        Set<String> out = new LinkedHashSet<>(a);
+        out.removeAll(b);
+        return Collections.unmodifiableSet(out);
+    }
+
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    /** One line per change ({@code +} added, {@code -} removed, {@code ~} changed), then totals. */
+    public void print(PrintWriter out) {
+        if (changes.isEmpty()) {
+            out.println("No changes.");
+            return;
+        }
+        int[] users = new int[Kind.values().length];
+        int[] groups = new int[Kind.values().length];
+        StringBuilder sb = new StringBuilder();
+        for (Change c : changes) {
+            (c.group() ? groups : users)[c.kind().ordinal()]++;
+            sb.setLength(0);
+            sb.append(c.kind() == Kind.ADDED ? "+ " : c.kind() == Kind.REMOVED ? "- " : "~ ");
+            sb.append(c.group() ? "group " : "user ").append(c.name());
+            if (c.kind() != Kind.REMOVED) {
+                appendSets(sb, "roles", c.rolesAdded(), c.rolesRemoved());
+                appendSets(sb, "groups", c.groupsAdded(), c.groupsRemoved());
+                if (!c.group() && c.passwordChanged()) {
+                    sb.append(c.kind() == Kind.ADDED ? "  password set" : "  password changed");
+                }
+            }
+            out.println(sb);
+        }
+        out.println("Users: " + totals(users) + "; groups: " + totals(groups) + ".");
+    }
+
+    private static void appendSets(StringBuilder sb, String label, Set<String> added, Set<String> removed) {
+        if (added.isEmpty() && removed.isEmpty()) return;
+        sb.append("  ").append(label).append(' ');
+        String sep = "";
+        for (String s : added) {
+            sb.append(sep).append('+').append(s);
+            sep = ",";
+        }
+        for (String s : removed) {
+            sb.append(sep).append('-').append(s);
+            sep = ",";
+        }
+    }
+
+    private static String totals(int[] counts) {
+        return counts[Kind.ADDED.ordinal()] + " added, "
+                + counts[Kind.CHANGED.ordinal()] + " changed, "
+                + counts[Kind.REMOVED.ordinal()] + " removed";
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.karafusers.karaf;
+
+import java.util.List;
+
+/** Read-only access to users and groups, whether parsed from users.properties or served by a {@link UsersIndex}. */
+public interface RealmView {
+
+    /** Returns the user, or null if absent. */
+    KarafUser user(String username);
+
+    /** All users in file order. */
+    List<KarafUser> users();
+
+    /** All groups in file order, with their own roles and the groups they nest. */
+    List<KarafGroup> groups();
+
+    /** Effective roles of every group, nested groups included. */
+    GroupIndex groupIndex();
+}
@@ -0,0 +1,15 @@
+package com.example.karafusers.karaf;
+
+import java.util.Set;
+
+/**
+ * A user to be created from bulk input, with its password still in clear text.
+ * Never printed with its password.
+ */
+public record UserRecord(String username, String rawPassword, Set<String> roles, Set<String> groups) {
+
+    @Override
+    public String toString() {
+        return "UserRecord[username=" + username + ", roles=" + roles + ", groups=" + groups + "]";
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.karafusers.karaf;
+
+import com.example.karafusers.io.JsonLines;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Streams {@link UserRecord}s from CSV or JSON Lines, one record per line.
+ *
+ * CSV columns are {@code username,password,roles,groups}; roles and groups are comma-separated
+ * lists, so quote them when they hold more than one value ({@code alice,s3cret,"admin,viewer",ops}).
+ * An optional header line starting with "username" is skipped.
+ *
+ * JSON Lines records look like {@code {"username":"alice","password":"s3cret","roles":["admin"],"groups":"ops"}};
+ * roles/groups may be arrays or comma-separated strings.
+ *
+ * Blank lines and lines starting with '#' are ignored in both formats.
+ */
+public final class UserRecordReader implements Iterator<UserRecord>, Closeable {
+
+    public enum Format {
+        CSV, JSONL;
+
+        /** Guesses the format from a file name, or returns null. */
+        public static Format fromFileName(String name) {
+            String lc = name.toLowerCase(Locale.ROOT);
+            if (lc.endsWith(".csv")) return CSV;
+            if (lc.endsWith(".jsonl") || lc.endsWith(".ndjson") || lc.endsWith(".json")) return JSONL;
+            return null;
+        }
+    }
+
+    private final BufferedReader in;
+    private final Format format;
+    private final String sourceName;
+    private int lineNo;
+    private boolean headerChecked;
+    private UserRecord next;
+
+    public UserRecordReader(BufferedReader in, Format format, String sourceName) {
+        this.in = in;
+        this.format = format;
+        this.sourceName = sourceName;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            next = readNext();
+        }
+        return next != null;
+    }
+
+    @Override
+    public UserRecord next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        UserRecord r = next;
+        next = null;
+        return r;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private UserRecord readNext() {
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                lineNo++;
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) continue;
+
+                UserRecord r = format == Format.CSV ? fromCsv(line) : fromJson(trimmed);
+                if (r != null) return r;
+            }
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + sourceName + ": " + e.getMessage(), e);
+        }
+    }
+
+    private UserRecord fromCsv(String line) {
+        List<String> fields = splitCsv(line);
+        if (!headerChecked) {
+            headerChecked = true;
+            if (fields.get(0).trim().equalsIgnoreCase("username")) return null;
+        }
+        if (fields.size() < 2 || fields.size() > 4) {
+            throw invalid("expected username,password[,roles[,groups]] but got " + fields.size() + " column(s)");
+        }
+        return record(fields.get(0),
+                fields.get(1),
+                fields.size() > 2 ? parseCsv(fields.get(2)) : Set.of(),
+                fields.size() > 3 ? parseCsv(fields.get(3)) : Set.of());
+    }
+
+    private UserRecord fromJson(String line) {
+        Map<String, Object> obj;
+        try {
+            obj = JsonLines.parseObject(line);
+        } catch (IllegalArgumentException e) {
+            throw invalid(e.getMessage());
+        }
+        return record(string(obj, "username"),
+                string(obj, "password"),
+                list(obj, "roles"),
+                list(obj, "groups"));
+    }
+
+    private String string(Map<String, Object> obj, String key) {
+        Object v = obj.get(key);
+        if (v != null && !(v instanceof String)) throw invalid("'" + key + "' must be a string");
+        return (String) v;
+    }
+
+    private Set<String> list(Map<String, Object> obj, String key) {
+        Object v = obj.get(key);
+        if (v == null) return Set.of();
+        if (v instanceof String s) return parseCsv(s);
+        if (!(v instanceof List<?> items)) throw invalid("'" + key + "' must be a string or an array of strings");
+        Set<String> out = new LinkedHashSet<>();
+        for (Object o : items) {
+            if (!(o instanceof String item)) throw invalid("'" + key + "' must only contain strings");
+            String trimmed = item.trim();
+            if (!trimmed.isEmpty()) out.add(trimmed);
+        }
+        return Collections.unmodifiableSet(out);
+    }
+
+    private UserRecord record(String username, String password, Set<String> roles, Set<String> groups) {
+        if (username == null || username.isBlank()) throw invalid("missing username");
+        if (password == null || password.isEmpty()) throw invalid("missing password for user '" + username.trim() + "'");
+        return new UserRecord(username.trim(), password, roles, groups);
+    }
+
+    private IllegalArgumentException invalid(String msg) {
+        return new IllegalArgumentException(sourceName + " line " + lineNo + ": " + msg);
+    }
+
+    /** Splits one CSV line (RFC 4180 quoting, "" for a literal quote). */
+    private List<String> splitCsv(String line) {
+        List<String> out = new ArrayList<>(4);
+        StringBuilder sb = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        sb.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    sb.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                out.add(sb.toString());
+                sb.setLength(0);
+            } else {
+                sb.append(c);
+            }
+        }
+        if (quoted) throw invalid("unterminated quoted field");
+        out.add(sb.toString());
+        return out;
+    }
+
+    static Set<String> parseCsv(String csv) {
+        Set<String> out = new LinkedHashSet<>();
+        if (csv == null || csv.isBlank()) return out;
+        for (String part : csv.split(",")) {
+            String s = part.trim();
+            if (!s.isEmpty()) out.add(s);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,349 @@
+package com.example.karafusers.karaf;
+
+import com.example.karafusers.io.FileSecurity;
+import com.example.karafusers.io.Journal;
+import com.example.karafusers.io.PropertiesDocument;
+import com.example.karafusers.io.SecureFileUpdate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Binary, memory-mapped index of users.properties, kept next to it as {@code users.properties.idx}.
+ *
+ * Read-only commands use it instead of parsing the whole file: a user lookup is a hash probe
+ * plus a few page-cache reads, and listing decodes each distinct role/group name once.
+ * The index records the size, mtime and CRC32 of the users.properties it was built from. It is
+ * trusted when size and mtime match; when only the mtime differs the file is checksummed, so a
+ * touched or copied file with the same content keeps its index. Anything else means it is stale.
+ *
+ * Layout (big-endian), after a 72-byte header of magic, base size, mtime (ns), CRC32, four
+ * counts and five section offsets:
+ * <pre>
+ * string offsets  int[strings + 1], relative to the string data
+ * string data     UTF-8 of usernames, passwords, role and group names, each stored once
+ * users           int[users] record offsets, then records: name, password, #roles, #groups, ids...
+ * groups          int[groups] record offsets, then records: name, #roles, #nested, ids...
+ * hash            int[capacity], open addressing on the username, user number + 1 (0 = empty)
+ * </pre>
+ * Passwords are stored as in users.properties, so the index is created 0600 like the file itself.
+ */
+public final class UsersIndex implements RealmView {
+
+    private static final long MAGIC = 0x4B55494458000001L; // "KUIDX", format 1
+    private static final int HEADER = 72;
+
+    private final ByteBuffer buf;
+    private final int stringCount;
+    private final int userCount;
+    private final int groupCount;
+    private final int hashCapacity;
+    private final int stringOffsets;
+    private final int stringData;
+    private final int users;
+    private final int groups;
+    private final int hash;
+
+    private UsersIndex(ByteBuffer buf) {
+        this.buf = buf;
+        this.stringCount = buf.getInt(32);
+        this.userCount = buf.getInt(36);
+        this.groupCount = buf.getInt(40);
+        this.hashCapacity = buf.getInt(44);
+        this.stringOffsets = buf.getInt(48);
+        this.stringData = buf.getInt(52);
+        this.users = buf.getInt(56);
+        this.groups = buf.getInt(60);
+        this.hash = buf.getInt(64);
+    }
+
+    public static Path pathFor(Path usersFile) {
+        return usersFile.resolveSibling(usersFile.getFileName() + ".idx");
+    }
+
+    /* ------------------------------------------------------------------
+       Reading
+       ------------------------------------------------------------------ */
+
+    /**
+     * Maps the index if it exists, is as private as users.properties (0600, ours, not a symlink)
+     * and still describes {@code usersFile}; returns null otherwise, so it is rebuilt.
+     */
+    public static UsersIndex open(Path indexFile, Path usersFile) throws IOException {
+        if (!Files.exists(indexFile, LinkOption.NOFOLLOW_LINKS)) return null;
+        try {
+            FileSecurity.assertSecureUsersFile(indexFile);
+        } catch (SecurityException e) {
+            // Whoever else can write the index could make it serve other roles and hashes.
+            return null;
+        }
+
+        MappedByteBuffer buf;
+        try (FileChannel ch = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            if (ch.size() < HEADER || ch.size() > Integer.MAX_VALUE) return null;
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+        if (buf.getLong(0) != MAGIC) return null;
+
+        BasicFileAttributes attrs = Files.readAttributes(usersFile, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        if (attrs.size() != buf.getLong(8)) return null;
+
+        long mtime = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        if (mtime != buf.getLong(16)) {
+            if (checksum(usersFile) != buf.getLong(24)) return null;
+            // Same content under a new timestamp: record it so the next check is cheap again.
+            try (FileChannel ch = FileChannel.open(indexFile, StandardOpenOption.WRITE)) {
+                ch.write(ByteBuffer.allocate(8).putLong(0, mtime), 16);
+            }
+        }
+
+        UsersIndex index = new UsersIndex(buf);
+        if (index.hash + 4L * index.hashCapacity != buf.capacity()) return null;
+        return index;
+    }
+
+    public int userCount() {
+        return userCount;
+    }
+
+    @Override
+    public KarafUser user(String username) {
+        if (userCount == 0) return null;
+        byte[] wanted = username.getBytes(StandardCharsets.UTF_8);
+        int mask = hashCapacity - 1;
+        for (int i = spread(username.hashCode()) & mask; ; i = (i + 1) & mask) {
+            int slot = buf.getInt(hash + 4 * i);
+            if (slot == 0) return null;
+            int rec = userRecord(slot - 1);
+            if (stringEquals(buf.getInt(rec), wanted)) {
+                return readUser(rec, null);
+            }
+        }
+    }
+
+    @Override
+    public List<KarafUser> users() {
+        // Role and group names repeat across users: decode each one once.
+        String[] decoded = new String[stringCount];
+        List<KarafUser> out = new ArrayList<>(userCount);
+        for (int u = 0; u < userCount; u++) {
+            out.add(readUser(userRecord(u), decoded));
+        }
+        return out;
+    }
+
+    @Override
+    public List<KarafGroup> groups() {
+        String[] decoded = new String[stringCount];
+        List<KarafGroup> out = new ArrayList<>(groupCount);
+        int records = groups + 4 * groupCount;
+        for (int g = 0; g < groupCount; g++) {
+            int rec = records + buf.getInt(groups + 4 * g);
+            int roleCount = buf.getInt(rec + 4);
+            int nestedCount = buf.getInt(rec + 8);
+            out.add(new KarafGroup(string(buf.getInt(rec), decoded),
+                    readSet(rec + 12, roleCount, decoded),
+                    readSet(rec + 12 + 4 * roleCount, nestedCount, decoded)));
+        }
+        return out;
+    }
+
+    @Override
+    public GroupIndex groupIndex() {
+        List<KarafGroup> all = groups();
+        List<String> names = new ArrayList<>(all.size());
+        List<Set<String>> direct = new ArrayList<>(all.size());
+        List<List<String>> nested = new ArrayList<>(all.size());
+        for (KarafGroup g : all) {
+            names.add(g.name());
+            direct.add(g.roles());
+            nested.add(List.copyOf(g.groups()));
+        }
+        return GroupIndex.build(names, direct, nested);
+    }
+
+    private int userRecord(int u) {
+        return users + 4 * userCount + buf.getInt(users + 4 * u);
+    }
+
+    private KarafUser readUser(int rec, String[] decoded) {
+        int roleCount = buf.getInt(rec + 8);
+        int groupCount = buf.getInt(rec + 12);
+        return new KarafUser(
+                string(buf.getInt(rec), null),
+                string(buf.getInt(rec + 4), null),
+                readSet(rec + 16, roleCount, decoded),
+                readSet(rec + 16 + 4 * roleCount, groupCount, decoded));
+    }
+
+    private Set<String> readSet(int at, int count, String[] decoded) {
+        if (count == 0) return Set.of();
+        Set<String> out = new LinkedHashSet<>(count * 4 / 3 + 1);
+        for (int i = 0; i < count; i++) {
+            out.add(string(buf.getInt(at + 4 * i), decoded));
+        }
+        return Collections.unmodifiableSet(out);
+    }
+
+    private String string(int id, String[] decoded) {
+        if (decoded != null && decoded[id] != null) return decoded[id];
+        int start = buf.getInt(stringOffsets + 4 * id);
+        byte[] b = new byte[buf.getInt(stringOffsets + 4 * (id + 1)) - start];
+        buf.get(stringData + start, b);
+        String s = new String(b, StandardCharsets.UTF_8);
+        if (decoded != null) decoded[id] = s;
+        return s;
+    }
+
+    private boolean stringEquals(int id, byte[] wanted) {
+        int start = buf.getInt(stringOffsets + 4 * id);
+        if (buf.getInt(stringOffsets + 4 * (id + 1)) - start != wanted.length) return false;
+        for (int i = 0; i < wanted.length; i++) {
+            if (buf.get(stringData + start + i) != wanted[i]) return false;
+        }
+        return true;
+    }
+
+    /* ------------------------------------------------------------------
+       Writing
+       ------------------------------------------------------------------ */
+
+    /**
+     * (Re)builds the index of {@code doc}, whose serialised form has identity {@code base}, through
+     * a 0600 temp file and an atomic replace. {@code mtimeNanos} is the users.properties mtime read
+     * before that content was: if another writer replaced the file since, its mtime no longer
+     * matches, {@link #open} falls back to the checksum and the index is rejected as stale.
+     */
+    public static void write(Path indexFile, PropertiesDocument doc, Journal.BaseId base, long mtimeNanos) throws IOException {
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        List<int[]> userRecs = new ArrayList<>(doc.size());
+        List<int[]> groupRecs = new ArrayList<>();
+        List<String> usernames = new ArrayList<>(doc.size());
+
+        doc.forEach((key, value) -> {
+            if (UsersRealm.isGroupKey(key)) {
+                Set<String> roles = new LinkedHashSet<>();
+                List<String> refs = new ArrayList<>(0);
+                UsersRealm.parseGroupValue(value, roles, refs);
+                int[] rec = new int[3 + roles.size() + refs.size()];
+                rec[0] = intern(key.substring(UsersRealm.GROUP_PREFIX.length()), ids, strings);
+                rec[1] = roles.size();
+                rec[2] = refs.size();
+                int i = 3;
+                for (String r : roles) rec[i++] = intern(r, ids, strings);
+                for (String g : refs) rec[i++] = intern(g, ids, strings);
+                groupRecs.add(rec);
+            } else {
+                KarafUser u = UsersRealm.parseUser(key, value);
+                int[] rec = new int[4 + u.roles().size() + u.groups().size()];
+                rec[0] = intern(key, ids, strings);
+                rec[1] = intern(u.password(), ids, strings);
+                rec[2] = u.roles().size();
+                rec[3] = u.groups().size();
+                int i = 4;
+                for (String r : u.roles()) rec[i++] = intern(r, ids, strings);
+                for (String g : u.groups()) rec[i++] = intern(g, ids, strings);
+                userRecs.add(rec);
+                usernames.add(key);
+            }
+        });
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(1024, (int) Math.min(Integer.MAX_VALUE, base.size())));
+        DataOutputStream body = new DataOutputStream(bytes);
+        int[] sections = new int[5];
+
+        // String offsets and data.
+        sections[0] = HEADER + body.size();
+        byte[][] encoded = new byte[strings.size()][];
+        int offset = 0;
+        for (int i = 0; i < encoded.length; i++) {
+            body.writeInt(offset);
+            encoded[i] = strings.get(i).getBytes(StandardCharsets.UTF_8);
+            offset += encoded[i].length;
+        }
+        body.writeInt(offset);
+        sections[1] = HEADER + body.size();
+        for (byte[] e : encoded) body.write(e);
+        while (body.size() % 4 != 0) body.writeByte(0);
+
+        sections[2] = HEADER + body.size();
+        writeRecords(body, userRecs);
+        sections[3] = HEADER + body.size();
+        writeRecords(body, groupRecs);
+
+        sections[4] = HEADER + body.size();
+        int capacity = Integer.highestOneBit(Math.max(2, userRecs.size() * 2 - 1)) << 1;
+        int[] table = new int[capacity];
+        for (int u = 0; u < usernames.size(); u++) {
+            int i = spread(usernames.get(u).hashCode()) & (capacity - 1);
+            while (table[i] != 0) i = (i + 1) & (capacity - 1);
+            table[i] = u + 1;
+        }
+        for (int slot : table) body.writeInt(slot);
+        body.flush();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER)
+                .putLong(MAGIC).putLong(base.size()).putLong(mtimeNanos).putLong(base.crc())
+                .putInt(strings.size()).putInt(userRecs.size()).putInt(groupRecs.size()).putInt(capacity);
+        for (int s : sections) header.putInt(s);
+
+        SecureFileUpdate.replaceSecurely(indexFile, out -> {
+            out.write(header.array());
+            bytes.writeTo(out);
+        });
+    }
+
+    private static void writeRecords(DataOutputStream body, List<int[]> records) throws IOException {
+        int offset = 0;
+        for (int[] rec : records) {
+            body.writeInt(offset);
+            offset += 4 * rec.length;
+        }
+        for (int[] rec : records) {
+            for (int v : rec) body.writeInt(v);
+        }
+    }
+
+    private static int intern(String s, Map<String, Integer> ids, List<String> strings) {
+        Integer id = ids.get(s);
+        if (id == null) {
+            id = strings.size();
+            ids.put(s, id);
+            strings.add(s);
+        }
+        return id;
+    }
+
+    private static int spread(int h) {
+        return (h ^ (h >>> 16)) * 0x9E3779B9;
+    }
+
+    private static long checksum(Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (ch.size() > Integer.MAX_VALUE) return -1;
+            crc.update(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+        }
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,286 @@
+package com.example.karafusers.karaf;
+
+import com.example.karafusers.io.PropertiesDocument;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Karaf semantics over a users.properties {@link PropertiesDocument}.
+ *
+ * Users are stored as {@code username = password,role1,_g_:group1} and groups as
+ * {@code _g_\:group1 = group,role1,role2}, exactly like Karaf's PropertiesBackingEngine.
+ * All operations are in-memory; persisting the document is the caller's job.
+ */
+public final class UsersRealm implements RealmView {
+
+    public static final String GROUP_PREFIX = "_g_:";
+
+    /** First token of every group entry. */
+    private static final String GROUP_MARKER = "group";
+
+    private final PropertiesDocument doc;
+
+    public UsersRealm(PropertiesDocument doc) {
+        this.doc = Objects.requireNonNull(doc, "doc");
+    }
+
+    public PropertiesDocument document() {
+        return doc;
+    }
+
+    public static boolean isGroupKey(String key) {
+        return key.startsWith(GROUP_PREFIX);
+    }
+
+    /* ------------------------------------------------------------------
+       Users
+       ------------------------------------------------------------------ */
+
+    public boolean hasUser(String username) {
+        return !isGroupKey(username) && doc.containsKey(username);
+    }
+
+    @Override
+    public KarafUser user(String username) {
+        if (isGroupKey(username)) return null;
+        String value = doc.get(username);
+        return value == null ? null : parseUser(username, value);
+    }
+
+    @Override
+    public List<KarafUser> users() {
+        List<KarafUser> out = new ArrayList<>(doc.size());
+        doc.forEach((key, value) -> {
+            if (!isGroupKey(key)) out.add(parseUser(key, value));
+        });
+        return out;
+    }
+
+    public void putUser(KarafUser user) {
+        validateName(user.username(), "Username");
+        for (String role : user.roles()) {
+            validateName(role, "Role name");
+        }
+        for (String group : user.groups()) {
+            ensureGroup(group);
+        }
+        doc.put(user.username(), format(user.password(), user.roles(), user.groups()));
+    }
+
+    public boolean removeUser(String username) {
+        if (isGroupKey(username)) return false;
+        return doc.remove(username) != null;
+    }
+
+    /* ------------------------------------------------------------------
+       Groups
+       ------------------------------------------------------------------ */
+
+    public boolean hasGroup(String group) {
+        return doc.containsKey(GROUP_PREFIX + group);
+    }
+
+    /** Creates an empty group entry if missing, as Karaf does when a user joins an unknown group. */
+    public void ensureGroup(String group) {
+        validateName(group, "Group name");
+        if (!hasGroup(group)) {
+            doc.put(GROUP_PREFIX + group, GROUP_MARKER);
+        }
+    }
+
+    public KarafGroup group(String group) {
+        String value = doc.get(GROUP_PREFIX + group);
+        return value == null ? null : parseGroup(group, value);
+    }
+
+    @Override
+    public List<KarafGroup> groups() {
+        List<KarafGroup> out = new ArrayList<>();
+        doc.forEach((key, value) -> {
+            if (isGroupKey(key)) out.add(parseGroup(key.substring(GROUP_PREFIX.length()), value));
+        });
+        return out;
+    }
+
+    /** Writes a group entry; groups it nests are created empty if missing, as for users. */
+    public void putGroup(KarafGroup group) {
+        validateName(group.name(), "Group name");
+        for (String role : group.roles()) {
+            validateName(role, "Role name");
+        }
+        for (String nested : group.groups()) {
+            if (!nested.equals(group.name())) ensureGroup(nested);
+        }
+        doc.put(GROUP_PREFIX + group.name(), format(GROUP_MARKER, group.roles(), group.groups()));
+    }
+
+    public boolean removeGroup(String group) {
+        return doc.remove(GROUP_PREFIX + group) != null;
+    }
+
+    /**
+     * Replaces role tokens and {@code _g_:} references on every user and group entry, in one
+     * pass over the document: each token that is a key of {@code roles} (or {@code groups})
+     * becomes the names it maps to, none meaning removed; a replacement already on the entry
+     * is not repeated. Entries without such a token are left exactly as written.
+     * Returns the number of entries rewritten.
+     */
+    public int replaceTokens(Map<String, Set<String>> roles, Map<String, Set<String>> groups) {
+        List<String> needles = new ArrayList<>(roles.keySet());
+        for (String g : groups.keySet()) needles.add(GROUP_PREFIX + g);
+        return doc.replaceValues((key, value) -> {
+            if (!mentionsAny(value, needles)) return value;
+            if (isGroupKey(key)) {
+                KarafGroup g = parseGroup(key.substring(GROUP_PREFIX.length()), value);
+                if (!touches(g.roles(), roles) && !touches(g.groups(), groups)) return value;
+                return format(GROUP_MARKER, replace(g.roles(), roles), replace(g.groups(), groups));
+            }
+            KarafUser u = parseUser(key, value);
+            if (!touches(u.roles(), roles) && !touches(u.groups(), groups)) return value;
+            return format(u.password(), replace(u.roles(), roles), replace(u.groups(), groups));
+        });
+    }
+
+    /** Whether any user or group has {@code role} written on its own entry. */
+    public boolean isRoleUsed(String role) {
+        boolean[] used = new boolean[1];
+        doc.forEach((key, value) -> {
+            if (used[0] || !value.contains(role)) return;
+            used[0] = isGroupKey(key)
+                    ? parseGroup(key, value).roles().contains(role)
+                    : parseUser(key, value).roles().contains(role);
+        });
+        return used[0];
+    }
+
+    /** Cheap pre-filter: most entries cannot hold a token they do not even contain. */
+    private static boolean mentionsAny(String value, List<String> needles) {
+        for (String n : needles) {
+            if (value.contains(n)) return true;
+        }
+        return false;
+    }
+
+    private static boolean touches(Set<String> tokens, Map<String, Set<String>> replacements) {
+        for (String t : tokens) {
+            if (replacements.containsKey(t)) return true;
+        }
+        return false;
+    }
+
+    private static Set<String> replace(Set<String> tokens, Map<String, Set<String>> replacements) {
+        Set<String> out = new LinkedHashSet<>();
+        for (String t : tokens) {
+            Set<String> r = replacements.get(t);
+            if (r == null) {
+                out.add(t);
+            } else {
+                out.addAll(r);
+            }
+        }
+        return out;
+    }
+
+    /** Computed in one pass over the document. */
+    @Override
+    public GroupIndex groupIndex() {
+        return GroupIndex.build(doc);
+    }
+
+    /* ------------------------------------------------------------------
+       Parsing
+       ------------------------------------------------------------------ */
+
+    static KarafUser parseUser(String username, String value) {
+        String[] tokens = value.split(",");
+        int first = passwordTokenCount(tokens);
+        String password = String.join(",", Arrays.copyOf(tokens, first)).trim();
+
+        Set<String> roles = new LinkedHashSet<>();
+        Set<String> groups = new LinkedHashSet<>();
+        for (int i = first; i < tokens.length; i++) {
+            String t = tokens[i].trim();
+            if (t.isEmpty()) continue;
+            if (t.startsWith(GROUP_PREFIX)) {
+                groups.add(t.substring(GROUP_PREFIX.length()));
+            } else {
+                roles.add(t);
+            }
+        }
+        return new KarafUser(username, password,
+                Collections.unmodifiableSet(roles), Collections.unmodifiableSet(groups));
+    }
+
+    static KarafGroup parseGroup(String name, String value) {
+        Set<String> roles = new LinkedHashSet<>();
+        List<String> nested = new ArrayList<>();
+        parseGroupValue(value, roles, nested);
+        return new KarafGroup(name, Collections.unmodifiableSet(roles),
+                Collections.unmodifiableSet(new LinkedHashSet<>(nested)));
+    }
+
+    /** {@code first} (a password or the group marker), then the roles, then the {@code _g_:} references. */
+    private static String format(String first, Set<String> roles, Set<String> groups) {
+        StringBuilder sb = new StringBuilder(first);
+        for (String role : roles) {
+            sb.append(',').append(role);
+        }
+        for (String group : groups) {
+            sb.append(',').append(GROUP_PREFIX).append(group);
+        }
+        return sb.toString();
+    }
+
+    /** Splits a group entry into its own roles and the groups it nests ({@code _g_:name} tokens). */
+    static void parseGroupValue(String value, Set<String> roles, List<String> nestedGroups) {
+        String[] tokens = value.split(",");
+        // tokens[0] is the "group" marker
+        for (int i = 1; i < tokens.length; i++) {
+            String t = tokens[i].trim();
+            if (t.isEmpty()) continue;
+            if (t.startsWith(GROUP_PREFIX)) {
+                nestedGroups.add(t.substring(GROUP_PREFIX.length()));
+            } else {
+                roles.add(t);
+            }
+        }
+    }
+
+    /**
+     * Argon2 encodings carry their parameters as {@code $m=65536,t=3,p=1$}, so the
+     * stored password can span several comma-separated tokens. Everything else is one token.
+     */
+    private static int passwordTokenCount(String[] tokens) {
+        if (tokens.length == 0 || !tokens[0].contains("$argon2")) return Math.min(1, tokens.length);
+        int dollars = 0;
+        for (int i = 0; i < tokens.length; i++) {
+            dollars += countDollars(tokens[i]);
+            if (dollars >= 5) return i + 1;
+        }
+        return 1;
+    }
+
+    private static int countDollars(String s) {
+        int n = 0;
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) == '$') n++;
+        }
+        return n;
+    }
+
+    static void validateName(String name, String what) {
+        if (name == null || name.isBlank()) {
+            throw new IllegalArgumentException(what + " cannot be empty.");
+        }
+        if (name.startsWith(GROUP_PREFIX) || name.indexOf(',') >= 0) {
+            throw new IllegalArgumentException(what + " must not contain ',' or start with '" + GROUP_PREFIX + "': " + name);
+        }
+    }
+}
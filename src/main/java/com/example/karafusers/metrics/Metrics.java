@@ -0,0 +1,203 @@
+package com.example.karafusers.metrics;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-run phase timings and counters, enabled with --metrics.
+ *
+ * Instrumented code brackets a phase with {@link #start()} and {@link #stop}: while metrics
+ * are off, {@code start} is a single field read returning 0 and {@code stop}/{@link #add}
+ * return at once, so the calls stay in hot paths (hashing, parsing) at no measurable cost.
+ * Timings of a phase that runs on several threads (hashing) add up, so they can exceed the
+ * wall time of the command.
+ */
+public final class Metrics {
+
+    public enum Phase {
+        JAAS_CFG("jaas_cfg_load"),
+        FILE_SECURITY("file_security"),
+        LOCK("lock_wait"),
+        READ("read"),
+        PARSE("parse"),
+        JOURNAL("journal"),
+        HASH("hash"),
+        HASH_MEMORY_WAIT("hash_memory_wait"),
+        BACKUP("backup"),
+        SERIALIZE("serialize"),
+        FSYNC("fsync"),
+        REPLACE("atomic_replace"),
+        INDEX("index");
+
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+
+        public String label() {
+            return label;
+        }
+    }
+
+    public enum Counter {
+        BYTES_READ("bytes_read"),
+        BYTES_WRITTEN("bytes_written"),
+        HASHES("hashes"),
+        USERS("users_touched");
+
+        private final String label;
+
+        Counter(String label) {
+            this.label = label;
+        }
+
+        public String label() {
+            return label;
+        }
+    }
+
+    public enum Format { json, prometheus }
+
+    private static volatile Metrics active;
+
+    /** Wall clock when main() was entered, for the JVM startup figure; -1 once taken. */
+    private static long mainEnteredMillis = -1;
+
+    private final AtomicLongArray nanos = new AtomicLongArray(Phase.values().length);
+    private final AtomicLongArray calls = new AtomicLongArray(Phase.values().length);
+    private final AtomicLongArray counters = new AtomicLongArray(Counter.values().length);
+    private final long startNanos = System.nanoTime();
+    private final long jvmStartupNanos;
+
+    private Metrics(long jvmStartupNanos) {
+        this.jvmStartupNanos = jvmStartupNanos;
+    }
+
+    public static long start() {
+        return active == null ? 0L : System.nanoTime();
+    }
+
+    public static void stop(Phase phase, long start) {
+        Metrics m = active;
+        if (m != null) {
+            m.nanos.addAndGet(phase.ordinal(), System.nanoTime() - start);
+            m.calls.incrementAndGet(phase.ordinal());
+        }
+    }
+
+    /** Records a phase whose duration was measured elsewhere. */
+    public static void record(Phase phase, long nanos) {
+        Metrics m = active;
+        if (m != null) {
+            m.nanos.addAndGet(phase.ordinal(), nanos);
+            m.calls.incrementAndGet(phase.ordinal());
+        }
+    }
+
+    public static void add(Counter counter, long n) {
+        Metrics m = active;
+        if (m != null) {
+            m.counters.addAndGet(counter.ordinal(), n);
+        }
+    }
+
+    public static void markMainEntered() {
+        mainEnteredMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Time from JVM start to main(), once per process (a daemon's later requests have none);
+     * -1 if unknown.
+     */
+    public static long takeJvmStartupNanos() {
+        long entered = mainEnteredMillis;
+        mainEnteredMillis = -1;
+        if (entered < 0) return -1;
+        return ProcessHandle.current().info().startInstant()
+                .map(i -> (entered - i.toEpochMilli()) * 1_000_000L)
+                .orElse(-1L);
+    }
+
+    /** Starts recording for one command run. */
+    public static Metrics enable(long jvmStartupNanos) {
+        Metrics m = new Metrics(jvmStartupNanos);
+        active = m;
+        return m;
+    }
+
+    /** Stops recording; the returned snapshot can then be rendered. */
+    public Metrics disable() {
+        if (active == this) {
+            active = null;
+        }
+        return this;
+    }
+
+    public String render(Format format, String command, Integer exitCode) {
+        long total = System.nanoTime() - startNanos;
+        return format == Format.prometheus ? prometheus(command, exitCode, total) : json(command, exitCode, total);
+    }
+
+    private String json(String command, Integer exitCode, long total) {
+        StringBuilder sb = new StringBuilder("{\"command\":\"").append(command).append('"');
+        if (exitCode != null) sb.append(",\"exit_code\":").append(exitCode);
+        if (jvmStartupNanos >= 0) sb.append(",\"jvm_startup_ns\":").append(jvmStartupNanos);
+        sb.append(",\"total_ns\":").append(total).append(",\"phases\":{");
+        boolean first = true;
+        for (Phase p : Phase.values()) {
+            if (calls.get(p.ordinal()) == 0) continue;
+            if (!first) sb.append(',');
+            first = false;
+            sb.append('"').append(p.label()).append("\":{\"ns\":").append(nanos.get(p.ordinal()))
+                    .append(",\"count\":").append(calls.get(p.ordinal())).append('}');
+        }
+        sb.append("},\"counters\":{");
+        for (Counter c : Counter.values()) {
+            if (c.ordinal() > 0) sb.append(',');
+            sb.append('"').append(c.label()).append("\":").append(counters.get(c.ordinal()));
+        }
+        return sb.append("}}").toString();
+    }
+
+    private String prometheus(String command, Integer exitCode, long total) {
+        String labels = "command=\"" + command + "\"";
+        StringBuilder sb = new StringBuilder();
+        sb.append("# TYPE karaf_users_run_seconds gauge\n");
+        sb.append("karaf_users_run_seconds{").append(labels).append("} ").append(seconds(total)).append('\n');
+        if (jvmStartupNanos >= 0) {
+            sb.append("# TYPE karaf_users_jvm_startup_seconds gauge\n");
+            sb.append("karaf_users_jvm_startup_seconds{").append(labels).append("} ").append(seconds(jvmStartupNanos)).append('\n');
+        }
+        if (exitCode != null) {
+            sb.append("# TYPE karaf_users_exit_code gauge\n");
+            sb.append("karaf_users_exit_code{").append(labels).append("} ").append(exitCode).append('\n');
+        }
+        phases(sb, labels, "karaf_users_phase_seconds", true);
+        phases(sb, labels, "karaf_users_phase_calls", false);
+        for (Counter c : Counter.values()) {
+            sb.append("# TYPE karaf_users_").append(c.label()).append(" gauge\n");
+            sb.append("karaf_users_").append(c.label()).append('{').append(labels).append("} ")
+                    .append(counters.get(c.ordinal())).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private void phases(StringBuilder sb, String labels, String metric, boolean seconds) {
+        boolean typed = false;
+        for (Phase p : Phase.values()) {
+            long n = calls.get(p.ordinal());
+            if (n == 0) continue;
+            if (!typed) {
+                sb.append("# TYPE ").append(metric).append(" gauge\n");
+                typed = true;
+            }
+            sb.append(metric).append('{').append(labels).append(",phase=\"").append(p.label()).append("\"} ")
+                    .append(seconds ? seconds(nanos.get(p.ordinal())) : Long.toString(n)).append('\n');
+        }
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.karafusers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.example.karafusers.cli.ExitCodes;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Runs subcommands in fresh JVMs with class-load logging and checks that only the ones
+ * that hash or verify load the crypto providers.
+ */
+public class StartupClassLoadingTest {
+
+    private static final List<String> CRYPTO_PACKAGES = List.of(
+            "org.springframework.security.",
+            "org.bouncycastle.",
+            "com.example.karafusers.crypto.KarafPasswordCodec",
+            "com.example.karafusers.crypto.PasswordEncoderFactory");
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Path users = dir.resolve("users.properties");
+        Files.writeString(users, "karaf = {CRYPT}$2a$04$abcdefghijklmnopqrstuu5PFcJLxdBhYcFq1nmpcBkcAx5LjIUS6{CRYPT},admin\n"
+                + "bob = {CRYPT}$2a$04$abcdefghijklmnopqrstuu5PFcJLxdBhYcFq1nmpcBkcAx5LjIUS6{CRYPT},viewer\n", StandardCharsets.ISO_8859_1);
+        Files.setPosixFilePermissions(users, PosixFilePermissions.fromString("rw-------"));
+        Files.writeString(dir.resolve("org.apache.karaf.jaas.cfg"), "encryption.enabled = true\n"
+                + "encryption.name = spring-security-crypto\n"
+                + "encryption.algorithm = bcrypt\n"
+                + "encryption.bcrypt.strength = 4\n"
+                + "encryption.prefix = {CRYPT}\n"
+                + "encryption.suffix = {CRYPT}\n");
+    }
+
+    @Test
+    void readOnlyAndDeleteCommandsDoNotLoadCrypto() throws Exception {
+        assertNoCrypto(run("user", "list"));
+        assertNoCrypto(run("user", "audit-hashes", "--summary"));
+        assertNoCrypto(run("user", "del", "-u", "bob", "--force"));
+    }
+
+    @Test
+    void hashingCommandsLoadTheConfiguredEncoder() throws Exception {
+        Set<String> loaded = run("user", "add", "-u", "carol", "-p", "secret");
+        assertTrue(loaded.contains("org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder"));
+    }
+
+    private static void assertNoCrypto(Set<String> loaded) {
+        List<String> crypto = new ArrayList<>();
+        for (String c : loaded) {
+            for (String p : CRYPTO_PACKAGES) {
+                if (c.startsWith(p)) crypto.add(c);
+            }
+        }
+        assertEquals(List.of(), crypto);
+    }
+
+    /** Classes loaded by one CLI run in a fresh JVM; the run itself must succeed. */
+    private Set<String> run(String... command) throws Exception {
+        List<String> cmd = new ArrayList<>(List.of(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-Xlog:class+load=info:stdout",
+                "-cp", System.getProperty("java.class.path"),
+                Main.class.getName(),
+                "--users-file", dir.resolve("users.properties").toString(),
+                "--jaas-cfg", dir.resolve("org.apache.karaf.jaas.cfg").toString()));
+        cmd.addAll(List.of(command));
+        Process p = new ProcessBuilder(cmd).redirectErrorStream(true).start();
+        String output = new String(p.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        int code = p.waitFor();
+        // audit-hashes reports weak hashes through CHECK_FAILED; every other command must succeed.
+        boolean audit = List.of(command).contains("audit-hashes");
+        assertTrue(code == ExitCodes.OK || audit && code == ExitCodes.CHECK_FAILED,
+                String.join(" ", command) + " exited " + code + ":\n" + output);
+
+        Set<String> loaded = new TreeSet<>();
+        for (String line : output.split("\n")) {
+            int tag = line.indexOf("[class,load] ");
+            if (tag < 0) continue;
+            int start = tag + "[class,load] ".length();
+            int end = line.indexOf(' ', start);
+            loaded.add(end < 0 ? line.substring(start) : line.substring(start, end));
+        }
+        return loaded;
+    }
+}
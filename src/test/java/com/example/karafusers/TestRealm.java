@@ -0,0 +1,75 @@
+package com.example.karafusers;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+
+import picocli.CommandLine;
+
+import com.example.karafusers.cli.RootCommand;
+import com.example.karafusers.io.PropertiesDocument;
+import com.example.karafusers.karaf.DefaultKarafUsersService;
+
+/**
+ * A users.properties (0600) and jaas.cfg in a test directory, with helpers to run the CLI
+ * in-process against them. Passwords use basic MD5 so tests do not spend their time hashing.
+ */
+public final class TestRealm {
+
+    /** Exit code and captured output of one in-process run. */
+    public record Run(int code, String out, String err) {}
+
+    private final Path usersFile;
+    private final Path jaasCfg;
+
+    public TestRealm(Path dir, String users) throws IOException {
+        this.usersFile = dir.resolve("users.properties");
+        this.jaasCfg = dir.resolve("org.apache.karaf.jaas.cfg");
+        write(users);
+        Files.writeString(jaasCfg, "encryption.enabled = true\n"
+                + "encryption.name = basic\n"
+                + "encryption.algorithm = MD5\n");
+    }
+
+    public Path usersFile() {
+        return usersFile;
+    }
+
+    public String read() throws IOException {
+        return Files.readString(usersFile, PropertiesDocument.CHARSET);
+    }
+
+    public void write(String users) throws IOException {
+        Files.writeString(usersFile, users, PropertiesDocument.CHARSET);
+        Files.setPosixFilePermissions(usersFile, PosixFilePermissions.fromString("rw-------"));
+    }
+
+    /** Runs {@code args} after --users-file/--jaas-cfg. */
+    public Run run(String... args) {
+        StringWriter out = new StringWriter();
+        StringWriter err = new StringWriter();
+        int code = Main.newCommandLine()
+                .setOut(new PrintWriter(out))
+                .setErr(new PrintWriter(err))
+                .execute(withRealm(args));
+        return new Run(code, out.toString(), err.toString());
+    }
+
+    /** A service over this realm, configured by root options such as --optimistic; output goes to {@code out}. */
+    public DefaultKarafUsersService service(StringWriter out, String... rootOptions) {
+        CommandLine cl = Main.newCommandLine().setOut(new PrintWriter(out, true)).setErr(new PrintWriter(out, true));
+        cl.parseArgs(withRealm(rootOptions));
+        return new DefaultKarafUsersService(cl.<RootCommand>getCommand());
+    }
+
+    private String[] withRealm(String... args) {
+        List<String> full = new ArrayList<>(List.of("--users-file", usersFile.toString(), "--jaas-cfg", jaasCfg.toString()));
+        full.addAll(List.of(args));
+        return full.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.karafusers.cli.batch;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.example.karafusers.TestRealm;
+import com.example.karafusers.cli.ExitCodes;
+import com.example.karafusers.io.BackupStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class BatchCommandTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void failingOperationLeavesTheFileUntouchedAndTakesNoBackup() throws IOException {
+        TestRealm realm = new TestRealm(dir, "karaf = pw,admin\n# kept as is\nbob = pw,viewer\n");
+        byte[] before = Files.readAllBytes(realm.usersFile());
+        Path script = Files.writeString(dir.resolve("ops.txt"),
+                "add -u alice -p secret --roles admin\n" +
+                "edit -u bob --add-roles admin\n" +
+                "del -u nobody\n");
+
+        TestRealm.Run run = realm.run("--backup", "batch", "-f", script.toString());
+
+        assertEquals(ExitCodes.USAGE, run.code());
+        assertTrue(run.err().contains("Batch operation 3"), run.err());
+        assertArrayEquals(before, Files.readAllBytes(realm.usersFile()));
+        assertFalse(Files.exists(BackupStore.dirFor(realm.usersFile())));
+        try (var files = Files.list(dir)) {
+            assertEquals(List.of(), files.filter(p -> p.getFileName().toString().endsWith(".tmp")).toList());
+        }
+    }
+
+    @Test
+    void operationsAreWrittenWithOneBackupAndOneReplace() throws IOException {
+        TestRealm realm = new TestRealm(dir, "karaf = pw,admin\nbob = pw,viewer\n");
+        Path script = Files.writeString(dir.resolve("ops.txt"),
+                "# onboarding\n" +
+                "add -u alice -p secret --roles admin\n" +
+                "user add -u carol -p 'two words' --roles viewer\n" +
+                "\n" +
+                "edit -u bob --add-roles admin\n" +
+                "del -u karaf\n");
+        Path metrics = dir.resolve("metrics.json");
+
+        TestRealm.Run run = realm.run("--backup", "--metrics-file", metrics.toString(), "batch", "-f", script.toString());
+
+        assertEquals(ExitCodes.OK, run.code(), run.err());
+        String users = realm.read();
+        assertTrue(users.startsWith("bob = pw,viewer,admin\n"), users);
+        assertTrue(users.contains("\nalice = ") && users.contains("\ncarol = "), users);
+        assertFalse(users.contains("karaf"), users);
+
+        assertEquals(1, new BackupStore(realm.usersFile()).list().size());
+        String report = Files.readString(metrics);
+        assertEquals(1, phaseCount(report, "backup"), report);
+        assertEquals(1, phaseCount(report, "serialize"), report);
+    }
+
+    private static int phaseCount(String report, String phase) {
+        Matcher m = Pattern.compile("\"" + phase + "\":\\{\"ns\":\\d+,\"count\":(\\d+)}").matcher(report);
+        return m.find() ? Integer.parseInt(m.group(1)) : 0;
+    }
+}
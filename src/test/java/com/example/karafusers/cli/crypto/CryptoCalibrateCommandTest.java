@@ -0,0 +1,49 @@
+package com.example.karafusers.cli.crypto;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Properties;
+
+import com.example.karafusers.TestRealm;
+import com.example.karafusers.cli.ExitCodes;
+import com.example.karafusers.config.JaasCfgLoader;
+import com.example.karafusers.io.BackupStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CryptoCalibrateCommandTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void writesSpringSettingsKeepingPermissionsAndBackingUp() throws Exception {
+        TestRealm realm = new TestRealm(dir, "karaf = pw,admin\n");
+        Path jaasCfg = dir.resolve("org.apache.karaf.jaas.cfg");
+        Files.setPosixFilePermissions(jaasCfg, PosixFilePermissions.fromString("rw-r--r--"));
+        String before = Files.readString(jaasCfg);
+
+        TestRealm.Run run = realm.run("--backup", "crypto", "calibrate",
+                "--algorithm", "bcrypt", "--target-ms", "1", "--samples", "1", "--write");
+
+        assertEquals(ExitCodes.OK, run.code(), run.err());
+        assertTrue(run.out().contains("encryption.name changed from basic to spring-security-crypto"), run.out());
+        Properties written = JaasCfgLoader.load(jaasCfg).raw();
+        assertEquals("spring-security-crypto", written.getProperty("encryption.name"));
+        assertEquals("bcrypt", written.getProperty("encryption.algorithm"));
+        assertTrue(written.containsKey("encryption.bcrypt.strength"));
+        assertEquals("rw-r--r--", PosixFilePermissions.toString(Files.getPosixFilePermissions(jaasCfg)));
+
+        BackupStore store = new BackupStore(jaasCfg);
+        assertEquals(1, store.list().size());
+        try (var files = Files.list(dir)) {
+            assertTrue(files.noneMatch(p -> p.getFileName().toString().contains(".bak-")));
+        }
+        assertEquals(before, new String(store.read(store.list().get(0)), StandardCharsets.ISO_8859_1));
+    }
+}
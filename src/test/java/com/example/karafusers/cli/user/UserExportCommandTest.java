@@ -0,0 +1,115 @@
+package com.example.karafusers.cli.user;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import com.example.karafusers.TestRealm;
+import com.example.karafusers.cli.ExitCodes;
+import com.example.karafusers.io.PropertiesDocument;
+import com.example.karafusers.karaf.KarafUser;
+import com.example.karafusers.karaf.UsersRealm;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class UserExportCommandTest {
+
+    private static final String USERS =
+            "alice = pw1,admin,viewer,_g_:ops\n" +
+            "bob = pa\"ss,viewer\n" +
+            "jürgen = :pw,_g_:ops\n" +
+            "_g_\\:ops = group,deployer\n";
+
+    @TempDir
+    Path dir;
+
+    private String export(TestRealm realm, String... args) {
+        List<String> full = new ArrayList<>(List.of("user", "export"));
+        full.addAll(List.of(args));
+        TestRealm.Run run = realm.run(full.toArray(new String[0]));
+        assertEquals(ExitCodes.OK, run.code(), run.err());
+        return run.out();
+    }
+
+    @Test
+    void csvQuotesListsAndQuotes() throws IOException {
+        TestRealm realm = new TestRealm(dir, USERS);
+
+        assertEquals("username,password,roles,groups\n" +
+                     "alice,pw1,\"admin,viewer\",ops\n" +
+                     "bob,\"pa\"\"ss\",viewer,\n" +
+                     "jürgen,:pw,,ops\n", export(realm, "--format", "csv"));
+    }
+
+    @Test
+    void ldifBase64EncodesUnsafeValues() throws IOException {
+        TestRealm realm = new TestRealm(dir, USERS);
+        String ldif = export(realm, "--format", "ldif", "--filter", "group=ops", "--base-dn", "ou=people,dc=test");
+
+        assertTrue(ldif.startsWith("version: 1\ndn: uid=alice,ou=people,dc=test\n"), ldif);
+        assertTrue(ldif.contains("\nuserPassword: pw1\ndescription: role:admin\ndescription: role:viewer\ndescription: group:ops\n"), ldif);
+        assertTrue(ldif.contains("\ndn:: " + base64("uid=jürgen,ou=people,dc=test") + "\n"), ldif);
+        assertTrue(ldif.contains("\nuid:: " + base64("jürgen") + "\n"), ldif);
+        assertTrue(ldif.contains("\nuserPassword:: " + base64(":pw") + "\n"), ldif);
+        assertFalse(ldif.contains("uid=bob"), ldif);
+    }
+
+    @Test
+    void fieldsProjectAndFiltersMustAllMatch() throws IOException {
+        TestRealm realm = new TestRealm(dir, USERS);
+
+        assertEquals("{\"username\":\"alice\",\"roles\":[\"admin\",\"viewer\"]}\n" +
+                     "{\"username\":\"bob\",\"roles\":[\"viewer\"]}\n",
+                export(realm, "--fields", "username,roles", "--filter", "role=viewer"));
+        assertEquals("username\nalice\n",
+                export(realm, "--format", "csv", "--fields", "username", "--filter", "group=ops", "--filter", "role=admin"));
+
+        TestRealm.Run bad = realm.run("user", "export", "--fields", "username,email");
+        assertEquals(ExitCodes.USAGE, bad.code());
+        assertTrue(bad.err().contains("Unknown field 'email'"), bad.err());
+    }
+
+    @Test
+    void resolveGroupsExportsAndFiltersEffectiveRoles() throws IOException {
+        TestRealm realm = new TestRealm(dir, USERS);
+
+        assertEquals("username\n", export(realm, "--format", "csv", "--fields", "username", "--filter", "role=deployer"));
+        assertEquals("username,roles\nalice,\"admin,viewer,deployer\"\njürgen,deployer\n",
+                export(realm, "--format", "csv", "--fields", "username,roles", "--filter", "role=deployer", "--resolve-groups"));
+    }
+
+    @Test
+    void csvExportIsReadBackByImport() throws IOException {
+        TestRealm source = new TestRealm(dir, USERS);
+        Path csv = dir.resolve("export.csv");
+        export(source, "--format", "csv", "-o", csv.toString());
+        assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(csv)));
+
+        TestRealm target = new TestRealm(Files.createDirectory(dir.resolve("target")), "_g_\\:ops = group,deployer\n");
+        TestRealm.Run run = target.run("user", "import", "--from", csv.toString());
+        assertEquals(ExitCodes.OK, run.code(), run.err());
+
+        // Same users, roles and groups; import treats the exported value as a password to hash.
+        List<KarafUser> expected = users(source);
+        List<KarafUser> imported = users(target);
+        assertEquals(expected.stream().map(u -> u.username() + u.roles() + u.groups()).toList(),
+                imported.stream().map(u -> u.username() + u.roles() + u.groups()).toList());
+    }
+
+    private static List<KarafUser> users(TestRealm realm) throws IOException {
+        return new UsersRealm(PropertiesDocument.parse(Files.readAllBytes(realm.usersFile()))).users();
+    }
+
+    private static String base64(String s) {
+        return Base64.getEncoder().encodeToString(s.getBytes(StandardCharsets.UTF_8));
+    }
+}
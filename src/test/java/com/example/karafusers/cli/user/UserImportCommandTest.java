@@ -0,0 +1,161 @@
+package com.example.karafusers.cli.user;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import com.example.karafusers.TestRealm;
+import com.example.karafusers.cli.ExitCodes;
+import com.example.karafusers.io.PropertiesDocument;
+import com.example.karafusers.karaf.DefaultKarafUsersService;
+import com.example.karafusers.karaf.ImportReport;
+import com.example.karafusers.karaf.KarafUser;
+import com.example.karafusers.karaf.UserRecord;
+import com.example.karafusers.karaf.UsersRealm;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class UserImportCommandTest {
+
+    private static final String USERS = "karaf = pw,admin\nbob = old,viewer\n";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void importsAndReportsCounts() throws IOException {
+        TestRealm realm = new TestRealm(dir, USERS);
+        Path csv = Files.writeString(dir.resolve("in.csv"),
+                "username,password,roles,groups\n" +
+                "alice,s3cret,\"admin,viewer\",ops\n" +
+                "# comment\n" +
+                "carol,pw2,viewer,\n");
+
+        TestRealm.Run run = realm.run("user", "import", "--from", csv.toString(), "--threads", "2");
+
+        assertEquals(ExitCodes.OK, run.code(), run.err());
+        assertTrue(run.out().startsWith("Imported 2 user(s), skipped 0."), run.out());
+        UsersRealm after = parse(realm);
+        assertEquals(Set.of("admin", "viewer"), after.user("alice").roles());
+        assertEquals(Set.of("ops"), after.user("alice").groups());
+        assertEquals(Set.of("viewer"), after.user("carol").roles());
+        assertEquals("old", after.user("bob").password());
+    }
+
+    @Test
+    void duplicateUsernamesInTheInputFailBeforeWriting() throws IOException {
+        TestRealm realm = new TestRealm(dir, USERS);
+        byte[] before = Files.readAllBytes(realm.usersFile());
+        Path jsonl = Files.writeString(dir.resolve("in.jsonl"),
+                "{\"username\":\"alice\",\"password\":\"a\"}\n" +
+                "{\"username\":\"alice\",\"password\":\"b\"}\n");
+
+        TestRealm.Run run = realm.run("user", "import", "--from", jsonl.toString());
+
+        assertEquals(ExitCodes.USAGE, run.code());
+        assertTrue(run.err().contains("Duplicate username in input: alice"), run.err());
+        assertArrayEquals(before, Files.readAllBytes(realm.usersFile()));
+    }
+
+    @Test
+    void jsonValuesOfTheWrongTypeAreUsageErrorsNamingLineAndField() throws IOException {
+        TestRealm realm = new TestRealm(dir, USERS);
+        for (String[] c : List.of(
+                new String[] {"{\"username\":1,\"password\":\"a\"}", "'username' must be a string"},
+                new String[] {"{\"username\":\"alice\",\"password\":\"a\",\"roles\":[1]}", "'roles' must only contain strings"},
+                new String[] {"{\"username\":\"alice\",\"password\":\"a\",\"groups\":true}", "'groups' must be a string or an array"})) {
+            Path jsonl = Files.writeString(dir.resolve("in.jsonl"), "# header\n" + c[0] + "\n");
+
+            TestRealm.Run run = realm.run("user", "import", "--from", jsonl.toString());
+
+            assertEquals(ExitCodes.USAGE, run.code(), run.err());
+            assertTrue(run.err().contains("line 2: " + c[1]), run.err());
+        }
+        assertEquals(USERS, realm.read());
+    }
+
+    @Test
+    void existingUsersFailTheImportUnlessSkipped() throws IOException {
+        TestRealm realm = new TestRealm(dir, USERS);
+        byte[] before = Files.readAllBytes(realm.usersFile());
+        Path csv = Files.writeString(dir.resolve("in.csv"), "alice,a\nbob,new\ncarol,c\n");
+
+        TestRealm.Run failed = realm.run("user", "import", "--from", csv.toString());
+        assertEquals(ExitCodes.USAGE, failed.code());
+        assertTrue(failed.err().contains("User already exists: bob"), failed.err());
+        assertArrayEquals(before, Files.readAllBytes(realm.usersFile()));
+
+        TestRealm.Run skipped = realm.run("user", "import", "--from", csv.toString(), "--skip-existing");
+        assertEquals(ExitCodes.OK, skipped.code(), skipped.err());
+        assertTrue(skipped.out().startsWith("Imported 2 user(s), skipped 1."), skipped.out());
+        UsersRealm after = parse(realm);
+        assertEquals("old", after.user("bob").password());
+        assertEquals(List.of("karaf", "bob", "alice", "carol"), after.users().stream().map(KarafUser::username).toList());
+    }
+
+    @Test
+    void usersCreatedWhileHashingAreRecheckedUnderTheLock() throws IOException {
+        TestRealm realm = new TestRealm(dir, USERS);
+        DefaultKarafUsersService importer = realm.service(new StringWriter());
+        DefaultKarafUsersService other = realm.service(new StringWriter());
+        List<UserRecord> input = List.of(
+                new UserRecord("alice", "a", Set.of("viewer"), Set.of()),
+                new UserRecord("carol", "c", Set.of("viewer"), Set.of()));
+
+        // carol is created by another writer after the snapshot the importer checked against.
+        ImportReport report = importer.importUsers(createAtEnd(input, () ->
+                other.addUser("carol", "theirs", Set.of("admin"), Set.of())), 2, true);
+
+        assertEquals(1, report.imported());
+        assertEquals(1, report.skipped());
+        UsersRealm after = parse(realm);
+        assertEquals(Set.of("admin"), after.user("carol").roles());
+        assertEquals(Set.of("viewer"), after.user("alice").roles());
+
+        // Without --skip-existing the late conflict fails the whole import.
+        TestRealm strict = new TestRealm(Files.createDirectory(dir.resolve("strict")), USERS);
+        DefaultKarafUsersService strictImporter = strict.service(new StringWriter());
+        DefaultKarafUsersService strictOther = strict.service(new StringWriter());
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> strictImporter.importUsers(
+                createAtEnd(input, () -> strictOther.addUser("carol", "theirs", Set.of("admin"), Set.of())), 2, false));
+        assertTrue(e.getMessage().contains("User already exists: carol"), e.getMessage());
+        assertNull(parse(strict).user("alice"));
+    }
+
+    /** Iterates {@code records}, running {@code action} once when the input runs out. */
+    private static Iterator<UserRecord> createAtEnd(List<UserRecord> records, Runnable action) {
+        Iterator<UserRecord> it = records.iterator();
+        return new Iterator<>() {
+            private boolean done;
+
+            @Override
+            public boolean hasNext() {
+                boolean more = it.hasNext();
+                if (!more && !done) {
+                    done = true;
+                    action.run();
+                }
+                return more;
+            }
+
+            @Override
+            public UserRecord next() {
+                return it.next();
+            }
+        };
+    }
+
+    private static UsersRealm parse(TestRealm realm) throws IOException {
+        return new UsersRealm(PropertiesDocument.parse(Files.readAllBytes(realm.usersFile())));
+    }
+}
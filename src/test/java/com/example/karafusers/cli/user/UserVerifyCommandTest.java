@@ -0,0 +1,110 @@
+package com.example.karafusers.cli.user;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import com.example.karafusers.TestRealm;
+import com.example.karafusers.cli.ExitCodes;
+import com.example.karafusers.karaf.CredentialCheck;
+import com.example.karafusers.karaf.DefaultKarafUsersService;
+import com.example.karafusers.karaf.UserRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class UserVerifyCommandTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void batchResultsFollowInputOrderAndFailuresExitOne() throws IOException {
+        TestRealm realm = new TestRealm(dir, "");
+        StringBuilder script = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            script.append("add -u u").append(i).append(" -p pw").append(i).append('\n');
+        }
+        assertEquals(ExitCodes.OK, realm.run("batch", "-f", Files.writeString(dir.resolve("ops.txt"), script).toString()).code());
+
+        // Every third credential is wrong, every fifth user unknown.
+        StringBuilder csv = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            String user = i % 5 == 4 ? "ghost" + i : "u" + i;
+            String result = i % 5 == 4 ? "unknown-user" : i % 3 == 0 ? "mismatch" : "ok";
+            csv.append(user).append(',').append(i % 3 == 0 ? "wrong" : "pw" + i).append('\n');
+            expected.add(user + "\t" + result);
+        }
+        Path in = Files.writeString(dir.resolve("creds.csv"), csv);
+
+        TestRealm.Run run = realm.run("user", "verify", "--batch", "--from", in.toString(), "--threads", "4");
+        assertEquals(ExitCodes.CHECK_FAILED, run.code(), run.err());
+        assertEquals(expected, run.out().lines().toList());
+
+        Path good = Files.writeString(dir.resolve("good.csv"), "u1,pw1\nu2,pw2\n");
+        TestRealm.Run ok = realm.run("user", "verify", "--batch", "--from", good.toString(), "--output", "jsonl");
+        assertEquals(ExitCodes.OK, ok.code(), ok.err());
+        assertEquals(List.of("{\"username\":\"u1\",\"result\":\"ok\"}", "{\"username\":\"u2\",\"result\":\"ok\"}"),
+                ok.out().lines().toList());
+    }
+
+    @Test
+    void slowHeadBoundsHowFarTheInputIsReadAhead() throws IOException {
+        // bcrypt checks cost what the stored hash says: one slow user ahead of many fast ones.
+        String slow = new BCryptPasswordEncoder(12).encode("pw");
+        String fast = new BCryptPasswordEncoder(4).encode("pw");
+        StringBuilder users = new StringBuilder("slow = {CRYPT}" + slow + "{CRYPT},viewer\n");
+        for (int i = 0; i < 100; i++) {
+            users.append("u").append(i).append(" = {CRYPT}").append(fast).append("{CRYPT},viewer\n");
+        }
+        TestRealm realm = new TestRealm(dir, users.toString());
+        Files.writeString(dir.resolve("org.apache.karaf.jaas.cfg"), "encryption.enabled = true\n"
+                + "encryption.name = spring-security-crypto\n"
+                + "encryption.algorithm = bcrypt\n"
+                + "encryption.prefix = {CRYPT}\n"
+                + "encryption.suffix = {CRYPT}\n");
+        DefaultKarafUsersService service = realm.service(new StringWriter());
+
+        List<UserRecord> input = new ArrayList<>();
+        input.add(new UserRecord("slow", "pw", Set.of(), Set.of()));
+        for (int i = 0; i < 100; i++) input.add(new UserRecord("u" + i, "pw", Set.of(), Set.of()));
+        int[] pulled = {0};
+        Iterator<UserRecord> it = input.iterator();
+        Iterator<UserRecord> counting = new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public UserRecord next() {
+                pulled[0]++;
+                return it.next();
+            }
+        };
+
+        int threads = 2;
+        List<String> order = new ArrayList<>();
+        List<Integer> pulledAtEmit = new ArrayList<>();
+        int failures = service.verifyUsers(counting, threads, (CredentialCheck c) -> {
+            order.add(c.username());
+            pulledAtEmit.add(pulled[0]);
+        });
+
+        assertEquals(0, failures);
+        assertEquals(input.stream().map(UserRecord::username).toList(), order);
+        // While the slow head is pending, at most threads * 8 checks wait behind it.
+        int readAhead = pulledAtEmit.get(0) - 1;
+        assertTrue(readAhead > threads && readAhead <= threads * 8, "read ahead " + readAhead);
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.karafusers.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Optional;
+import java.util.Properties;
+
+import com.example.karafusers.crypto.PasswordEncoderFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class JaasCfgTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void expandsPlaceholdersAndParsesOnce() {
+        Properties p = new Properties();
+        p.setProperty("cost", "12");
+        p.setProperty("encryption.bcrypt.strength", " ${cost} ");
+        p.setProperty("encryption.prefix", "{CRYPT}");
+        p.setProperty("encryption.algorithm", "${missing:-bcrypt}");
+        p.setProperty("encryption.suffix", "${missing}");
+        p.setProperty("encryption.pbkdf2.iterations", "many");
+        p.setProperty("home", "${java.home}/x");
+        p.setProperty("loop", "${loop2}");
+        p.setProperty("loop2", "${loop}");
+
+        assertThrows(IllegalArgumentException.class, () -> new JaasCfg(p));
+        p.remove("loop");
+        JaasCfg cfg = new JaasCfg(p);
+
+        assertEquals(Optional.of(12), cfg.optInt("encryption.bcrypt.strength"));
+        assertEquals("{CRYPT}", cfg.encryptionPrefix());
+        assertEquals(Optional.of("bcrypt"), cfg.encryptionAlgorithm());
+        assertEquals("", cfg.encryptionSuffix());
+        assertEquals(System.getProperty("java.home") + "/x", cfg.opt("home").orElseThrow());
+        assertEquals(Optional.empty(), cfg.optInt("encryption.none"));
+        assertThrows(NumberFormatException.class, () -> cfg.optInt("encryption.pbkdf2.iterations"));
+        assertEquals("12", cfg.encryptionSettings().get("encryption.bcrypt.strength"));
+        assertEquals(" ${cost} ", cfg.raw().getProperty("encryption.bcrypt.strength"));
+
+        p.setProperty("encryption.enabled", "maybe");
+        assertThrows(IllegalArgumentException.class, () -> new JaasCfg(p));
+    }
+
+    @Test
+    void loaderAndCodecAreReusedUntilTheContentChanges() throws IOException {
+        Path file = dir.resolve("org.apache.karaf.jaas.cfg");
+        Files.writeString(file, "encryption.enabled = true\nencryption.name = spring-security-crypto\n" +
+                "encryption.algorithm = bcrypt\nencryption.bcrypt.strength = 4\n");
+
+        JaasCfg first = JaasCfgLoader.load(file);
+        assertSame(first, JaasCfgLoader.load(file));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 5_000));
+        assertSame(first, JaasCfgLoader.load(file), "touched but unchanged");
+
+        Files.writeString(file, Files.readString(file).replace("= 4", "= 5"));
+        JaasCfg second = JaasCfgLoader.load(file);
+        assertNotSame(first, second);
+        assertEquals(Optional.of(5), second.optInt("encryption.bcrypt.strength"));
+
+        assertSame(PasswordEncoderFactory.shared(second), PasswordEncoderFactory.shared(new JaasCfg(second.raw())));
+        assertNotSame(PasswordEncoderFactory.shared(first), PasswordEncoderFactory.shared(second));
+    }
+}
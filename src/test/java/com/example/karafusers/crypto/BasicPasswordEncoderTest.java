@@ -0,0 +1,82 @@
+package com.example.karafusers.crypto;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Properties;
+
+import com.example.karafusers.config.JaasCfg;
+import com.example.karafusers.crypto.BasicPasswordEncoder.Encoding;
+import org.junit.jupiter.api.Test;
+
+public class BasicPasswordEncoderTest {
+
+    @Test
+    void matchesKarafBasicEncryption() {
+        assertEquals("e7ebf747769e8522b52d1bf47f718788", new BasicPasswordEncoder("MD5", Encoding.HEXADECIMAL).encode("karaf"));
+        assertEquals("0a85da2cf4150242db1be1297651c15ea2c48532", new BasicPasswordEncoder("SHA-1", Encoding.HEXADECIMAL).encode("karaf"));
+        assertEquals("5+v3R3aehSK1LRv0f3GHiA==", new BasicPasswordEncoder("MD5", Encoding.BASE64).encode("karaf"));
+        assertEquals("CoXaLPQVAkLbG+EpdlHBXqLEhTI=", new BasicPasswordEncoder("SHA-1", Encoding.BASE64).encode("karaf"));
+        assertEquals("zUk7v0CHuX0aDFD8mxxzur/cgoGThXKocAzT2mk83uc6kuHIr2Y2uGMq5QXF74tRBzFcT7rtm/si2rVcJxvOTw==",
+                new BasicPasswordEncoder("SHA-512", Encoding.BASE64).encode("karaf"));
+        assertEquals("8694ef7d97c51ea33e46a47a16af49b2968cbd10a2f25094a2d8c2a3eb0032a9",
+                new BasicPasswordEncoder("SHA-256", Encoding.HEXADECIMAL).encode("pässwörd😀"));
+    }
+
+    @Test
+    void comparesHexIgnoringCaseAndBase64Exactly() {
+        BasicPasswordEncoder hex = new BasicPasswordEncoder("SHA-256", Encoding.HEXADECIMAL);
+        assertTrue(hex.matches("karaf", "305884C45350BBCDC850476E9493389D0BF2C60D4A6A5033DAE16F8870E7EA8D"));
+        assertFalse(hex.matches("karaf!", "305884c45350bbcdc850476e9493389d0bf2c60d4a6a5033dae16f8870e7ea8d"));
+        assertFalse(hex.matches("karaf", "305884c4"));
+
+        BasicPasswordEncoder b64 = new BasicPasswordEncoder("SHA-256", Encoding.BASE64);
+        assertTrue(b64.matches("karaf", "MFiExFNQu83IUEdulJM4nQvyxg1KalAz2uFviHDn6o0="));
+        assertFalse(b64.matches("karaf", "mFiExFNQu83IUEdulJM4nQvyxg1KalAz2uFviHDn6o0="));
+    }
+
+    @Test
+    void isBuiltFromJaasCfg() {
+        Properties p = new Properties();
+        p.setProperty("encryption.name", "basic");
+        p.setProperty("encryption.algorithm", "SHA-256");
+        p.setProperty("encryption.prefix", "{CRYPT}");
+        p.setProperty("encryption.suffix", "{CRYPT}");
+        JaasCfg cfg = new JaasCfg(p);
+        KarafPasswordCodec codec = PasswordEncoderFactory.from(cfg);
+        String stored = codec.encode("karaf");
+        assertEquals("{CRYPT}305884c45350bbcdc850476e9493389d0bf2c60d4a6a5033dae16f8870e7ea8d{CRYPT}", stored);
+        assertTrue(codec.matches("karaf", stored));
+        assertEquals(HashFormat.classify(stored, "{CRYPT}", "{CRYPT}"), HashFormat.current(cfg));
+
+        p.setProperty("encryption.encoding", "rot13");
+        assertThrows(IllegalStateException.class, () -> PasswordEncoderFactory.from(new JaasCfg(p)));
+        p.setProperty("encryption.encoding", "base64");
+        p.setProperty("encryption.algorithm", "SHA-999");
+        assertThrows(IllegalStateException.class, () -> PasswordEncoderFactory.from(new JaasCfg(p)));
+    }
+
+    @Test
+    void everyDigestAndEncodingIsAuditedAsTheConfiguredOne() {
+        for (String algorithm : new String[] {"MD2", "MD5", "SHA-1", "SHA-224", "SHA-256", "SHA-384", "SHA-512"}) {
+            for (String encoding : new String[] {"hexadecimal", "base64"}) {
+                Properties p = new Properties();
+                p.setProperty("encryption.name", "basic");
+                p.setProperty("encryption.algorithm", algorithm);
+                p.setProperty("encryption.encoding", encoding);
+                p.setProperty("encryption.prefix", "{CRYPT}");
+                p.setProperty("encryption.suffix", "{CRYPT}");
+                JaasCfg cfg = new JaasCfg(p);
+                long current = HashFormat.current(cfg);
+                String stored = PasswordEncoderFactory.from(cfg).encode("karaf");
+
+                long actual = HashFormat.classify(stored, "{CRYPT}", "{CRYPT}", current);
+                assertEquals(HashFormat.describe(current), HashFormat.describe(actual), algorithm + " " + encoding + ": " + stored);
+                assertNull(HashFormat.shortfall(actual, current), algorithm + " " + encoding);
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.karafusers.crypto;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.jupiter.api.Test;
+
+/** Drives the searches with synthetic, monotonic hash costs instead of timing real hashes. */
+public class CostCalibratorTest {
+
+    private final List<Map<String, String>> measured = new ArrayList<>();
+
+    private CostCalibrator calibrator(double targetMillis, long memoryBudgetBytes, CostCalibrator.CostFunction cost) {
+        return new CostCalibrator(new Properties(), targetMillis, memoryBudgetBytes, 1, line -> {}, (algo, overrides) -> {
+            measured.add(overrides);
+            return cost.millisPerHash(algo, overrides);
+        });
+    }
+
+    private static int setting(Map<String, String> overrides, String key) {
+        return Integer.parseInt(overrides.get(key));
+    }
+
+    @Test
+    void bcryptTakesTheHighestStrengthWithinTheTarget() {
+        // 0.5 ms at strength 4, doubling per step: strength 11 costs 64 ms, 12 costs 128 ms.
+        CostCalibrator.Result r = calibrator(100, 1L << 30,
+                (a, o) -> 0.5 * (1L << (setting(o, "encryption.bcrypt.strength") - 4))).calibrate("BCrypt");
+
+        assertEquals("bcrypt", r.algorithm());
+        assertEquals(Map.of("encryption.bcrypt.strength", "11"), r.settings());
+        assertEquals(64.0, r.millisPerHash());
+    }
+
+    @Test
+    void pbkdf2SearchBracketsThenBisectsToTheResolution() {
+        // 1 ms per 1000 iterations: 250 000 is the exact answer.
+        CostCalibrator.Result r = calibrator(250, 1L << 30,
+                (a, o) -> setting(o, "encryption.pbkdf2.iterations") / 1000.0).calibrate("pbkdf2");
+
+        assertEquals("250000", r.settings().get("encryption.pbkdf2.iterations"));
+        // Only O(log n) candidates out of ~10 000 possible values, all on the 1000 grid.
+        assertTrue(measured.size() < 25, measured.size() + " candidates measured");
+        for (Map<String, String> m : measured) {
+            assertEquals(0, setting(m, "encryption.pbkdf2.iterations") % 1000, m.toString());
+        }
+    }
+
+    @Test
+    void searchStopsAtTheBoundsOfTheRange() {
+        assertEquals("1000", calibrator(1, 1L << 30, (a, o) -> 5.0).calibrate("pbkdf2").settings().get("encryption.pbkdf2.iterations"));
+        assertEquals("10000000", calibrator(1, 1L << 30, (a, o) -> 0.0).calibrate("pbkdf2").settings().get("encryption.pbkdf2.iterations"));
+    }
+
+    @Test
+    void scryptNeverExceedsTheMemoryBudget() {
+        // With r = 8 a 17 MiB budget allows N = 2^14 at most, however cheap it is.
+        CostCalibrator.Result free = calibrator(100, 17L << 20, (a, o) -> 0.0).calibrate("scrypt");
+        assertEquals("16384", free.settings().get("encryption.scrypt.cpuCost"));
+        assertEquals(HashingExecutor.scryptBytes(16384, 8, 1), free.memoryBytes());
+
+        CostCalibrator.Result timed = calibrator(4, 17L << 20,
+                (a, o) -> setting(o, "encryption.scrypt.cpuCost") / 1024.0).calibrate("scrypt");
+        assertEquals("4096", timed.settings().get("encryption.scrypt.cpuCost"));
+
+        assertThrows(IllegalArgumentException.class, () -> calibrator(100, 1024, (a, o) -> 0.0).calibrate("scrypt"));
+    }
+
+    @Test
+    void argon2SpendsTheMemoryBudgetBeforeAddingPasses() {
+        // 1 ms per MiB per pass.
+        CostCalibrator.CostFunction perMibPass = (a, o) ->
+                setting(o, "encryption.argon2.memory") / 1024.0 * setting(o, "encryption.argon2.iterations");
+
+        CostCalibrator.Result roomy = calibrator(200, 64L << 20, perMibPass).calibrate("argon2");
+        assertEquals("65536", roomy.settings().get("encryption.argon2.memory"));
+        assertEquals("3", roomy.settings().get("encryption.argon2.iterations"));
+        assertEquals(64L << 20, roomy.memoryBytes());
+
+        // One pass over the whole budget is too slow: memory is searched down, one pass kept.
+        CostCalibrator.Result tight = calibrator(20, 64L << 20, perMibPass).calibrate("argon2");
+        int memoryKib = setting(tight.settings(), "encryption.argon2.memory");
+        assertTrue(memoryKib <= 20 * 1024 && memoryKib > 19 * 1024, "memory " + memoryKib);
+        assertEquals("1", tight.settings().get("encryption.argon2.iterations"));
+
+        assertThrows(IllegalArgumentException.class, () -> calibrator(100, 4096, perMibPass).calibrate("argon2"));
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.karafusers.crypto;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.Locale;
+import java.util.Properties;
+
+import com.example.karafusers.config.JaasCfg;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.argon2.Argon2PasswordEncoder;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.Pbkdf2PasswordEncoder;
+import org.springframework.security.crypto.scrypt.SCryptPasswordEncoder;
+
+public class HashFormatTest {
+
+    private static long classify(String stored) {
+        return HashFormat.classify(stored, "{CRYPT}", "{CRYPT}");
+    }
+
+    @Test
+    void readsCostParametersOfSpringEncodings() {
+        assertEquals("bcrypt cost=4", HashFormat.describe(classify("{CRYPT}" + new BCryptPasswordEncoder(4).encode("pw") + "{CRYPT}")));
+        assertEquals("argon2id m=1024 t=2 p=1",
+                HashFormat.describe(classify("{CRYPT}" + new Argon2PasswordEncoder(16, 32, 1, 1024, 2).encode("pw") + "{CRYPT}")));
+        assertEquals("scrypt N=1024 r=4 p=2",
+                HashFormat.describe(classify("{CRYPT}" + new SCryptPasswordEncoder(1024, 4, 2, 32, 16).encode("pw") + "{CRYPT}")));
+        assertEquals("pbkdf2 (iterations not stored)", HashFormat.describe(classify("{CRYPT}"
+                + new Pbkdf2PasswordEncoder("", 16, 1000, Pbkdf2PasswordEncoder.SecretKeyFactoryAlgorithm.PBKDF2WithHmacSHA256).encode("pw")
+                + "{CRYPT}")));
+        assertEquals("pbkdf2-sha256 iterations=29000", HashFormat.describe(classify("{CRYPT}$pbkdf2-sha256$29000$c2FsdA$aGFzaA{CRYPT}")));
+    }
+
+    @Test
+    void flagsPlaintextDigestsAndWeakCosts() {
+        long current = HashFormat.pack(HashFormat.BCRYPT, 12, 0, 0);
+
+        assertEquals("stored in plaintext", HashFormat.shortfall(classify("secret"), current));
+        assertEquals("unsalted digest", HashFormat.shortfall(classify("{CRYPT}5f4dcc3b5aa765d61d8327deb882cf99{CRYPT}"), current));
+        assertEquals("unsalted digest", HashFormat.shortfall(classify("{CRYPT}X03MO1qnZdYdgyfeuILPmQ=={CRYPT}"), current));
+        assertEquals("unrecognised encoding", HashFormat.shortfall(classify("{CRYPT}not a hash{CRYPT}"), current));
+        assertEquals("cost 10 < 12", HashFormat.shortfall(classify("{CRYPT}" + new BCryptPasswordEncoder(10).encode("pw") + "{CRYPT}"), current));
+        assertNull(HashFormat.shortfall(classify("{CRYPT}" + new BCryptPasswordEncoder(12).encode("pw") + "{CRYPT}"), current));
+        assertNotNull(HashFormat.shortfall(classify("{CRYPT}$argon2id$v=19$m=65536,t=3,p=1$c2FsdA$aGFzaA{CRYPT}"), current));
+    }
+
+    @Test
+    void springPbkdf2IsRecognisedByTheConfiguredSaltLengthAndLabelledWithTheConfiguredHmac() {
+        Properties p = new Properties();
+        p.setProperty("encryption.name", "spring-security-crypto");
+        p.setProperty("encryption.algorithm", "pbkdf2");
+        p.setProperty("encryption.pbkdf2.iterations", "1000");
+        for (String hmac : new String[] {"PBKDF2WithHmacSHA1", "PBKDF2WithHmacSHA256", "PBKDF2WithHmacSHA512"}) {
+            for (int saltLength : new int[] {8, 16, 24}) {
+                p.setProperty("encryption.pbkdf2.algorithm", hmac);
+                p.setProperty("encryption.pbkdf2.saltLength", Integer.toString(saltLength));
+                JaasCfg cfg = new JaasCfg(p);
+                long current = HashFormat.current(cfg);
+                String stored = PasswordEncoderFactory.from(cfg).encode("pw");
+
+                long actual = HashFormat.classify(stored, "", "", current);
+                String digest = hmac.substring("PBKDF2WithHmac".length()).toLowerCase(Locale.ROOT);
+                assertEquals("pbkdf2-" + digest + " (iterations not stored)", HashFormat.describe(actual), hmac + " salt " + saltLength);
+                assertNull(HashFormat.shortfall(actual, current));
+            }
+        }
+    }
+}
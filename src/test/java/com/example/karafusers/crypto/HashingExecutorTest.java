@@ -0,0 +1,61 @@
+package com.example.karafusers.crypto;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.example.karafusers.config.JaasCfg;
+import org.junit.jupiter.api.Test;
+
+public class HashingExecutorTest {
+
+    @Test
+    void admitsOnlyAsManyHashesAsTheBudgetHolds() throws Exception {
+        long perHash = 64L << 20;
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        List<Future<Integer>> results = new ArrayList<>();
+
+        try (HashingExecutor pool = new HashingExecutor(4, perHash, 2 * perHash + (perHash / 2))) {
+            assertEquals(2, pool.maxConcurrent());
+            for (int i = 0; i < 12; i++) {
+                results.add(pool.submit(() -> {
+                    peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    Thread.sleep(5);
+                    running.decrementAndGet();
+                    return 1;
+                }));
+            }
+            for (Future<Integer> f : results) {
+                f.get();
+            }
+            assertEquals(0, pool.queueDepth());
+            assertTrue(pool.stats().peakQueued() > 0);
+        }
+        assertTrue(peak.get() <= 2, "peak " + peak.get());
+    }
+
+    @Test
+    void estimatesMemoryFromJaasCfg() {
+        Properties p = new Properties();
+        p.setProperty("encryption.algorithm", "argon2");
+        p.setProperty("encryption.argon2.memory", "65536");
+        assertTrue(HashingExecutor.bytesPerHash(new JaasCfg(p)) > 64L << 20);
+
+        p.setProperty("encryption.algorithm", "scrypt");
+        long scrypt = HashingExecutor.bytesPerHash(new JaasCfg(p));
+        assertTrue(scrypt > 16L << 20 && scrypt < 17L << 20, "scrypt " + scrypt);
+    }
+
+    @Test
+    void scryptMemoryIsOneVArrayPlusTheLanes() {
+        // N = 2^14, r = 8: V is 16 MiB; p = 4 adds 1 KiB per lane, not three more V arrays.
+        assertEquals((16L << 20) + 3 * 1024, HashingExecutor.scryptBytes(16384, 8, 1));
+        assertEquals((16L << 20) + 6 * 1024, HashingExecutor.scryptBytes(16384, 8, 4));
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.karafusers.daemon;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.example.karafusers.cli.ExitCodes;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DaemonServerTest {
+
+    @TempDir
+    Path dir;
+
+    private static String reason(String... args) {
+        return DaemonServer.rejectionReason(args);
+    }
+
+    @Test
+    void servesNonPromptingUserCommands() {
+        assertNull(reason("user", "list"));
+        assertNull(reason("--verbose", "--backup", "user", "add", "-u", "bob", "-p", "secret", "-r", "viewer"));
+        assertNull(reason("user", "add", "--username=bob", "-psecret"));
+        assertNull(reason("user", "del", "-u", "bob", "--force"));
+        assertNull(reason("user", "edit", "-u", "bob", "--roles", "admin"));
+        assertNull(reason("--help"));
+        assertNull(reason("user", "add", "--help"));
+    }
+
+    @Test
+    void rejectsPinnedOptionsUnsupportedRootOptionsAndOtherCommands() {
+        assertTrue(reason("--users-file", "/tmp/x", "user", "list").contains("--users-file"));
+        assertTrue(reason("--jaas-cfg=/tmp/j", "user", "list").contains("--jaas-cfg"));
+        assertTrue(reason("user", "list", "--users-file", "/tmp/x").contains("--users-file"));
+        assertTrue(reason("--durability", "full", "user", "list").contains("--durability"));
+        assertTrue(reason("batch", "ops.txt").contains("batch"));
+        assertTrue(reason("user", "import", "in.csv").contains("user import"));
+        assertNotNull(reason());
+    }
+
+    @Test
+    void rejectsCommandsThatWouldPromptOnTheDaemonsTerminal() {
+        assertNotNull(reason("user", "add", "-u", "bob"));
+        assertNotNull(reason("user", "add", "-p", "secret"));
+        assertNotNull(reason("user", "add", "-u", " ", "-p", "secret"));
+        assertTrue(reason("user", "del", "-u", "bob").contains("--force"));
+        assertNotNull(reason("user", "del", "--force"));
+        assertNotNull(reason("user", "edit", "--roles", "admin"));
+        assertTrue(reason("user", "edit", "-u", "bob", "--set-password").contains("--set-password"));
+    }
+
+    @Test
+    void argumentsRoundTrip() throws IOException {
+        String[] args = {"user", "add", "-u", "bøb", "", "-p", "a b\nc"};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DaemonProtocol.writeArgs(new DataOutputStream(bytes), args);
+
+        assertArrayEquals(args, DaemonProtocol.readArgs(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+    }
+
+    @Test
+    void forwardsOutputAndExitCodeAndRejections() throws Exception {
+        Path socket = dir.resolve("d.sock");
+        List<String[]> received = new CopyOnWriteArrayList<>();
+        DaemonServer server = new DaemonServer(socket, List.of("--users-file", "/etc/users.properties"), (args, out, err) -> {
+            received.add(args);
+            out.println("listed");
+            err.println("warned");
+            return ExitCodes.VALIDATION_ERROR;
+        }, new PrintWriter(new ByteArrayOutputStream()));
+        Thread serving = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }, "daemon-test");
+        serving.setDaemon(true);
+        serving.start();
+        for (int i = 0; i < 500 && !Files.exists(socket); i++) Thread.sleep(10);
+        // The socket appears at its public path already restricted.
+        assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(socket)));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        int code = DaemonClient.forward(socket, new String[] {"user", "list"}, new PrintStream(out), new PrintStream(err));
+        assertEquals(ExitCodes.VALIDATION_ERROR, code);
+        assertEquals("listed" + System.lineSeparator(), out.toString(StandardCharsets.UTF_8));
+        assertEquals("warned" + System.lineSeparator(), err.toString(StandardCharsets.UTF_8));
+        assertArrayEquals(new String[] {"--users-file", "/etc/users.properties", "user", "list"}, received.get(0));
+
+        err.reset();
+        code = DaemonClient.forward(socket, new String[] {"user", "del", "-u", "bob"}, new PrintStream(out), new PrintStream(err));
+        assertEquals(ExitCodes.USAGE, code);
+        assertTrue(err.toString(StandardCharsets.UTF_8).contains("--force"));
+        assertEquals(1, received.size());
+    }
+}
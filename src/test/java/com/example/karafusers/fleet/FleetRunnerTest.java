@@ -0,0 +1,69 @@
+package com.example.karafusers.fleet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.example.karafusers.config.JaasCfg;
+import com.example.karafusers.crypto.SharedHashes;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class FleetRunnerTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void pinsEachTargetsFilesAndDropsFleetOptions() {
+        String[] args = FleetRunner.targetArgs(Path.of("/opt/k1/etc"), List.of(
+                "--etc-glob", "/opt/k*/etc", "--fleet-parallelism=4", "--metrics", "prometheus", "--backup",
+                "user", "add", "-u", "ops", "-p", "pw"));
+        assertEquals(List.of("--users-file", "/opt/k1/etc/users.properties", "--jaas-cfg", "/opt/k1/etc/org.apache.karaf.jaas.cfg",
+                "--backup", "user", "add", "-u", "ops", "-p", "pw"), List.of(args));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> FleetRunner.targetArgs(Path.of("/opt/k1/etc"), List.of("--jaas-cfg", "x", "user", "list")));
+    }
+
+    @Test
+    void resolvesGlobAndTargetsFile() throws IOException {
+        for (String name : List.of("karaf-1", "karaf-2", "other")) {
+            Files.createDirectories(dir.resolve(name).resolve("etc"));
+        }
+        Path list = dir.resolve("targets.txt");
+        Files.writeString(list, "# fleet\nother/etc\nkaraf-1/etc  # duplicate of the glob\n");
+
+        List<Path> targets = FleetTargets.resolve(dir + "/karaf-*/etc", list);
+
+        assertEquals(List.of(dir.resolve("karaf-1/etc"), dir.resolve("karaf-2/etc"), dir.resolve("other/etc")), targets);
+    }
+
+    @Test
+    void hashesOncePerDistinctSettings() {
+        SharedHashes shared = new SharedHashes();
+        AtomicInteger hashed = new AtomicInteger();
+        JaasCfg a = cfg("10");
+        JaasCfg b = cfg("12");
+
+        String first = shared.encode(a, "pw", () -> "h" + hashed.incrementAndGet());
+        assertEquals(first, shared.encode(cfg("10"), "pw", () -> "h" + hashed.incrementAndGet()));
+        shared.encode(b, "pw", () -> "h" + hashed.incrementAndGet());
+
+        assertEquals(2, hashed.get());
+    }
+
+    private static JaasCfg cfg(String strength) {
+        Properties p = new Properties();
+        p.setProperty("encryption.algorithm", "bcrypt");
+        p.setProperty("encryption.bcrypt.strength", strength);
+        p.setProperty("other.key", "ignored");
+        return new JaasCfg(p);
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.karafusers.io;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class BackupStoreTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void storesEachContentOnceAndCompressesOlderGenerations() throws IOException {
+        Path users = dir.resolve("users.properties");
+        BackupStore store = new BackupStore(users);
+        Path objects = store.dir().resolve("objects");
+
+        Files.writeString(users, "karaf = karaf,admin\n");
+        BackupStore.Generation first = store.backup(users);
+        BackupStore.Generation same = store.backup(users);
+        assertEquals(first.sha256(), same.sha256());
+        assertEquals(List.of(1L, 2L), store.list().stream().map(BackupStore.Generation::id).toList());
+        try (var files = Files.list(objects)) {
+            assertEquals(1, files.count(), "identical snapshots share one object");
+        }
+
+        Files.writeString(users, "karaf = karaf,admin\nalice = pw,viewer\n");
+        BackupStore.Generation second = store.backup(users);
+        store.maintain(new BackupStore.Retention(10, null));
+        assertTrue(Files.exists(objects.resolve(first.sha256() + ".gz")));
+        assertFalse(Files.exists(objects.resolve(first.sha256())));
+        assertTrue(Files.exists(objects.resolve(second.sha256())), "the newest stays uncompressed");
+
+        assertArrayEquals("karaf = karaf,admin\n".getBytes(StandardCharsets.UTF_8), store.read(store.find(1L)));
+        assertEquals(second.id(), store.find(null).id());
+
+        // Keep 1: generations 1 and 2 go, and with them the compressed object.
+        store.maintain(new BackupStore.Retention(1, null));
+        assertEquals(List.of(3L), store.list().stream().map(BackupStore.Generation::id).toList());
+        assertFalse(Files.exists(objects.resolve(first.sha256() + ".gz")));
+        assertThrows(IllegalArgumentException.class, () -> store.find(1L));
+    }
+
+    @Test
+    void parsesRetentionAges() {
+        assertEquals(Duration.ofDays(30), BackupStore.Retention.parseAge("30d"));
+        assertEquals(Duration.ofHours(36), BackupStore.Retention.parseAge("PT36H"));
+        assertThrows(IllegalArgumentException.class, () -> BackupStore.Retention.parseAge("soon"));
+    }
+}
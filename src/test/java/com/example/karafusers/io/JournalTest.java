@@ -0,0 +1,66 @@
+package com.example.karafusers.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class JournalTest {
+
+    private static final byte[] BASE = "a = 1\nb = 2\n".getBytes(StandardCharsets.ISO_8859_1);
+
+    @TempDir
+    Path dir;
+
+    private Journal journalWithEdits() throws IOException {
+        Journal journal = new Journal(dir.resolve("users.properties.journal"));
+        journal.create(Journal.BaseId.of(BASE), Journal.Sync.NONE);
+        journal.append(List.of(new PropertiesDocument.Change("a", "x\ty\\z"), new PropertiesDocument.Change("c", "3")), Journal.Sync.NONE);
+        journal.append(List.of(new PropertiesDocument.Change("b", null)), Journal.Sync.NONE);
+        return journal;
+    }
+
+    @Test
+    void replaysCommittedBatchesAndDropsATornTail() throws IOException {
+        Journal journal = journalWithEdits();
+        Files.writeString(journal.path(), "0badf00d\tP\tc\ttorn", StandardOpenOption.APPEND);
+
+        PropertiesDocument doc = PropertiesDocument.parse(BASE);
+        Journal.Replay replay = new Journal(journal.path()).replay(doc, Journal.BaseId.of(BASE));
+
+        assertEquals(2, replay.commits());
+        assertEquals("x\ty\\z", doc.get("a"));
+        assertNull(doc.get("b"));
+        assertEquals("3", doc.get("c"));
+    }
+
+    @Test
+    void recognisesAFinishedCompactionAndRejectsForeignContent() throws IOException {
+        Journal journal = journalWithEdits();
+        PropertiesDocument doc = PropertiesDocument.parse(BASE);
+        journal.replay(doc, Journal.BaseId.of(BASE));
+        ByteArrayOutputStream compacted = new ByteArrayOutputStream();
+        doc.writeTo(compacted);
+        journal.markCompaction(Journal.BaseId.of(compacted.toByteArray()), Journal.Sync.NONE);
+
+        // Crash after the replace, before the journal was deleted.
+        Journal.Replay replay = new Journal(journal.path())
+                .replay(PropertiesDocument.parse(compacted.toByteArray()), Journal.BaseId.of(compacted.toByteArray()));
+        assertTrue(replay.stale());
+
+        byte[] edited = "a = other\n".getBytes(StandardCharsets.ISO_8859_1);
+        assertThrows(IllegalStateException.class,
+                () -> new Journal(journal.path()).replay(PropertiesDocument.parse(edited), Journal.BaseId.of(edited)));
+    }
+}
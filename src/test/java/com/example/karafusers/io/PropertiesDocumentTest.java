@@ -0,0 +1,158 @@
+package com.example.karafusers.io;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class PropertiesDocumentTest {
+
+    private static final String SAMPLE =
+            "#\n" +
+            "# Karaf users\n" +
+            "#\n" +
+            "karaf = karaf,_g_:admingroup\r\n" +
+            "_g_\\:admingroup = group,admin,manager,viewer\n" +
+            "\n" +
+            "  spaced   :  {CRYPT}abc{CRYPT},  r1 , r2\n" +
+            "multi = pw,\\\n" +
+            "        r1,\\\n" +
+            "        r2\n" +
+            "dup = first\n" +
+            "dup = second\n" +
+            "last=no-newline";
+
+    private static byte[] write(PropertiesDocument doc) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        doc.writeTo(out);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void untouchedDocumentRoundTripsByteForByte() throws IOException {
+        byte[] in = SAMPLE.getBytes(StandardCharsets.ISO_8859_1);
+        PropertiesDocument doc = PropertiesDocument.parse(in);
+
+        assertArrayEquals(in, write(doc));
+        assertEquals("karaf,_g_:admingroup", doc.get("karaf"));
+        assertEquals("group,admin,manager,viewer", doc.get("_g_:admingroup"));
+        assertEquals("{CRYPT}abc{CRYPT},  r1 , r2", doc.get("spaced"));
+        assertEquals("pw,r1,r2", doc.get("multi"));
+        assertEquals("second", doc.get("dup"));
+        assertEquals("no-newline", doc.get("last"));
+        assertEquals(6, doc.size());
+    }
+
+    @Test
+    public void editsOnlyRewriteTouchedLines() throws IOException {
+        PropertiesDocument doc = PropertiesDocument.parse(SAMPLE.getBytes(StandardCharsets.ISO_8859_1));
+
+        doc.put("karaf", "secret,admin");
+        assertEquals("dup", doc.keys().get(4));
+        doc.remove("dup");
+        doc.remove("multi");
+        doc.put("new user", "pw:1,r");
+
+        String expected =
+                "#\n" +
+                "# Karaf users\n" +
+                "#\n" +
+                "karaf = secret,admin\r\n" +
+                "_g_\\:admingroup = group,admin,manager,viewer\n" +
+                "\n" +
+                "  spaced   :  {CRYPT}abc{CRYPT},  r1 , r2\n" +
+                "last=no-newline\n" +
+                "new\\ user = pw:1,r\n";
+        assertEquals(expected, new String(write(doc), StandardCharsets.ISO_8859_1));
+
+        PropertiesDocument reparsed = PropertiesDocument.parse(write(doc));
+        assertEquals("pw:1,r", reparsed.get("new user"));
+        assertFalse(reparsed.containsKey("dup"));
+        assertNull(reparsed.get("multi"));
+    }
+
+    @Test
+    void replaceValuesRewritesOnlyChangedEntriesInPlace() throws IOException {
+        PropertiesDocument doc = PropertiesDocument.parse(SAMPLE.getBytes(StandardCharsets.ISO_8859_1));
+        doc.recordChanges();
+
+        int changed = doc.replaceValues((key, value) -> value.contains("r1") ? value.replace("r1", "role1") : value);
+
+        assertEquals(2, changed);
+        assertEquals(List.of("spaced", "multi"), doc.takeChanges().stream().map(PropertiesDocument.Change::key).toList());
+        String out = new String(write(doc), StandardCharsets.ISO_8859_1);
+        assertTrue(out.startsWith("#\n# Karaf users\n#\nkaraf = karaf,_g_:admingroup\r\n"), out);
+        assertTrue(out.contains("\nspaced = {CRYPT}abc{CRYPT},  role1 , r2\nmulti = pw,role1,r2\ndup = first\n"), out);
+        assertEquals("second", doc.get("dup"));
+    }
+
+    @Test
+    public void scalesToOneMillionLines(@TempDir Path dir) throws IOException {
+        int users = 1_000_000;
+        Path file = dir.resolve("users.properties");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+            out.write("# generated\n".getBytes(StandardCharsets.ISO_8859_1));
+            for (int i = 0; i < users; i++) {
+                out.write(generatedLine(i).getBytes(StandardCharsets.ISO_8859_1));
+            }
+        }
+
+        PropertiesDocument doc = PropertiesDocument.load(file);
+        assertEquals(users, doc.size());
+
+        // Edit every 1000th user, remove the one after it, append one.
+        for (int i = 0; i < users; i += 1000) {
+            doc.put("user" + i, "changed,role");
+            doc.remove("user" + (i + 1));
+        }
+        doc.put("brand-new", "pw,admin");
+        assertEquals(users - users / 1000 + 1, doc.size());
+
+        Path copy = dir.resolve("users.properties.out");
+        doc.writeTo(copy);
+
+        // Every untouched line comes back byte for byte, in order.
+        ByteArrayOutputStream expected = new ByteArrayOutputStream(Math.toIntExact(Files.size(file)));
+        expected.writeBytes("# generated\n".getBytes(StandardCharsets.ISO_8859_1));
+        for (int i = 0; i < users; i++) {
+            String line = i % 1000 == 0 ? "user" + i + " = changed,role\n"
+                    : i % 1000 == 1 ? "" : generatedLine(i);
+            expected.writeBytes(line.getBytes(StandardCharsets.ISO_8859_1));
+        }
+        expected.writeBytes("brand-new = pw,admin\n".getBytes(StandardCharsets.ISO_8859_1));
+        assertArrayEquals(expected.toByteArray(), Files.readAllBytes(copy));
+    }
+
+    private static String generatedLine(int i) {
+        return "user" + i + " = {CRYPT}$2a$10$abcdefghijklmnopqrstuv" + i + "{CRYPT},role" + (i % 7) + ",_g_:group" + (i % 13) + "\n";
+    }
+
+    @Test
+    void streamVisitsTheSameEntriesAsParse() throws IOException {
+        byte[] bytes = SAMPLE.getBytes(PropertiesDocument.CHARSET);
+        List<String> streamed = new ArrayList<>();
+        PropertiesDocument.stream(new ByteArrayInputStream(bytes), (k, v) -> streamed.add(k + "=" + v));
+
+        List<String> parsed = new ArrayList<>();
+        PropertiesDocument.parse(bytes).forEach((k, v) -> parsed.add(k + "=" + v));
+
+        // The stream sees both "dup" lines; the document keeps the last one.
+        assertEquals("dup=first", streamed.remove(streamed.indexOf("dup=first")));
+        assertEquals(parsed, streamed);
+    }
+}
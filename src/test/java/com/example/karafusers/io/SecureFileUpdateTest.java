@@ -0,0 +1,48 @@
+package com.example.karafusers.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SecureFileUpdateTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void everyDurabilityReplacesContentAndKeeps0600() throws IOException {
+        Path users = dir.resolve("users.properties");
+        Files.writeString(users, "karaf = karaf,admin\n");
+        for (SecureFileUpdate.Durability d : SecureFileUpdate.Durability.values()) {
+            Path tmp = SecureFileUpdate.createSecureTempFileNear(users);
+            Files.writeString(tmp, "karaf = " + d + ",admin\n");
+            SecureFileUpdate.atomicReplace(users, tmp, d);
+
+            assertEquals("karaf = " + d + ",admin\n", Files.readString(users));
+            assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(users)));
+            assertFalse(Files.exists(tmp));
+        }
+    }
+
+    @Test
+    void groupCommitReplacesSeveralFiles() throws IOException {
+        Path a = dir.resolve("users.properties");
+        Path b = dir.resolve("users.properties.idx");
+        try (SecureFileUpdate.GroupCommit commit = new SecureFileUpdate.GroupCommit(SecureFileUpdate.Durability.full)) {
+            for (Path p : new Path[] {a, b}) {
+                Path tmp = SecureFileUpdate.createSecureTempFileNear(p);
+                Files.writeString(tmp, p.getFileName().toString());
+                commit.replace(p, tmp);
+            }
+        }
+        assertEquals("users.properties", Files.readString(a));
+        assertEquals("users.properties.idx", Files.readString(b));
+    }
+}
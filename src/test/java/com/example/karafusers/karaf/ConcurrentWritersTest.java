@@ -0,0 +1,119 @@
+package com.example.karafusers.karaf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.example.karafusers.TestRealm;
+import com.example.karafusers.io.LockFile;
+import com.example.karafusers.io.PropertiesDocument;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Several services on one users.properties stand in for several karaf-users processes:
+ * each has its own state and only shares the file and its lock.
+ */
+public class ConcurrentWritersTest {
+
+    private static final int USERS_PER_WRITER = 15;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void lockedWritersLoseNoUpdate() throws Exception {
+        assertNoLostUpdate();
+    }
+
+    @Test
+    void optimisticWritersLoseNoUpdate() throws Exception {
+        assertNoLostUpdate("--optimistic");
+    }
+
+    private void assertNoLostUpdate(String... options) throws Exception {
+        TestRealm realm = new TestRealm(dir, "karaf = pw,admin\n");
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (String prefix : List.of("a", "b")) {
+                DefaultKarafUsersService service = realm.service(new StringWriter(), options);
+                writers.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < USERS_PER_WRITER; i++) {
+                        service.addUser(prefix + i, "pw", Set.of("viewer"), Set.of());
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> w : writers) w.get();
+        } finally {
+            pool.shutdownNow();
+        }
+
+        Set<String> expected = new TreeSet<>(Set.of("karaf"));
+        for (int i = 0; i < USERS_PER_WRITER; i++) {
+            expected.add("a" + i);
+            expected.add("b" + i);
+        }
+        assertEquals(expected, usernames(realm));
+    }
+
+    @Test
+    void optimisticCommitRedoesTheChangeWhenTheFileChangedMeanwhile() throws IOException {
+        TestRealm realm = new TestRealm(dir, "karaf = pw,admin\n");
+        StringWriter log = new StringWriter();
+        DefaultKarafUsersService optimistic = realm.service(log, "--optimistic", "--verbose");
+        DefaultKarafUsersService other = realm.service(new StringWriter());
+        int[] attempts = {0};
+
+        optimistic.transaction(s -> {
+            if (attempts[0]++ == 0) {
+                // Another process commits between this load and the commit.
+                other.addUser("bob", "pw", Set.of("viewer"), Set.of());
+            }
+            s.addUser("alice", "pw", Set.of("admin"), Set.of());
+        });
+
+        assertEquals(2, attempts[0]);
+        assertEquals(Set.of("alice", "bob", "karaf"), usernames(realm));
+        assertTrue(log.toString().contains("optimistic retries: 1"), log.toString());
+    }
+
+    @Test
+    void writerGivesUpWhenTheLockIsNotReleasedInTime() throws IOException {
+        TestRealm realm = new TestRealm(dir, "karaf = pw,admin\n");
+        String before = realm.read();
+        DefaultKarafUsersService service = realm.service(new StringWriter(), "--lock-timeout", "100");
+
+        try (LockFile held = LockFile.acquire(LockFile.pathFor(realm.usersFile()), Duration.ofSeconds(1))) {
+            IllegalStateException e = assertThrows(IllegalStateException.class,
+                    () -> service.addUser("bob", "pw", Set.of("viewer"), Set.of()));
+            assertTrue(e.getMessage().contains("Timed out after 100 ms"), e.getMessage());
+        }
+        assertEquals(before, realm.read());
+    }
+
+    private static Set<String> usernames(TestRealm realm) throws IOException {
+        Set<String> names = new TreeSet<>();
+        for (KarafUser u : new UsersRealm(PropertiesDocument.parse(realm.read().getBytes(PropertiesDocument.CHARSET))).users()) {
+            names.add(u.username());
+        }
+        return names;
+    }
+}
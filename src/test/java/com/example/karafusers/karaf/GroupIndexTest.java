@@ -0,0 +1,62 @@
+package com.example.karafusers.karaf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+
+import com.example.karafusers.io.PropertiesDocument;
+import org.junit.jupiter.api.Test;
+
+public class GroupIndexTest {
+
+    private static UsersRealm realm(String text) {
+        return new UsersRealm(PropertiesDocument.parse(text.getBytes(StandardCharsets.ISO_8859_1)));
+    }
+
+    @Test
+    void resolvesNestedGroupsInOrder() {
+        UsersRealm realm = realm(
+                "alice = pw,own,_g_:admins\n" +
+                "_g_\\:admins = group,admin,_g_:ops\n" +
+                "_g_\\:ops = group,ops,_g_:viewers,_g_:missing\n" +
+                "_g_\\:viewers = group,viewer\n");
+        GroupIndex index = realm.groupIndex();
+
+        assertEquals(List.of("admin", "ops", "viewer"), List.copyOf(index.groupRoles("admins")));
+        assertEquals(List.of("own", "admin", "ops", "viewer"), List.copyOf(index.effectiveRoles(realm.user("alice"))));
+        assertTrue(index.cycles().isEmpty());
+    }
+
+    @Test
+    void cyclesShareTheUnionAndAreReported() {
+        UsersRealm realm = realm(
+                "_g_\\:a = group,ra,_g_:b\n" +
+                "_g_\\:b = group,rb,_g_:c\n" +
+                "_g_\\:c = group,rc,_g_:a,_g_:leaf\n" +
+                "_g_\\:leaf = group,rl\n" +
+                "_g_\\:self = group,rs,_g_:self\n");
+        GroupIndex index = realm.groupIndex();
+
+        assertEquals(Set.of("ra", "rb", "rc", "rl"), index.groupRoles("b"));
+        assertSame(index.groupRoles("a"), index.groupRoles("c"));
+        assertEquals(List.of("rs"), List.copyOf(index.groupRoles("self")));
+        assertEquals(List.of(List.of("a", "b", "c"), List.of("self")), index.cycles());
+    }
+
+    @Test
+    void usersWithTheSameMembershipShareOneSet() {
+        UsersRealm realm = realm(
+                "u1 = pw,r,_g_:g\n" +
+                "u2 = pw,r,_g_:g\n" +
+                "u3 = pw,_g_:g\n" +
+                "_g_\\:g = group,gr\n");
+        GroupIndex index = realm.groupIndex();
+
+        assertSame(index.effectiveRoles(realm.user("u1")), index.effectiveRoles(realm.user("u2")));
+        assertSame(index.groupRoles("g"), index.effectiveRoles(realm.user("u3")));
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.karafusers.karaf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.example.karafusers.TestRealm;
+import com.example.karafusers.crypto.HashFormat;
+import com.example.karafusers.crypto.KarafPasswordCodec;
+import com.example.karafusers.crypto.PasswordWrapping;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.security.crypto.password.NoOpPasswordEncoder;
+
+public class HashAuditTest {
+
+    private static final String MD5 = "5f4dcc3b5aa765d61d8327deb882cf99";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void auditsAStreamedFileAcrossChunksInFileOrder() throws Exception {
+        StringBuilder users = new StringBuilder("_g_\\:admins = admin\n");
+        List<String> unknown = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            boolean odd = i % 997 == 0;
+            if (odd) unknown.add("u" + i);
+            users.append("u").append(i).append(" = ").append(odd ? "pw" : MD5).append(",viewer\n");
+        }
+        TestRealm realm = new TestRealm(dir, users.toString());
+
+        HashAuditReport report = realm.service(new StringWriter()).auditHashes();
+
+        assertEquals(10_000, report.users());
+        assertEquals(Map.of("unsalted-md5 digest", 10_000 - unknown.size(), "unknown", unknown.size()), report.histogram());
+        assertEquals(unknown, report.belowCurrent().stream().map(HashAuditReport.Finding::username).toList());
+    }
+
+    @Test
+    void auditAndCodecAgreeOnWhatIsWrapped() {
+        KarafPasswordCodec codec = new KarafPasswordCodec(NoOpPasswordEncoder.getInstance(), "{CRYPT}", "{CRYPT}");
+        for (String stored : List.of("{CRYPT}" + MD5 + "{CRYPT}", "{CRYPT}" + MD5, MD5 + "{CRYPT}", "{CRYPT}", MD5)) {
+            boolean wrapped = PasswordWrapping.isWrapped(stored, "{CRYPT}", "{CRYPT}");
+            long format = HashFormat.classify(stored, "{CRYPT}", "{CRYPT}");
+            assertEquals(!wrapped, HashFormat.kind(format) == HashFormat.PLAINTEXT, stored);
+            assertEquals(wrapped ? MD5 : stored, codec.unwrap(stored), stored);
+        }
+    }
+}
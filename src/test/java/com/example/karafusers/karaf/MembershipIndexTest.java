@@ -0,0 +1,71 @@
+package com.example.karafusers.karaf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.example.karafusers.io.PropertiesDocument;
+import org.junit.jupiter.api.Test;
+
+public class MembershipIndexTest {
+
+    private static final UsersRealm REALM = new UsersRealm(PropertiesDocument.parse((
+            "alice = pw,admin,_g_:ops\n" +
+            "bob = pw,viewer,_g_:audit\n" +
+            "carol = pw,_g_:leads\n" +
+            "dave = pw,viewer\n" +
+            "_g_\\:leads = group,lead,_g_:ops\n" +
+            "_g_\\:ops = group,deployer\n" +
+            "_g_\\:audit = group,auditor\n").getBytes(StandardCharsets.ISO_8859_1)));
+
+    private static List<String> query(String expr, boolean resolveGroups) {
+        MembershipIndex index = MembershipIndex.build(REALM.users(), REALM.groupIndex());
+        List<String> out = new ArrayList<>();
+        index.forEach(index.select(MembershipQuery.parse(expr), resolveGroups), out::add);
+        return out;
+    }
+
+    @Test
+    void termsSeeRolesAndGroupsGrantedThroughNestedGroups() {
+        assertEquals(List.of("alice", "carol"), query("role:deployer", true));
+        assertEquals(List.of("alice", "carol"), query("group:ops", true));
+        assertEquals(List.of("alice"), query("group:ops", false));
+        assertEquals(List.of(), query("role:deployer", false));
+        assertEquals(List.of(), query("role:nobody", true));
+    }
+
+    @Test
+    void operatorsFollowPrecedenceAndNotStaysWithinTheRealm() {
+        assertEquals(List.of("bob", "dave"), query("not group:ops and not role:lead", true));
+        assertEquals(List.of("alice", "bob", "dave"), query("role:admin or role:viewer and not group:ops", true));
+        assertEquals(List.of("bob", "dave"), query("(role:admin | role:viewer) & !group:ops", true));
+        assertEquals(List.of("bob", "carol", "dave"), query("NOT role:admin", true));
+    }
+
+    @Test
+    void wordLevelOperationsAcrossManyUsers() {
+        StringBuilder text = new StringBuilder("_g_\\:odd = group,odd\n");
+        for (int i = 0; i < 1000; i++) {
+            text.append('u').append(i).append(i % 2 == 1 ? " = pw,_g_:odd" : " = pw,even").append(i % 3 == 0 ? ",three\n" : "\n");
+        }
+        UsersRealm realm = new UsersRealm(PropertiesDocument.parse(text.toString().getBytes(StandardCharsets.ISO_8859_1)));
+        MembershipIndex index = MembershipIndex.build(realm.users(), realm.groupIndex());
+
+        assertEquals(167, MembershipIndex.count(index.select(MembershipQuery.parse("role:odd and role:three"), true)));
+        assertEquals(500, MembershipIndex.count(index.select(MembershipQuery.parse("not role:odd"), true)));
+        assertEquals(1000, MembershipIndex.count(index.select(MembershipQuery.parse("role:odd | role:even"), true)));
+    }
+
+    @Test
+    void syntaxErrorsNameThePosition() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> MembershipQuery.parse("role:admin and (group:ops"));
+        assertTrue(e.getMessage().contains("missing ')'"), e.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> MembershipQuery.parse("admin"));
+        assertThrows(IllegalArgumentException.class, () -> MembershipQuery.parse("role:a role:b"));
+    }
+}
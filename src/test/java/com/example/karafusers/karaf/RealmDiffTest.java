@@ -0,0 +1,67 @@
+package com.example.karafusers.karaf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Set;
+
+import com.example.karafusers.io.PropertiesDocument;
+import org.junit.jupiter.api.Test;
+
+public class RealmDiffTest {
+
+    private static final String USERS =
+            "# users\n" +
+            "karaf = {CRYPT}old{CRYPT},viewer,_g_:admingroup\n" +
+            "_g_\\:admingroup = group,admin\n" +
+            "bob = pw,viewer\n" +
+            "carol = pw,\\\n" +
+            "    viewer\n" +
+            "dave = pw\n";
+
+    @Test
+    void reportsUsersAndGroupsWithoutPasswords() throws IOException {
+        UsersRealm realm = new UsersRealm(PropertiesDocument.parse(USERS.getBytes(PropertiesDocument.CHARSET)));
+        PropertiesDocument before = realm.document().copy();
+
+        realm.putUser(new KarafUser("karaf", "{CRYPT}new{CRYPT}", Set.of("manager"), Set.of("admingroup")));
+        realm.removeUser("carol");
+        realm.putUser(new KarafUser("bob", "pw", Set.of("viewer"), Set.of()));           // same value
+        realm.putUser(new KarafUser("erin", "secret", Set.of("viewer"), Set.of("ops")));  // adds group ops
+
+        RealmDiff diff = RealmDiff.between(before, realm.document());
+        List<RealmDiff.Change> changes = diff.changes();
+        assertEquals(List.of("karaf", "carol", "ops", "erin"), changes.stream().map(RealmDiff.Change::name).toList());
+        assertEquals(Set.of("manager"), changes.get(0).rolesAdded());
+        assertEquals(Set.of("viewer"), changes.get(0).rolesRemoved());
+        assertTrue(changes.get(0).passwordChanged());
+        assertEquals(RealmDiff.Kind.REMOVED, changes.get(1).kind());
+        assertTrue(changes.get(2).group()); // created by putUser before the user line
+
+        StringWriter printed = new StringWriter();
+        diff.print(new PrintWriter(printed, true));
+        assertFalse(printed.toString().contains("new"), printed.toString());
+        assertFalse(printed.toString().contains("secret"), printed.toString());
+
+        StringWriter unified = new StringWriter();
+        realm.document().writeDiff(before, "a", "b", 1, unified);
+        assertEquals("--- a\n+++ b\n" +
+                "@@ -1,3 +1,3 @@\n" +
+                " # users\n" +
+                "-karaf = {CRYPT}old{CRYPT},viewer,_g_:admingroup\n" +
+                "+karaf = {CRYPT}new{CRYPT},manager,_g_:admingroup\n" +
+                " _g_\\:admingroup = group,admin\n" +
+                "@@ -4,4 +4,4 @@\n" +
+                " bob = pw,viewer\n" +
+                "-carol = pw,\\\n" +
+                "-    viewer\n" +
+                " dave = pw\n" +
+                "+_g_\\:ops = group\n" +
+                "+erin = secret,viewer,_g_:ops\n", unified.toString());
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.karafusers.karaf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.example.karafusers.io.Journal;
+import com.example.karafusers.io.PropertiesDocument;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class UsersIndexTest {
+
+    private static final String USERS =
+            "karaf = {CRYPT}$argon2id$v=19$m=65536,t=3,p=1$c2FsdA$aGFzaA{CRYPT},viewer,_g_:admingroup\n" +
+            "_g_\\:admingroup = group,admin,_g_:ops\n" +
+            "_g_\\:ops = group,ops\n" +
+            "ümlaut = pw,viewer\n";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void servesTheSameUsersAsTheParsedFile() throws IOException {
+        Path users = dir.resolve("users.properties");
+        Files.writeString(users, USERS, PropertiesDocument.CHARSET);
+        Path idx = UsersIndex.pathFor(users);
+        long mtime = Files.getLastModifiedTime(users).to(TimeUnit.NANOSECONDS);
+        byte[] content = Files.readAllBytes(users);
+        UsersRealm realm = new UsersRealm(PropertiesDocument.parse(content));
+        UsersIndex.write(idx, realm.document(), Journal.BaseId.of(content), mtime);
+
+        UsersIndex index = UsersIndex.open(idx, users);
+        assertNotNull(index);
+        assertEquals(realm.users(), index.users());
+        assertEquals(realm.user("karaf"), index.user("karaf"));
+        assertEquals(realm.user("ümlaut"), index.user("ümlaut"));
+        assertNull(index.user("nobody"));
+        assertNull(index.user("_g_:ops"));
+        assertEquals(List.copyOf(realm.groupIndex().groupRoles("admingroup")),
+                List.copyOf(index.groupIndex().groupRoles("admingroup")));
+
+        // Touched but unchanged: still valid (checksum fallback). Edited: stale.
+        Files.setLastModifiedTime(users, FileTime.fromMillis(Files.getLastModifiedTime(users).toMillis() + 5_000));
+        assertNotNull(UsersIndex.open(idx, users));
+        Files.writeString(users, USERS.replace("viewer", "viewes"), PropertiesDocument.CHARSET);
+        assertNull(UsersIndex.open(idx, users));
+    }
+
+    @Test
+    void indexThatIsNotPrivateIsTreatedAsStale() throws IOException {
+        Path users = dir.resolve("users.properties");
+        Files.writeString(users, USERS, PropertiesDocument.CHARSET);
+        Path idx = UsersIndex.pathFor(users);
+        byte[] content = Files.readAllBytes(users);
+        UsersIndex.write(idx, new UsersRealm(PropertiesDocument.parse(content)).document(), Journal.BaseId.of(content),
+                Files.getLastModifiedTime(users).to(TimeUnit.NANOSECONDS));
+        assertNotNull(UsersIndex.open(idx, users));
+
+        Files.setPosixFilePermissions(idx, PosixFilePermissions.fromString("rw-rw-r--"));
+        assertNull(UsersIndex.open(idx, users));
+
+        Path link = dir.resolve("linked.idx");
+        Files.setPosixFilePermissions(idx, PosixFilePermissions.fromString("rw-------"));
+        Files.createSymbolicLink(link, idx);
+        assertNull(UsersIndex.open(link, users));
+    }
+
+    @Test
+    void fileReplacedBetweenLoadAndIndexWriteLeavesTheIndexStale() throws IOException {
+        Path users = dir.resolve("users.properties");
+        Files.writeString(users, USERS, PropertiesDocument.CHARSET);
+        Path idx = UsersIndex.pathFor(users);
+
+        // What a load sees: attributes first, then the content.
+        long mtime = Files.getLastModifiedTime(users).to(TimeUnit.NANOSECONDS);
+        byte[] content = Files.readAllBytes(users);
+        UsersRealm realm = new UsersRealm(PropertiesDocument.parse(content));
+
+        // Another writer replaces the file with same-size content (a rehash, say) before the index is written.
+        Files.writeString(users, USERS.replace("c2FsdA", "bmV3c2"), PropertiesDocument.CHARSET);
+        Files.setLastModifiedTime(users, FileTime.fromMillis(TimeUnit.NANOSECONDS.toMillis(mtime) + 5_000));
+        assertEquals(content.length, Files.size(users));
+
+        UsersIndex.write(idx, realm.document(), Journal.BaseId.of(content), mtime);
+
+        assertNull(UsersIndex.open(idx, users), "index built from the old content must not be trusted for the new file");
+    }
+}
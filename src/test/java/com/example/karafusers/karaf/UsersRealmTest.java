@@ -0,0 +1,64 @@
+package com.example.karafusers.karaf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+
+import com.example.karafusers.io.PropertiesDocument;
+import org.junit.jupiter.api.Test;
+
+public class UsersRealmTest {
+
+    private static final String ARGON2 = "{CRYPT}$argon2id$v=19$m=65536,t=3,p=1$c2FsdA$aGFzaA{CRYPT}";
+
+    private static UsersRealm realm(String text) {
+        return new UsersRealm(PropertiesDocument.parse(text.getBytes(StandardCharsets.ISO_8859_1)));
+    }
+
+    private static String text(UsersRealm realm) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        realm.document().writeTo(out);
+        return out.toString(StandardCharsets.ISO_8859_1);
+    }
+
+    @Test
+    void replaceTokensRewritesUsersAndGroupsInOnePass() throws IOException {
+        UsersRealm realm = realm(
+                "karaf = " + ARGON2 + ",manager,_g_:ops\n" +
+                "bob = pw, operator , manager\n" +
+                "carol = pw,  viewer\n" +
+                "mallory = pw,managers\n" +
+                "_g_\\:ops = group,manager,_g_:ops\n");
+
+        assertEquals(3, realm.replaceTokens(Map.of("manager", Set.of("operator")), Map.of()));
+        assertEquals(
+                "karaf = " + ARGON2 + ",operator,_g_:ops\n" +
+                "bob = pw,operator\n" +
+                "carol = pw,  viewer\n" +
+                "mallory = pw,managers\n" +
+                "_g_\\:ops = group,operator,_g_:ops\n",
+                text(realm));
+        assertEquals(ARGON2, realm.user("karaf").password());
+    }
+
+    @Test
+    void groupReferencesAreRenamedOrDropped() {
+        UsersRealm realm = realm(
+                "karaf = pw,admin,_g_:ops,_g_:audit\n" +
+                "_g_\\:ops = group,ops,_g_:audit\n" +
+                "_g_\\:audit = group,auditor\n");
+
+        assertTrue(realm.removeGroup("audit"));
+        assertEquals(2, realm.replaceTokens(Map.of(), Map.of("audit", Set.of())));
+        assertEquals(Set.of("ops"), realm.user("karaf").groups());
+        assertEquals(Set.of(), realm.group("ops").groups());
+        assertFalse(realm.isRoleUsed("auditor"));
+        assertTrue(realm.isRoleUsed("ops"));
+    }
+}
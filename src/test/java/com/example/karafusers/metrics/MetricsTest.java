@@ -0,0 +1,32 @@
+package com.example.karafusers.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class MetricsTest {
+
+    @Test
+    void recordsOnlyWhileEnabled() {
+        assertEquals(0L, Metrics.start());
+        Metrics.add(Metrics.Counter.HASHES, 5);
+
+        Metrics metrics = Metrics.enable(-1);
+        long t0 = Metrics.start();
+        Metrics.stop(Metrics.Phase.PARSE, t0);
+        Metrics.add(Metrics.Counter.BYTES_READ, 42);
+        metrics.disable();
+        Metrics.add(Metrics.Counter.BYTES_READ, 1000);
+
+        String json = metrics.render(Metrics.Format.json, "user list", 0);
+        assertTrue(json.contains("\"parse\":{\"ns\":"), json);
+        assertTrue(json.contains("\"bytes_read\":42,"), json);
+        assertTrue(json.contains("\"hashes\":0"), json);
+        assertFalse(json.contains("jvm_startup"), json);
+
+        String prom = metrics.render(Metrics.Format.prometheus, "user list", 0);
+        assertTrue(prom.contains("karaf_users_phase_calls{command=\"user list\",phase=\"parse\"} 1\n"), prom);
+    }
+}